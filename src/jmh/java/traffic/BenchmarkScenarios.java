@@ -0,0 +1,79 @@
+package traffic;
+
+import java.awt.geom.Point2D;
+import java.util.Random;
+
+/**
+ * Engines populated for benchmarking. Vehicles are placed directly rather than spawned, so each
+ * benchmark starts from an exact vehicle count.
+ */
+final class BenchmarkScenarios {
+    static final double TICK_SECONDS = 0.03;
+    private static final int LANES = 4;
+    private static final double SPACING = 30.0;
+    /** Free road ahead of the leaders, enough for a one-second iteration of the smallest scenario. */
+    private static final double HEADROOM = 10_000_000;
+
+    private BenchmarkScenarios() {
+    }
+
+    /**
+     * {@code count} vehicles spread over a four-lane road long enough that none reaches the end
+     * during a measurement iteration, so the vehicle count stays fixed and traffic keeps moving.
+     */
+    static SimulationEngine movingTraffic(int count) {
+        int perLane = (count + LANES - 1) / LANES;
+        double length = perLane * SPACING + HEADROOM;
+        SimulationEngine.Road main = new SimulationEngine.Road(
+                new Point2D.Double(0, 100), new Point2D.Double(length, 100), LANES, 80, "Main Eastbound");
+        SimulationEngine.Road cross = new SimulationEngine.Road(
+                new Point2D.Double(length - 500, 0), new Point2D.Double(length - 500, 200), 1, 60, "Crossing");
+        SimulationEngine engine = new SimulationEngineBuilder()
+                .withMainRoad(main)
+                .withCrossRoad(cross)
+                .withIntersectionPoint(new Point2D.Double(length - 500, 100))
+                .withRandom(new Random(42))
+                .withSpawnRate(0)
+                .withVehicleCapacity(count)
+                .build();
+        int placed = 0;
+        for (int row = perLane - 1; row >= 0 && placed < count; row--) {
+            for (int lane = 0; lane < LANES && placed < count; lane++) {
+                engine.placeVehicle(main, lane, row * SPACING);
+                placed++;
+            }
+        }
+        return engine;
+    }
+
+    /**
+     * {@code count} vehicles spread evenly over every lane of every road of {@code grid}, queued
+     * back from the stop lines, moved on the calling thread or in parallel on the common pool.
+     */
+    static SimulationEngine gridTraffic(RoadNetwork grid, int count, boolean parallel) {
+        SimulationEngineBuilder builder = new SimulationEngineBuilder()
+                .withNetwork(grid)
+                .withRandom(new Random(42))
+                .withSpawnRate(0)
+                .withVehicleCapacity(count);
+        if (parallel) {
+            builder.withParallelTicks();
+        }
+        SimulationEngine engine = builder.build();
+        int placed = 0;
+        for (int layer = 0; placed < count; layer++) {
+            int before = placed;
+            for (SimulationEngine.Road road : grid.roads()) {
+                double position = road.length() - 20 - layer * SPACING;
+                for (int lane = 0; lane < road.lanes() && placed < count && position >= 0; lane++) {
+                    engine.placeVehicle(road, lane, position);
+                    placed++;
+                }
+            }
+            if (placed == before) {
+                throw new IllegalArgumentException("Grid cannot hold " + count + " vehicles");
+            }
+        }
+        return engine;
+    }
+}
@@ -0,0 +1,73 @@
+package traffic;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calls per second of {@link CarFollowingModel#accelerate} over one dense lane, the
+ * kernel alone without the gather and move passes around it. {@code scalar} runs the same kernel in
+ * a JVM with C2's auto-vectorization turned off, so the two scores show what vectorization buys
+ * on the machine at hand.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CarFollowingBenchmark {
+    @Param({"intelligentDriver", "gipps", "safeGap"})
+    public String model;
+
+    @Param({"64", "1024"})
+    public int vehicles;
+
+    private CarFollowingModel carFollowing;
+    private CarFollowingModel.Platoon platoon;
+
+    @Setup
+    public void populate() {
+        carFollowing = switch (model) {
+            case "gipps" -> CarFollowingModel.gipps();
+            case "safeGap" -> CarFollowingModel.safeGap();
+            default -> CarFollowingModel.intelligentDriver();
+        };
+        platoon = new CarFollowingModel.Platoon(vehicles);
+        platoon.setDeltaSeconds(0.05);
+        Random random = new Random(42);
+        for (int i = 0; i < vehicles; i++) {
+            platoon.speed()[i] = 70 * random.nextDouble();
+            platoon.desiredSpeed()[i] = 70 * (0.9 + 0.2 * random.nextDouble());
+            platoon.gap()[i] = i == 0 ? Double.POSITIVE_INFINITY : 80 * random.nextDouble();
+            platoon.leaderSpeed()[i] = 70 * random.nextDouble();
+            platoon.headway()[i] = 0.8 * (0.9 + 0.2 * random.nextDouble());
+            platoon.maxAcceleration()[i] = 20 * (0.9 + 0.2 * random.nextDouble());
+            platoon.comfortableDeceleration()[i] = 30 * (0.9 + 0.2 * random.nextDouble());
+        }
+    }
+
+    @Benchmark
+    public double[] accelerate() {
+        carFollowing.accelerate(platoon, vehicles);
+        return platoon.acceleration();
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-XX:-UseSuperWord")
+    public double[] scalar() {
+        carFollowing.accelerate(platoon, vehicles);
+        return platoon.acceleration();
+    }
+}
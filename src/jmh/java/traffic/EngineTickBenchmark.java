@@ -0,0 +1,61 @@
+package traffic;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ticks per second of {@link SimulationEngine#update(double)} against vehicle count, on one long
+ * road and on a 32 &times; 32 signalized grid moved sequentially or with parallel ticks. The engine
+ * is rebuilt before every iteration so each one measures the same traffic; the grid network is
+ * built once and shared by those engines.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EngineTickBenchmark {
+    @Param({"100", "1000", "10000", "100000"})
+    public int vehicles;
+
+    @Param({"road", "grid", "parallel-grid"})
+    public String layout;
+
+    private RoadNetwork grid;
+    private SimulationEngine engine;
+
+    @Setup(Level.Trial)
+    public void buildNetwork() {
+        if (!layout.equals("road")) {
+            grid = RoadNetwork.grid(32, 32, 600, 2, 60);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void populate() {
+        engine = switch (layout) {
+            case "road" -> BenchmarkScenarios.movingTraffic(vehicles);
+            case "grid" -> BenchmarkScenarios.gridTraffic(grid, vehicles, false);
+            case "parallel-grid" -> BenchmarkScenarios.gridTraffic(grid, vehicles, true);
+            default -> throw new IllegalArgumentException("Unknown layout: " + layout);
+        };
+    }
+
+    @Benchmark
+    public void update() {
+        engine.update(BenchmarkScenarios.TICK_SECONDS);
+    }
+}
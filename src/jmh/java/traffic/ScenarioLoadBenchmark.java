@@ -0,0 +1,63 @@
+package traffic;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading a grid of about 100k links from its text and binary scenario files, and building the
+ * network from it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScenarioLoadBenchmark {
+    private Path text;
+    private Path binary;
+
+    @Setup
+    public void writeFiles() throws IOException {
+        Scenario scenario = Scenario.of(RoadNetwork.grid(158, 158, 100, 1, 60));
+        text = Files.createTempFile("grid", ".scenario");
+        binary = Files.createTempFile("grid", ".bin");
+        scenario.writeText(text);
+        scenario.writeBinary(binary);
+    }
+
+    @TearDown
+    public void deleteFiles() throws IOException {
+        Files.deleteIfExists(text);
+        Files.deleteIfExists(binary);
+    }
+
+    @Benchmark
+    public Scenario loadText() throws IOException {
+        return Scenario.load(text);
+    }
+
+    @Benchmark
+    public Scenario loadBinary() throws IOException {
+        return Scenario.load(binary);
+    }
+
+    @Benchmark
+    public RoadNetwork loadBinaryAndBuild() throws IOException {
+        return Scenario.load(binary).toNetwork();
+    }
+}
@@ -0,0 +1,72 @@
+package traffic;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-call cost of the small pieces every tick leans on: choosing a spawn road and advancing a
+ * signal's state machine.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SignalAndSpawnBenchmark {
+    private final Random random = new Random(42);
+    private List<SimulationEngine.Road> roads;
+    private BiasedSpawnStrategy spawnStrategy;
+    private DemandProfile demandProfile;
+    private double clockSeconds;
+    private SimulationEngine.Intersection.Signal signal;
+
+    @Setup
+    public void prepare() {
+        RoadNetwork grid = RoadNetwork.grid(8, 8, 150, 2, 60);
+        roads = grid.roads();
+        spawnStrategy = new BiasedSpawnStrategy().bind(roads);
+        DemandProfile.Builder demand = DemandProfile.builder(900);
+        for (int r = 0; r < 7; r++) {
+            demand.flow("E " + r + ",0", "E " + r + ",6", 10, 40, 80, 40)
+                    .flow("E " + r + ",0", "S " + (6 - r) + ",3", 5)
+                    .origin("S 0," + r, 20, 10, 5, 10);
+        }
+        demandProfile = demand.build();
+        signal = new SimulationEngine.Intersection.Signal(grid.intersections().get(0));
+    }
+
+    @Benchmark
+    public SimulationEngine.Road chooseRoad() {
+        return spawnStrategy.chooseRoad(roads, random);
+    }
+
+    /**
+     * Origin and destination from a four-slot profile, a simulated second per spawn, so the
+     * tables are rebuilt every 900 spawns.
+     */
+    @Benchmark
+    public SimulationEngine.Road chooseOriginAndDestination() {
+        clockSeconds++;
+        SimulationEngine.Road origin = demandProfile.chooseRoad(roads, random, clockSeconds);
+        return demandProfile.chooseDestination(origin, random);
+    }
+
+    @Benchmark
+    public SimulationEngine.Intersection.Phase intersectionUpdate() {
+        signal.update(BenchmarkScenarios.TICK_SECONDS);
+        return signal.currentPhase();
+    }
+}
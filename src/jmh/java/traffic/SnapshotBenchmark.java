@@ -0,0 +1,48 @@
+package traffic;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning engine state into views for observers and the renderer.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SnapshotBenchmark {
+    @Param({"1000", "10000"})
+    public int vehicles;
+
+    private SimulationEngine engine;
+
+    @Setup
+    public void populate() {
+        engine = BenchmarkScenarios.movingTraffic(vehicles);
+        engine.update(BenchmarkScenarios.TICK_SECONDS);
+    }
+
+    @Benchmark
+    public SimulationSnapshot createSnapshot() {
+        return engine.createSnapshot();
+    }
+
+    @Benchmark
+    public List<SimulationEngine.VehicleView> getVehicleViews() {
+        return engine.getVehicleViews();
+    }
+}
@@ -0,0 +1,115 @@
+package traffic;
+
+import java.util.Random;
+
+/**
+ * Walker alias table over weighted indices: after an O(n) build, drawing an index in proportion to
+ * its weight takes one random double and one or two array reads, whatever the number of indices.
+ * {@link #rebuild} refills the table in place, so changing weights does not allocate once the table
+ * has grown to the largest size it sees.
+ */
+final class AliasTable {
+    static final int NONE = -1;
+
+    private double[] probability;
+    private int[] alias;
+    private int[] small;
+    private int[] large;
+    private double[] scaled;
+    private int size;
+    private double total;
+
+    AliasTable(double[] weights) {
+        this(weights, weights.length);
+    }
+
+    AliasTable(double[] weights, int count) {
+        probability = new double[count];
+        alias = new int[count];
+        small = new int[count];
+        large = new int[count];
+        scaled = new double[count];
+        rebuild(weights, count);
+    }
+
+    /**
+     * Replaces the weights with the first {@code count} entries of {@code weights} (Vose's method).
+     */
+    void rebuild(double[] weights, int count) {
+        if (count > probability.length) {
+            probability = new double[count];
+            alias = new int[count];
+            small = new int[count];
+            large = new int[count];
+            scaled = new double[count];
+        }
+        size = count;
+        total = 0;
+        int heaviest = NONE;
+        for (int i = 0; i < count; i++) {
+            double weight = weights[i];
+            if (!(weight >= 0) || weight == Double.POSITIVE_INFINITY) {
+                throw new IllegalArgumentException("Weights must be finite and at least 0, got " + weight);
+            }
+            total += weight;
+            if (heaviest == NONE || weight > weights[heaviest]) {
+                heaviest = i;
+            }
+        }
+        if (total == 0) {
+            return;
+        }
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < count; i++) {
+            scaled[i] = weights[i] * count / total;
+            if (scaled[i] < 1) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[largeCount - 1];
+            probability[less] = scaled[less];
+            alias[less] = more;
+            scaled[more] += scaled[less] - 1;
+            if (scaled[more] < 1) {
+                largeCount--;
+                small[smallCount++] = more;
+            }
+        }
+        while (largeCount > 0) {
+            int index = large[--largeCount];
+            probability[index] = 1;
+            alias[index] = index;
+        }
+        while (smallCount > 0) {
+            // Only left over through rounding; a weightless index must still never be drawn.
+            int index = small[--smallCount];
+            probability[index] = weights[index] == 0 ? 0 : 1;
+            alias[index] = weights[index] == 0 ? heaviest : index;
+        }
+    }
+
+    /**
+     * Index drawn in proportion to its weight, or {@link #NONE} if every weight is 0.
+     */
+    int sample(Random random) {
+        if (total == 0) {
+            return NONE;
+        }
+        double u = random.nextDouble() * size;
+        int column = Math.min((int) u, size - 1);
+        return u - column < probability[column] ? column : alias[column];
+    }
+
+    int size() {
+        return size;
+    }
+
+    double total() {
+        return total;
+    }
+}
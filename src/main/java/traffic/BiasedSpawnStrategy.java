@@ -5,10 +5,14 @@ import java.util.Map;
 import java.util.Random;
 
 /**
- * Weighted random strategy that prefers the main road over others.
+ * Weighted random strategy that prefers the main road over others. Instances are immutable and can
+ * be shared between engines; each engine spawns through its own {@link #bind bound} copy.
  */
 public class BiasedSpawnStrategy implements SpawnStrategy {
     private final Map<String, Double> weights;
+    /** Road list {@link #table} is indexed like, or {@code null} when not bound. */
+    private final List<SimulationEngine.Road> roads;
+    private final AliasTable table;
 
     public BiasedSpawnStrategy() {
         this(Map.of(
@@ -18,24 +22,44 @@ public class BiasedSpawnStrategy implements SpawnStrategy {
     }
 
     public BiasedSpawnStrategy(Map<String, Double> weights) {
+        this(Map.copyOf(weights), null, null);
+    }
+
+    private BiasedSpawnStrategy(Map<String, Double> weights, List<SimulationEngine.Road> roads, AliasTable table) {
         this.weights = weights;
+        this.roads = roads;
+        this.table = table;
     }
 
+    /**
+     * Resolves the name weights into an alias table indexed like {@code roads}, which for an engine
+     * is by road id, so a spawn costs the same on a pair of roads as on thousands of entry links.
+     */
+    @Override
+    public BiasedSpawnStrategy bind(List<SimulationEngine.Road> roads) {
+        return new BiasedSpawnStrategy(weights, roads, resolve(roads));
+    }
+
+    /**
+     * Picks a road from {@code roads}; on other roads than the bound ones the weights are resolved
+     * again for every call.
+     */
     @Override
     public SimulationEngine.Road chooseRoad(List<SimulationEngine.Road> roads, Random random) {
         if (roads.isEmpty()) {
             return null;
         }
-        double total = roads.stream()
-                .mapToDouble(r -> weights.getOrDefault(r.getName(), 1.0))
-                .sum();
-        double roll = random.nextDouble() * total;
-        for (SimulationEngine.Road road : roads) {
-            roll -= weights.getOrDefault(road.getName(), 1.0);
-            if (roll <= 0) {
-                return road;
-            }
+        AliasTable current = roads == this.roads ? table : resolve(roads);
+        int index = current.sample(random);
+        return index == AliasTable.NONE ? null : roads.get(index);
+    }
+
+    private AliasTable resolve(List<SimulationEngine.Road> roads) {
+        double[] values = new double[roads.size()];
+        for (int i = 0; i < values.length; i++) {
+            Double weight = weights.get(roads.get(i).getName());
+            values[i] = weight != null ? weight : 1.0;
         }
-        return roads.get(0);
+        return new AliasTable(values);
     }
 }
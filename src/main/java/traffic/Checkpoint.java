@@ -0,0 +1,279 @@
+package traffic;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * Buffered big-endian channel I/O for {@link SimulationEngine#checkpoint} and
+ * {@link SimulationEngine#restore}. Each part of the engine writes and reads its own section;
+ * this class only frames the file and moves primitives and primitive arrays through one direct
+ * buffer, in bulk where it can.
+ *
+ * <p>Layout: magic and version, then the engine's sections in a fixed order, then an end marker
+ * that catches a reader and writer that disagree about a section.
+ */
+final class Checkpoint {
+    private static final int MAGIC = 0x54524350; // "TRCP"
+    private static final short VERSION = 2;
+    private static final int END = 0x454E4421; // "END!"
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private Checkpoint() {
+    }
+
+    static Out create(Path path) throws IOException {
+        Out out = new Out(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING));
+        out.putInt(MAGIC);
+        out.putShort(VERSION);
+        return out;
+    }
+
+    static In open(Path path) throws IOException {
+        In in = new In(FileChannel.open(path, StandardOpenOption.READ));
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not an engine checkpoint: " + path);
+            }
+            short version = in.getShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported checkpoint version " + version);
+            }
+            return in;
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    static final class Out implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+        private Out(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putByte(int value) throws IOException {
+            room(1).put((byte) value);
+        }
+
+        void putBoolean(boolean value) throws IOException {
+            putByte(value ? 1 : 0);
+        }
+
+        void putShort(short value) throws IOException {
+            room(Short.BYTES).putShort(value);
+        }
+
+        void putInt(int value) throws IOException {
+            room(Integer.BYTES).putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            room(Long.BYTES).putLong(value);
+        }
+
+        void putDouble(double value) throws IOException {
+            room(Double.BYTES).putDouble(value);
+        }
+
+        void putInts(int[] values, int count) throws IOException {
+            for (int done = 0; done < count; ) {
+                int chunk = Math.min(count - done, room(Integer.BYTES).remaining() / Integer.BYTES);
+                buffer.asIntBuffer().put(values, done, chunk);
+                buffer.position(buffer.position() + chunk * Integer.BYTES);
+                done += chunk;
+            }
+        }
+
+        void putLongs(long[] values, int count) throws IOException {
+            for (int done = 0; done < count; ) {
+                int chunk = Math.min(count - done, room(Long.BYTES).remaining() / Long.BYTES);
+                buffer.asLongBuffer().put(values, done, chunk);
+                buffer.position(buffer.position() + chunk * Long.BYTES);
+                done += chunk;
+            }
+        }
+
+        void putDoubles(double[] values, int count) throws IOException {
+            for (int done = 0; done < count; ) {
+                int chunk = Math.min(count - done, room(Double.BYTES).remaining() / Double.BYTES);
+                buffer.asDoubleBuffer().put(values, done, chunk);
+                buffer.position(buffer.position() + chunk * Double.BYTES);
+                done += chunk;
+            }
+        }
+
+        /**
+         * Writes a {@link Random} through Java serialization, the only public way to its seed.
+         */
+        void putRandom(Random random) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(random);
+            }
+            byte[] data = bytes.toByteArray();
+            putInt(data.length);
+            for (byte b : data) {
+                putByte(b);
+            }
+        }
+
+        /**
+         * Writes the end marker and flushes everything to disk.
+         */
+        void finish() throws IOException {
+            putInt(END);
+            flush();
+            channel.force(false);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        private ByteBuffer room(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+            return buffer;
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    static final class In implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+        private In(FileChannel channel) {
+            this.channel = channel;
+            buffer.flip();
+        }
+
+        int getByte() throws IOException {
+            return fill(1).get();
+        }
+
+        boolean getBoolean() throws IOException {
+            return getByte() != 0;
+        }
+
+        short getShort() throws IOException {
+            return fill(Short.BYTES).getShort();
+        }
+
+        int getInt() throws IOException {
+            return fill(Integer.BYTES).getInt();
+        }
+
+        long getLong() throws IOException {
+            return fill(Long.BYTES).getLong();
+        }
+
+        double getDouble() throws IOException {
+            return fill(Double.BYTES).getDouble();
+        }
+
+        /**
+         * Reads a count written by {@link Out#putInt}, rejecting negative values.
+         */
+        int getCount() throws IOException {
+            int count = getInt();
+            if (count < 0) {
+                throw new IOException("Corrupt checkpoint: negative count " + count);
+            }
+            return count;
+        }
+
+        void getInts(int[] values, int count) throws IOException {
+            for (int done = 0; done < count; ) {
+                int chunk = Math.min(count - done, fill(Integer.BYTES).remaining() / Integer.BYTES);
+                buffer.asIntBuffer().get(values, done, chunk);
+                buffer.position(buffer.position() + chunk * Integer.BYTES);
+                done += chunk;
+            }
+        }
+
+        void getLongs(long[] values, int count) throws IOException {
+            for (int done = 0; done < count; ) {
+                int chunk = Math.min(count - done, fill(Long.BYTES).remaining() / Long.BYTES);
+                buffer.asLongBuffer().get(values, done, chunk);
+                buffer.position(buffer.position() + chunk * Long.BYTES);
+                done += chunk;
+            }
+        }
+
+        void getDoubles(double[] values, int count) throws IOException {
+            for (int done = 0; done < count; ) {
+                int chunk = Math.min(count - done, fill(Double.BYTES).remaining() / Double.BYTES);
+                buffer.asDoubleBuffer().get(values, done, chunk);
+                buffer.position(buffer.position() + chunk * Double.BYTES);
+                done += chunk;
+            }
+        }
+
+        /**
+         * Reads a {@link Random} written by {@link Out#putRandom}; nothing but {@code java.util.Random}
+         * itself is deserialized.
+         */
+        Random getRandom() throws IOException {
+            byte[] data = new byte[getCount()];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (byte) getByte();
+            }
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data))) {
+                in.setObjectInputFilter(ObjectInputFilter.Config.createFilter("java.util.Random;!*"));
+                return (Random) in.readObject();
+            } catch (ClassNotFoundException | ClassCastException e) {
+                throw new IOException("Corrupt checkpoint: bad random state", e);
+            }
+        }
+
+        /**
+         * Checks the end marker, so a section read short or long fails here rather than later.
+         */
+        void finish() throws IOException {
+            if (getInt() != END) {
+                throw new IOException("Corrupt checkpoint: sections do not line up");
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        private ByteBuffer fill(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                buffer.compact();
+                while (buffer.position() < bytes) {
+                    if (channel.read(buffer) < 0) {
+                        throw new EOFException("Checkpoint ends early");
+                    }
+                }
+                buffer.flip();
+            }
+            return buffer;
+        }
+    }
+}
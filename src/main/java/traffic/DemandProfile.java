@@ -0,0 +1,288 @@
+package traffic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * Origin-destination demand that changes over the day, such as a morning peak. Time is cut into
+ * slots of equal length and every flow, from an origin road to an exit road or to any exit, has a
+ * weight per slot; the profile repeats after its last slot. Weights are relative: the engine's
+ * spawn rate sets how many vehicles enter, the profile where they enter and where they head.
+ * <pre>
+ * DemandProfile.builder(900)                                     // quarter-hour slots
+ *         .flow("Main Eastbound", "Exit East", 10, 40, 80, 40)   // a peak in the third quarter
+ *         .origin("Crossing", 20)                                // constant, towards any exit
+ *         .build();
+ * </pre>
+ *
+ * <p>Sampling goes through alias tables, one over origins and one per origin over its
+ * destinations, so a spawn costs two random draws however many flows there are. When the slot
+ * changes only the tables whose weights changed are rebuilt, in place. A profile keeps per-engine
+ * state, so give each engine its own.
+ */
+public final class DemandProfile implements SpawnStrategy {
+    private final double slotSeconds;
+    private final int slots;
+    private final String[] originNames;
+    /** Flows of origin {@code o} are {@code [rowStart[o], rowStart[o + 1])}. */
+    private final int[] rowStart;
+    /** Destination name per flow, {@code null} for any exit. */
+    private final String[] destinationNames;
+    /** Weight per slot and flow. */
+    private final double[][] weights;
+
+    private List<SimulationEngine.Road> roads;
+    private int[] originIndex;
+    private SimulationEngine.Road[] destinations;
+    private AliasTable originTable;
+    private AliasTable[] destinationTables;
+    private double[] rowTotals;
+    private double[] scratch;
+    private int currentSlot = -1;
+    private int lastOrigin = -1;
+    private long tableRebuilds;
+
+    private DemandProfile(Builder builder) {
+        this.slotSeconds = builder.slotSeconds;
+        this.slots = builder.slots();
+        int origins = builder.flows.size();
+        this.originNames = new String[origins];
+        this.rowStart = new int[origins + 1];
+        List<String> names = new ArrayList<>();
+        List<double[]> series = new ArrayList<>();
+        int o = 0;
+        for (Map.Entry<String, Map<String, double[]>> row : builder.flows.entrySet()) {
+            originNames[o] = row.getKey();
+            rowStart[o] = names.size();
+            for (Map.Entry<String, double[]> flow : row.getValue().entrySet()) {
+                names.add(flow.getKey());
+                series.add(flow.getValue());
+            }
+            o++;
+        }
+        rowStart[origins] = names.size();
+        this.destinationNames = names.toArray(new String[0]);
+        this.weights = new double[slots][names.size()];
+        for (int flow = 0; flow < names.size(); flow++) {
+            double[] perSlot = series.get(flow);
+            for (int slot = 0; slot < slots; slot++) {
+                weights[slot][flow] = perSlot.length == 1 ? perSlot[0] : perSlot[slot];
+            }
+        }
+    }
+
+    public static Builder builder(double slotSeconds) {
+        return new Builder(slotSeconds);
+    }
+
+    /**
+     * Chooses by the slot last seen, or the first slot before any.
+     */
+    @Override
+    public SimulationEngine.Road chooseRoad(List<SimulationEngine.Road> roads, Random random) {
+        return chooseRoad(roads, random, Math.max(currentSlot, 0) * slotSeconds);
+    }
+
+    @Override
+    public SimulationEngine.Road chooseRoad(List<SimulationEngine.Road> roads, Random random, double simSeconds) {
+        if (this.roads != roads) {
+            resolve(roads);
+        }
+        advanceTo(slotAt(simSeconds));
+        lastOrigin = originTable.sample(random);
+        return lastOrigin == AliasTable.NONE ? null : roads.get(originIndex[lastOrigin]);
+    }
+
+    @Override
+    public SimulationEngine.Road chooseDestination(SimulationEngine.Road origin, Random random) {
+        if (lastOrigin == AliasTable.NONE || roads.get(originIndex[lastOrigin]) != origin) {
+            return null;
+        }
+        AliasTable table = destinationTables[lastOrigin];
+        int flow = rowStart[lastOrigin] + (table == null ? 0 : table.sample(random));
+        return destinations[flow];
+    }
+
+    public double slotSeconds() {
+        return slotSeconds;
+    }
+
+    public int slotCount() {
+        return slots;
+    }
+
+    /**
+     * Slot in effect at {@code simSeconds}, counting from the start of the run.
+     */
+    public int slotAt(double simSeconds) {
+        long slot = (long) Math.floor(Math.max(simSeconds, 0) / slotSeconds);
+        return (int) (slot % slots);
+    }
+
+    /**
+     * Alias tables rebuilt so far, for tests.
+     */
+    long tableRebuilds() {
+        return tableRebuilds;
+    }
+
+    private void resolve(List<SimulationEngine.Road> roads) {
+        Map<String, Integer> byName = new HashMap<>(roads.size() * 2);
+        for (int i = 0; i < roads.size(); i++) {
+            byName.putIfAbsent(roads.get(i).getName(), i);
+        }
+        int origins = originNames.length;
+        originIndex = new int[origins];
+        for (int o = 0; o < origins; o++) {
+            originIndex[o] = indexOf(byName, originNames[o]);
+        }
+        destinations = new SimulationEngine.Road[destinationNames.length];
+        for (int flow = 0; flow < destinations.length; flow++) {
+            if (destinationNames[flow] != null) {
+                destinations[flow] = roads.get(indexOf(byName, destinationNames[flow]));
+            }
+        }
+        int widest = 0;
+        for (int o = 0; o < origins; o++) {
+            widest = Math.max(widest, rowStart[o + 1] - rowStart[o]);
+        }
+        scratch = new double[widest];
+        rowTotals = new double[origins];
+        destinationTables = new AliasTable[origins];
+        originTable = null;
+        currentSlot = -1;
+        lastOrigin = -1;
+        this.roads = roads;
+    }
+
+    /**
+     * Brings the tables to {@code slot}, rebuilding only rows whose weights differ from the
+     * current slot, and the origin table only if a row total changed.
+     */
+    private void advanceTo(int slot) {
+        if (slot == currentSlot) {
+            return;
+        }
+        double[] next = weights[slot];
+        double[] previous = currentSlot < 0 ? null : weights[currentSlot];
+        boolean totalsChanged = previous == null;
+        for (int o = 0; o < originNames.length; o++) {
+            int start = rowStart[o];
+            int end = rowStart[o + 1];
+            if (previous != null && Arrays.equals(next, start, end, previous, start, end)) {
+                continue;
+            }
+            double total = 0;
+            for (int flow = start; flow < end; flow++) {
+                scratch[flow - start] = next[flow];
+                total += next[flow];
+            }
+            if (end - start > 1) {
+                if (destinationTables[o] == null) {
+                    destinationTables[o] = new AliasTable(scratch, end - start);
+                } else {
+                    destinationTables[o].rebuild(scratch, end - start);
+                }
+                tableRebuilds++;
+            }
+            if (total != rowTotals[o]) {
+                rowTotals[o] = total;
+                totalsChanged = true;
+            }
+        }
+        if (totalsChanged) {
+            if (originTable == null) {
+                originTable = new AliasTable(rowTotals);
+            } else {
+                originTable.rebuild(rowTotals, rowTotals.length);
+            }
+            tableRebuilds++;
+        }
+        currentSlot = slot;
+    }
+
+    private static int indexOf(Map<String, Integer> byName, String name) {
+        Integer index = byName.get(name);
+        if (index == null) {
+            throw new IllegalArgumentException("Demand profile names a road that is not in the network: " + name);
+        }
+        return index;
+    }
+
+    /**
+     * Collects flows; each flow's weights are one per slot, or a single weight for all slots.
+     */
+    public static final class Builder {
+        private final double slotSeconds;
+        private final Map<String, Map<String, double[]>> flows = new LinkedHashMap<>();
+
+        private Builder(double slotSeconds) {
+            if (!(slotSeconds > 0)) {
+                throw new IllegalArgumentException("slotSeconds must be positive");
+            }
+            this.slotSeconds = slotSeconds;
+        }
+
+        /**
+         * Vehicles entering on {@code origin} and leaving the network at the exit road
+         * {@code destination}, weighted per slot.
+         */
+        public Builder flow(String origin, String destination, double... weightsPerSlot) {
+            Objects.requireNonNull(origin);
+            if (weightsPerSlot.length == 0) {
+                throw new IllegalArgumentException("A flow needs at least one weight");
+            }
+            for (double weight : weightsPerSlot) {
+                if (!(weight >= 0) || weight == Double.POSITIVE_INFINITY) {
+                    throw new IllegalArgumentException("Weights must be finite and at least 0, got " + weight);
+                }
+            }
+            Map<String, double[]> row = flows.computeIfAbsent(origin, name -> new LinkedHashMap<>());
+            if (row.containsKey(destination)) {
+                throw new IllegalArgumentException("Duplicate flow from " + origin + " to "
+                        + (destination == null ? "any exit" : destination));
+            }
+            row.put(destination, weightsPerSlot.clone());
+            return this;
+        }
+
+        /**
+         * Vehicles entering on {@code origin} and heading for any exit reachable from it.
+         */
+        public Builder origin(String origin, double... weightsPerSlot) {
+            return flow(origin, null, weightsPerSlot);
+        }
+
+        public DemandProfile build() {
+            if (flows.isEmpty()) {
+                throw new IllegalArgumentException("A demand profile needs at least one flow");
+            }
+            int slots = slots();
+            for (Map<String, double[]> row : flows.values()) {
+                for (double[] perSlot : row.values()) {
+                    if (perSlot.length != 1 && perSlot.length != slots) {
+                        throw new IllegalArgumentException(
+                                "Every flow needs one weight or one per slot (" + slots + ")");
+                    }
+                }
+            }
+            return new DemandProfile(this);
+        }
+
+        private int slots() {
+            int slots = 1;
+            for (Map<String, double[]> row : flows.values()) {
+                for (double[] perSlot : row.values()) {
+                    slots = Math.max(slots, perSlot.length);
+                }
+            }
+            return slots;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package traffic;
+
+import java.io.IOException;
+
+/**
+ * Sliding window of departure timestamps backed by a primitive ring buffer, so recording an exit
+ * does not box a {@link Double}. Timestamps are appended in non-decreasing order.
+ */
+final class DepartureWindow {
+    private double[] times = new double[64];
+    private int head;
+    private int size;
+
+    void record(double time) {
+        if (size == times.length) {
+            grow();
+        }
+        times[(head + size) & (times.length - 1)] = time;
+        size++;
+    }
+
+    /**
+     * Drops every timestamp strictly older than {@code cutoff}.
+     */
+    void pruneBefore(double cutoff) {
+        while (size > 0 && times[head] < cutoff) {
+            head = (head + 1) & (times.length - 1);
+            size--;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    void writeTo(Checkpoint.Out out) throws IOException {
+        out.putInt(size);
+        for (int i = 0; i < size; i++) {
+            out.putDouble(times[(head + i) & (times.length - 1)]);
+        }
+    }
+
+    void readFrom(Checkpoint.In in) throws IOException {
+        clear();
+        int count = in.getCount();
+        for (int i = 0; i < count; i++) {
+            record(in.getDouble());
+        }
+    }
+
+    private void grow() {
+        double[] larger = new double[times.length * 2];
+        for (int i = 0; i < size; i++) {
+            larger[i] = times[(head + i) & (times.length - 1)];
+        }
+        times = larger;
+        head = 0;
+    }
+}
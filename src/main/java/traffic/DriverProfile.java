@@ -0,0 +1,104 @@
+package traffic;
+
+import java.util.Random;
+
+/**
+ * Parameters the engine draws for each vehicle it spawns and hands to the
+ * {@link CarFollowingModel}. Each parameter is the profile's value scaled by its own factor drawn
+ * uniformly from {@code [1 - spread, 1 + spread]}, so drivers differ and platoons do not move in
+ * lockstep; a spread of 0 makes every driver alike and draws nothing from the engine's random.
+ */
+public final class DriverProfile {
+    private final double desiredSpeedFactor;
+    private final double headwaySeconds;
+    private final double maxAcceleration;
+    private final double comfortableDeceleration;
+    private final double spread;
+
+    private DriverProfile(double desiredSpeedFactor, double headwaySeconds, double maxAcceleration,
+                          double comfortableDeceleration, double spread) {
+        this.desiredSpeedFactor = desiredSpeedFactor;
+        this.headwaySeconds = headwaySeconds;
+        this.maxAcceleration = maxAcceleration;
+        this.comfortableDeceleration = comfortableDeceleration;
+        this.spread = spread;
+    }
+
+    /**
+     * @param desiredSpeedFactor      free-road speed as a multiple of the speed limit
+     * @param headwaySeconds          time gap kept to the leader
+     * @param maxAcceleration         pixels per second squared
+     * @param comfortableDeceleration pixels per second squared, positive
+     */
+    public static DriverProfile of(double desiredSpeedFactor, double headwaySeconds, double maxAcceleration,
+                                   double comfortableDeceleration) {
+        if (!(desiredSpeedFactor > 0) || !(headwaySeconds > 0) || !(maxAcceleration > 0)
+                || !(comfortableDeceleration > 0)) {
+            throw new IllegalArgumentException("Driver parameters must be positive");
+        }
+        return new DriverProfile(desiredSpeedFactor, headwaySeconds, maxAcceleration, comfortableDeceleration, 0);
+    }
+
+    /**
+     * The limit, a 0.8 s headway, 20 px/s^2 acceleration and 30 px/s^2 braking, each varied by 10%.
+     */
+    public static DriverProfile defaults() {
+        return of(1, 0.8, 20, 30).withSpread(0.1);
+    }
+
+    /**
+     * Varies every parameter by up to {@code spread} either way; below 1.
+     */
+    public DriverProfile withSpread(double spread) {
+        if (!(spread >= 0 && spread < 1)) {
+            throw new IllegalArgumentException("spread must be in [0, 1)");
+        }
+        return new DriverProfile(desiredSpeedFactor, headwaySeconds, maxAcceleration, comfortableDeceleration, spread);
+    }
+
+    public double desiredSpeedFactor() {
+        return desiredSpeedFactor;
+    }
+
+    public double headwaySeconds() {
+        return headwaySeconds;
+    }
+
+    public double maxAcceleration() {
+        return maxAcceleration;
+    }
+
+    public double comfortableDeceleration() {
+        return comfortableDeceleration;
+    }
+
+    public double spread() {
+        return spread;
+    }
+
+    /**
+     * Draws a driver for the vehicle in {@code slot}.
+     */
+    void assign(VehicleStore store, int slot, Random random) {
+        if (spread == 0) {
+            assignTypical(store, slot);
+            return;
+        }
+        store.setDriver(slot,
+                desiredSpeedFactor * vary(random),
+                headwaySeconds * vary(random),
+                maxAcceleration * vary(random),
+                comfortableDeceleration * vary(random));
+    }
+
+    /**
+     * Gives the vehicle in {@code slot} the profile's own values, drawing nothing.
+     */
+    void assignTypical(VehicleStore store, int slot) {
+        store.setDriver(slot, desiredSpeedFactor, headwaySeconds, maxAcceleration, comfortableDeceleration);
+    }
+
+    private double vary(Random random) {
+        return 1 + spread * (2 * random.nextDouble() - 1);
+    }
+}
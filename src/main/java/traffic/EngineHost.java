@@ -0,0 +1,563 @@
+package traffic;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hosts many independent engines, one per session, in one process. A fixed pool of worker threads
+ * steps them all: a session that is due is queued for the pool, runs at most one slice of ticks and
+ * goes back to the end of the queue if it is still due, so a busy or unpaced session never holds a
+ * worker for more than a slice while others wait. A pacer thread grants each running session ticks
+ * in proportion to wall time and its speed, like {@link SimulationLoop} does for a single engine; a
+ * session that falls more than a few slices behind drops the backlog instead of starving the rest.
+ *
+ * <pre>{@code
+ * try (EngineHost host = EngineHost.builder().withWorkers(8).build()) {
+ *     EngineHost.Session corridor = host.create("corridor-17", SimulationEngineBuilder.fromScenario(path), 0.05);
+ *     corridor.resume(1);                 // real time
+ *     ...
+ *     SimulationSnapshot frame = corridor.snapshot();
+ *     corridor.destroy();
+ * }
+ * }</pre>
+ *
+ * <p>Each session's engine is only ever touched by one thread at a time, between slices, so
+ * lifecycle calls and commands from other threads are safe. A session whose engine throws fails on
+ * its own; the others keep running.
+ */
+public final class EngineHost implements AutoCloseable {
+    /** Slices of ticks a running session may owe before its backlog is dropped. */
+    private static final int MAX_CATCH_UP_SLICES = 5;
+
+    private final ExecutorService workers;
+    private final ScheduledExecutorService pacer;
+    private final int sliceTicks;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    private EngineHost(Builder builder) {
+        this.sliceTicks = builder.sliceTicks;
+        this.workers = Executors.newFixedThreadPool(builder.workers, daemonThreads("engine-host-worker"));
+        this.pacer = Executors.newSingleThreadScheduledExecutor(daemonThreads("engine-host-pacer"));
+        long periodNanos = builder.pacePeriod.toNanos();
+        pacer.scheduleAtFixedRate(this::pace, periodNanos, periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Builds an engine from {@code builder} and hosts it, paused, under {@code id}.
+     *
+     * @throws IllegalArgumentException if a session with this id exists
+     */
+    public Session create(String id, SimulationEngineBuilder builder, double tickSeconds) {
+        Objects.requireNonNull(id);
+        if (!(tickSeconds > 0)) {
+            throw new IllegalArgumentException("tickSeconds must be positive");
+        }
+        if (closed) {
+            throw new IllegalStateException("Host is closed");
+        }
+        Session session = new Session(id, builder.build(), tickSeconds);
+        if (sessions.putIfAbsent(id, session) != null) {
+            throw new IllegalArgumentException("Session already exists: " + id);
+        }
+        return session;
+    }
+
+    /**
+     * The session hosted under {@code id}, or {@code null}.
+     */
+    public Session get(String id) {
+        return sessions.get(id);
+    }
+
+    public Collection<Session> sessions() {
+        return List.copyOf(sessions.values());
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    public int sliceTicks() {
+        return sliceTicks;
+    }
+
+    /**
+     * Stats of every session, without waiting for slices in flight.
+     */
+    public List<Stats> stats() {
+        List<Stats> stats = new ArrayList<>(sessions.size());
+        for (Session session : sessions.values()) {
+            stats.add(session.stats());
+        }
+        return stats;
+    }
+
+    /**
+     * Destroys every session and stops the worker and pacer threads, waiting up to a minute for
+     * slices in flight. An interrupt does not cut the wait short; it is kept for the caller.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        pacer.shutdownNow();
+        for (Session session : sessions.values()) {
+            session.destroy();
+        }
+        workers.shutdown();
+        boolean interrupted = false;
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+        while (true) {
+            try {
+                workers.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void pace() {
+        long now = System.nanoTime();
+        for (Session session : sessions.values()) {
+            session.accrue(now);
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public enum State {
+        PAUSED,
+        RUNNING,
+        FAILED,
+        DESTROYED
+    }
+
+    /**
+     * One hosted engine and its schedule. Budget fields are guarded by the session's monitor, the
+     * engine by {@code engineLock}, which a worker holds for one slice.
+     */
+    public final class Session {
+        private final String id;
+        private final SimulationEngine engine;
+        private final double tickSeconds;
+        private final long tickNanos;
+        private final ReentrantLock engineLock = new ReentrantLock();
+        private final Queue<SimulationCommand> pendingCommands = new ConcurrentLinkedQueue<>();
+
+        private State state = State.PAUSED;
+        private double speed;
+        private double owedTicks;
+        private long stepTicks;
+        private long lastAccrueNanos;
+        private boolean queued;
+        private final List<CompletableFuture<Void>> stepWaiters = new ArrayList<>();
+        private RuntimeException failure;
+
+        private long ticks;
+        private long slices;
+        private long droppedTicks;
+        private long busyNanos;
+        private long maxSliceNanos;
+        private double simSeconds;
+        private int vehicles;
+        private long departures;
+
+        private Session(String id, SimulationEngine engine, double tickSeconds) {
+            this.id = id;
+            this.engine = engine;
+            this.tickSeconds = tickSeconds;
+            this.tickNanos = Math.max(1, Math.round(TimeUnit.SECONDS.toNanos(1) * tickSeconds));
+        }
+
+        public String id() {
+            return id;
+        }
+
+        public double tickSeconds() {
+            return tickSeconds;
+        }
+
+        public synchronized State state() {
+            return state;
+        }
+
+        /**
+         * Runs the session at {@code speed} simulated seconds per wall second, or as fast as its
+         * share of the workers allows for {@link Double#POSITIVE_INFINITY}.
+         */
+        public synchronized void resume(double speed) {
+            if (!(speed > 0)) {
+                throw new IllegalArgumentException("speed must be positive");
+            }
+            requireLive();
+            this.speed = speed;
+            if (state != State.RUNNING) {
+                state = State.RUNNING;
+                lastAccrueNanos = System.nanoTime();
+            }
+            if (speed == Double.POSITIVE_INFINITY) {
+                owedTicks = sliceTicks;
+                dispatchIfDue();
+            }
+        }
+
+        /**
+         * Stops granting ticks; a slice in flight finishes. Pending {@link #step} ticks still run.
+         */
+        public synchronized void pause() {
+            requireLive();
+            state = State.PAUSED;
+            owedTicks = 0;
+        }
+
+        /**
+         * Queues {@code count} ticks on a paused session. They run on the workers in slices like any
+         * other; the returned future completes once every step queued so far has run.
+         *
+         * @throws IllegalStateException if the session is running, failed or destroyed
+         */
+        public synchronized CompletableFuture<Void> step(int count) {
+            if (count < 1) {
+                throw new IllegalArgumentException("count must be positive");
+            }
+            requireLive();
+            if (state != State.PAUSED) {
+                throw new IllegalStateException("Pause session " + id + " before stepping it");
+            }
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            stepWaiters.add(done);
+            stepTicks += count;
+            dispatchIfDue();
+            return done;
+        }
+
+        /**
+         * Queues a command to be applied before the session's next slice. Safe to call from any
+         * thread.
+         */
+        public void submit(SimulationCommand command) {
+            pendingCommands.add(Objects.requireNonNull(command));
+        }
+
+        /**
+         * Captures the engine between slices, waiting for the slice in flight if there is one.
+         */
+        public SimulationSnapshot snapshot() {
+            engineLock.lock();
+            try {
+                requireLive();
+                return engine.createSnapshot();
+            } finally {
+                engineLock.unlock();
+            }
+        }
+
+        /**
+         * Writes a {@link SimulationEngine#checkpoint checkpoint} of the engine between slices.
+         */
+        public void checkpoint(Path path) throws IOException {
+            engineLock.lock();
+            try {
+                requireLive();
+                engine.checkpoint(path);
+            } finally {
+                engineLock.unlock();
+            }
+        }
+
+        /**
+         * Replaces the engine state with a {@link SimulationEngine#restore checkpoint}. Best done
+         * while paused, since the session keeps its schedule.
+         */
+        public void restore(Path path) throws IOException {
+            engineLock.lock();
+            try {
+                requireLive();
+                engine.restore(path);
+                publish();
+            } finally {
+                engineLock.unlock();
+            }
+        }
+
+        /**
+         * Travel time, delay, stop and queue percentiles of this engine, between slices.
+         */
+        public EngineMetrics.Report metrics() {
+            engineLock.lock();
+            try {
+                return engine.getMetrics().report(engine.getSimTimeSeconds());
+            } finally {
+                engineLock.unlock();
+            }
+        }
+
+        /**
+         * Counters as of the last finished slice; never waits for a slice in flight.
+         */
+        public synchronized Stats stats() {
+            return new Stats(id, state, simSeconds, ticks, slices, droppedTicks, busyNanos / 1e9,
+                    maxSliceNanos / 1e6, vehicles, departures);
+        }
+
+        /**
+         * Why the session failed, or {@code null}.
+         */
+        public synchronized RuntimeException failure() {
+            return failure;
+        }
+
+        /**
+         * Stops the session for good and removes it from the host, after the slice in flight.
+         * Pending steps are cancelled. Does nothing if already destroyed.
+         */
+        public void destroy() {
+            List<CompletableFuture<Void>> waiters;
+            synchronized (this) {
+                if (state == State.DESTROYED) {
+                    return;
+                }
+                state = State.DESTROYED;
+                owedTicks = 0;
+                stepTicks = 0;
+                waiters = List.copyOf(stepWaiters);
+                stepWaiters.clear();
+            }
+            sessions.remove(id, this);
+            engineLock.lock();
+            engineLock.unlock();
+            waiters.forEach(waiter -> waiter.completeExceptionally(new CancellationException("Session destroyed: " + id)));
+        }
+
+        SimulationEngine engine() {
+            return engine;
+        }
+
+        private synchronized void accrue(long now) {
+            if (state != State.RUNNING) {
+                return;
+            }
+            if (speed == Double.POSITIVE_INFINITY) {
+                owedTicks = Math.max(owedTicks, sliceTicks);
+            } else {
+                owedTicks += (now - lastAccrueNanos) * speed / tickNanos;
+                double cap = (double) sliceTicks * MAX_CATCH_UP_SLICES;
+                if (owedTicks > cap) {
+                    droppedTicks += (long) (owedTicks - cap);
+                    owedTicks = cap;
+                }
+            }
+            lastAccrueNanos = now;
+            dispatchIfDue();
+        }
+
+        /**
+         * Queues one slice for the workers unless one is queued or running already. Caller holds the
+         * monitor.
+         */
+        private void dispatchIfDue() {
+            if (queued || (state != State.RUNNING && state != State.PAUSED) || grantable() < 1) {
+                return;
+            }
+            queued = true;
+            try {
+                workers.execute(this::runSlice);
+            } catch (RejectedExecutionException e) {
+                queued = false;
+            }
+        }
+
+        private long grantable() {
+            return Math.min(sliceTicks, stepTicks + (long) owedTicks);
+        }
+
+        private void runSlice() {
+            int granted;
+            synchronized (this) {
+                granted = (int) grantable();
+            }
+            int done = 0;
+            RuntimeException error = null;
+            long started = System.nanoTime();
+            engineLock.lock();
+            try {
+                if (state() == State.DESTROYED) {
+                    return;
+                }
+                SimulationCommand command;
+                while ((command = pendingCommands.poll()) != null) {
+                    engine.execute(command);
+                }
+                while (done < granted) {
+                    done += engine.advance(tickSeconds, granted - done);
+                }
+                publish();
+            } catch (RuntimeException e) {
+                error = e;
+            } finally {
+                engineLock.unlock();
+                finishSlice(done, System.nanoTime() - started, error);
+            }
+        }
+
+        private void finishSlice(int done, long elapsedNanos, RuntimeException error) {
+            List<CompletableFuture<Void>> waiters = List.of();
+            synchronized (this) {
+                queued = false;
+                if (state == State.DESTROYED) {
+                    return;
+                }
+                if (done > 0) {
+                    ticks += done;
+                    slices++;
+                    busyNanos += elapsedNanos;
+                    maxSliceNanos = Math.max(maxSliceNanos, elapsedNanos);
+                }
+                long fromSteps = Math.min(stepTicks, done);
+                stepTicks -= fromSteps;
+                owedTicks = Math.max(0, owedTicks - (done - fromSteps));
+                if (error != null) {
+                    state = State.FAILED;
+                    failure = error;
+                    owedTicks = 0;
+                    stepTicks = 0;
+                } else if (speed == Double.POSITIVE_INFINITY && state == State.RUNNING) {
+                    owedTicks = sliceTicks;
+                }
+                if (stepTicks == 0 && !stepWaiters.isEmpty()) {
+                    waiters = List.copyOf(stepWaiters);
+                    stepWaiters.clear();
+                }
+                dispatchIfDue();
+            }
+            for (CompletableFuture<Void> waiter : waiters) {
+                if (error != null) {
+                    waiter.completeExceptionally(error);
+                } else {
+                    waiter.complete(null);
+                }
+            }
+        }
+
+        /**
+         * Copies the counters {@link #stats} reports out of the engine. Caller holds the engine lock.
+         */
+        private void publish() {
+            double time = engine.getSimTimeSeconds();
+            int count = engine.getVehicleCount();
+            long departed = engine.getTotalDepartures();
+            synchronized (this) {
+                simSeconds = time;
+                vehicles = count;
+                departures = departed;
+            }
+        }
+
+        private synchronized void requireLive() {
+            if (state == State.DESTROYED) {
+                throw new IllegalStateException("Session destroyed: " + id);
+            }
+            if (state == State.FAILED) {
+                throw new IllegalStateException("Session failed: " + id, failure);
+            }
+        }
+    }
+
+    /**
+     * Per-session counters: ticks run, slices they ran in, ticks dropped because the session fell
+     * behind its speed, and worker time spent on it.
+     */
+    public record Stats(
+            String id,
+            State state,
+            double simSeconds,
+            long ticks,
+            long slices,
+            long droppedTicks,
+            double busySeconds,
+            double maxSliceMillis,
+            int vehicles,
+            long departures
+    ) {
+    }
+
+    public static final class Builder {
+        private int workers = Runtime.getRuntime().availableProcessors();
+        private int sliceTicks = 20;
+        private Duration pacePeriod = Duration.ofMillis(10);
+
+        private Builder() {
+        }
+
+        /**
+         * Worker threads shared by all sessions; defaults to one per available processor.
+         */
+        public Builder withWorkers(int workers) {
+            if (workers <= 0) {
+                throw new IllegalArgumentException("workers must be positive");
+            }
+            this.workers = workers;
+            return this;
+        }
+
+        /**
+         * Most ticks a session runs before it yields its worker to the next session in line.
+         */
+        public Builder withSliceTicks(int ticks) {
+            if (ticks <= 0) {
+                throw new IllegalArgumentException("ticks must be positive");
+            }
+            this.sliceTicks = ticks;
+            return this;
+        }
+
+        /**
+         * How often running sessions are granted ticks for the wall time that passed.
+         */
+        public Builder withPacePeriod(Duration period) {
+            if (period.isNegative() || period.isZero()) {
+                throw new IllegalArgumentException("period must be positive");
+            }
+            this.pacePeriod = period;
+            return this;
+        }
+
+        public EngineHost build() {
+            return new EngineHost(this);
+        }
+    }
+}
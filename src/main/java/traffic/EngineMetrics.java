@@ -0,0 +1,246 @@
+package traffic;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Traffic and engine-latency histograms an engine fills as it ticks: travel time, delay against
+ * free flow and stops of every vehicle that leaves the network, queue length behind every stop
+ * line and across the network sampled each tick, and the compute time of each tick. Recording
+ * never allocates.
+ *
+ * <p>The histograms are live and belong to the simulation thread. Other threads should read
+ * {@link Report}s, which a reporter set with {@link #setReporter} receives on the simulation
+ * thread every so many simulated seconds; {@link MetricsExport} turns them into CSV rows or a JMX
+ * MBean.
+ */
+public final class EngineMetrics {
+    static final long MAX_TRAVEL_MILLIS = TimeUnit.DAYS.toMillis(1);
+    static final long MAX_STOPS = 10_000;
+    static final long MAX_QUEUE = 100_000;
+    static final long MAX_TICK_NANOS = TimeUnit.MINUTES.toNanos(1);
+    /** Slack for the report check, so a period that is a multiple of the tick is not missed to rounding. */
+    private static final double DUE_EPSILON = 1e-9;
+
+    private final RoadNetwork network;
+    private final Histogram travelTimeMillis = new Histogram(MAX_TRAVEL_MILLIS);
+    private final Histogram delayMillis = new Histogram(MAX_TRAVEL_MILLIS);
+    private final Histogram stops = new Histogram(MAX_STOPS);
+    private final Histogram tickNanos = new Histogram(MAX_TICK_NANOS);
+    private final Histogram networkQueue = new Histogram(MAX_QUEUE);
+    /** Queue behind each stop line, indexed like the network's controls. */
+    private final Histogram[] approachQueues;
+    private Consumer<? super Report> reporter;
+    private double reportEverySeconds;
+    private double nextReportSeconds;
+
+    EngineMetrics(RoadNetwork network) {
+        this.network = network;
+        this.approachQueues = new Histogram[network.controlCount()];
+        for (int control = 0; control < approachQueues.length; control++) {
+            approachQueues[control] = new Histogram(MAX_QUEUE);
+        }
+    }
+
+    /**
+     * Simulated milliseconds from spawn to leaving the network.
+     */
+    public Histogram travelTimeMillis() {
+        return travelTimeMillis;
+    }
+
+    /**
+     * Simulated milliseconds each vehicle lost to driving below the speed limit, from following,
+     * signals or blocked handoffs.
+     */
+    public Histogram delayMillis() {
+        return delayMillis;
+    }
+
+    /**
+     * Times each vehicle came to a halt on its trip.
+     */
+    public Histogram stopsPerVehicle() {
+        return stops;
+    }
+
+    /**
+     * Wall-clock nanoseconds each {@link SimulationEngine#update} spent advancing the model,
+     * excluding observers.
+     */
+    public Histogram tickNanos() {
+        return tickNanos;
+    }
+
+    /**
+     * Stopped vehicles summed over all stop lines, one sample per tick.
+     */
+    public Histogram networkQueueLength() {
+        return networkQueue;
+    }
+
+    /**
+     * Queue behind the first stop line on {@code road}, one sample per tick, or {@code null} if the
+     * road has no signal.
+     */
+    public Histogram queueLength(SimulationEngine.Road road) {
+        int roadId = network.idOf(road);
+        int control = network.controlStart(roadId);
+        return control == network.controlEnd(roadId) ? null : approachQueues[control];
+    }
+
+    /**
+     * Hands a {@link Report} to {@code reporter} every {@code everySimSeconds} of simulated time, on
+     * the thread that ticks the engine. Replaces any previous reporter.
+     */
+    public void setReporter(double everySimSeconds, Consumer<? super Report> reporter) {
+        if (everySimSeconds <= 0) {
+            throw new IllegalArgumentException("everySimSeconds must be positive");
+        }
+        this.reporter = Objects.requireNonNull(reporter);
+        this.reportEverySeconds = everySimSeconds;
+        this.nextReportSeconds = everySimSeconds;
+    }
+
+    public void clearReporter() {
+        reporter = null;
+    }
+
+    /**
+     * Summarizes every histogram as of simulated time {@code simSeconds}.
+     */
+    public Report report(double simSeconds) {
+        List<ApproachQueue> approaches = new ArrayList<>(approachQueues.length);
+        for (int control = 0; control < approachQueues.length; control++) {
+            SimulationEngine.Road road = network.roads().get(network.controlRoad(control));
+            approaches.add(new ApproachQueue(road.getName(), network.controlIntersection(control),
+                    Percentiles.of(approachQueues[control])));
+        }
+        return new Report(simSeconds, travelTimeMillis.count(), Percentiles.of(travelTimeMillis),
+                Percentiles.of(delayMillis), Percentiles.of(stops), Percentiles.of(tickNanos),
+                Percentiles.of(networkQueue), List.copyOf(approaches));
+    }
+
+    void recordDeparture(double travelSeconds, double delaySeconds, int stopCount) {
+        travelTimeMillis.record(Math.round(travelSeconds * 1000));
+        delayMillis.record(Math.round(delaySeconds * 1000));
+        stops.record(stopCount);
+    }
+
+    void recordQueues(int[] controlQueue) {
+        recordQueues(controlQueue, 1);
+    }
+
+    /**
+     * Records the same queues for {@code ticks} ticks, over which nothing moved.
+     */
+    void recordQueues(int[] controlQueue, long ticks) {
+        long total = 0;
+        for (int control = 0; control < controlQueue.length; control++) {
+            approachQueues[control].record(controlQueue[control], ticks);
+            total += controlQueue[control];
+        }
+        networkQueue.record(total, ticks);
+    }
+
+    /**
+     * Simulated time of the next report, less the rounding slack; infinite without a reporter.
+     */
+    double nextReportSeconds() {
+        return reporter == null ? Double.POSITIVE_INFINITY : nextReportSeconds - DUE_EPSILON;
+    }
+
+    void recordTick(long nanos) {
+        tickNanos.record(nanos);
+    }
+
+    /**
+     * Reports once per elapsed period, if a reporter is set. Only ticks that report allocate.
+     */
+    void maybeReport(double simSeconds) {
+        if (reporter == null || simSeconds < nextReportSeconds - DUE_EPSILON) {
+            return;
+        }
+        while (nextReportSeconds - DUE_EPSILON <= simSeconds) {
+            nextReportSeconds += reportEverySeconds;
+        }
+        reporter.accept(report(simSeconds));
+    }
+
+    void writeTo(Checkpoint.Out out) throws IOException {
+        travelTimeMillis.writeTo(out);
+        delayMillis.writeTo(out);
+        stops.writeTo(out);
+        tickNanos.writeTo(out);
+        networkQueue.writeTo(out);
+        for (Histogram queue : approachQueues) {
+            queue.writeTo(out);
+        }
+    }
+
+    /**
+     * Reads the histograms and lines the next report up with {@code simSeconds}, as if this
+     * engine's reporter had been running all along.
+     */
+    void readFrom(Checkpoint.In in, double simSeconds) throws IOException {
+        travelTimeMillis.readFrom(in);
+        delayMillis.readFrom(in);
+        stops.readFrom(in);
+        tickNanos.readFrom(in);
+        networkQueue.readFrom(in);
+        for (Histogram queue : approachQueues) {
+            queue.readFrom(in);
+        }
+        nextReportSeconds = reportEverySeconds;
+        while (reportEverySeconds > 0 && nextReportSeconds - DUE_EPSILON <= simSeconds) {
+            nextReportSeconds += reportEverySeconds;
+        }
+    }
+
+    void reset() {
+        travelTimeMillis.reset();
+        delayMillis.reset();
+        stops.reset();
+        tickNanos.reset();
+        networkQueue.reset();
+        for (Histogram queue : approachQueues) {
+            queue.reset();
+        }
+        nextReportSeconds = reportEverySeconds;
+    }
+
+    /**
+     * Immutable summary of one histogram.
+     */
+    public record Percentiles(long count, double mean, long p50, long p99, long p999, long max) {
+        public static Percentiles of(Histogram histogram) {
+            return new Percentiles(histogram.count(), histogram.mean(), histogram.valueAtPercentile(50),
+                    histogram.valueAtPercentile(99), histogram.valueAtPercentile(99.9), histogram.max());
+        }
+    }
+
+    /**
+     * Queue percentiles behind the stop line where {@code roadName} meets signal {@code intersection}.
+     */
+    public record ApproachQueue(String roadName, int intersection, Percentiles queueLength) {
+    }
+
+    /**
+     * Everything recorded since the engine was built or last reset, as of {@code simSeconds}.
+     */
+    public record Report(
+            double simSeconds,
+            long departures,
+            Percentiles travelTimeMillis,
+            Percentiles delayMillis,
+            Percentiles stopsPerVehicle,
+            Percentiles tickNanos,
+            Percentiles networkQueueLength,
+            List<ApproachQueue> approaches
+    ) {
+    }
+}
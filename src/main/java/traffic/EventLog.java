@@ -0,0 +1,295 @@
+package traffic;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * Compact binary log of everything that drives a run: the random seed, every applied
+ * {@link SimulationCommand} and every tick delta. Replaying a log against the same scenario
+ * reproduces the run exactly, and the fingerprint written on close lets the replay prove it.
+ *
+ * <p>Layout, big-endian: a header of magic, version, seed, a hash of the network's layout and the
+ * scenario file the engine was built from (empty for the built-in network or one built in code),
+ * then tagged records. Consecutive ticks with the same delta collapse into one record, so a
+ * fixed-rate run costs a few bytes per command rather than per tick.
+ */
+public final class EventLog {
+    private static final int MAGIC = 0x54524C47; // "TRLG"
+    private static final short VERSION = 2;
+    /**
+     * Version 1 logs have no layout hash or scenario; they were recorded on the built-in network,
+     * almost all before car-following models, and replay with {@link CarFollowingModel#safeGap()}.
+     */
+    private static final short VERSION_WITHOUT_SCENARIO = 1;
+
+    private static final byte TICKS = 1;
+    private static final byte SET_PHASE = 2;
+    private static final byte SET_SPAWN_RATE = 3;
+    private static final byte SET_SPEED_LIMIT = 4;
+    private static final byte SET_LANE_CLOSURE = 5;
+    private static final byte RESET = 6;
+    private static final byte END = 7;
+
+    private static final SimulationEngine.Intersection.Phase[] PHASES = SimulationEngine.Intersection.Phase.values();
+
+    private EventLog() {
+    }
+
+    /**
+     * Starts recording {@code engine}, which must have been built with {@code seed} from the built-in
+     * network or from one built in code, and not yet stepped.
+     */
+    public static Recorder record(Path path, long seed, SimulationEngine engine) throws IOException {
+        return record(path, seed, null, engine);
+    }
+
+    /**
+     * Starts recording {@code engine}, which must have been built with {@code seed} from the
+     * scenario file {@code scenario}, or {@code null} for the built-in network, and not yet stepped.
+     * {@link #replay(Path)} rebuilds the engine from the same file.
+     */
+    public static Recorder record(Path path, long seed, Path scenario, SimulationEngine engine) throws IOException {
+        if (engine.getSimTimeSeconds() != 0) {
+            throw new IllegalStateException("Recording must start before the first tick");
+        }
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeLong(seed);
+        out.writeLong(engine.layoutHash());
+        out.writeUTF(scenario == null ? "" : scenario.toAbsolutePath().toString());
+        return new Recorder(out, engine);
+    }
+
+    /**
+     * Re-executes a log as fast as possible on an engine built with the recorded seed from the
+     * scenario file it was recorded on, or from {@link SimulationEngineBuilder#defaults()} if it was
+     * recorded on the built-in network, with the builder's defaults for everything else, such as
+     * the car-following model.
+     *
+     * @throws IllegalArgumentException if the log was recorded on a network built in code, which
+     *                                  only {@link #replay(Path, SimulationEngineBuilder)} can rebuild
+     */
+    public static Replay replay(Path path) throws IOException {
+        return replayWith(path, null);
+    }
+
+    /**
+     * Re-executes a log as fast as possible on an engine built from {@code scenario} with the
+     * recorded seed. The scenario must match the recorded one (network and initial settings);
+     * a different network is rejected up front and other differences show up as a failed
+     * fingerprint check. A record no recording could contain is rejected with
+     * {@link IllegalArgumentException}.
+     */
+    public static Replay replay(Path path, SimulationEngineBuilder scenario) throws IOException {
+        return replayWith(path, Objects.requireNonNull(scenario));
+    }
+
+    /**
+     * Replays on {@code scenario}, or on the engine the log names when it is {@code null}.
+     */
+    private static Replay replayWith(Path path, SimulationEngineBuilder scenario) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IllegalArgumentException("Not an event log: " + path);
+            }
+            short version = in.readShort();
+            if (version != VERSION && version != VERSION_WITHOUT_SCENARIO) {
+                throw new IllegalArgumentException("Unsupported event log version " + version);
+            }
+            long seed = in.readLong();
+            Long layout = null;
+            String recordedScenario = "";
+            if (version == VERSION) {
+                layout = in.readLong();
+                recordedScenario = in.readUTF();
+            }
+            boolean rebuilt = scenario == null;
+            if (rebuilt) {
+                if (version == VERSION_WITHOUT_SCENARIO) {
+                    scenario = SimulationEngineBuilder.defaults().withCarFollowingModel(CarFollowingModel.safeGap());
+                } else {
+                    scenario = recordedScenario.isEmpty()
+                            ? SimulationEngineBuilder.defaults()
+                            : SimulationEngineBuilder.fromScenario(Path.of(recordedScenario));
+                }
+            }
+            SimulationEngine engine = scenario.withSeed(seed).build();
+            if (layout != null && layout != engine.layoutHash()) {
+                if (!rebuilt) {
+                    throw new IllegalArgumentException("Event log was recorded on a different network");
+                }
+                throw new IllegalArgumentException(recordedScenario.isEmpty()
+                        ? "Event log was recorded on a network built in code; replay it with that network's builder"
+                        : "Event log was recorded on a different network than " + recordedScenario + " now holds");
+            }
+            long ticks = 0;
+            long commands = 0;
+            long started = System.nanoTime();
+            while (true) {
+                // Read a whole record before applying it: a recording cut off inside a record ends
+                // where the last complete one did, like one cut off between records.
+                byte tag;
+                int count = 0;
+                double delta = 0;
+                long expected = 0;
+                SimulationCommand command = null;
+                try {
+                    tag = in.readByte();
+                    if (tag == TICKS) {
+                        count = in.readInt();
+                        delta = in.readDouble();
+                        if (count < 0) {
+                            throw new IllegalArgumentException("Corrupt event log: negative tick count " + count);
+                        }
+                    } else if (tag == END) {
+                        expected = in.readLong();
+                    } else {
+                        command = readCommand(tag, in);
+                    }
+                } catch (EOFException e) {
+                    return new Replay(engine, seed, ticks, commands, (System.nanoTime() - started) / 1e9, false);
+                }
+                if (tag == TICKS) {
+                    for (int i = 0; i < count; i++) {
+                        engine.update(delta);
+                    }
+                    ticks += count;
+                } else if (tag == END) {
+                    double wallSeconds = (System.nanoTime() - started) / 1e9;
+                    if (engine.stateFingerprint() != expected) {
+                        throw new IllegalStateException("Replay diverged from the recording after " + ticks + " ticks");
+                    }
+                    return new Replay(engine, seed, ticks, commands, wallSeconds, true);
+                } else {
+                    engine.execute(command);
+                    commands++;
+                }
+            }
+        }
+    }
+
+    private static void writeCommand(SimulationCommand command, DataOutputStream out) throws IOException {
+        switch (command) {
+            case SimulationCommands.SetPhaseCommand c -> {
+                out.writeByte(SET_PHASE);
+                out.writeInt(c.intersection());
+                out.writeByte(c.phase().ordinal());
+            }
+            case SimulationCommands.SetSpawnRateCommand c -> {
+                out.writeByte(SET_SPAWN_RATE);
+                out.writeDouble(c.perMinute());
+            }
+            case SimulationCommands.SetSpeedLimitCommand c -> {
+                out.writeByte(SET_SPEED_LIMIT);
+                out.writeDouble(c.speed());
+            }
+            case SimulationCommands.ToggleLaneClosureCommand c -> {
+                out.writeByte(SET_LANE_CLOSURE);
+                out.writeBoolean(c.closed());
+            }
+            case SimulationCommands.ResetCommand c -> out.writeByte(RESET);
+            default -> throw new IllegalArgumentException("Cannot record " + command.getClass().getName());
+        }
+    }
+
+    private static SimulationCommand readCommand(byte tag, DataInputStream in) throws IOException {
+        return switch (tag) {
+            case SET_PHASE -> new SimulationCommands.SetPhaseCommand(in.readInt(), readPhase(in));
+            case SET_SPAWN_RATE -> new SimulationCommands.SetSpawnRateCommand(in.readDouble());
+            case SET_SPEED_LIMIT -> new SimulationCommands.SetSpeedLimitCommand(in.readDouble());
+            case SET_LANE_CLOSURE -> new SimulationCommands.ToggleLaneClosureCommand(in.readBoolean());
+            case RESET -> new SimulationCommands.ResetCommand();
+            default -> throw new IllegalArgumentException("Corrupt event log: unknown record " + tag);
+        };
+    }
+
+    private static SimulationEngine.Intersection.Phase readPhase(DataInputStream in) throws IOException {
+        int ordinal = in.readUnsignedByte();
+        if (ordinal >= PHASES.length) {
+            throw new IllegalArgumentException("Corrupt event log: unknown phase " + ordinal);
+        }
+        return PHASES[ordinal];
+    }
+
+    /**
+     * Writes a run as it happens. Call {@link #command} before executing each command and
+     * {@link #tick} after each update, from the thread that drives the engine; {@link #close} after
+     * that thread has stopped writes the closing fingerprint.
+     */
+    public static final class Recorder implements Closeable {
+        private final DataOutputStream out;
+        private final SimulationEngine engine;
+        private int pendingTicks;
+        private double pendingDelta;
+        private boolean closed;
+
+        private Recorder(DataOutputStream out, SimulationEngine engine) {
+            this.out = out;
+            this.engine = engine;
+        }
+
+        public void command(SimulationCommand command) {
+            Objects.requireNonNull(command);
+            try {
+                flushTicks();
+                writeCommand(command, out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        public void tick(double deltaSeconds) {
+            if (pendingTicks > 0 && (pendingDelta != deltaSeconds || pendingTicks == Integer.MAX_VALUE)) {
+                try {
+                    flushTicks();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            pendingDelta = deltaSeconds;
+            pendingTicks++;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try (out) {
+                flushTicks();
+                out.writeByte(END);
+                out.writeLong(engine.stateFingerprint());
+            }
+        }
+
+        private void flushTicks() throws IOException {
+            if (pendingTicks == 0) {
+                return;
+            }
+            out.writeByte(TICKS);
+            out.writeInt(pendingTicks);
+            out.writeDouble(pendingDelta);
+            pendingTicks = 0;
+        }
+    }
+
+    /**
+     * Outcome of a replay. {@code verified} is false only for a log that was cut off before its
+     * closing fingerprint, such as one from a crashed process; the replay then covers every complete
+     * record, and a record cut off partway is dropped.
+     */
+    public record Replay(SimulationEngine engine, long seed, long ticks, long commands, double wallSeconds,
+                         boolean verified) {
+    }
+}
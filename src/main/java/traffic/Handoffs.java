@@ -0,0 +1,203 @@
+package traffic;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Reusable column buffer of vehicles crossing a partition boundary: the road each one enters, the
+ * lane it prefers, how far onto the road it already is, and what its trip has cost so far, so the
+ * receiving engine can carry on with its travel time, delay and stop count and the same driver. Road ids are those of
+ * whichever engine or network the holder works with; {@link #remapRoads} converts between them.
+ */
+final class Handoffs {
+    /** Bytes one vehicle takes in {@link #write}. */
+    static final int RECORD_BYTES = 4 * Integer.BYTES + 8 * Double.BYTES;
+
+    private int[] road = new int[16];
+    private int[] lane = new int[16];
+    private double[] position = new double[16];
+    private double[] speed = new double[16];
+    /** Seconds since the vehicle entered the network. */
+    private double[] age = new double[16];
+    private double[] delay = new double[16];
+    private int[] stops = new int[16];
+    private int[] rgb = new int[16];
+    private double[] speedFactor = new double[16];
+    private double[] headway = new double[16];
+    private double[] acceleration = new double[16];
+    private double[] deceleration = new double[16];
+    private int size;
+
+    void add(int roadId, int laneIndex, double positionOnRoad, double currentSpeed, double ageSeconds,
+             double delaySeconds, int stopCount, int color, double desiredSpeedFactor, double headwaySeconds,
+             double maxAcceleration, double comfortableDeceleration) {
+        if (size == road.length) {
+            grow(size * 2);
+        }
+        set(size++, roadId, laneIndex, positionOnRoad, currentSpeed, ageSeconds, delaySeconds, stopCount, color,
+                desiredSpeedFactor, headwaySeconds, maxAcceleration, comfortableDeceleration);
+    }
+
+    /**
+     * Appends every vehicle of {@code other}.
+     */
+    void addAll(Handoffs other) {
+        if (size + other.size > road.length) {
+            grow(Math.max(road.length * 2, size + other.size));
+        }
+        for (int i = 0; i < other.size; i++) {
+            set(size++, other.road[i], other.lane[i], other.position[i], other.speed[i], other.age[i], other.delay[i],
+                    other.stops[i], other.rgb[i], other.speedFactor[i], other.headway[i], other.acceleration[i],
+                    other.deceleration[i]);
+        }
+    }
+
+    /**
+     * Appends entry {@code index} of {@code other}.
+     */
+    void add(Handoffs other, int index) {
+        add(other.road[index], other.lane[index], other.position[index], other.speed[index], other.age[index],
+                other.delay[index], other.stops[index], other.rgb[index], other.speedFactor[index],
+                other.headway[index], other.acceleration[index], other.deceleration[index]);
+    }
+
+    int size() {
+        return size;
+    }
+
+    int road(int index) {
+        return road[index];
+    }
+
+    int lane(int index) {
+        return lane[index];
+    }
+
+    double position(int index) {
+        return position[index];
+    }
+
+    double speed(int index) {
+        return speed[index];
+    }
+
+    double age(int index) {
+        return age[index];
+    }
+
+    double delay(int index) {
+        return delay[index];
+    }
+
+    int stops(int index) {
+        return stops[index];
+    }
+
+    int rgb(int index) {
+        return rgb[index];
+    }
+
+    double speedFactor(int index) {
+        return speedFactor[index];
+    }
+
+    double headway(int index) {
+        return headway[index];
+    }
+
+    double acceleration(int index) {
+        return acceleration[index];
+    }
+
+    double deceleration(int index) {
+        return deceleration[index];
+    }
+
+    /**
+     * Copies entry {@code from} over entry {@code to}, for compacting in place; {@code to} must not
+     * be after {@code from}.
+     */
+    void move(int from, int to) {
+        set(to, road[from], lane[from], position[from], speed[from], age[from], delay[from], stops[from], rgb[from],
+                speedFactor[from], headway[from], acceleration[from], deceleration[from]);
+    }
+
+    /**
+     * Keeps the first {@code count} entries.
+     */
+    void truncate(int count) {
+        size = count;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Replaces every road id {@code r} with {@code map[r]}.
+     */
+    void remapRoads(int[] map) {
+        for (int i = 0; i < size; i++) {
+            road[i] = map[road[i]];
+        }
+    }
+
+    /**
+     * Writes the count, then every vehicle; {@code out} needs {@link Integer#BYTES} plus
+     * {@link #RECORD_BYTES} per vehicle.
+     */
+    void write(ByteBuffer out) {
+        out.putInt(size);
+        for (int i = 0; i < size; i++) {
+            out.putInt(road[i]).putInt(lane[i]).putDouble(position[i]).putDouble(speed[i]).putDouble(age[i])
+                    .putDouble(delay[i]).putInt(stops[i]).putInt(rgb[i]).putDouble(speedFactor[i])
+                    .putDouble(headway[i]).putDouble(acceleration[i]).putDouble(deceleration[i]);
+        }
+    }
+
+    /**
+     * Appends the vehicles {@link #write} put in {@code in}.
+     */
+    void read(ByteBuffer in) {
+        int count = in.getInt();
+        if (count < 0 || count > in.remaining() / RECORD_BYTES) {
+            throw new IllegalArgumentException("Corrupt handoff batch: " + count + " vehicles");
+        }
+        for (int i = 0; i < count; i++) {
+            add(in.getInt(), in.getInt(), in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble(), in.getInt(),
+                    in.getInt(), in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble());
+        }
+    }
+
+    private void set(int index, int roadId, int laneIndex, double positionOnRoad, double currentSpeed,
+                     double ageSeconds, double delaySeconds, int stopCount, int color, double desiredSpeedFactor,
+                     double headwaySeconds, double maxAcceleration, double comfortableDeceleration) {
+        road[index] = roadId;
+        lane[index] = laneIndex;
+        position[index] = positionOnRoad;
+        speed[index] = currentSpeed;
+        age[index] = ageSeconds;
+        delay[index] = delaySeconds;
+        stops[index] = stopCount;
+        rgb[index] = color;
+        speedFactor[index] = desiredSpeedFactor;
+        headway[index] = headwaySeconds;
+        acceleration[index] = maxAcceleration;
+        deceleration[index] = comfortableDeceleration;
+    }
+
+    private void grow(int capacity) {
+        road = Arrays.copyOf(road, capacity);
+        lane = Arrays.copyOf(lane, capacity);
+        position = Arrays.copyOf(position, capacity);
+        speed = Arrays.copyOf(speed, capacity);
+        age = Arrays.copyOf(age, capacity);
+        delay = Arrays.copyOf(delay, capacity);
+        stops = Arrays.copyOf(stops, capacity);
+        rgb = Arrays.copyOf(rgb, capacity);
+        speedFactor = Arrays.copyOf(speedFactor, capacity);
+        headway = Arrays.copyOf(headway, capacity);
+        acceleration = Arrays.copyOf(acceleration, capacity);
+        deceleration = Arrays.copyOf(deceleration, capacity);
+    }
+}
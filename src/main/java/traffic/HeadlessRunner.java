@@ -0,0 +1,609 @@
+package traffic;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Headless batch driver that steps the engine with a fixed delta as fast as the CPU allows and
+ * reports throughput, queue and timing statistics. Run with {@code gradle runHeadless --args="..."}.
+ */
+public final class HeadlessRunner {
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: traffic-headless [options]",
+            "  --seconds <n>       simulated seconds to run (default 3600)",
+            "  --dt <n>            fixed tick delta in seconds (default 0.05)",
+            "  --scenario <file>   network, signals, spawn weights and knob settings from a scenario",
+            "                      file, text or binary (default: the built-in main/cross pair)",
+            "  --spawn <n>         vehicles per minute (default from the scenario or SimulationConfig)",
+            "  --speed <n>         speed limit (default from the scenario or SimulationConfig)",
+            "  --lane-closure      close one lane on every road marked closable (the main road on the",
+            "                      built-in network)",
+            "  --car-following <m> idm, gipps or safe-gap, the rule from before car-following models",
+            "                      (default idm)",
+            "  --seed <n>          random seed (default 1)",
+            "  --report <n>        progress line every n simulated seconds, 0 to disable (default 0)",
+            "  --signals <mode>    fixed, actuated or max-pressure signal control at every intersection",
+            "                      (default: the scenario's plans, or fixed on the built-in network)",
+            "  --metrics <file>    write travel, queue and tick-time percentiles as CSV every report",
+            "                      interval (every 60 simulated seconds without --report)",
+            "  --skip-idle         jump over ticks in which no vehicle moves; spawns become a Poisson",
+            "                      process at the given rate",
+            "  --restore <file>    start from a checkpoint instead of an empty network and run --seconds",
+            "                      more; --spawn, --speed and --lane-closure, if given, replace the",
+            "                      checkpoint's settings",
+            "  --checkpoint <file> write the complete engine state at the end of the run",
+            "  --replay <file>     re-run an event log and verify its end state, on the scenario it was",
+            "                      recorded on unless --scenario names another copy of it");
+
+    private final Options options;
+
+    public HeadlessRunner(Options options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        if (options.replayLog() != null) {
+            try {
+                replay(options.replayLog(), options.scenarioFile(), System.out);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Replay failed: " + e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+        Report report;
+        try {
+            report = new HeadlessRunner(options).run(System.out);
+        } catch (RuntimeException e) {
+            System.err.println("Run failed: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        report.print(System.out);
+    }
+
+    /**
+     * Replays an event log on the scenario it was recorded on and prints a summary. Throws
+     * {@link IllegalStateException} if the replay does not end in the recorded state.
+     */
+    public static EventLog.Replay replay(Path log, PrintStream out) throws IOException {
+        return replay(log, null, out);
+    }
+
+    /**
+     * Replays an event log on the scenario file {@code scenario}, or on the one it was recorded on
+     * if {@code null}, and prints a summary.
+     */
+    public static EventLog.Replay replay(Path log, Path scenario, PrintStream out) throws IOException {
+        EventLog.Replay replay = scenario == null
+                ? EventLog.replay(log)
+                : EventLog.replay(log, SimulationEngineBuilder.fromScenario(scenario));
+        SimulationEngine engine = replay.engine();
+        double simSeconds = engine.getSimTimeSeconds();
+        out.printf("Replayed %d ticks and %d commands (seed %d): %.1fs simulated in %.3fs wall, %.0fx real time%n",
+                replay.ticks(), replay.commands(), replay.seed(), simSeconds, replay.wallSeconds(),
+                replay.wallSeconds() <= 0 ? Double.POSITIVE_INFINITY : simSeconds / replay.wallSeconds());
+        out.printf("Throughput: %d departures, %d still on the road%n",
+                engine.getTotalDepartures(), engine.getVehicleCount());
+        out.println(replay.verified()
+                ? "End state matches the recording"
+                : "Log has no closing fingerprint; end state not verified");
+        return replay;
+    }
+
+    public Report run(PrintStream progress) {
+        if (options.metricsFile() == null) {
+            return run(progress, null);
+        }
+        try (Writer metricsOut = Files.newBufferedWriter(options.metricsFile())) {
+            return run(progress, metricsOut);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Report run(PrintStream progress, Writer metricsOut) {
+        SimulationConfig config = SimulationConfig.getInstance();
+        Scenario scenario = null;
+        if (options.scenarioFile() != null) {
+            try {
+                scenario = Scenario.load(options.scenarioFile());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        double spawnPerMinute = knob(options.spawnPerMinute,
+                scenario == null ? config.defaultSpawnPerMinute() : scenario.spawnPerMinute());
+        double speedLimit = knob(options.speedLimit,
+                scenario == null ? config.defaultSpeedLimit() : scenario.speedLimit());
+        boolean laneClosure = options.laneClosure != null ? options.laneClosure
+                : scenario == null ? config.defaultLaneClosure() : scenario.laneClosure();
+        SimulationEngineBuilder builder = (scenario == null ? SimulationEngineBuilder.defaults() : scenario.toBuilder())
+                .withSeed(options.seed())
+                .withSpawnRate(spawnPerMinute)
+                .withSpeedLimit(speedLimit)
+                .withLaneClosure(laneClosure)
+                .withCarFollowingModel(options.carFollowing());
+        if (options.signals() != null) {
+            builder.withSignalController(options.signals());
+        }
+        if (options.skipIdle()) {
+            builder.withIdleSkipping();
+        }
+        SimulationEngine engine = builder.build();
+        EngineMetrics metrics = engine.getMetrics();
+        if (metricsOut != null) {
+            metrics.setReporter(options.reportEverySeconds() > 0 ? options.reportEverySeconds() : 60,
+                    MetricsExport.csv(metricsOut));
+        }
+        // After the reporter, so restoring schedules the next report from the checkpoint's time.
+        if (options.restoreFile() != null) {
+            try {
+                engine.restore(options.restoreFile());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            // The checkpoint carries its own knob settings; only the ones given on the command line change them.
+            if (options.spawnPerMinute != null) {
+                engine.setSpawnPerMinute(spawnPerMinute);
+            }
+            if (options.speedLimit != null) {
+                engine.setSpeedLimit(speedLimit);
+            }
+            if (options.laneClosure != null) {
+                engine.setLaneClosure(laneClosure);
+            }
+        }
+        List<SimulationEngine.Road> roads = engine.getRoads();
+        long[] queueSums = new long[roads.size()];
+        int[] queueMax = new int[roads.size()];
+
+        long ticks = Math.round(options.simSeconds() / options.tickSeconds());
+        long reportEveryTicks = options.reportEverySeconds() > 0
+                ? Math.max(1, Math.round(options.reportEverySeconds() / options.tickSeconds()))
+                : 0;
+        long started = System.nanoTime();
+        long tick = 0;
+        while (tick < ticks) {
+            long limit = ticks - tick;
+            if (reportEveryTicks > 0) {
+                limit = Math.min(limit, reportEveryTicks - tick % reportEveryTicks);
+            }
+            int advanced = engine.advance(options.tickSeconds(), (int) Math.min(limit, Integer.MAX_VALUE));
+            tick += advanced;
+            for (int i = 0; i < roads.size(); i++) {
+                int queue = engine.getQueueLength(roads.get(i));
+                queueSums[i] += (long) queue * advanced;
+                queueMax[i] = Math.max(queueMax[i], queue);
+            }
+            if (reportEveryTicks > 0 && tick % reportEveryTicks == 0) {
+                progress.printf("t=%.0fs vehicles=%d departures=%d flow=%.2f/s%n",
+                        engine.getSimTimeSeconds(), engine.getVehicleCount(),
+                        engine.getTotalDepartures(), engine.getThroughputPerSecond());
+            }
+        }
+        long wallNanos = System.nanoTime() - started;
+        if (options.checkpointFile() != null) {
+            try {
+                engine.checkpoint(options.checkpointFile());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        List<QueueStats> queues = new ArrayList<>(roads.size());
+        for (int i = 0; i < roads.size(); i++) {
+            double mean = ticks == 0 ? 0 : (double) queueSums[i] / ticks;
+            queues.add(new QueueStats(roads.get(i).getName(), mean, queueMax[i]));
+        }
+        return new Report(
+                engine.getSimTimeSeconds(),
+                ticks,
+                engine.getTotalDepartures(),
+                engine.getVehicleCount(),
+                queues,
+                wallNanos / 1_000_000_000.0,
+                ticks == 0 ? 0 : wallNanos / 1_000.0 / ticks,
+                metrics.tickNanos().max() / 1_000.0,
+                metrics.report(engine.getSimTimeSeconds()));
+    }
+
+    private static double knob(Double set, double fallback) {
+        return set != null ? set : fallback;
+    }
+
+    /**
+     * Settings for one run. {@link #parse} fills a {@link Builder} from command-line arguments;
+     * code builds one directly and derives variants with {@link #toBuilder}.
+     */
+    public static final class Options {
+        private final double simSeconds;
+        private final double tickSeconds;
+        private final Path scenarioFile;
+        // Null when not set, so a scenario's own settings apply.
+        private final Double spawnPerMinute;
+        private final Double speedLimit;
+        private final Boolean laneClosure;
+        private final CarFollowingModel carFollowing;
+        private final long seed;
+        private final double reportEverySeconds;
+        private final Path replayLog;
+        private final SignalController signals;
+        private final Path metricsFile;
+        private final boolean skipIdle;
+        private final Path restoreFile;
+        private final Path checkpointFile;
+
+        private Options(Builder builder) {
+            this.simSeconds = builder.simSeconds;
+            this.tickSeconds = builder.tickSeconds;
+            this.scenarioFile = builder.scenarioFile;
+            this.spawnPerMinute = builder.spawnPerMinute;
+            this.speedLimit = builder.speedLimit;
+            this.laneClosure = builder.laneClosure;
+            this.carFollowing = builder.carFollowing;
+            this.seed = builder.seed;
+            this.reportEverySeconds = builder.reportEverySeconds;
+            this.replayLog = builder.replayLog;
+            this.signals = builder.signals;
+            this.metricsFile = builder.metricsFile;
+            this.skipIdle = builder.skipIdle;
+            this.restoreFile = builder.restoreFile;
+            this.checkpointFile = builder.checkpointFile;
+        }
+
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        public static Options defaults() {
+            return builder().build();
+        }
+
+        public static Options parse(String[] args) {
+            Builder options = builder();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--seconds" -> options.withSimSeconds(positive(arg, value(args, ++i, arg)));
+                    case "--dt" -> options.withTickSeconds(positive(arg, value(args, ++i, arg)));
+                    case "--scenario" -> options.withScenarioFile(Path.of(value(args, ++i, arg)));
+                    case "--spawn" -> options.withSpawnPerMinute(number(arg, value(args, ++i, arg)));
+                    case "--speed" -> options.withSpeedLimit(number(arg, value(args, ++i, arg)));
+                    case "--lane-closure" -> options.withLaneClosure(true);
+                    case "--car-following" -> options.withCarFollowing(carFollowing(value(args, ++i, arg)));
+                    case "--seed" -> options.withSeed(integer(arg, value(args, ++i, arg)));
+                    case "--report" -> options.withReportEverySeconds(number(arg, value(args, ++i, arg)));
+                    case "--replay" -> options.withReplayLog(Path.of(value(args, ++i, arg)));
+                    case "--signals" -> options.withSignals(signals(value(args, ++i, arg)));
+                    case "--metrics" -> options.withMetricsFile(Path.of(value(args, ++i, arg)));
+                    case "--skip-idle" -> options.withSkipIdle(true);
+                    case "--restore" -> options.withRestoreFile(Path.of(value(args, ++i, arg)));
+                    case "--checkpoint" -> options.withCheckpointFile(Path.of(value(args, ++i, arg)));
+                    default -> throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            }
+            return options.build();
+        }
+
+        /**
+         * A builder holding these settings, for a run that differs in a few of them.
+         */
+        public Builder toBuilder() {
+            Builder builder = new Builder();
+            builder.simSeconds = simSeconds;
+            builder.tickSeconds = tickSeconds;
+            builder.scenarioFile = scenarioFile;
+            builder.spawnPerMinute = spawnPerMinute;
+            builder.speedLimit = speedLimit;
+            builder.laneClosure = laneClosure;
+            builder.carFollowing = carFollowing;
+            builder.seed = seed;
+            builder.reportEverySeconds = reportEverySeconds;
+            builder.replayLog = replayLog;
+            builder.signals = signals;
+            builder.metricsFile = metricsFile;
+            builder.skipIdle = skipIdle;
+            builder.restoreFile = restoreFile;
+            builder.checkpointFile = checkpointFile;
+            return builder;
+        }
+
+        public double simSeconds() {
+            return simSeconds;
+        }
+
+        public double tickSeconds() {
+            return tickSeconds;
+        }
+
+        /**
+         * Scenario file the run loads its network from, or {@code null} for the built-in one.
+         */
+        public Path scenarioFile() {
+            return scenarioFile;
+        }
+
+        /**
+         * The spawn rate set for the run, or else the default of {@link SimulationConfig}; a run on a
+         * scenario file uses the file's rate unless one was set.
+         */
+        public double spawnPerMinute() {
+            return knob(spawnPerMinute, SimulationConfig.getInstance().defaultSpawnPerMinute());
+        }
+
+        /**
+         * Like {@link #spawnPerMinute}, for the speed limit.
+         */
+        public double speedLimit() {
+            return knob(speedLimit, SimulationConfig.getInstance().defaultSpeedLimit());
+        }
+
+        /**
+         * Like {@link #spawnPerMinute}, for the lane closure.
+         */
+        public boolean laneClosure() {
+            return laneClosure != null ? laneClosure : SimulationConfig.getInstance().defaultLaneClosure();
+        }
+
+        public CarFollowingModel carFollowing() {
+            return carFollowing;
+        }
+
+        public long seed() {
+            return seed;
+        }
+
+        public double reportEverySeconds() {
+            return reportEverySeconds;
+        }
+
+        public Path replayLog() {
+            return replayLog;
+        }
+
+        /**
+         * Controller for every intersection, or {@code null} to keep the network's own plans: the
+         * fixed 12 s / 8 s plan on the built-in network, or the scenario file's.
+         */
+        public SignalController signals() {
+            return signals;
+        }
+
+        public Path metricsFile() {
+            return metricsFile;
+        }
+
+        public boolean skipIdle() {
+            return skipIdle;
+        }
+
+        public Path restoreFile() {
+            return restoreFile;
+        }
+
+        public Path checkpointFile() {
+            return checkpointFile;
+        }
+
+        private static String value(String[] args, int index, String option) {
+            if (index >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            return args[index];
+        }
+
+        private static SignalController signals(String mode) {
+            return switch (mode) {
+                case "fixed" -> SignalController.fixedTime(12, 8);
+                case "actuated" -> SignalController.actuated(5, 30);
+                case "max-pressure" -> SignalController.maxPressure(5, 30);
+                default -> throw new IllegalArgumentException("Unknown signal mode: " + mode);
+            };
+        }
+
+        private static CarFollowingModel carFollowing(String model) {
+            return switch (model) {
+                case "idm" -> CarFollowingModel.intelligentDriver();
+                case "gipps" -> CarFollowingModel.gipps();
+                case "safe-gap" -> CarFollowingModel.safeGap();
+                default -> throw new IllegalArgumentException("Unknown car-following model: " + model);
+            };
+        }
+
+        private static double number(String option, String text) {
+            try {
+                return Double.parseDouble(text);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid number for " + option + ": " + text);
+            }
+        }
+
+        private static double positive(String option, String text) {
+            double value = number(option, text);
+            if (value <= 0) {
+                throw new IllegalArgumentException(option + " must be positive: " + text);
+            }
+            return value;
+        }
+
+        private static long integer(String option, String text) {
+            try {
+                return Long.parseLong(text);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid integer for " + option + ": " + text);
+            }
+        }
+
+        public static final class Builder {
+            private double simSeconds = 3600;
+            private double tickSeconds = 0.05;
+            private Path scenarioFile;
+            private Double spawnPerMinute;
+            private Double speedLimit;
+            private Boolean laneClosure;
+            private CarFollowingModel carFollowing = CarFollowingModel.intelligentDriver();
+            private long seed = 1;
+            private double reportEverySeconds;
+            private Path replayLog;
+            private SignalController signals;
+            private Path metricsFile;
+            private boolean skipIdle;
+            private Path restoreFile;
+            private Path checkpointFile;
+
+            private Builder() {
+            }
+
+            public Builder withSimSeconds(double seconds) {
+                if (!(seconds > 0)) {
+                    throw new IllegalArgumentException("simSeconds must be positive");
+                }
+                this.simSeconds = seconds;
+                return this;
+            }
+
+            public Builder withTickSeconds(double seconds) {
+                if (!(seconds > 0)) {
+                    throw new IllegalArgumentException("tickSeconds must be positive");
+                }
+                this.tickSeconds = seconds;
+                return this;
+            }
+
+            /**
+             * Loads the network, signal plans, spawn weights and knob settings from a scenario file
+             * instead of using the built-in main/cross pair; see {@link Scenario}.
+             */
+            public Builder withScenarioFile(Path file) {
+                this.scenarioFile = file;
+                return this;
+            }
+
+            public Builder withSpawnPerMinute(double perMinute) {
+                this.spawnPerMinute = perMinute;
+                return this;
+            }
+
+            public Builder withSpeedLimit(double speed) {
+                this.speedLimit = speed;
+                return this;
+            }
+
+            public Builder withLaneClosure(boolean closed) {
+                this.laneClosure = closed;
+                return this;
+            }
+
+            public Builder withCarFollowing(CarFollowingModel model) {
+                this.carFollowing = Objects.requireNonNull(model);
+                return this;
+            }
+
+            public Builder withSeed(long seed) {
+                this.seed = seed;
+                return this;
+            }
+
+            /**
+             * Prints a progress line every {@code seconds} of simulated time; 0 disables it.
+             */
+            public Builder withReportEverySeconds(double seconds) {
+                this.reportEverySeconds = seconds;
+                return this;
+            }
+
+            public Builder withReplayLog(Path log) {
+                this.replayLog = log;
+                return this;
+            }
+
+            public Builder withSignals(SignalController signals) {
+                this.signals = Objects.requireNonNull(signals);
+                return this;
+            }
+
+            public Builder withMetricsFile(Path file) {
+                this.metricsFile = file;
+                return this;
+            }
+
+            public Builder withSkipIdle(boolean skipIdle) {
+                this.skipIdle = skipIdle;
+                return this;
+            }
+
+            public Builder withRestoreFile(Path file) {
+                this.restoreFile = file;
+                return this;
+            }
+
+            public Builder withCheckpointFile(Path file) {
+                this.checkpointFile = file;
+                return this;
+            }
+
+            public Options build() {
+                return new Options(this);
+            }
+        }
+    }
+
+    public record QueueStats(String roadName, double meanLength, int maxLength) {
+    }
+
+    public record Report(
+            double simSeconds,
+            long ticks,
+            long departures,
+            int vehiclesRemaining,
+            List<QueueStats> queues,
+            double wallSeconds,
+            double meanTickMicros,
+            double maxTickMicros,
+            EngineMetrics.Report metrics
+    ) {
+        public double averageThroughputPerSecond() {
+            return simSeconds <= 0 ? 0 : departures / simSeconds;
+        }
+
+        public double speedup() {
+            return wallSeconds <= 0 ? Double.POSITIVE_INFINITY : simSeconds / wallSeconds;
+        }
+
+        public void print(PrintStream out) {
+            out.printf("Simulated %.1fs in %d ticks (%.3fs wall, %.0fx real time)%n",
+                    simSeconds, ticks, wallSeconds, speedup());
+            out.printf("Throughput: %d departures, %.3f vehicles/s, %d still on the road%n",
+                    departures, averageThroughputPerSecond(), vehiclesRemaining);
+            for (QueueStats queue : queues) {
+                out.printf("Queue %-16s mean %.2f, max %d%n", queue.roadName(), queue.meanLength(), queue.maxLength());
+            }
+            EngineMetrics.Percentiles travel = metrics.travelTimeMillis();
+            EngineMetrics.Percentiles delay = metrics.delayMillis();
+            out.printf("Travel time: p50 %.1fs, p99 %.1fs, p999 %.1fs; delay p50 %.1fs, p99 %.1fs, p999 %.1fs; %.2f stops per vehicle%n",
+                    travel.p50() / 1_000.0, travel.p99() / 1_000.0, travel.p999() / 1_000.0,
+                    delay.p50() / 1_000.0, delay.p99() / 1_000.0, delay.p999() / 1_000.0,
+                    metrics.stopsPerVehicle().mean());
+            EngineMetrics.Percentiles tick = metrics.tickNanos();
+            out.printf("Tick time: mean %.2fus, p50 %.2fus, p99 %.2fus, p999 %.2fus, max %.2fus%n", meanTickMicros,
+                    tick.p50() / 1_000.0, tick.p99() / 1_000.0, tick.p999() / 1_000.0, maxTickMicros);
+        }
+    }
+}
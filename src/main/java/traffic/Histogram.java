@@ -0,0 +1,159 @@
+package traffic;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Fixed-size log-linear histogram of non-negative longs, laid out like HdrHistogram: values below
+ * 128 get a bucket each, and above that every power of two is split into 64 buckets, so a value
+ * read back is within 1/64 of the one recorded. Counts live in one {@code long[]} sized up front
+ * from the highest trackable value, so recording is a few shifts and an increment and never
+ * allocates. Values above that bound are counted at the bound. Not thread-safe.
+ */
+public final class Histogram {
+    private static final int SUB_BUCKET_HALF_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << (SUB_BUCKET_HALF_BITS + 1);
+
+    private final long highestTrackableValue;
+    private final long[] counts;
+    private long totalCount;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    public Histogram(long highestTrackableValue) {
+        if (highestTrackableValue < 1) {
+            throw new IllegalArgumentException("highestTrackableValue must be positive");
+        }
+        this.highestTrackableValue = highestTrackableValue;
+        this.counts = new long[indexOf(highestTrackableValue) + 1];
+    }
+
+    public void record(long value) {
+        long clamped = Math.max(0, Math.min(value, highestTrackableValue));
+        counts[indexOf(clamped)]++;
+        totalCount++;
+        sum += clamped;
+        min = Math.min(min, clamped);
+        max = Math.max(max, clamped);
+    }
+
+    /**
+     * Records {@code value} {@code times} times over.
+     */
+    public void record(long value, long times) {
+        if (times <= 0) {
+            return;
+        }
+        long clamped = Math.max(0, Math.min(value, highestTrackableValue));
+        counts[indexOf(clamped)] += times;
+        totalCount += times;
+        sum += clamped * times;
+        min = Math.min(min, clamped);
+        max = Math.max(max, clamped);
+    }
+
+    public long count() {
+        return totalCount;
+    }
+
+    public double mean() {
+        return totalCount == 0 ? 0 : (double) sum / totalCount;
+    }
+
+    public long min() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    public long max() {
+        return max;
+    }
+
+    /**
+     * Smallest recorded value that at least {@code percentile} percent of all values are less than
+     * or equal to, at bucket precision; 0 if nothing was recorded.
+     */
+    public long valueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        double clamped = Math.max(0, Math.min(percentile, 100));
+        long rank = Math.max(1, (long) Math.ceil(clamped / 100 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.max(min, Math.min(max, highestEquivalentValue(i)));
+            }
+        }
+        return max;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    /**
+     * Writes the totals and the non-empty buckets as index and count pairs.
+     */
+    void writeTo(Checkpoint.Out out) throws IOException {
+        out.putLong(totalCount);
+        out.putLong(sum);
+        out.putLong(min);
+        out.putLong(max);
+        int used = 0;
+        for (long count : counts) {
+            if (count != 0) {
+                used++;
+            }
+        }
+        out.putInt(used);
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                out.putInt(i);
+                out.putLong(counts[i]);
+            }
+        }
+    }
+
+    void readFrom(Checkpoint.In in) throws IOException {
+        reset();
+        totalCount = in.getLong();
+        sum = in.getLong();
+        min = in.getLong();
+        max = in.getLong();
+        int used = in.getCount();
+        for (int i = 0; i < used; i++) {
+            int index = in.getInt();
+            if (index < 0 || index >= counts.length) {
+                throw new IOException("Corrupt checkpoint: histogram bucket " + index + " out of range");
+            }
+            counts[index] = in.getLong();
+        }
+    }
+
+    long highestTrackableValue() {
+        return highestTrackableValue;
+    }
+
+    static int indexOf(long value) {
+        int bucket = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_HALF_BITS);
+        return (bucket << SUB_BUCKET_HALF_BITS) + (int) (value >>> bucket);
+    }
+
+    /**
+     * Largest value that lands in the same bucket as the values at {@code index}.
+     */
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int bucket = (index >>> SUB_BUCKET_HALF_BITS) - 1;
+        long subBucket = index - ((long) bucket << SUB_BUCKET_HALF_BITS);
+        return (subBucket << bucket) + (1L << bucket) - 1;
+    }
+}
@@ -0,0 +1,64 @@
+package traffic;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Vehicle counts per fixed-length segment of every lane, for drawing dense traffic as a heatmap
+ * instead of vehicle by vehicle. The segment layout is built once per set of road views and the
+ * counts are refilled in place for each frame.
+ */
+final class LaneHeatmap {
+    static final double SEGMENT_PIXELS = 24;
+    /** Vehicles a segment holds when packed at the minimum gap the engine keeps. */
+    static final double SEGMENT_CAPACITY = SEGMENT_PIXELS / 18.0;
+
+    private final List<SimulationEngine.RoadView> roadViews;
+    /** Index of the first segment of lane 0 of each road; lanes of a road follow each other. */
+    private final int[] firstSegment;
+    private final int[] segmentsPerLane;
+    private final int[] counts;
+
+    LaneHeatmap(List<SimulationEngine.RoadView> roadViews) {
+        this.roadViews = roadViews;
+        this.firstSegment = new int[roadViews.size()];
+        this.segmentsPerLane = new int[roadViews.size()];
+        int total = 0;
+        for (int road = 0; road < roadViews.size(); road++) {
+            SimulationEngine.RoadView view = roadViews.get(road);
+            firstSegment[road] = total;
+            segmentsPerLane[road] = Math.max(1, (int) Math.ceil(view.start().distance(view.end()) / SEGMENT_PIXELS));
+            total += segmentsPerLane[road] * view.totalLanes();
+        }
+        this.counts = new int[total];
+    }
+
+    boolean matches(List<SimulationEngine.RoadView> views) {
+        return views == roadViews || views.equals(roadViews);
+    }
+
+    /**
+     * Counts the vehicles of {@code snapshot}, which must have lane positions, per lane segment.
+     */
+    void fill(SimulationSnapshot snapshot) {
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < snapshot.vehicleCount(); i++) {
+            int road = snapshot.vehicleRoad(i);
+            int lane = Math.min(snapshot.vehicleLane(i), roadViews.get(road).totalLanes() - 1);
+            int segment = (int) (Math.max(0, snapshot.vehicleDistance(i)) / SEGMENT_PIXELS);
+            counts[index(road, lane, Math.min(segment, segmentsPerLane[road] - 1))]++;
+        }
+    }
+
+    int segments(int road) {
+        return segmentsPerLane[road];
+    }
+
+    int count(int road, int lane, int segment) {
+        return counts[index(road, lane, segment)];
+    }
+
+    private int index(int road, int lane, int segment) {
+        return firstSegment[road] + lane * segmentsPerLane[road] + segment;
+    }
+}
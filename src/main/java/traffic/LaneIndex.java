@@ -0,0 +1,199 @@
+package traffic;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Per-(road, lane) index that keeps vehicle slots ordered front to back, so a vehicle's leader is
+ * simply the entry before it. Vehicles never overtake within a lane, spawn at the back and
+ * leave from the front, which keeps every operation on the hot path O(1).
+ */
+final class LaneIndex {
+    /** Largest ring a lane starts with; lanes of longer roads grow when they fill up. */
+    private static final int MAX_INITIAL_SLOTS = 64;
+
+    private final VehicleStore store;
+    private final Lane[][] lanesByRoad;
+
+    /**
+     * Each lane starts with room for its road packed at {@code minSpacing}, up to
+     * {@value #MAX_INITIAL_SLOTS} vehicles, so a queue filling a short road never grows its lane
+     * in the middle of a run.
+     */
+    LaneIndex(List<SimulationEngine.Road> roads, VehicleStore store, double minSpacing) {
+        this.store = store;
+        this.lanesByRoad = new Lane[roads.size()][];
+        for (int roadId = 0; roadId < roads.size(); roadId++) {
+            SimulationEngine.Road road = roads.get(roadId);
+            int packed = (int) Math.min(MAX_INITIAL_SLOTS, road.length() / minSpacing + 2);
+            int capacity = Math.max(16, Integer.highestOneBit(Math.max(1, packed - 1)) << 1);
+            Lane[] lanes = new Lane[road.lanes()];
+            for (int i = 0; i < lanes.length; i++) {
+                lanes[i] = new Lane(store, capacity);
+            }
+            lanesByRoad[roadId] = lanes;
+        }
+    }
+
+    Lane[] lanesOf(int roadId) {
+        return lanesByRoad[roadId];
+    }
+
+    Lane lane(int roadId, int laneIndex) {
+        return lanesByRoad[roadId][laneIndex];
+    }
+
+    int size() {
+        return store.size();
+    }
+
+    void clear() {
+        for (Lane[] lanes : lanesByRoad) {
+            for (Lane lane : lanes) {
+                lane.clear();
+            }
+        }
+    }
+
+    /**
+     * Writes every lane's slots front to back and its release time.
+     */
+    void writeTo(Checkpoint.Out out) throws IOException {
+        for (Lane[] lanes : lanesByRoad) {
+            for (Lane lane : lanes) {
+                out.putInt(lane.size);
+                out.putDouble(lane.releaseTime);
+                for (int i = 0; i < lane.size; i++) {
+                    out.putInt(lane.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Refills every lane as written, keeping the order rather than re-sorting by position.
+     */
+    void readFrom(Checkpoint.In in) throws IOException {
+        for (Lane[] lanes : lanesByRoad) {
+            for (Lane lane : lanes) {
+                lane.clear();
+                int count = in.getCount();
+                lane.releaseTime = in.getDouble();
+                while (lane.slots.length < count) {
+                    lane.grow();
+                }
+                for (int i = 0; i < count; i++) {
+                    lane.slots[i] = in.getInt();
+                }
+                lane.size = count;
+            }
+        }
+    }
+
+    /**
+     * Ring buffer of vehicle slots in one lane, index 0 being the vehicle furthest along the road.
+     */
+    static final class Lane {
+        static final int EMPTY = -1;
+
+        private final VehicleStore store;
+        private int[] slots;
+        private int head;
+        private int size;
+        /** On a mesoscopic road, earliest time the front vehicle may leave, one headway after the last. */
+        private double releaseTime;
+
+        /**
+         * @param capacity a power of two
+         */
+        private Lane(VehicleStore store, int capacity) {
+            this.store = store;
+            this.slots = new int[capacity];
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int get(int index) {
+            return slots[(head + index) & (slots.length - 1)];
+        }
+
+        int first() {
+            return size == 0 ? EMPTY : slots[head];
+        }
+
+        int last() {
+            return size == 0 ? EMPTY : get(size - 1);
+        }
+
+        /**
+         * Index of the first vehicle strictly behind {@code position}, or {@link #size()} if none.
+         */
+        int firstBehind(double position) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (store.position(get(mid)) < position) {
+                    high = mid;
+                } else {
+                    low = mid + 1;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Inserts a slot keeping front-to-back order. Spawns land at the back, so the scan
+         * normally stops immediately.
+         */
+        void insert(int slot) {
+            if (size == slots.length) {
+                grow();
+            }
+            double position = store.position(slot);
+            int index = size;
+            while (index > 0 && store.position(get(index - 1)) < position) {
+                slots[(head + index) & (slots.length - 1)] = get(index - 1);
+                index--;
+            }
+            slots[(head + index) & (slots.length - 1)] = slot;
+            size++;
+        }
+
+        int removeFirst() {
+            int slot = slots[head];
+            head = (head + 1) & (slots.length - 1);
+            size--;
+            return slot;
+        }
+
+        void clear() {
+            head = 0;
+            size = 0;
+            releaseTime = 0;
+        }
+
+        double releaseTime() {
+            return releaseTime;
+        }
+
+        void setReleaseTime(double time) {
+            releaseTime = time;
+        }
+
+        private void grow() {
+            int[] larger = new int[slots.length * 2];
+            for (int i = 0; i < size; i++) {
+                larger[i] = get(i);
+            }
+            slots = larger;
+            head = 0;
+        }
+    }
+}
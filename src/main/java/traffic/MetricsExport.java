@@ -0,0 +1,279 @@
+package traffic;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.function.Consumer;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Sinks for {@link EngineMetrics.Report}s, to pass to {@link EngineMetrics#setReporter}.
+ *
+ * <pre>{@code
+ * try (Writer out = Files.newBufferedWriter(path);
+ *      MetricsExport.Bean bean = MetricsExport.registerMBean("traffic:type=EngineMetrics")) {
+ *     engine.getMetrics().setReporter(60, MetricsExport.csv(out).andThen(bean));
+ *     ...
+ * }
+ * }</pre>
+ */
+public final class MetricsExport {
+    private static final String CSV_HEADER = "sim_seconds,departures,"
+            + "travel_ms_p50,travel_ms_p99,travel_ms_p999,travel_ms_max,"
+            + "delay_ms_p50,delay_ms_p99,delay_ms_p999,delay_ms_max,"
+            + "stops_mean,stops_p50,stops_p99,stops_p999,"
+            + "queue_p50,queue_p99,queue_p999,queue_max,"
+            + "tick_us_mean,tick_us_p50,tick_us_p99,tick_us_p999,tick_us_max";
+
+    private MetricsExport() {
+    }
+
+    /**
+     * Sink that writes a CSV header, then one row of network-wide figures per report, flushed as it
+     * arrives. The caller closes {@code out}.
+     */
+    public static Consumer<EngineMetrics.Report> csv(Writer out) {
+        Objects.requireNonNull(out);
+        try {
+            out.write(CSV_HEADER);
+            out.write('\n');
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return report -> {
+            try {
+                out.write(csvRow(report));
+                out.write('\n');
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    static String csvRow(EngineMetrics.Report report) {
+        EngineMetrics.Percentiles travel = report.travelTimeMillis();
+        EngineMetrics.Percentiles delay = report.delayMillis();
+        EngineMetrics.Percentiles stops = report.stopsPerVehicle();
+        EngineMetrics.Percentiles queue = report.networkQueueLength();
+        EngineMetrics.Percentiles tick = report.tickNanos();
+        return String.format(Locale.ROOT,
+                "%s,%d,%d,%d,%d,%d,%d,%d,%d,%d,%.3f,%d,%d,%d,%d,%d,%d,%d,%.3f,%.3f,%.3f,%.3f,%.3f",
+                report.simSeconds(), report.departures(),
+                travel.p50(), travel.p99(), travel.p999(), travel.max(),
+                delay.p50(), delay.p99(), delay.p999(), delay.max(),
+                stops.mean(), stops.p50(), stops.p99(), stops.p999(),
+                queue.p50(), queue.p99(), queue.p999(), queue.max(),
+                tick.mean() / 1_000.0, tick.p50() / 1_000.0, tick.p99() / 1_000.0, tick.p999() / 1_000.0,
+                tick.max() / 1_000.0);
+    }
+
+    /**
+     * Registers a bean under {@code objectName} on the platform MBean server that shows the latest
+     * report it was given. Close it to unregister.
+     */
+    public static Bean registerMBean(String objectName) {
+        Bean bean = new Bean();
+        try {
+            bean.name = new ObjectName(objectName);
+            bean.server = ManagementFactory.getPlatformMBeanServer();
+            bean.server.registerMBean(bean, bean.name);
+        } catch (InstanceAlreadyExistsException e) {
+            throw new IllegalStateException("An MBean is already registered as " + objectName, e);
+        } catch (JMException e) {
+            throw new IllegalArgumentException("Cannot register MBean " + objectName, e);
+        }
+        return bean;
+    }
+
+    /**
+     * Attributes of the metrics MBean. Times are in milliseconds, except tick compute time, which is
+     * in microseconds; all are 0 until the first report arrives.
+     */
+    public interface EngineMetricsMXBean {
+        double getSimSeconds();
+
+        long getDepartures();
+
+        long getTravelTimeMillisP50();
+
+        long getTravelTimeMillisP99();
+
+        long getTravelTimeMillisP999();
+
+        long getDelayMillisP50();
+
+        long getDelayMillisP99();
+
+        long getDelayMillisP999();
+
+        double getStopsPerVehicleMean();
+
+        long getStopsPerVehicleP99();
+
+        long getNetworkQueueP50();
+
+        long getNetworkQueueP99();
+
+        long getNetworkQueueP999();
+
+        double getTickMicrosP50();
+
+        double getTickMicrosP99();
+
+        double getTickMicrosP999();
+
+        double getTickMicrosMax();
+    }
+
+    /**
+     * Report sink backing the MBean. Reports arrive on the simulation thread and JMX clients read
+     * the latest one from theirs.
+     */
+    public static final class Bean implements EngineMetricsMXBean, Consumer<EngineMetrics.Report>, AutoCloseable {
+        private static final EngineMetrics.Percentiles EMPTY = new EngineMetrics.Percentiles(0, 0, 0, 0, 0, 0);
+
+        private volatile EngineMetrics.Report latest;
+        private MBeanServer server;
+        private ObjectName name;
+
+        private Bean() {
+        }
+
+        @Override
+        public void accept(EngineMetrics.Report report) {
+            latest = Objects.requireNonNull(report);
+        }
+
+        @Override
+        public void close() {
+            try {
+                server.unregisterMBean(name);
+            } catch (InstanceNotFoundException e) {
+                // Already unregistered.
+            } catch (JMException e) {
+                throw new IllegalStateException("Cannot unregister MBean " + name, e);
+            }
+        }
+
+        @Override
+        public double getSimSeconds() {
+            EngineMetrics.Report report = latest;
+            return report == null ? 0 : report.simSeconds();
+        }
+
+        @Override
+        public long getDepartures() {
+            EngineMetrics.Report report = latest;
+            return report == null ? 0 : report.departures();
+        }
+
+        @Override
+        public long getTravelTimeMillisP50() {
+            return travel().p50();
+        }
+
+        @Override
+        public long getTravelTimeMillisP99() {
+            return travel().p99();
+        }
+
+        @Override
+        public long getTravelTimeMillisP999() {
+            return travel().p999();
+        }
+
+        @Override
+        public long getDelayMillisP50() {
+            return delay().p50();
+        }
+
+        @Override
+        public long getDelayMillisP99() {
+            return delay().p99();
+        }
+
+        @Override
+        public long getDelayMillisP999() {
+            return delay().p999();
+        }
+
+        @Override
+        public double getStopsPerVehicleMean() {
+            return stops().mean();
+        }
+
+        @Override
+        public long getStopsPerVehicleP99() {
+            return stops().p99();
+        }
+
+        @Override
+        public long getNetworkQueueP50() {
+            return queue().p50();
+        }
+
+        @Override
+        public long getNetworkQueueP99() {
+            return queue().p99();
+        }
+
+        @Override
+        public long getNetworkQueueP999() {
+            return queue().p999();
+        }
+
+        @Override
+        public double getTickMicrosP50() {
+            return tick().p50() / 1_000.0;
+        }
+
+        @Override
+        public double getTickMicrosP99() {
+            return tick().p99() / 1_000.0;
+        }
+
+        @Override
+        public double getTickMicrosP999() {
+            return tick().p999() / 1_000.0;
+        }
+
+        @Override
+        public double getTickMicrosMax() {
+            return tick().max() / 1_000.0;
+        }
+
+        private EngineMetrics.Percentiles travel() {
+            EngineMetrics.Report report = latest;
+            return report == null ? EMPTY : report.travelTimeMillis();
+        }
+
+        private EngineMetrics.Percentiles delay() {
+            EngineMetrics.Report report = latest;
+            return report == null ? EMPTY : report.delayMillis();
+        }
+
+        private EngineMetrics.Percentiles stops() {
+            EngineMetrics.Report report = latest;
+            return report == null ? EMPTY : report.stopsPerVehicle();
+        }
+
+        private EngineMetrics.Percentiles queue() {
+            EngineMetrics.Report report = latest;
+            return report == null ? EMPTY : report.networkQueueLength();
+        }
+
+        private EngineMetrics.Percentiles tick() {
+            EngineMetrics.Report report = latest;
+            return report == null ? EMPTY : report.tickNanos();
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package traffic;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Splits a scenario into regions of about equal road count for {@link PartitionedSimulation}.
+ * Nodes are cut by recursive coordinate bisection, so regions are compact and boundaries short,
+ * and each road belongs to the region of the node it ends at, which keeps every approach of a
+ * signal in one region. The split is deterministic, so each worker process can repeat it from the
+ * scenario file instead of being sent its region.
+ *
+ * <p>A region simulates its own roads plus a stub of every road in another region that one of
+ * them leads onto. Vehicles routed onto a stub leave the region there and enter the stub's own
+ * region, which routes them on.
+ */
+public final class NetworkPartition {
+    private final Scenario scenario;
+    private final int regions;
+    /** Region of each road, by road id in the scenario. */
+    private final int[] owner;
+    /** Roads starting at node {@code n} are {@code outgoing[outgoingStart[n] .. outgoingStart[n + 1])}. */
+    private final int[] outgoingStart;
+    private final int[] outgoing;
+
+    private NetworkPartition(Scenario scenario, int regions) {
+        this.scenario = scenario;
+        this.regions = regions;
+        int nodes = scenario.nodeCount();
+        int roads = scenario.roadCount();
+        double[] nodeWeight = new double[nodes];
+        outgoingStart = new int[nodes + 1];
+        for (int road = 0; road < roads; road++) {
+            nodeWeight[scenario.roadTo(road)]++;
+            outgoingStart[scenario.roadFrom(road) + 1]++;
+        }
+        for (int node = 0; node < nodes; node++) {
+            outgoingStart[node + 1] += outgoingStart[node];
+        }
+        outgoing = new int[roads];
+        int[] fill = Arrays.copyOf(outgoingStart, nodes);
+        for (int road = 0; road < roads; road++) {
+            outgoing[fill[scenario.roadFrom(road)]++] = road;
+        }
+
+        Integer[] order = new Integer[nodes];
+        for (int node = 0; node < nodes; node++) {
+            order[node] = node;
+        }
+        int[] nodeRegion = new int[nodes];
+        bisect(order, 0, nodes, 0, regions, nodeWeight, nodeRegion);
+        owner = new int[roads];
+        for (int road = 0; road < roads; road++) {
+            owner[road] = nodeRegion[scenario.roadTo(road)];
+        }
+    }
+
+    /**
+     * Splits {@code scenario} into {@code regions} regions.
+     */
+    public static NetworkPartition of(Scenario scenario, int regions) {
+        if (regions < 1) {
+            throw new IllegalArgumentException("regions must be positive");
+        }
+        return new NetworkPartition(scenario, regions);
+    }
+
+    public int regionCount() {
+        return regions;
+    }
+
+    public Scenario scenario() {
+        return scenario;
+    }
+
+    /**
+     * Region that simulates road {@code road} of the scenario.
+     */
+    public int regionOf(int road) {
+        return owner[road];
+    }
+
+    /**
+     * Roads leading from one region into another, which is how many stubs all regions have
+     * together: the roads ending at a node all belong to the same region, so no road is a stub in
+     * two regions.
+     */
+    public int boundaryRoads() {
+        boolean[] stub = new boolean[owner.length];
+        int count = 0;
+        for (int road = 0; road < owner.length; road++) {
+            int node = scenario.roadTo(road);
+            for (int i = outgoingStart[node]; i < outgoingStart[node + 1]; i++) {
+                int next = outgoing[i];
+                if (owner[next] != owner[road] && !isReversal(road, next) && !stub[next]) {
+                    stub[next] = true;
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Roads, stubs and signals of region {@code index}, ready to build its engine.
+     */
+    public Region region(int index) {
+        if (index < 0 || index >= regions) {
+            throw new IllegalArgumentException("No region " + index + " in " + regions);
+        }
+        int roads = owner.length;
+        boolean[] owned = new boolean[roads];
+        boolean[] stub = new boolean[roads];
+        double ownedWeight = 0;
+        double totalWeight = 0;
+        for (int road = 0; road < roads; road++) {
+            totalWeight += scenario.roadWeight(road);
+            if (owner[road] != index) {
+                continue;
+            }
+            owned[road] = true;
+            ownedWeight += scenario.roadWeight(road);
+            for (int i = outgoingStart[scenario.roadTo(road)]; i < outgoingStart[scenario.roadTo(road) + 1]; i++) {
+                int next = outgoing[i];
+                if (owner[next] != index && !isReversal(road, next)) {
+                    stub[next] = true;
+                }
+            }
+        }
+        int count = 0;
+        for (int road = 0; road < roads; road++) {
+            count += owned[road] || stub[road] ? 1 : 0;
+        }
+        int[] globalRoads = new int[count];
+        boolean[] boundary = new boolean[count];
+        int local = 0;
+        for (int road = 0; road < roads; road++) {
+            if (owned[road] || stub[road]) {
+                boundary[local] = stub[road];
+                globalRoads[local++] = road;
+            }
+        }
+        double share = totalWeight == 0 ? 0 : ownedWeight / totalWeight;
+        return new Region(index, scenario.region(owned, stub, share), globalRoads, boundary);
+    }
+
+    /**
+     * Whether {@code next} only turns back along {@code road}; the engine never routes onto such a
+     * road, so it needs no stub.
+     */
+    private boolean isReversal(int road, int next) {
+        return scenario.roadTo(next) == scenario.roadFrom(road) && scenario.roadFrom(next) == scenario.roadTo(road);
+    }
+
+    /**
+     * Assigns regions {@code [firstRegion, firstRegion + count)} to nodes {@code order[from..to)}:
+     * sorts them along the longer side of their bounding box and cuts where the road weight reaches
+     * the share of the first half of the regions.
+     */
+    private void bisect(Integer[] order, int from, int to, int firstRegion, int count, double[] nodeWeight,
+                        int[] nodeRegion) {
+        if (count == 1 || to - from <= 1) {
+            for (int i = from; i < to; i++) {
+                nodeRegion[order[i]] = firstRegion;
+            }
+            return;
+        }
+        double minX = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        double total = 0;
+        for (int i = from; i < to; i++) {
+            int node = order[i];
+            minX = Math.min(minX, scenario.nodeX(node));
+            maxX = Math.max(maxX, scenario.nodeX(node));
+            minY = Math.min(minY, scenario.nodeY(node));
+            maxY = Math.max(maxY, scenario.nodeY(node));
+            total += nodeWeight[node];
+        }
+        boolean alongX = maxX - minX >= maxY - minY;
+        Arrays.sort(order, from, to, (a, b) -> {
+            int primary = alongX
+                    ? Double.compare(scenario.nodeX(a), scenario.nodeX(b))
+                    : Double.compare(scenario.nodeY(a), scenario.nodeY(b));
+            if (primary != 0) {
+                return primary;
+            }
+            int secondary = alongX
+                    ? Double.compare(scenario.nodeY(a), scenario.nodeY(b))
+                    : Double.compare(scenario.nodeX(a), scenario.nodeX(b));
+            return secondary != 0 ? secondary : Integer.compare(a, b);
+        });
+        int lowerCount = count / 2;
+        double target = total * lowerCount / count;
+        double sum = 0;
+        int cut = from;
+        while (cut < to - 1 && sum + nodeWeight[order[cut]] / 2 < target) {
+            sum += nodeWeight[order[cut]];
+            cut++;
+        }
+        cut = Math.max(cut, from + 1);
+        bisect(order, from, cut, firstRegion, lowerCount, nodeWeight, nodeRegion);
+        bisect(order, cut, to, firstRegion + lowerCount, count - lowerCount, nodeWeight, nodeRegion);
+    }
+
+    /**
+     * One region: its part of the scenario, which scenario road each of its roads is, and which of
+     * them are stubs.
+     */
+    public static final class Region {
+        private final int index;
+        private final Scenario scenario;
+        private final int[] globalRoads;
+        private final boolean[] boundary;
+
+        private Region(int index, Scenario scenario, int[] globalRoads, boolean[] boundary) {
+            this.index = index;
+            this.scenario = scenario;
+            this.globalRoads = globalRoads;
+            this.boundary = boundary;
+        }
+
+        public int index() {
+            return index;
+        }
+
+        /**
+         * The region's roads and stubs as a scenario of their own, with the region's share of the
+         * spawn rate.
+         */
+        public Scenario scenario() {
+            return scenario;
+        }
+
+        public int roadCount() {
+            return globalRoads.length;
+        }
+
+        /**
+         * Scenario road id of the region's road {@code local}.
+         */
+        public int globalRoad(int local) {
+            return globalRoads[local];
+        }
+
+        /**
+         * Whether the region's road {@code local} is a stub of a road in another region.
+         */
+        public boolean isBoundary(int local) {
+            return boundary[local];
+        }
+
+        /**
+         * Engine builder for this region, handing off vehicles that reach a stub.
+         */
+        public SimulationEngineBuilder toBuilder() {
+            Set<String> stubs = new HashSet<>();
+            for (int local = 0; local < boundary.length; local++) {
+                if (boundary[local]) {
+                    stubs.add(scenario.roadName(local));
+                }
+            }
+            return scenario.toBuilder().withBoundaryRoads(road -> stubs.contains(road.getName()));
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package traffic;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Fans snapshots out to observers according to their {@link ObserverOptions}. A snapshot is built
+ * only when at least one observer is due, and asynchronous observers get their own daemon thread,
+ * so a slow exporter costs the simulation thread one queue offer rather than its own run time.
+ */
+final class ObserverDispatcher {
+    /** Slack for the rate check, so an interval that is a multiple of the tick is not missed to rounding. */
+    private static final double DUE_EPSILON = 1e-9;
+
+    private final List<Registration> registrations = new CopyOnWriteArrayList<>();
+
+    void add(SimulationObserver observer, ObserverOptions options) {
+        Registration registration = options.delivery() == ObserverOptions.Delivery.SYNCHRONOUS
+                ? new Registration(observer, options)
+                : new AsyncRegistration(observer, options);
+        registrations.add(registration);
+    }
+
+    void remove(SimulationObserver observer) {
+        for (Registration registration : registrations) {
+            if (registration.observer == observer) {
+                registrations.remove(registration);
+                registration.stop();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Delivers a snapshot from {@code snapshot} to every observer due at {@code simTime}, or at the
+     * current wall-clock time for observers rated in wall-clock time, or to all observers when
+     * {@code force} is set, as after a command that changes what viewers should show.
+     */
+    void publish(double simTime, boolean force, Supplier<SimulationSnapshot> snapshot) {
+        if (registrations.isEmpty()) {
+            return;
+        }
+        double wallTime = System.nanoTime() / 1e9;
+        SimulationSnapshot built = null;
+        for (Registration registration : registrations) {
+            double now = registration.simulatedTime ? simTime : wallTime;
+            if (force || registration.isDue(now)) {
+                if (built == null) {
+                    built = snapshot.get();
+                }
+                registration.lastDelivery = now;
+                registration.deliver(built);
+            }
+        }
+    }
+
+    /**
+     * Snapshots this observer never saw: dropped by a full queue or replaced by a newer one.
+     */
+    long droppedSnapshots(SimulationObserver observer) {
+        for (Registration registration : registrations) {
+            if (registration.observer == observer) {
+                return registration.dropped.get();
+            }
+        }
+        return 0;
+    }
+
+    private static class Registration {
+        final SimulationObserver observer;
+        final double intervalSeconds;
+        final boolean simulatedTime;
+        final AtomicLong dropped = new AtomicLong();
+        double lastDelivery = Double.NEGATIVE_INFINITY;
+
+        Registration(SimulationObserver observer, ObserverOptions options) {
+            this.observer = observer;
+            this.intervalSeconds = options.intervalSeconds();
+            this.simulatedTime = options.simulatedTime();
+        }
+
+        /**
+         * Due once the interval has passed on the observer's clock, or when the simulation clock went
+         * backwards after a reset.
+         */
+        boolean isDue(double now) {
+            return now - lastDelivery >= intervalSeconds - DUE_EPSILON || now < lastDelivery;
+        }
+
+        void deliver(SimulationSnapshot snapshot) {
+            observer.onUpdate(snapshot);
+        }
+
+        void stop() {
+        }
+    }
+
+    private static final class AsyncRegistration extends Registration {
+        private final BlockingQueue<SimulationSnapshot> queue;
+        private final boolean conflate;
+        private final Thread worker;
+
+        AsyncRegistration(SimulationObserver observer, ObserverOptions options) {
+            super(observer, options);
+            this.queue = new ArrayBlockingQueue<>(options.queueCapacity());
+            this.conflate = options.delivery() == ObserverOptions.Delivery.CONFLATING;
+            this.worker = new Thread(this::run, "observer-" + observer.getClass().getSimpleName());
+            worker.setDaemon(true);
+            worker.start();
+        }
+
+        @Override
+        void deliver(SimulationSnapshot snapshot) {
+            if (conflate) {
+                while (!queue.offer(snapshot)) {
+                    if (queue.poll() != null) {
+                        dropped.incrementAndGet();
+                    }
+                }
+            } else if (!queue.offer(snapshot)) {
+                dropped.incrementAndGet();
+            }
+        }
+
+        @Override
+        void stop() {
+            worker.interrupt();
+        }
+
+        private void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                SimulationSnapshot snapshot;
+                try {
+                    snapshot = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                try {
+                    observer.onUpdate(snapshot);
+                } catch (RuntimeException e) {
+                    Thread current = Thread.currentThread();
+                    current.getUncaughtExceptionHandler().uncaughtException(current, e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package traffic;
+
+/**
+ * How and how often a {@link SimulationObserver} receives snapshots. A rate is per wall-clock second
+ * by default, so a 60 Hz viewer or a 1 Hz exporter stays at that pace however fast the engine is
+ * stepped; a rate per simulated second instead gives an observer the same sequence in a real-time
+ * session and in a headless run.
+ */
+public final class ObserverOptions {
+    /**
+     * Where {@link SimulationObserver#onUpdate} runs.
+     */
+    public enum Delivery {
+        /** On the simulation thread, inside the tick. */
+        SYNCHRONOUS,
+        /** On the observer's own thread; a snapshot that arrives before the last was taken replaces it. */
+        CONFLATING,
+        /** On the observer's own thread through a bounded queue; snapshots that find it full are dropped. */
+        BOUNDED_QUEUE
+    }
+
+    private final Delivery delivery;
+    private final int queueCapacity;
+    private final double intervalSeconds;
+    private final boolean simulatedTime;
+
+    private ObserverOptions(Delivery delivery, int queueCapacity, double intervalSeconds, boolean simulatedTime) {
+        this.delivery = delivery;
+        this.queueCapacity = queueCapacity;
+        this.intervalSeconds = intervalSeconds;
+        this.simulatedTime = simulatedTime;
+    }
+
+    public static ObserverOptions synchronous() {
+        return new ObserverOptions(Delivery.SYNCHRONOUS, 0, 0, false);
+    }
+
+    public static ObserverOptions conflating() {
+        return new ObserverOptions(Delivery.CONFLATING, 1, 0, false);
+    }
+
+    public static ObserverOptions boundedQueue(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        return new ObserverOptions(Delivery.BOUNDED_QUEUE, capacity, 0, false);
+    }
+
+    /**
+     * Limits deliveries to at most {@code perSecond} per wall-clock second.
+     */
+    public ObserverOptions atRate(double perSecond) {
+        return new ObserverOptions(delivery, queueCapacity, interval(perSecond), false);
+    }
+
+    /**
+     * Limits deliveries to at most {@code perSecond} per simulated second, for observers that must
+     * see the same ticks whatever the speed of the run, such as recorders of a sampled trajectory.
+     */
+    public ObserverOptions atSimulatedRate(double perSecond) {
+        return new ObserverOptions(delivery, queueCapacity, interval(perSecond), true);
+    }
+
+    /**
+     * Delivers after every tick. This is the default.
+     */
+    public ObserverOptions everyTick() {
+        return new ObserverOptions(delivery, queueCapacity, 0, false);
+    }
+
+    public Delivery delivery() {
+        return delivery;
+    }
+
+    public int queueCapacity() {
+        return queueCapacity;
+    }
+
+    public double intervalSeconds() {
+        return intervalSeconds;
+    }
+
+    /**
+     * Whether {@link #intervalSeconds} is measured on the simulation clock rather than the wall clock.
+     */
+    public boolean simulatedTime() {
+        return simulatedTime;
+    }
+
+    private static double interval(double perSecond) {
+        if (!(perSecond > 0)) {
+            throw new IllegalArgumentException("perSecond must be positive");
+        }
+        return 1.0 / perSecond;
+    }
+}
@@ -0,0 +1,274 @@
+package traffic;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Runs one independent engine per point of a grid of spawn rates, speed limits, lane closures and
+ * seeds, concurrently, and hands each result to a sink as soon as its run finishes. Runs are
+ * deterministic per point, so the same sweep always produces the same results, apart from wall
+ * time, only possibly in a different order.
+ *
+ * <pre>{@code
+ * ParameterSweep sweep = ParameterSweep.builder(SimulationEngineBuilder::defaults)
+ *         .withSpawnRates(20, 40, 60)
+ *         .withSpeedLimits(50, 70)
+ *         .withLaneClosures(false, true)
+ *         .withDuration(3600, 0.05)
+ *         .build();
+ * try (Writer out = Files.newBufferedWriter(path)) {
+ *     sweep.run(ParameterSweep.csv(out));
+ * }
+ * }</pre>
+ */
+public final class ParameterSweep {
+    private static final String CSV_HEADER =
+            "spawn_per_minute,speed_limit,lane_closure,seed,sim_seconds,departures,throughput_per_second,"
+                    + "mean_queue,max_queue,vehicles_remaining,wall_seconds";
+
+    private final Supplier<SimulationEngineBuilder> scenario;
+    private final double[] spawnRates;
+    private final double[] speedLimits;
+    private final boolean[] laneClosures;
+    private final long[] seeds;
+    private final double simSeconds;
+    private final double tickSeconds;
+    private final int platformThreads;
+
+    private ParameterSweep(Builder builder) {
+        this.scenario = builder.scenario;
+        this.spawnRates = builder.spawnRates.clone();
+        this.speedLimits = builder.speedLimits.clone();
+        this.laneClosures = builder.laneClosures.clone();
+        this.seeds = builder.seeds.clone();
+        this.simSeconds = builder.simSeconds;
+        this.tickSeconds = builder.tickSeconds;
+        this.platformThreads = builder.platformThreads;
+    }
+
+    /**
+     * Starts a sweep over engines built from {@code scenario}, which must return a fresh builder on
+     * every call, since each run sets its own knobs and seed on it.
+     */
+    public static Builder builder(Supplier<SimulationEngineBuilder> scenario) {
+        return new Builder(scenario);
+    }
+
+    /**
+     * Number of runs the sweep performs.
+     */
+    public int size() {
+        return spawnRates.length * speedLimits.length * laneClosures.length * seeds.length;
+    }
+
+    /**
+     * Runs every grid point and passes each result to {@code sink} on the calling thread, in
+     * completion order. If a run fails, the runs not yet started are cancelled and the failure is
+     * rethrown once the ones in flight have stopped.
+     *
+     * @return all results, in completion order
+     */
+    public List<Result> run(Consumer<? super Result> sink) throws InterruptedException {
+        Objects.requireNonNull(sink);
+        List<Result> results = new ArrayList<>(size());
+        try (ExecutorService executor = platformThreads > 0
+                ? Executors.newFixedThreadPool(platformThreads)
+                : Executors.newVirtualThreadPerTaskExecutor()) {
+            CompletionService<Result> completion = new ExecutorCompletionService<>(executor);
+            List<Future<Result>> futures = new ArrayList<>(size());
+            for (double spawnRate : spawnRates) {
+                for (double speedLimit : speedLimits) {
+                    for (boolean laneClosure : laneClosures) {
+                        for (long seed : seeds) {
+                            futures.add(completion.submit(() -> runPoint(spawnRate, speedLimit, laneClosure, seed)));
+                        }
+                    }
+                }
+            }
+            try {
+                for (int i = 0; i < futures.size(); i++) {
+                    Result result = completion.take().get();
+                    results.add(result);
+                    sink.accept(result);
+                }
+            } catch (ExecutionException e) {
+                futures.forEach(future -> future.cancel(true));
+                throw new IllegalStateException("Sweep run failed", e.getCause());
+            } catch (InterruptedException | RuntimeException e) {
+                futures.forEach(future -> future.cancel(true));
+                throw e;
+            }
+        }
+        return results;
+    }
+
+    private Result runPoint(double spawnRate, double speedLimit, boolean laneClosure, long seed) {
+        SimulationEngine engine = scenario.get()
+                .withSpawnRate(spawnRate)
+                .withSpeedLimit(speedLimit)
+                .withLaneClosure(laneClosure)
+                .withSeed(seed)
+                .build();
+        List<SimulationEngine.Road> roads = engine.getRoads();
+        long ticks = Math.round(simSeconds / tickSeconds);
+        long queueSum = 0;
+        int queueMax = 0;
+        long started = System.nanoTime();
+        for (long tick = 0; tick < ticks; tick++) {
+            if (Thread.interrupted()) {
+                throw new IllegalStateException("Sweep run interrupted");
+            }
+            engine.update(tickSeconds);
+            int queued = 0;
+            for (SimulationEngine.Road road : roads) {
+                queued += engine.getQueueLength(road);
+            }
+            queueSum += queued;
+            queueMax = Math.max(queueMax, queued);
+        }
+        double wallSeconds = (System.nanoTime() - started) / 1e9;
+        double simulated = engine.getSimTimeSeconds();
+        return new Result(spawnRate, speedLimit, laneClosure, seed, simulated, engine.getTotalDepartures(),
+                simulated <= 0 ? 0 : engine.getTotalDepartures() / simulated,
+                ticks == 0 ? 0 : (double) queueSum / ticks, queueMax, engine.getVehicleCount(), wallSeconds);
+    }
+
+    /**
+     * Sink that writes a CSV header, then one row per result, flushed as it arrives so a partially
+     * finished sweep leaves usable output behind. The caller closes {@code out}.
+     */
+    public static Consumer<Result> csv(Writer out) {
+        Objects.requireNonNull(out);
+        try {
+            out.write(CSV_HEADER);
+            out.write('\n');
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return result -> {
+            try {
+                out.write(result.toCsvRow());
+                out.write('\n');
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    /**
+     * Outcome of one grid point. Queue figures are the total over all stop lines, sampled every
+     * tick.
+     */
+    public record Result(
+            double spawnPerMinute,
+            double speedLimit,
+            boolean laneClosure,
+            long seed,
+            double simSeconds,
+            long departures,
+            double throughputPerSecond,
+            double meanQueue,
+            int maxQueue,
+            int vehiclesRemaining,
+            double wallSeconds
+    ) {
+        String toCsvRow() {
+            return String.format(Locale.ROOT, "%s,%s,%b,%d,%s,%d,%.6f,%.4f,%d,%d,%.6f",
+                    spawnPerMinute, speedLimit, laneClosure, seed, simSeconds, departures,
+                    throughputPerSecond, meanQueue, maxQueue, vehiclesRemaining, wallSeconds);
+        }
+    }
+
+    public static final class Builder {
+        private final Supplier<SimulationEngineBuilder> scenario;
+        private double[] spawnRates = {SimulationConfig.getInstance().defaultSpawnPerMinute()};
+        private double[] speedLimits = {SimulationConfig.getInstance().defaultSpeedLimit()};
+        private boolean[] laneClosures = {SimulationConfig.getInstance().defaultLaneClosure()};
+        private long[] seeds = {1};
+        private double simSeconds = 3600;
+        private double tickSeconds = 0.05;
+        private int platformThreads;
+
+        private Builder(Supplier<SimulationEngineBuilder> scenario) {
+            this.scenario = Objects.requireNonNull(scenario);
+        }
+
+        public Builder withSpawnRates(double... perMinute) {
+            this.spawnRates = nonEmpty(perMinute.clone(), perMinute.length);
+            return this;
+        }
+
+        public Builder withSpeedLimits(double... speeds) {
+            this.speedLimits = nonEmpty(speeds.clone(), speeds.length);
+            return this;
+        }
+
+        public Builder withLaneClosures(boolean... closed) {
+            this.laneClosures = nonEmpty(closed.clone(), closed.length);
+            return this;
+        }
+
+        /**
+         * Runs every knob combination once per seed, to average out traffic randomness.
+         */
+        public Builder withSeeds(long... seeds) {
+            this.seeds = nonEmpty(seeds.clone(), seeds.length);
+            return this;
+        }
+
+        public Builder withDuration(double simSeconds, double tickSeconds) {
+            if (simSeconds <= 0 || tickSeconds <= 0) {
+                throw new IllegalArgumentException("simSeconds and tickSeconds must be positive");
+            }
+            this.simSeconds = simSeconds;
+            this.tickSeconds = tickSeconds;
+            return this;
+        }
+
+        /**
+         * Runs each grid point on its own virtual thread. This is the default; runs are CPU bound,
+         * so at most one per carrier thread makes progress at a time.
+         */
+        public Builder withVirtualThreads() {
+            this.platformThreads = 0;
+            return this;
+        }
+
+        /**
+         * Runs grid points on a fixed pool of {@code threads} platform threads.
+         */
+        public Builder withPlatformThreads(int threads) {
+            if (threads <= 0) {
+                throw new IllegalArgumentException("threads must be positive");
+            }
+            this.platformThreads = threads;
+            return this;
+        }
+
+        public ParameterSweep build() {
+            return new ParameterSweep(this);
+        }
+
+        private static <T> T nonEmpty(T values, int length) {
+            if (length == 0) {
+                throw new IllegalArgumentException("A sweep axis needs at least one value");
+            }
+            return values;
+        }
+    }
+}
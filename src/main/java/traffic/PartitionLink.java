@@ -0,0 +1,82 @@
+package traffic;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Length-prefixed, big-endian frames over the local socket between a {@link PartitionedSimulation}
+ * and one {@link PartitionWorker}. The coordinator sends a {@link #TICK} frame with the tick delta
+ * and the vehicles handed to the worker's region, and the worker answers with a report frame that
+ * carries the vehicles leaving its region; a {@link #STOP} frame ends the worker.
+ */
+final class PartitionLink implements Closeable {
+    static final byte TICK = 1;
+    static final byte STOP = 2;
+    /** Bytes of a report frame before its handoffs. */
+    static final int REPORT_HEADER_BYTES = Double.BYTES + Integer.BYTES + Long.BYTES + Integer.BYTES + 3 * Long.BYTES;
+
+    private final SocketChannel channel;
+    private ByteBuffer out = ByteBuffer.allocateDirect(1 << 16);
+    private ByteBuffer in = ByteBuffer.allocateDirect(1 << 16);
+
+    PartitionLink(SocketChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Clears the send buffer for a frame of {@code bytes} payload bytes and returns it.
+     */
+    ByteBuffer frame(int bytes) {
+        if (out.capacity() < bytes + Integer.BYTES) {
+            out = ByteBuffer.allocateDirect(Math.max(out.capacity() * 2, bytes + Integer.BYTES));
+        }
+        out.clear();
+        out.putInt(0);
+        return out;
+    }
+
+    /**
+     * Sends the frame built in the buffer {@link #frame} returned.
+     */
+    void send() throws IOException {
+        out.putInt(0, out.position() - Integer.BYTES);
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+    }
+
+    /**
+     * Blocks for the next frame and returns its payload, valid until the next call.
+     */
+    ByteBuffer receive() throws IOException {
+        in.clear().limit(Integer.BYTES);
+        readFully();
+        int length = in.getInt(0);
+        if (length < 0) {
+            throw new IOException("Corrupt partition frame length " + length);
+        }
+        if (in.capacity() < length) {
+            in = ByteBuffer.allocateDirect(Math.max(in.capacity() * 2, length));
+        }
+        in.clear().limit(length);
+        readFully();
+        return in.flip();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void readFully() throws IOException {
+        while (in.hasRemaining()) {
+            if (channel.read(in) < 0) {
+                throw new EOFException("Partition link closed");
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package traffic;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Process that simulates one region of a {@link PartitionedSimulation}. It loads the scenario,
+ * repeats the coordinator's partition to find its region, connects back over a Unix domain socket
+ * and then runs one engine tick per {@link PartitionLink#TICK} frame until told to stop.
+ *
+ * <pre>
+ * java -cp ... traffic.PartitionWorker &lt;scenario&gt; &lt;regions&gt; &lt;region&gt; &lt;socket&gt; &lt;seed&gt;
+ * </pre>
+ */
+public final class PartitionWorker {
+    private final NetworkPartition.Region region;
+    private final SimulationEngine engine;
+    /** Region road id of each scenario road, -1 for roads outside the region. */
+    private final int[] localRoads;
+    private final int[] globalRoads;
+    private final Handoffs arrivals = new Handoffs();
+    private final Handoffs leaving = new Handoffs();
+
+    PartitionWorker(NetworkPartition.Region region, int scenarioRoads, long seed) {
+        this.region = region;
+        this.engine = region.toBuilder().withSeed(regionSeed(seed, region.index())).build();
+        this.localRoads = new int[scenarioRoads];
+        this.globalRoads = new int[region.roadCount()];
+        Arrays.fill(localRoads, -1);
+        for (int local = 0; local < globalRoads.length; local++) {
+            globalRoads[local] = region.globalRoad(local);
+            localRoads[globalRoads[local]] = local;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 5) {
+            System.err.println("Usage: PartitionWorker <scenario> <regions> <region> <socket> <seed>");
+            System.exit(2);
+        }
+        Scenario scenario = Scenario.load(Path.of(args[0]));
+        NetworkPartition partition = NetworkPartition.of(scenario, Integer.parseInt(args[1]));
+        int index = Integer.parseInt(args[2]);
+        PartitionWorker worker = new PartitionWorker(partition.region(index), scenario.roadCount(),
+                Long.parseLong(args[4]));
+        SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        channel.connect(UnixDomainSocketAddress.of(Path.of(args[3])));
+        try (PartitionLink link = new PartitionLink(channel)) {
+            link.frame(Integer.BYTES).putInt(index);
+            link.send();
+            worker.serve(link);
+        }
+    }
+
+    /**
+     * Seed of the engine of region {@code index}, so regions draw different spawns from one run seed.
+     */
+    static long regionSeed(long seed, int index) {
+        return seed ^ (index * 0x9E3779B97F4A7C15L);
+    }
+
+    /**
+     * Answers tick frames until a stop frame arrives.
+     */
+    void serve(PartitionLink link) throws IOException {
+        while (true) {
+            ByteBuffer frame = link.receive();
+            byte type = frame.get();
+            if (type == PartitionLink.STOP) {
+                return;
+            }
+            if (type != PartitionLink.TICK) {
+                throw new IOException("Unknown partition frame type " + type);
+            }
+            double deltaSeconds = frame.getDouble();
+            arrivals.clear();
+            arrivals.read(frame);
+            tick(deltaSeconds);
+            ByteBuffer report = link.frame(PartitionLink.REPORT_HEADER_BYTES + Integer.BYTES
+                    + leaving.size() * Handoffs.RECORD_BYTES);
+            report.putDouble(engine.getSimTimeSeconds())
+                    .putInt(engine.getVehicleCount())
+                    .putLong(engine.getTotalDepartures())
+                    .putInt(engine.pendingHandoffs())
+                    .putLong(engine.handoffsOut())
+                    .putLong(engine.handoffsIn())
+                    .putLong(engine.vehiclesCreated());
+            leaving.write(report);
+            link.send();
+        }
+    }
+
+    /**
+     * Admits {@link #arrivals}, which carry scenario road ids, runs one tick and leaves the vehicles
+     * handed off during it in {@link #leaving}, with scenario road ids.
+     */
+    void tick(double deltaSeconds) {
+        arrivals.remapRoads(localRoads);
+        for (int i = 0; i < arrivals.size(); i++) {
+            if (arrivals.road(i) < 0) {
+                throw new IllegalStateException("Region " + region.index() + " was handed a vehicle for a road it does not own");
+            }
+        }
+        engine.acceptHandoffs(arrivals);
+        engine.update(deltaSeconds);
+        leaving.clear();
+        engine.drainHandoffs(leaving);
+        leaving.remapRoads(globalRoads);
+    }
+
+    SimulationEngine engine() {
+        return engine;
+    }
+}
@@ -0,0 +1,395 @@
+package traffic;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.StandardProtocolFamily;
+import java.net.URISyntaxException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Runs a scenario too large for one process as several {@link PartitionWorker} processes on the
+ * local machine, one per region of a {@link NetworkPartition}. Every tick is a barrier: each worker
+ * gets the tick delta and the vehicles entering its region, runs one tick, and reports back the
+ * vehicles that left it, which go out with the next tick. Frames travel over Unix domain sockets,
+ * one batch per worker per tick, and the coordinator only relays handoffs, so vehicle state lives
+ * in the workers alone.
+ *
+ * <pre>{@code
+ * try (PartitionedSimulation run = PartitionedSimulation.builder(Path.of("metro.scenario"))
+ *         .withRegions(4)
+ *         .withSeed(7)
+ *         .start()) {
+ *     run.step(0.05, 72_000);
+ *     long departures = run.totalDepartures();
+ * }
+ * }</pre>
+ *
+ * <p>A vehicle handed off enters its next road at the start of the following tick, when it would
+ * have moved onto it in a single engine too. Two things differ from one engine over the whole
+ * network: a vehicle whose next road is full waits in the receiving region rather than at the end
+ * of the road it came from, so queues do not spill back across a boundary, and the receiving region
+ * routes it on to an exit of its own choosing. Runs are deterministic for a given scenario, region
+ * count and seed.
+ */
+public final class PartitionedSimulation implements AutoCloseable {
+    private final NetworkPartition partition;
+    private final Path directory;
+    private final List<Process> processes;
+    private final PartitionLink[] links;
+    /** Vehicles going out to each region with the next tick. */
+    private Handoffs[] pending;
+    /** Vehicles collected for each region during the current tick. */
+    private Handoffs[] collecting;
+    private final Handoffs received = new Handoffs();
+    private final RegionStats[] stats;
+    private long ticks;
+
+    private PartitionedSimulation(NetworkPartition partition, Path directory, List<Process> processes,
+                                  PartitionLink[] links) {
+        this.partition = partition;
+        this.directory = directory;
+        this.processes = processes;
+        this.links = links;
+        int regions = partition.regionCount();
+        this.pending = new Handoffs[regions];
+        this.collecting = new Handoffs[regions];
+        this.stats = new RegionStats[regions];
+        for (int region = 0; region < regions; region++) {
+            pending[region] = new Handoffs();
+            collecting[region] = new Handoffs();
+            stats[region] = new RegionStats(region, 0, 0, 0, 0, 0, 0, 0);
+        }
+    }
+
+    public static Builder builder(Path scenario) {
+        return new Builder(scenario);
+    }
+
+    /**
+     * Runs {@code count} ticks of {@code deltaSeconds} in every region.
+     *
+     * @throws IOException if a worker cannot be reached; the run is unusable afterwards
+     */
+    public void step(double deltaSeconds, int count) throws IOException {
+        if (!(deltaSeconds > 0) || count < 0) {
+            throw new IllegalArgumentException("deltaSeconds must be positive and count at least 0");
+        }
+        for (int tick = 0; tick < count; tick++) {
+            tick(deltaSeconds);
+        }
+    }
+
+    public int regionCount() {
+        return partition.regionCount();
+    }
+
+    public NetworkPartition partition() {
+        return partition;
+    }
+
+    public long ticks() {
+        return ticks;
+    }
+
+    /**
+     * Each region's counters as of the last tick.
+     */
+    public List<RegionStats> stats() {
+        return List.of(stats);
+    }
+
+    public double simTimeSeconds() {
+        return stats[0].simSeconds();
+    }
+
+    public long totalVehicles() {
+        long total = 0;
+        for (RegionStats region : stats) {
+            total += region.vehicles();
+        }
+        return total;
+    }
+
+    public long totalDepartures() {
+        long total = 0;
+        for (RegionStats region : stats) {
+            total += region.departures();
+        }
+        return total;
+    }
+
+    /**
+     * Vehicles between two regions: handed off but not on a road yet, whether still with the
+     * coordinator or waiting for room in the region they were handed to.
+     */
+    public long vehiclesInTransit() {
+        long total = 0;
+        for (int region = 0; region < stats.length; region++) {
+            total += pending[region].size() + stats[region].pendingHandoffs();
+        }
+        return total;
+    }
+
+    /**
+     * Stops every worker and removes the socket directory. Workers that do not exit within ten
+     * seconds are killed.
+     */
+    @Override
+    public void close() throws IOException {
+        for (PartitionLink link : links) {
+            if (link == null) {
+                continue;
+            }
+            try {
+                link.frame(1).put(PartitionLink.STOP);
+                link.send();
+            } catch (IOException ignored) {
+                // The worker is gone already; it is reaped below.
+            }
+            link.close();
+        }
+        stopProcesses(processes);
+        deleteDirectory(directory);
+    }
+
+    private void tick(double deltaSeconds) throws IOException {
+        for (int region = 0; region < links.length; region++) {
+            Handoffs arrivals = pending[region];
+            ByteBuffer frame = links[region].frame(1 + Double.BYTES + Integer.BYTES
+                    + arrivals.size() * Handoffs.RECORD_BYTES);
+            frame.put(PartitionLink.TICK).putDouble(deltaSeconds);
+            arrivals.write(frame);
+            links[region].send();
+            arrivals.clear();
+        }
+        for (int region = 0; region < links.length; region++) {
+            ByteBuffer report = links[region].receive();
+            stats[region] = new RegionStats(region, report.getDouble(), report.getInt(), report.getLong(),
+                    report.getInt(), report.getLong(), report.getLong(), report.getLong());
+            received.clear();
+            received.read(report);
+            for (int i = 0; i < received.size(); i++) {
+                collecting[partition.regionOf(received.road(i))].add(received, i);
+            }
+        }
+        Handoffs[] sent = pending;
+        pending = collecting;
+        collecting = sent;
+        ticks++;
+    }
+
+    private static void stopProcesses(List<Process> processes) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        for (Process process : processes) {
+            try {
+                long left = deadline - System.nanoTime();
+                if (left <= 0 || !process.waitFor(left, TimeUnit.NANOSECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Counters one worker reports after each tick. Vehicles created count spawns and admitted
+     * handoffs, so over all regions they equal vehicles on the roads plus departures plus handoffs
+     * out.
+     */
+    public record RegionStats(
+            int region,
+            double simSeconds,
+            int vehicles,
+            long departures,
+            int pendingHandoffs,
+            long handoffsOut,
+            long handoffsIn,
+            long vehiclesCreated
+    ) {
+    }
+
+    public static final class Builder {
+        private final Path scenario;
+        private int regions = 2;
+        private long seed = 1;
+        private List<String> jvmOptions = List.of();
+        private Duration startTimeout = Duration.ofSeconds(60);
+        private Path workingDirectory;
+
+        private Builder(Path scenario) {
+            this.scenario = Objects.requireNonNull(scenario);
+        }
+
+        public Builder withRegions(int regions) {
+            if (regions < 1) {
+                throw new IllegalArgumentException("regions must be positive");
+            }
+            this.regions = regions;
+            return this;
+        }
+
+        /**
+         * Seeds the run; each region's engine gets its own seed derived from this one.
+         */
+        public Builder withSeed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * Options for every worker JVM, such as {@code -Xmx2g}.
+         */
+        public Builder withJvmOptions(String... options) {
+            this.jvmOptions = List.of(options);
+            return this;
+        }
+
+        /**
+         * How long the workers may take to load the scenario and connect.
+         */
+        public Builder withStartTimeout(Duration timeout) {
+            if (timeout.isNegative() || timeout.isZero()) {
+                throw new IllegalArgumentException("timeout must be positive");
+            }
+            this.startTimeout = timeout;
+            return this;
+        }
+
+        /**
+         * Directory in which the run creates its socket directory, with the coordinator socket and
+         * the worker logs; {@code java.io.tmpdir} by default. Unix socket paths are limited to
+         * about a hundred characters, so keep it short.
+         */
+        public Builder withWorkingDirectory(Path directory) {
+            this.workingDirectory = Objects.requireNonNull(directory);
+            return this;
+        }
+
+        /**
+         * Partitions the scenario, launches one worker process per region and waits until all of
+         * them have connected.
+         *
+         * @throws IOException if the scenario cannot be read or a worker fails to start; the log
+         *                     of a worker that exited is part of the message
+         */
+        public PartitionedSimulation start() throws IOException {
+            NetworkPartition partition = NetworkPartition.of(Scenario.load(scenario), regions);
+            Path directory = workingDirectory == null
+                    ? Files.createTempDirectory("traffic-partitions")
+                    : Files.createTempDirectory(workingDirectory, "traffic-partitions");
+            Path socket = directory.resolve("coordinator.sock");
+            List<Process> processes = new ArrayList<>(regions);
+            PartitionLink[] links = new PartitionLink[regions];
+            try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+                server.bind(UnixDomainSocketAddress.of(socket));
+                server.configureBlocking(false);
+                for (int region = 0; region < regions; region++) {
+                    processes.add(launch(region, socket, directory.resolve("region-" + region + ".log")));
+                }
+                long deadline = System.nanoTime() + startTimeout.toNanos();
+                int connected = 0;
+                while (connected < regions) {
+                    SocketChannel channel = server.accept();
+                    if (channel == null) {
+                        checkAlive(processes, directory, deadline);
+                        pause();
+                        continue;
+                    }
+                    channel.configureBlocking(true);
+                    PartitionLink link = new PartitionLink(channel);
+                    int region = link.receive().getInt();
+                    if (region < 0 || region >= regions || links[region] != null) {
+                        link.close();
+                        throw new IOException("Unexpected worker for region " + region);
+                    }
+                    links[region] = link;
+                    connected++;
+                }
+            } catch (IOException | RuntimeException e) {
+                for (PartitionLink link : links) {
+                    if (link != null) {
+                        link.close();
+                    }
+                }
+                processes.forEach(Process::destroyForcibly);
+                stopProcesses(processes);
+                deleteDirectory(directory);
+                throw e;
+            }
+            return new PartitionedSimulation(partition, directory, processes, links);
+        }
+
+        private Process launch(int region, Path socket, Path log) throws IOException {
+            List<String> command = new ArrayList<>();
+            command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+            command.addAll(jvmOptions);
+            command.addAll(Arrays.asList("-cp", classPath(), PartitionWorker.class.getName(), scenario.toString(),
+                    Integer.toString(regions), Integer.toString(region), socket.toString(), Long.toString(seed)));
+            return new ProcessBuilder(command)
+                    .redirectErrorStream(true)
+                    .redirectOutput(log.toFile())
+                    .start();
+        }
+
+        private static void pause() throws InterruptedIOException {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while starting workers");
+            }
+        }
+
+        /**
+         * Fails if a worker exited or time is up.
+         */
+        private static void checkAlive(List<Process> processes, Path directory, long deadline) throws IOException {
+            for (int region = 0; region < processes.size(); region++) {
+                if (!processes.get(region).isAlive()) {
+                    throw new IOException("Worker for region " + region + " exited with "
+                            + processes.get(region).exitValue() + ":\n"
+                            + Files.readString(directory.resolve("region-" + region + ".log")));
+                }
+            }
+            if (System.nanoTime() > deadline) {
+                throw new IOException("Workers did not connect in time");
+            }
+        }
+
+        /**
+         * Where the worker class was loaded from, a class directory or a jar; the workers need
+         * nothing else.
+         */
+        private static String classPath() throws IOException {
+            try {
+                return Path.of(PartitionWorker.class.getProtectionDomain().getCodeSource().getLocation().toURI())
+                        .toString();
+            } catch (URISyntaxException e) {
+                throw new IOException("Cannot locate the worker classes", e);
+            }
+        }
+    }
+}
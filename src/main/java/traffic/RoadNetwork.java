@@ -0,0 +1,415 @@
+package traffic;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Directed graph of road segments joined at nodes, with any number of signalized intersections.
+ * Roads and intersections are identified by their index in {@link #roads()} and
+ * {@link #intersections()}. Connectivity and signal control are flattened into compressed
+ * adjacency arrays so lookups stay cheap for grids with thousands of links.
+ */
+public final class RoadNetwork {
+    private final List<SimulationEngine.Road> roads;
+    private final List<SimulationEngine.Intersection> intersections;
+    private final Map<SimulationEngine.Road, Integer> roadIds;
+    private final int[] roadFrom;
+    private final int[] roadTo;
+    private final boolean[] closable;
+    private final double[] nodeX;
+    private final double[] nodeY;
+    private final int[] successorStart;
+    private final int[] successors;
+    private final int[] exitRoads;
+    private final int[] controlStart;
+    private final int[] controlRoad;
+    private final int[] controlIntersection;
+    private final double[] controlStopLine;
+
+    private RoadNetwork(Builder builder, int[] roadFrom, int[] roadTo, double[] nodeX, double[] nodeY) {
+        this.roads = List.copyOf(builder.roads);
+        this.intersections = List.copyOf(builder.intersections);
+        this.roadFrom = roadFrom;
+        this.roadTo = roadTo;
+        this.nodeX = nodeX;
+        this.nodeY = nodeY;
+        this.roadIds = new IdentityHashMap<>(roads.size());
+        this.closable = new boolean[roads.size()];
+        for (int id = 0; id < roads.size(); id++) {
+            roadIds.put(roads.get(id), id);
+            closable[id] = builder.closable.contains(roads.get(id));
+        }
+
+        int[][] outgoing = groupByNode(roadFrom, nodeX.length);
+        successorStart = new int[roads.size() + 1];
+        int[] successorBuffer = new int[roads.size() * 4];
+        int count = 0;
+        List<Integer> exits = new ArrayList<>();
+        for (int id = 0; id < roads.size(); id++) {
+            successorStart[id] = count;
+            for (int next : outgoing[roadTo[id]]) {
+                if (roadTo[next] == roadFrom[id] && roadFrom[next] == roadTo[id]) {
+                    continue;
+                }
+                if (count == successorBuffer.length) {
+                    successorBuffer = Arrays.copyOf(successorBuffer, count * 2);
+                }
+                successorBuffer[count++] = next;
+            }
+            if (count == successorStart[id]) {
+                exits.add(id);
+            }
+        }
+        successorStart[roads.size()] = count;
+        successors = Arrays.copyOf(successorBuffer, count);
+        exitRoads = exits.stream().mapToInt(Integer::intValue).toArray();
+
+        List<List<double[]>> controls = new ArrayList<>(roads.size());
+        for (int id = 0; id < roads.size(); id++) {
+            controls.add(new ArrayList<>(1));
+        }
+        for (int index = 0; index < intersections.size(); index++) {
+            SimulationEngine.Intersection intersection = intersections.get(index);
+            for (SimulationEngine.Road approach : intersection.approaches()) {
+                int id = idOf(approach);
+                controls.get(id).add(new double[]{intersection.positionAlong(approach), index});
+            }
+        }
+        controlStart = new int[roads.size() + 1];
+        int controlCount = 0;
+        for (List<double[]> list : controls) {
+            controlCount += list.size();
+        }
+        controlRoad = new int[controlCount];
+        controlIntersection = new int[controlCount];
+        controlStopLine = new double[controlCount];
+        int k = 0;
+        for (int id = 0; id < roads.size(); id++) {
+            controlStart[id] = k;
+            List<double[]> list = controls.get(id);
+            list.sort((a, b) -> Double.compare(a[0], b[0]));
+            for (double[] entry : list) {
+                controlRoad[k] = id;
+                controlStopLine[k] = entry[0];
+                controlIntersection[k] = (int) entry[1];
+                k++;
+            }
+        }
+        controlStart[roads.size()] = k;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Square grid of two-way streets with a signal at every interior crossing and entry/exit stubs
+     * on the boundary. Intended for scale tests; {@code rows * cols} nodes yield roughly
+     * {@code 4 * rows * cols} links.
+     */
+    public static RoadNetwork grid(int rows, int cols, double spacing, int lanes, double speedLimit) {
+        if (rows < 1 || cols < 1) {
+            throw new IllegalArgumentException("grid needs at least one row and column");
+        }
+        Builder builder = builder();
+        int[][] nodes = new int[rows][cols];
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                nodes[r][c] = builder.addNode((c + 1) * spacing, (r + 1) * spacing);
+            }
+        }
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                if (c + 1 < cols) {
+                    builder.addTwoWayRoad("E " + r + "," + c, "W " + r + "," + (c + 1),
+                            nodes[r][c], nodes[r][c + 1], lanes, speedLimit);
+                }
+                if (r + 1 < rows) {
+                    builder.addTwoWayRoad("S " + r + "," + c, "N " + (r + 1) + "," + c,
+                            nodes[r][c], nodes[r + 1][c], lanes, speedLimit);
+                }
+                boolean boundary = r == 0 || c == 0 || r == rows - 1 || c == cols - 1;
+                if (boundary) {
+                    double dx = c == 0 ? -1 : c == cols - 1 ? 1 : 0;
+                    double dy = dx != 0 ? 0 : r == 0 ? -1 : 1;
+                    int outside = builder.addNode((c + 1) * spacing + dx * spacing / 2, (r + 1) * spacing + dy * spacing / 2);
+                    builder.addTwoWayRoad("Entry " + r + "," + c, "Exit " + r + "," + c,
+                            outside, nodes[r][c], lanes, speedLimit);
+                }
+            }
+        }
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                builder.signalizeNode(nodes[r][c]);
+            }
+        }
+        return builder.build();
+    }
+
+    public List<SimulationEngine.Road> roads() {
+        return roads;
+    }
+
+    public List<SimulationEngine.Intersection> intersections() {
+        return intersections;
+    }
+
+    public int roadCount() {
+        return roads.size();
+    }
+
+    public int nodeCount() {
+        return nodeX.length;
+    }
+
+    public SimulationEngine.Road road(int id) {
+        return roads.get(id);
+    }
+
+    /**
+     * Id of {@code road} in this network.
+     *
+     * @throws IllegalArgumentException if the road is not part of the network
+     */
+    public int idOf(SimulationEngine.Road road) {
+        Integer id = roadIds.get(road);
+        if (id == null) {
+            throw new IllegalArgumentException("Road is not part of this network: " + road.getName());
+        }
+        return id;
+    }
+
+    public int fromNode(int roadId) {
+        return roadFrom[roadId];
+    }
+
+    public int toNode(int roadId) {
+        return roadTo[roadId];
+    }
+
+    public Point2D.Double nodePosition(int node) {
+        return new Point2D.Double(nodeX[node], nodeY[node]);
+    }
+
+    public int successorCount(int roadId) {
+        return successorStart[roadId + 1] - successorStart[roadId];
+    }
+
+    public int successor(int roadId, int index) {
+        return successors[successorStart[roadId] + index];
+    }
+
+    /**
+     * Roads without successors; vehicles leave the network at their end.
+     */
+    int[] exitRoads() {
+        return exitRoads;
+    }
+
+    boolean isClosable(int roadId) {
+        return closable[roadId];
+    }
+
+    int controlStart(int roadId) {
+        return controlStart[roadId];
+    }
+
+    int controlEnd(int roadId) {
+        return controlStart[roadId + 1];
+    }
+
+    int controlCount() {
+        return controlIntersection.length;
+    }
+
+    int controlRoad(int control) {
+        return controlRoad[control];
+    }
+
+    int controlIntersection(int control) {
+        return controlIntersection[control];
+    }
+
+    double controlStopLine(int control) {
+        return controlStopLine[control];
+    }
+
+    private static int[][] groupByNode(int[] nodes, int nodeCount) {
+        int[] counts = new int[nodeCount];
+        for (int node : nodes) {
+            counts[node]++;
+        }
+        int[][] grouped = new int[nodeCount][];
+        for (int node = 0; node < nodeCount; node++) {
+            grouped[node] = new int[counts[node]];
+            counts[node] = 0;
+        }
+        for (int id = 0; id < nodes.length; id++) {
+            grouped[nodes[id]][counts[nodes[id]]++] = id;
+        }
+        return grouped;
+    }
+
+    /**
+     * Collects nodes, roads and signals. Roads added as {@link SimulationEngine.Road} instances are
+     * attached to nodes by matching their end points, so segments that share a coordinate connect.
+     */
+    public static final class Builder {
+        private final List<Point2D.Double> nodes = new ArrayList<>();
+        private final List<SimulationEngine.Road> roads = new ArrayList<>();
+        private final List<int[]> endpoints = new ArrayList<>();
+        private final Set<SimulationEngine.Road> closable = Collections.newSetFromMap(new IdentityHashMap<>());
+        private final List<SimulationEngine.Intersection> intersections = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        public int addNode(double x, double y) {
+            nodes.add(new Point2D.Double(x, y));
+            return nodes.size() - 1;
+        }
+
+        public SimulationEngine.Road addRoad(SimulationEngine.Road road) {
+            roads.add(Objects.requireNonNull(road));
+            endpoints.add(new int[]{-1, -1});
+            return road;
+        }
+
+        public SimulationEngine.Road addRoad(String name, int fromNode, int toNode, int lanes, double speedLimit) {
+            return addRoad(name, fromNode, toNode, lanes, speedLimit, 0);
+        }
+
+        /**
+         * Adds both directions between two nodes, each shifted to the right of its direction of
+         * travel so the carriageways do not overlap on screen.
+         */
+        public Builder addTwoWayRoad(String forwardName, String backwardName, int a, int b, int lanes, double speedLimit) {
+            double offset = lanes * SimulationEngine.Road.LANE_WIDTH / 2 + 1;
+            addRoad(forwardName, a, b, lanes, speedLimit, offset);
+            addRoad(backwardName, b, a, lanes, speedLimit, offset);
+            return this;
+        }
+
+        public Builder markLaneClosable(SimulationEngine.Road road) {
+            closable.add(Objects.requireNonNull(road));
+            return this;
+        }
+
+        /**
+         * Adds a two-phase signal at {@code point}; {@code mainApproaches} share the main green and
+         * {@code crossApproaches} the cross green.
+         */
+        public SimulationEngine.Intersection addSignal(Point2D.Double point,
+                                                       List<SimulationEngine.Road> mainApproaches,
+                                                       List<SimulationEngine.Road> crossApproaches) {
+            return addSignal(new SimulationEngine.Intersection(mainApproaches, crossApproaches, point));
+        }
+
+        /**
+         * Adds a two-phase signal whose green lengths come from {@code plan} rather than the default
+         * fixed-time plan.
+         */
+        public SimulationEngine.Intersection addSignal(Point2D.Double point,
+                                                       List<SimulationEngine.Road> mainApproaches,
+                                                       List<SimulationEngine.Road> crossApproaches,
+                                                       SignalController plan) {
+            return addSignal(new SimulationEngine.Intersection(mainApproaches, crossApproaches, point, plan));
+        }
+
+        private SimulationEngine.Intersection addSignal(SimulationEngine.Intersection intersection) {
+            intersections.add(intersection);
+            return intersection;
+        }
+
+        /**
+         * Signalizes a node from the roads added so far: approaches running mostly east-west get
+         * the main phase, the rest the cross phase. Nodes with fewer than three approaches are
+         * left unsignalized.
+         */
+        public SimulationEngine.Intersection signalizeNode(int node) {
+            List<SimulationEngine.Road> main = new ArrayList<>();
+            List<SimulationEngine.Road> cross = new ArrayList<>();
+            for (int i = 0; i < roads.size(); i++) {
+                if (endpoints.get(i)[1] != node) {
+                    continue;
+                }
+                SimulationEngine.Road road = roads.get(i);
+                double dx = Math.abs(road.end().x - road.start().x);
+                double dy = Math.abs(road.end().y - road.start().y);
+                (dx >= dy ? main : cross).add(road);
+            }
+            if (main.size() + cross.size() < 3) {
+                return null;
+            }
+            return addSignal(nodes.get(node), main, cross);
+        }
+
+        public RoadNetwork build() {
+            Map<Point2D.Double, Integer> nodeByPoint = new HashMap<>();
+            for (int node = 0; node < nodes.size(); node++) {
+                nodeByPoint.putIfAbsent(nodes.get(node), node);
+            }
+            List<Point2D.Double> resolvedNodes = new ArrayList<>(nodes);
+            int[] from = new int[roads.size()];
+            int[] to = new int[roads.size()];
+            for (int i = 0; i < roads.size(); i++) {
+                int[] ends = endpoints.get(i);
+                SimulationEngine.Road road = roads.get(i);
+                from[i] = ends[0] >= 0 ? ends[0] : resolveNode(nodeByPoint, resolvedNodes, road.start());
+                to[i] = ends[1] >= 0 ? ends[1] : resolveNode(nodeByPoint, resolvedNodes, road.end());
+            }
+            double[] x = new double[resolvedNodes.size()];
+            double[] y = new double[resolvedNodes.size()];
+            for (int node = 0; node < x.length; node++) {
+                x[node] = resolvedNodes.get(node).x;
+                y[node] = resolvedNodes.get(node).y;
+            }
+            Set<SimulationEngine.Road> known = Collections.newSetFromMap(new IdentityHashMap<>(roads.size()));
+            known.addAll(roads);
+            for (SimulationEngine.Intersection intersection : intersections) {
+                for (SimulationEngine.Road approach : intersection.approaches()) {
+                    if (!known.contains(approach)) {
+                        throw new IllegalStateException("Signal approach is not part of the network: " + approach.getName());
+                    }
+                }
+            }
+            return new RoadNetwork(this, from, to, x, y);
+        }
+
+        SimulationEngine.Road addRoad(String name, int fromNode, int toNode, int lanes, double speedLimit, double rightOffset) {
+            Point2D.Double a = nodes.get(fromNode);
+            Point2D.Double b = nodes.get(toNode);
+            double length = a.distance(b);
+            double nx = length == 0 ? 0 : -(b.y - a.y) / length;
+            double ny = length == 0 ? 0 : (b.x - a.x) / length;
+            SimulationEngine.Road road = new SimulationEngine.Road(
+                    new Point2D.Double(a.x + nx * rightOffset, a.y + ny * rightOffset),
+                    new Point2D.Double(b.x + nx * rightOffset, b.y + ny * rightOffset),
+                    lanes,
+                    speedLimit,
+                    name);
+            roads.add(road);
+            endpoints.add(new int[]{fromNode, toNode});
+            return road;
+        }
+
+        private static int resolveNode(Map<Point2D.Double, Integer> nodeByPoint, List<Point2D.Double> nodes, Point2D.Double point) {
+            Integer existing = nodeByPoint.get(point);
+            if (existing != null) {
+                return existing;
+            }
+            Point2D.Double copy = new Point2D.Double(point.x, point.y);
+            nodes.add(copy);
+            nodeByPoint.put(copy, nodes.size() - 1);
+            return nodes.size() - 1;
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package traffic;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Interned vehicle routes over a {@link RoadNetwork}. A route is a sequence of road ids stored in
+ * one flat array, so vehicles only carry a route id and a step. Routes are fastest paths by free-flow
+ * travel time and are computed lazily, the first time a vehicle needs a given origin and exit, so
+ * large networks do not pay for all-pairs paths up front. Paths to exits come from one reverse
+ * shortest-path tree per exit, shared by every origin, so interning a new origin and exit pair is a
+ * walk down that tree rather than a fresh search.
+ */
+final class RouteTable {
+    static final int NO_ROUTE = -1;
+
+    private final RoadNetwork network;
+    private final int[][] reachableExits;
+    private final int[][] routesToExits;
+    private final int[] predecessorStart;
+    private final int[] predecessors;
+    /** Per exit road, the next road on the fastest path towards it, or -1; built on first use. */
+    private final int[][] nextHopToExit;
+    private int[] steps = new int[256];
+    private int stepCount;
+    private int[] routeOffset = new int[64];
+    private int[] routeLength = new int[64];
+    private int routeCount;
+
+    private final double[] cost;
+    private final int[] previous;
+    private final int[] heap;
+    private final int[] heapPosition;
+
+    RouteTable(RoadNetwork network) {
+        this.network = network;
+        int roadCount = network.roadCount();
+        this.reachableExits = new int[roadCount][];
+        this.routesToExits = new int[roadCount][];
+        this.cost = new double[roadCount];
+        this.previous = new int[roadCount];
+        this.heap = new int[roadCount];
+        this.heapPosition = new int[roadCount];
+        this.nextHopToExit = new int[roadCount][];
+        this.predecessorStart = new int[roadCount + 1];
+        for (int road = 0; road < roadCount; road++) {
+            for (int i = 0; i < network.successorCount(road); i++) {
+                predecessorStart[network.successor(road, i) + 1]++;
+            }
+        }
+        for (int road = 0; road < roadCount; road++) {
+            predecessorStart[road + 1] += predecessorStart[road];
+        }
+        this.predecessors = new int[predecessorStart[roadCount]];
+        int[] fill = Arrays.copyOf(predecessorStart, roadCount);
+        for (int road = 0; road < roadCount; road++) {
+            for (int i = 0; i < network.successorCount(road); i++) {
+                predecessors[fill[network.successor(road, i)]++] = road;
+            }
+        }
+    }
+
+    /**
+     * Picks one of the exits reachable from {@code origin} uniformly and returns the route to it.
+     * The random source is only consulted when there is an actual choice.
+     */
+    int randomRoute(int origin, Random random) {
+        int[] exits = reachableExits(origin);
+        if (exits.length == 0) {
+            return NO_ROUTE;
+        }
+        int choice = exits.length == 1 ? 0 : random.nextInt(exits.length);
+        return routeToExitAt(origin, choice);
+    }
+
+    /**
+     * Route from {@code origin} to {@code destination}, or {@link #NO_ROUTE} if unreachable.
+     */
+    int routeTo(int origin, int destination) {
+        int[] exits = reachableExits(origin);
+        int index = Arrays.binarySearch(exits, destination);
+        if (index >= 0) {
+            return routeToExitAt(origin, index);
+        }
+        shortestPaths(origin);
+        return cost[destination] == Double.POSITIVE_INFINITY ? NO_ROUTE : intern(destination);
+    }
+
+    /**
+     * Route from {@code origin} to the exit road {@code exit}, or {@link #NO_ROUTE} if {@code exit}
+     * is not an exit reachable from {@code origin}. Unlike {@link #routeTo}, this never searches
+     * once the origin's exits are known.
+     */
+    int routeToExit(int origin, int exit) {
+        int index = Arrays.binarySearch(reachableExits(origin), exit);
+        return index < 0 ? NO_ROUTE : routeToExitAt(origin, index);
+    }
+
+    int length(int route) {
+        return routeLength[route];
+    }
+
+    int roadAt(int route, int step) {
+        return steps[routeOffset[route] + step];
+    }
+
+    int routeCount() {
+        return routeCount;
+    }
+
+    /**
+     * Writes the interned routes and which origin and exit each belongs to, so route ids stay
+     * valid and later spawns intern the same ids as they would have. Search trees are recomputed
+     * on demand instead.
+     */
+    void writeTo(Checkpoint.Out out) throws IOException {
+        out.putInt(routeCount);
+        out.putInts(routeLength, routeCount);
+        for (int route = 0; route < routeCount; route++) {
+            for (int step = 0; step < routeLength[route]; step++) {
+                out.putInt(steps[routeOffset[route] + step]);
+            }
+        }
+        int origins = 0;
+        for (int[] routes : routesToExits) {
+            if (routes != null) {
+                origins++;
+            }
+        }
+        out.putInt(origins);
+        for (int origin = 0; origin < routesToExits.length; origin++) {
+            int[] routes = routesToExits[origin];
+            if (routes != null) {
+                out.putInt(origin);
+                out.putInt(routes.length);
+                out.putInts(routes, routes.length);
+            }
+        }
+    }
+
+    void readFrom(Checkpoint.In in) throws IOException {
+        routeCount = 0;
+        stepCount = 0;
+        int count = in.getCount();
+        int[] lengths = new int[count];
+        in.getInts(lengths, count);
+        for (int length : lengths) {
+            if (length < 0) {
+                throw new IOException("Corrupt checkpoint: negative route length");
+            }
+            int offset = reserve(length);
+            for (int step = 0; step < length; step++) {
+                int road = in.getInt();
+                if (road < 0 || road >= cost.length) {
+                    throw new IOException("Corrupt checkpoint: route through unknown road " + road);
+                }
+                steps[offset + step] = road;
+            }
+            register(offset, length);
+        }
+        for (int[] routes : routesToExits) {
+            if (routes != null) {
+                Arrays.fill(routes, NO_ROUTE);
+            }
+        }
+        int origins = in.getCount();
+        for (int i = 0; i < origins; i++) {
+            int origin = in.getInt();
+            if (origin < 0 || origin >= routesToExits.length) {
+                throw new IOException("Corrupt checkpoint: unknown origin road " + origin);
+            }
+            int exits = in.getCount();
+            if (reachableExits(origin).length != exits) {
+                throw new IOException("Corrupt checkpoint: origin " + origin + " reaches a different set of exits");
+            }
+            int[] routes = routesToExits[origin];
+            in.getInts(routes, exits);
+            for (int route : routes) {
+                if (route < NO_ROUTE || route >= routeCount) {
+                    throw new IOException("Corrupt checkpoint: unknown route " + route);
+                }
+            }
+        }
+    }
+
+    private int[] reachableExits(int origin) {
+        int[] exits = reachableExits[origin];
+        if (exits == null) {
+            shortestPaths(origin);
+            int[] candidates = network.exitRoads();
+            int count = 0;
+            int[] buffer = new int[candidates.length];
+            for (int exit : candidates) {
+                if (cost[exit] != Double.POSITIVE_INFINITY) {
+                    buffer[count++] = exit;
+                }
+            }
+            exits = Arrays.copyOf(buffer, count);
+            reachableExits[origin] = exits;
+            int[] routes = new int[count];
+            Arrays.fill(routes, NO_ROUTE);
+            routesToExits[origin] = routes;
+        }
+        return exits;
+    }
+
+    private int routeToExitAt(int origin, int exitIndex) {
+        int[] routes = routesToExits[origin];
+        if (routes[exitIndex] == NO_ROUTE) {
+            routes[exitIndex] = internToward(origin, reachableExits[origin][exitIndex]);
+        }
+        return routes[exitIndex];
+    }
+
+    /**
+     * Stores the path from {@code origin} to {@code exit} by following the exit's reverse tree.
+     */
+    private int internToward(int origin, int exit) {
+        int[] nextHop = nextHopToExit[exit];
+        if (nextHop == null) {
+            shortestPaths(exit, true);
+            nextHop = previous.clone();
+            nextHopToExit[exit] = nextHop;
+        }
+        int length = 0;
+        for (int road = origin; road >= 0; road = nextHop[road]) {
+            length++;
+        }
+        int offset = reserve(length);
+        int index = offset;
+        for (int road = origin; road >= 0; road = nextHop[road]) {
+            steps[index++] = road;
+        }
+        return register(offset, length);
+    }
+
+    /**
+     * Stores the path ending at {@code destination} from the last {@link #shortestPaths} run.
+     */
+    private int intern(int destination) {
+        int length = 0;
+        for (int road = destination; road >= 0; road = previous[road]) {
+            length++;
+        }
+        int offset = reserve(length);
+        int index = offset + length - 1;
+        for (int road = destination; road >= 0; road = previous[road]) {
+            steps[index--] = road;
+        }
+        return register(offset, length);
+    }
+
+    /**
+     * Makes room for {@code length} more steps and returns the offset they start at.
+     */
+    private int reserve(int length) {
+        if (stepCount + length > steps.length) {
+            steps = Arrays.copyOf(steps, Math.max(steps.length * 2, stepCount + length));
+        }
+        int offset = stepCount;
+        stepCount += length;
+        return offset;
+    }
+
+    private int register(int offset, int length) {
+        if (routeCount == routeOffset.length) {
+            routeOffset = Arrays.copyOf(routeOffset, routeCount * 2);
+            routeLength = Arrays.copyOf(routeLength, routeCount * 2);
+        }
+        routeOffset[routeCount] = offset;
+        routeLength[routeCount] = length;
+        return routeCount++;
+    }
+
+    private void shortestPaths(int origin) {
+        shortestPaths(origin, false);
+    }
+
+    /**
+     * Dijkstra over the road graph from {@code origin}, weighting each road by its free-flow travel
+     * time, using an indexed binary heap over preallocated arrays. With {@code reverse} the search
+     * follows predecessors instead, so {@code previous} ends up holding each road's next hop
+     * towards {@code origin}.
+     */
+    private void shortestPaths(int origin, boolean reverse) {
+        Arrays.fill(cost, Double.POSITIVE_INFINITY);
+        Arrays.fill(previous, -1);
+        Arrays.fill(heapPosition, -1);
+        int heapSize = 0;
+        cost[origin] = travelTime(origin);
+        heap[heapSize] = origin;
+        heapPosition[origin] = heapSize++;
+        while (heapSize > 0) {
+            int road = heap[0];
+            heapPosition[road] = -2;
+            heapSize--;
+            if (heapSize > 0) {
+                heap[0] = heap[heapSize];
+                heapPosition[heap[0]] = 0;
+                siftDown(0, heapSize);
+            }
+            int first = reverse ? predecessorStart[road] : 0;
+            int end = reverse ? predecessorStart[road + 1] : network.successorCount(road);
+            for (int i = first; i < end; i++) {
+                int next = reverse ? predecessors[i] : network.successor(road, i);
+                if (heapPosition[next] == -2) {
+                    continue;
+                }
+                double candidate = cost[road] + travelTime(next);
+                if (candidate < cost[next]) {
+                    cost[next] = candidate;
+                    previous[next] = road;
+                    if (heapPosition[next] == -1) {
+                        heap[heapSize] = next;
+                        heapPosition[next] = heapSize++;
+                    }
+                    siftUp(heapPosition[next]);
+                }
+            }
+        }
+    }
+
+    private double travelTime(int road) {
+        SimulationEngine.Road r = network.road(road);
+        return r.length() / Math.max(1e-6, r.speedLimit());
+    }
+
+    private void siftUp(int index) {
+        int item = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (cost[heap[parent]] <= cost[item]) {
+                break;
+            }
+            heap[index] = heap[parent];
+            heapPosition[heap[index]] = index;
+            index = parent;
+        }
+        heap[index] = item;
+        heapPosition[item] = index;
+    }
+
+    private void siftDown(int index, int size) {
+        int item = heap[index];
+        while (true) {
+            int child = index * 2 + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && cost[heap[child + 1]] < cost[heap[child]]) {
+                child++;
+            }
+            if (cost[heap[child]] >= cost[item]) {
+                break;
+            }
+            heap[index] = heap[child];
+            heapPosition[heap[index]] = index;
+            index = child;
+        }
+        heap[index] = item;
+        heapPosition[item] = index;
+    }
+}
@@ -0,0 +1,36 @@
+package traffic;
+
+/**
+ * The following rule of the engine before {@link CarFollowingModel}s: a vehicle takes the speed
+ * limit, cut to the fraction of it that its gap is of a safe gap of half its speed plus the minimum
+ * spacing, but never below a fifth, and reaches that speed within the tick. The engine does not
+ * run this through {@link #accelerate}; it keeps the original vehicle-by-vehicle lane pass, which
+ * measures each gap to where the leader ended up this tick, so runs and recordings from before the
+ * car-following models reproduce exactly.
+ */
+final class SafeGapFollowing implements CarFollowingModel {
+    static final SafeGapFollowing INSTANCE = new SafeGapFollowing(SimulationEngine.MIN_GAP_PIXELS);
+
+    /** Slowest a vehicle with any gap ahead is slowed to, as a fraction of its desired speed. */
+    static final double MIN_FACTOR = 0.2;
+
+    private final double spacing;
+
+    private SafeGapFollowing(double spacing) {
+        this.spacing = spacing;
+    }
+
+    @Override
+    public void accelerate(Platoon platoon, int count) {
+        double[] speed = platoon.speed();
+        double[] desired = platoon.desiredSpeed();
+        double[] gap = platoon.gap();
+        double[] acceleration = platoon.acceleration();
+        double step = Math.max(1e-6, platoon.deltaSeconds());
+        for (int i = 0; i < count; i++) {
+            double v = speed[i];
+            double factor = Math.min(1, Math.max(MIN_FACTOR, (gap[i] + spacing) / (v * 0.5 + spacing)));
+            acceleration[i] = (desired[i] * factor - v) / step;
+        }
+    }
+}
@@ -0,0 +1,970 @@
+package traffic;
+
+import java.awt.geom.Point2D;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A road network with its signal plans, spawn weights and knob settings, as a file. Load one with
+ * {@link SimulationEngineBuilder#fromScenario}.
+ *
+ * <p>The text form is line based; {@code #} starts a comment and names with spaces are quoted:
+ * <pre>
+ * traffic-scenario 1
+ * spawn-rate 30
+ * speed-limit 80
+ * lane-closure false
+ * node 80 220                        # nodes are numbered from 0 in order
+ * node 720 220
+ * road "Main Eastbound" 0 1 2 80 closable weight 0.7
+ * road Back 1 0 2 80 offset 13       # name, from, to, lanes, speed limit, then options
+ * signal 400 220 main "Main Eastbound" cross Crossing plan fixed 12 8
+ * </pre>
+ * A signal's plan is {@code fixed <main green> <cross green>}, {@code actuated <min> <max>} or
+ * {@code max-pressure <min> <max>}; without one it runs the engine's default. Roads weigh 1 for
+ * spawning unless given a weight, and their names must be unique.
+ *
+ * <p>The binary form holds the same data column by column, big-endian, so loading is a handful of
+ * bulk copies out of a memory-mapped file plus one string per road name, and a network of a
+ * hundred thousand links is ready in milliseconds. {@link #load} tells the forms apart by the
+ * binary magic number.
+ */
+public final class Scenario {
+    private static final int MAGIC = 0x54525343; // "TRSC"
+    private static final short VERSION = 1;
+    private static final String TEXT_HEADER = "traffic-scenario 1";
+    private static final byte CLOSABLE = 1;
+
+    private static final byte PLAN_DEFAULT = 0;
+    private static final byte PLAN_FIXED = 1;
+    private static final byte PLAN_ACTUATED = 2;
+    private static final byte PLAN_MAX_PRESSURE = 3;
+    private static final String[] PLAN_NAMES = {"default", "fixed", "actuated", "max-pressure"};
+
+    private final double spawnPerMinute;
+    private final double speedLimit;
+    private final boolean laneClosure;
+    private final double[] nodeX;
+    private final double[] nodeY;
+    private final String[] roadNames;
+    private final int[] roadFrom;
+    private final int[] roadTo;
+    private final int[] roadLanes;
+    private final double[] roadSpeed;
+    private final double[] roadOffset;
+    private final double[] roadWeight;
+    private final byte[] roadFlags;
+    private final double[] signalX;
+    private final double[] signalY;
+    private final byte[] signalPlan;
+    private final double[] planFirst;
+    private final double[] planSecond;
+    /** Approaches of signal {@code s} are {@code [approachEnd[s - 1], approachEnd[s])}, main ones first. */
+    private final int[] approachEnd;
+    private final int[] mainCount;
+    private final int[] approachRoad;
+
+    private Scenario(double spawnPerMinute, double speedLimit, boolean laneClosure, double[] nodeX, double[] nodeY,
+                     String[] roadNames, int[] roadFrom, int[] roadTo, int[] roadLanes, double[] roadSpeed,
+                     double[] roadOffset, double[] roadWeight, byte[] roadFlags, double[] signalX, double[] signalY,
+                     byte[] signalPlan, double[] planFirst, double[] planSecond, int[] approachEnd, int[] mainCount,
+                     int[] approachRoad) {
+        this.spawnPerMinute = spawnPerMinute;
+        this.speedLimit = speedLimit;
+        this.laneClosure = laneClosure;
+        this.nodeX = nodeX;
+        this.nodeY = nodeY;
+        this.roadNames = roadNames;
+        this.roadFrom = roadFrom;
+        this.roadTo = roadTo;
+        this.roadLanes = roadLanes;
+        this.roadSpeed = roadSpeed;
+        this.roadOffset = roadOffset;
+        this.roadWeight = roadWeight;
+        this.roadFlags = roadFlags;
+        this.signalX = signalX;
+        this.signalY = signalY;
+        this.signalPlan = signalPlan;
+        this.planFirst = planFirst;
+        this.planSecond = planSecond;
+        this.approachEnd = approachEnd;
+        this.mainCount = mainCount;
+        this.approachRoad = approachRoad;
+        validate();
+    }
+
+    /**
+     * Reads a scenario in either form.
+     */
+    public static Scenario load(Path path) throws IOException {
+        byte[] head = new byte[4];
+        try (var in = Files.newInputStream(path)) {
+            if (in.readNBytes(head, 0, 4) == 4 && ByteBuffer.wrap(head).getInt() == MAGIC) {
+                return readBinary(path);
+            }
+        }
+        return readText(path);
+    }
+
+    public static Scenario readText(Path path) throws IOException {
+        try (Reader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return readText(in);
+        }
+    }
+
+    public static Scenario parse(String text) {
+        try {
+            return readText(new StringReader(text));
+        } catch (IOException e) {
+            throw new AssertionError("StringReader does not fail", e);
+        }
+    }
+
+    /**
+     * Maps a binary scenario into memory and copies its columns out.
+     */
+    public static Scenario readBinary(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return decode(buffer, path);
+        }
+    }
+
+    /**
+     * Captures a built network, with every road weighing 1 for spawning, every signal on the
+     * engine's default plan and the knob settings of {@link SimulationConfig}.
+     */
+    public static Scenario of(RoadNetwork network) {
+        SimulationConfig config = SimulationConfig.getInstance();
+        int nodes = network.nodeCount();
+        double[] x = new double[nodes];
+        double[] y = new double[nodes];
+        for (int node = 0; node < nodes; node++) {
+            Point2D.Double position = network.nodePosition(node);
+            x[node] = position.x;
+            y[node] = position.y;
+        }
+        int roads = network.roadCount();
+        String[] names = new String[roads];
+        int[] from = new int[roads];
+        int[] to = new int[roads];
+        int[] lanes = new int[roads];
+        double[] speed = new double[roads];
+        double[] offset = new double[roads];
+        double[] weight = new double[roads];
+        byte[] flags = new byte[roads];
+        for (int id = 0; id < roads; id++) {
+            SimulationEngine.Road road = network.road(id);
+            names[id] = road.getName();
+            from[id] = network.fromNode(id);
+            to[id] = network.toNode(id);
+            lanes[id] = road.lanes();
+            speed[id] = road.speedLimit();
+            offset[id] = rightOffset(road, x[from[id]], y[from[id]], x[to[id]], y[to[id]]);
+            weight[id] = 1;
+            flags[id] = network.isClosable(id) ? CLOSABLE : 0;
+        }
+        List<SimulationEngine.Intersection> intersections = network.intersections();
+        int signals = intersections.size();
+        double[] sx = new double[signals];
+        double[] sy = new double[signals];
+        int[] ends = new int[signals];
+        int[] mains = new int[signals];
+        IntList approaches = new IntList();
+        for (int s = 0; s < signals; s++) {
+            SimulationEngine.Intersection intersection = intersections.get(s);
+            sx[s] = intersection.getPoint().x;
+            sy[s] = intersection.getPoint().y;
+            for (SimulationEngine.Road road : intersection.mainApproaches()) {
+                approaches.add(network.idOf(road));
+            }
+            mains[s] = intersection.mainApproaches().size();
+            for (SimulationEngine.Road road : intersection.crossApproaches()) {
+                approaches.add(network.idOf(road));
+            }
+            ends[s] = approaches.size();
+        }
+        return new Scenario(config.defaultSpawnPerMinute(), config.defaultSpeedLimit(), config.defaultLaneClosure(),
+                x, y, names, from, to, lanes, speed, offset, weight, flags, sx, sy, new byte[signals],
+                new double[signals], new double[signals], ends, mains, approaches.toArray());
+    }
+
+    public int nodeCount() {
+        return nodeX.length;
+    }
+
+    public int roadCount() {
+        return roadNames.length;
+    }
+
+    public int signalCount() {
+        return signalX.length;
+    }
+
+    double nodeX(int node) {
+        return nodeX[node];
+    }
+
+    double nodeY(int node) {
+        return nodeY[node];
+    }
+
+    String roadName(int road) {
+        return roadNames[road];
+    }
+
+    int roadFrom(int road) {
+        return roadFrom[road];
+    }
+
+    int roadTo(int road) {
+        return roadTo[road];
+    }
+
+    double roadWeight(int road) {
+        return roadWeight[road];
+    }
+
+    public double spawnPerMinute() {
+        return spawnPerMinute;
+    }
+
+    public double speedLimit() {
+        return speedLimit;
+    }
+
+    public boolean laneClosure() {
+        return laneClosure;
+    }
+
+    /**
+     * Builds the network, with each signal running its plan.
+     */
+    public RoadNetwork toNetwork() {
+        RoadNetwork.Builder builder = RoadNetwork.builder();
+        for (int node = 0; node < nodeX.length; node++) {
+            builder.addNode(nodeX[node], nodeY[node]);
+        }
+        SimulationEngine.Road[] roads = new SimulationEngine.Road[roadNames.length];
+        for (int id = 0; id < roads.length; id++) {
+            roads[id] = builder.addRoad(roadNames[id], roadFrom[id], roadTo[id], roadLanes[id], roadSpeed[id],
+                    roadOffset[id]);
+            if ((roadFlags[id] & CLOSABLE) != 0) {
+                builder.markLaneClosable(roads[id]);
+            }
+        }
+        for (int s = 0; s < signalX.length; s++) {
+            int start = s == 0 ? 0 : approachEnd[s - 1];
+            List<SimulationEngine.Road> main = new ArrayList<>(mainCount[s]);
+            List<SimulationEngine.Road> cross = new ArrayList<>(approachEnd[s] - start - mainCount[s]);
+            for (int i = start; i < approachEnd[s]; i++) {
+                (i < start + mainCount[s] ? main : cross).add(roads[approachRoad[i]]);
+            }
+            Point2D.Double point = new Point2D.Double(signalX[s], signalY[s]);
+            SignalController plan = plan(s);
+            if (plan != null) {
+                builder.addSignal(point, main, cross, plan);
+            } else {
+                builder.addSignal(point, main, cross);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Engine builder for this scenario: its network, spawn weights and knob settings. Anything else
+     * set on the returned builder, such as a signal controller for every intersection, overrides
+     * the scenario.
+     */
+    public SimulationEngineBuilder toBuilder() {
+        Map<String, Double> weights = new HashMap<>();
+        for (int id = 0; id < roadNames.length; id++) {
+            if (roadWeight[id] != 1) {
+                weights.put(roadNames[id], roadWeight[id]);
+            }
+        }
+        return new SimulationEngineBuilder()
+                .withNetwork(toNetwork())
+                .withSpawnStrategy(new BiasedSpawnStrategy(weights))
+                .withSpawnRate(spawnPerMinute)
+                .withSpeedLimit(speedLimit)
+                .withLaneClosure(laneClosure);
+    }
+
+    /**
+     * The part of this scenario one region of a {@link NetworkPartition} simulates: the roads
+     * {@code owned} marks plus the {@code stub} roads they lead onto in other regions, in their
+     * order here. Each stub ends at a node of its own, so it leads nowhere, and weighs 0 for
+     * spawning. Signals keep their owned approaches and are dropped without any; the spawn rate is
+     * scaled by {@code spawnShare}.
+     */
+    Scenario region(boolean[] owned, boolean[] stub, double spawnShare) {
+        boolean[] usedNode = new boolean[nodeX.length];
+        int[] roadMap = new int[roadNames.length];
+        int roads = 0;
+        int stubs = 0;
+        for (int id = 0; id < roadNames.length; id++) {
+            roadMap[id] = -1;
+            if (owned[id] || stub[id]) {
+                roadMap[id] = roads++;
+                usedNode[roadFrom[id]] = true;
+                if (owned[id]) {
+                    usedNode[roadTo[id]] = true;
+                } else {
+                    stubs++;
+                }
+            }
+        }
+        int[] nodeMap = new int[nodeX.length];
+        int nodes = 0;
+        for (int node = 0; node < nodeX.length; node++) {
+            nodeMap[node] = usedNode[node] ? nodes++ : -1;
+        }
+        double[] x = new double[nodes + stubs];
+        double[] y = new double[nodes + stubs];
+        for (int node = 0; node < nodeX.length; node++) {
+            if (usedNode[node]) {
+                x[nodeMap[node]] = nodeX[node];
+                y[nodeMap[node]] = nodeY[node];
+            }
+        }
+        String[] names = new String[roads];
+        int[] from = new int[roads];
+        int[] to = new int[roads];
+        int[] lanes = new int[roads];
+        double[] speed = new double[roads];
+        double[] offset = new double[roads];
+        double[] weight = new double[roads];
+        byte[] flags = new byte[roads];
+        int stubNode = nodes;
+        for (int id = 0; id < roadNames.length; id++) {
+            int local = roadMap[id];
+            if (local < 0) {
+                continue;
+            }
+            names[local] = roadNames[id];
+            from[local] = nodeMap[roadFrom[id]];
+            if (owned[id]) {
+                to[local] = nodeMap[roadTo[id]];
+            } else {
+                x[stubNode] = nodeX[roadTo[id]];
+                y[stubNode] = nodeY[roadTo[id]];
+                to[local] = stubNode++;
+            }
+            lanes[local] = roadLanes[id];
+            speed[local] = roadSpeed[id];
+            offset[local] = roadOffset[id];
+            weight[local] = owned[id] ? roadWeight[id] : 0;
+            flags[local] = roadFlags[id];
+        }
+        int signals = 0;
+        IntList approaches = new IntList();
+        int[] ends = new int[signalX.length];
+        int[] mains = new int[signalX.length];
+        int[] kept = new int[signalX.length];
+        for (int s = 0; s < signalX.length; s++) {
+            int start = s == 0 ? 0 : approachEnd[s - 1];
+            int before = approaches.size();
+            int main = 0;
+            for (int i = start; i < approachEnd[s]; i++) {
+                if (owned[approachRoad[i]]) {
+                    approaches.add(roadMap[approachRoad[i]]);
+                    if (i < start + mainCount[s]) {
+                        main++;
+                    }
+                }
+            }
+            if (approaches.size() > before) {
+                kept[signals] = s;
+                mains[signals] = main;
+                ends[signals++] = approaches.size();
+            }
+        }
+        double[] sx = new double[signals];
+        double[] sy = new double[signals];
+        byte[] plans = new byte[signals];
+        double[] first = new double[signals];
+        double[] second = new double[signals];
+        for (int i = 0; i < signals; i++) {
+            sx[i] = signalX[kept[i]];
+            sy[i] = signalY[kept[i]];
+            plans[i] = signalPlan[kept[i]];
+            first[i] = planFirst[kept[i]];
+            second[i] = planSecond[kept[i]];
+        }
+        return new Scenario(spawnPerMinute * spawnShare, speedLimit, laneClosure, x, y, names, from, to, lanes, speed,
+                offset, weight, flags, sx, sy, plans, first, second, Arrays.copyOf(ends, signals),
+                Arrays.copyOf(mains, signals), approaches.toArray());
+    }
+
+    public void writeText(Path path) throws IOException {
+        try (Writer out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writeText(out);
+        }
+    }
+
+    public void writeText(Writer out) throws IOException {
+        out.write(TEXT_HEADER + "\n");
+        out.write("spawn-rate " + number(spawnPerMinute) + "\n");
+        out.write("speed-limit " + number(speedLimit) + "\n");
+        out.write("lane-closure " + laneClosure + "\n");
+        for (int node = 0; node < nodeX.length; node++) {
+            out.write("node " + number(nodeX[node]) + " " + number(nodeY[node]) + "\n");
+        }
+        StringBuilder line = new StringBuilder();
+        for (int id = 0; id < roadNames.length; id++) {
+            line.setLength(0);
+            line.append("road ").append(quote(roadNames[id])).append(' ').append(roadFrom[id]).append(' ')
+                    .append(roadTo[id]).append(' ').append(roadLanes[id]).append(' ').append(number(roadSpeed[id]));
+            if (roadOffset[id] != 0) {
+                line.append(" offset ").append(number(roadOffset[id]));
+            }
+            if ((roadFlags[id] & CLOSABLE) != 0) {
+                line.append(" closable");
+            }
+            if (roadWeight[id] != 1) {
+                line.append(" weight ").append(number(roadWeight[id]));
+            }
+            out.write(line.append('\n').toString());
+        }
+        for (int s = 0; s < signalX.length; s++) {
+            line.setLength(0);
+            line.append("signal ").append(number(signalX[s])).append(' ').append(number(signalY[s])).append(" main");
+            int start = s == 0 ? 0 : approachEnd[s - 1];
+            for (int i = start; i < approachEnd[s]; i++) {
+                if (i == start + mainCount[s]) {
+                    line.append(" cross");
+                }
+                line.append(' ').append(quote(roadNames[approachRoad[i]]));
+            }
+            if (mainCount[s] == approachEnd[s] - start) {
+                line.append(" cross");
+            }
+            if (signalPlan[s] != PLAN_DEFAULT) {
+                line.append(" plan ").append(PLAN_NAMES[signalPlan[s]]).append(' ').append(number(planFirst[s]))
+                        .append(' ').append(number(planSecond[s]));
+            }
+            out.write(line.append('\n').toString());
+        }
+    }
+
+    public void writeBinary(Path path) throws IOException {
+        byte[][] names = new byte[roadNames.length][];
+        int nameBytes = 0;
+        for (int id = 0; id < names.length; id++) {
+            names[id] = roadNames[id].getBytes(StandardCharsets.UTF_8);
+            nameBytes += names[id].length;
+        }
+        int nodes = nodeX.length;
+        int roads = roadNames.length;
+        int signals = signalX.length;
+        long size = 4 + 2 + 8 + 8 + 1 + 5 * 4
+                + 16L * nodes
+                + roads * (3 * 4 + 3 * 8 + 1 + 4L) + nameBytes
+                + signals * (2 * 8 + 1 + 2 * 8 + 2 * 4L)
+                + 4L * approachRoad.length;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            out.putInt(MAGIC).putShort(VERSION);
+            out.putDouble(spawnPerMinute).putDouble(speedLimit).put((byte) (laneClosure ? 1 : 0));
+            out.putInt(nodes).putInt(roads).putInt(signals).putInt(approachRoad.length).putInt(nameBytes);
+            putDoubles(out, nodeX);
+            putDoubles(out, nodeY);
+            putInts(out, roadFrom);
+            putInts(out, roadTo);
+            putInts(out, roadLanes);
+            putDoubles(out, roadSpeed);
+            putDoubles(out, roadOffset);
+            putDoubles(out, roadWeight);
+            out.put(roadFlags);
+            int end = 0;
+            for (byte[] name : names) {
+                end += name.length;
+                out.putInt(end);
+            }
+            for (byte[] name : names) {
+                out.put(name);
+            }
+            putDoubles(out, signalX);
+            putDoubles(out, signalY);
+            out.put(signalPlan);
+            putDoubles(out, planFirst);
+            putDoubles(out, planSecond);
+            putInts(out, approachEnd);
+            putInts(out, mainCount);
+            putInts(out, approachRoad);
+            out.force();
+        }
+    }
+
+    private static Scenario decode(ByteBuffer in, Path path) {
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IllegalArgumentException("Not a binary scenario: " + path);
+            }
+            short version = in.getShort();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported scenario version " + version);
+            }
+            double spawnPerMinute = in.getDouble();
+            double speedLimit = in.getDouble();
+            boolean laneClosure = in.get() != 0;
+            int nodes = count(in.getInt());
+            int roads = count(in.getInt());
+            int signals = count(in.getInt());
+            int approaches = count(in.getInt());
+            int nameBytes = count(in.getInt());
+            double[] nodeX = getDoubles(in, nodes);
+            double[] nodeY = getDoubles(in, nodes);
+            int[] from = getInts(in, roads);
+            int[] to = getInts(in, roads);
+            int[] lanes = getInts(in, roads);
+            double[] speed = getDoubles(in, roads);
+            double[] offset = getDoubles(in, roads);
+            double[] weight = getDoubles(in, roads);
+            byte[] flags = new byte[roads];
+            in.get(flags);
+            int[] nameEnd = getInts(in, roads);
+            byte[] nameData = new byte[nameBytes];
+            in.get(nameData);
+            String[] names = new String[roads];
+            int start = 0;
+            for (int id = 0; id < roads; id++) {
+                if (nameEnd[id] < start || nameEnd[id] > nameBytes) {
+                    throw new IllegalArgumentException("Corrupt road name table");
+                }
+                names[id] = new String(nameData, start, nameEnd[id] - start, StandardCharsets.UTF_8);
+                start = nameEnd[id];
+            }
+            double[] signalX = getDoubles(in, signals);
+            double[] signalY = getDoubles(in, signals);
+            byte[] plans = new byte[signals];
+            in.get(plans);
+            double[] planFirst = getDoubles(in, signals);
+            double[] planSecond = getDoubles(in, signals);
+            int[] approachEnd = getInts(in, signals);
+            int[] mainCount = getInts(in, signals);
+            int[] approachRoad = getInts(in, approaches);
+            return new Scenario(spawnPerMinute, speedLimit, laneClosure, nodeX, nodeY, names, from, to, lanes,
+                    speed, offset, weight, flags, signalX, signalY, plans, planFirst, planSecond, approachEnd,
+                    mainCount, approachRoad);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated scenario: " + path, e);
+        }
+    }
+
+    private static Scenario readText(Reader source) throws IOException {
+        SimulationConfig config = SimulationConfig.getInstance();
+        double spawnPerMinute = config.defaultSpawnPerMinute();
+        double speedLimit = config.defaultSpeedLimit();
+        boolean laneClosure = config.defaultLaneClosure();
+        DoubleColumn nodeX = new DoubleColumn();
+        DoubleColumn nodeY = new DoubleColumn();
+        List<String> names = new ArrayList<>();
+        Map<String, Integer> roadIds = new HashMap<>();
+        IntList from = new IntList();
+        IntList to = new IntList();
+        IntList lanes = new IntList();
+        DoubleColumn speed = new DoubleColumn();
+        DoubleColumn offset = new DoubleColumn();
+        DoubleColumn weight = new DoubleColumn();
+        IntList flags = new IntList();
+        DoubleColumn signalX = new DoubleColumn();
+        DoubleColumn signalY = new DoubleColumn();
+        IntList plans = new IntList();
+        DoubleColumn planFirst = new DoubleColumn();
+        DoubleColumn planSecond = new DoubleColumn();
+        IntList approachEnd = new IntList();
+        IntList mainCount = new IntList();
+        IntList approachRoad = new IntList();
+
+        BufferedReader in = new BufferedReader(source);
+        boolean headerSeen = false;
+        int lineNumber = 0;
+        String line;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            List<String> tokens;
+            try {
+                tokens = tokenize(line);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": " + e.getMessage(), e);
+            }
+            if (tokens.isEmpty()) {
+                continue;
+            }
+            if (!headerSeen) {
+                if (!String.join(" ", tokens).equals(TEXT_HEADER)) {
+                    throw new IllegalArgumentException("Line " + lineNumber + ": expected '" + TEXT_HEADER + "'");
+                }
+                headerSeen = true;
+                continue;
+            }
+            Tokens t = new Tokens(tokens, lineNumber);
+            switch (t.next()) {
+                case "spawn-rate" -> spawnPerMinute = t.number();
+                case "speed-limit" -> speedLimit = t.number();
+                case "lane-closure" -> laneClosure = t.bool();
+                case "node" -> {
+                    nodeX.add(t.number());
+                    nodeY.add(t.number());
+                }
+                case "road" -> {
+                    String name = t.next();
+                    if (roadIds.putIfAbsent(name, names.size()) != null) {
+                        throw t.error("duplicate road name '" + name + "'");
+                    }
+                    names.add(name);
+                    from.add(t.integer());
+                    to.add(t.integer());
+                    lanes.add(t.integer());
+                    speed.add(t.number());
+                    double roadOffset = 0;
+                    double roadWeight = 1;
+                    int roadFlags = 0;
+                    while (t.hasNext()) {
+                        String option = t.next();
+                        switch (option) {
+                            case "offset" -> roadOffset = t.number();
+                            case "weight" -> roadWeight = t.number();
+                            case "closable" -> roadFlags |= CLOSABLE;
+                            default -> throw t.error("unknown road option '" + option + "'");
+                        }
+                    }
+                    offset.add(roadOffset);
+                    weight.add(roadWeight);
+                    flags.add(roadFlags);
+                }
+                case "signal" -> {
+                    signalX.add(t.number());
+                    signalY.add(t.number());
+                    t.expect("main");
+                    int mains = 0;
+                    while (t.hasNext() && !t.peek().equals("cross")) {
+                        approachRoad.add(t.road(roadIds));
+                        mains++;
+                    }
+                    t.expect("cross");
+                    while (t.hasNext() && !t.peek().equals("plan")) {
+                        approachRoad.add(t.road(roadIds));
+                    }
+                    mainCount.add(mains);
+                    approachEnd.add(approachRoad.size());
+                    if (t.hasNext()) {
+                        t.expect("plan");
+                        String kind = t.next();
+                        int plan = Arrays.asList(PLAN_NAMES).indexOf(kind);
+                        if (plan <= PLAN_DEFAULT) {
+                            throw t.error("unknown signal plan '" + kind + "'");
+                        }
+                        plans.add(plan);
+                        planFirst.add(t.number());
+                        planSecond.add(t.number());
+                    } else {
+                        plans.add(PLAN_DEFAULT);
+                        planFirst.add(0);
+                        planSecond.add(0);
+                    }
+                }
+                default -> throw t.error("unknown statement '" + tokens.getFirst() + "'");
+            }
+            if (t.hasNext()) {
+                throw t.error("unexpected '" + t.peek() + "'");
+            }
+        }
+        if (!headerSeen) {
+            throw new IllegalArgumentException("Empty scenario");
+        }
+        byte[] roadFlags = new byte[flags.size()];
+        for (int i = 0; i < roadFlags.length; i++) {
+            roadFlags[i] = (byte) flags.get(i);
+        }
+        byte[] signalPlans = new byte[plans.size()];
+        for (int i = 0; i < signalPlans.length; i++) {
+            signalPlans[i] = (byte) plans.get(i);
+        }
+        return new Scenario(spawnPerMinute, speedLimit, laneClosure, nodeX.toArray(), nodeY.toArray(),
+                names.toArray(new String[0]), from.toArray(), to.toArray(), lanes.toArray(), speed.toArray(),
+                offset.toArray(), weight.toArray(), roadFlags, signalX.toArray(), signalY.toArray(), signalPlans,
+                planFirst.toArray(), planSecond.toArray(), approachEnd.toArray(), mainCount.toArray(),
+                approachRoad.toArray());
+    }
+
+    private void validate() {
+        Map<String, Integer> seen = new HashMap<>(roadNames.length * 2);
+        for (int id = 0; id < roadNames.length; id++) {
+            if (seen.put(roadNames[id], id) != null) {
+                throw new IllegalArgumentException("Duplicate road name '" + roadNames[id] + "'");
+            }
+            if (roadFrom[id] < 0 || roadFrom[id] >= nodeX.length || roadTo[id] < 0 || roadTo[id] >= nodeX.length) {
+                throw new IllegalArgumentException("Road '" + roadNames[id] + "' refers to a missing node");
+            }
+            if (roadLanes[id] < 1 || !(roadSpeed[id] > 0) || !(roadWeight[id] >= 0)) {
+                throw new IllegalArgumentException(
+                        "Road '" + roadNames[id] + "' needs a lane, a positive speed limit and a weight of at least 0");
+            }
+        }
+        int previous = 0;
+        for (int s = 0; s < signalX.length; s++) {
+            if (approachEnd[s] < previous || approachEnd[s] > approachRoad.length
+                    || mainCount[s] < 0 || mainCount[s] > approachEnd[s] - previous) {
+                throw new IllegalArgumentException("Corrupt approach table for signal " + s);
+            }
+            if (approachEnd[s] == previous) {
+                throw new IllegalArgumentException("Signal " + s + " needs at least one approach");
+            }
+            if (signalPlan[s] < PLAN_DEFAULT || signalPlan[s] > PLAN_MAX_PRESSURE) {
+                throw new IllegalArgumentException("Unknown plan for signal " + s);
+            }
+            plan(s);
+            previous = approachEnd[s];
+        }
+        if (previous != approachRoad.length) {
+            throw new IllegalArgumentException("Corrupt approach table");
+        }
+        for (int road : approachRoad) {
+            if (road < 0 || road >= roadNames.length) {
+                throw new IllegalArgumentException("Signal approach refers to a missing road");
+            }
+        }
+    }
+
+    /**
+     * Controller for signal {@code s}, or {@code null} to keep the engine's default.
+     */
+    private SignalController plan(int s) {
+        return switch (signalPlan[s]) {
+            case PLAN_FIXED -> {
+                if (!(planFirst[s] > 0) || !(planSecond[s] > 0)) {
+                    throw new IllegalArgumentException("Fixed plan of signal " + s + " needs positive greens");
+                }
+                yield SignalController.fixedTime(planFirst[s], planSecond[s]);
+            }
+            case PLAN_ACTUATED -> SignalController.actuated(planFirst[s], planSecond[s]);
+            case PLAN_MAX_PRESSURE -> SignalController.maxPressure(planFirst[s], planSecond[s]);
+            default -> null;
+        };
+    }
+
+    /**
+     * Signed distance of a road's carriageway to the right of the line between its nodes.
+     */
+    private static double rightOffset(SimulationEngine.Road road, double fromX, double fromY, double toX, double toY) {
+        double length = Math.hypot(toX - fromX, toY - fromY);
+        if (length == 0) {
+            return 0;
+        }
+        double normalX = -(toY - fromY) / length;
+        double normalY = (toX - fromX) / length;
+        return (road.start().x - fromX) * normalX + (road.start().y - fromY) * normalY;
+    }
+
+    private static int count(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Corrupt scenario header");
+        }
+        return value;
+    }
+
+    private static double[] getDoubles(ByteBuffer in, int count) {
+        double[] values = new double[count];
+        in.asDoubleBuffer().get(values);
+        in.position(in.position() + count * Double.BYTES);
+        return values;
+    }
+
+    private static int[] getInts(ByteBuffer in, int count) {
+        int[] values = new int[count];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + count * Integer.BYTES);
+        return values;
+    }
+
+    private static void putDoubles(ByteBuffer out, double[] values) {
+        out.asDoubleBuffer().put(values);
+        out.position(out.position() + values.length * Double.BYTES);
+    }
+
+    private static void putInts(ByteBuffer out, int[] values) {
+        out.asIntBuffer().put(values);
+        out.position(out.position() + values.length * Integer.BYTES);
+    }
+
+    /**
+     * Shortest text that parses back to the same double.
+     */
+    private static String number(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value).toLowerCase(Locale.ROOT);
+    }
+
+    private static String quote(String name) {
+        boolean plain = !name.isEmpty();
+        for (int i = 0; i < name.length() && plain; i++) {
+            char c = name.charAt(i);
+            plain = !Character.isWhitespace(c) && c != '"' && c != '#' && c != '\\';
+        }
+        if (plain && !name.equals("main") && !name.equals("cross") && !name.equals("plan")) {
+            return name;
+        }
+        return '"' + name.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    /**
+     * Splits a line into words, honouring double quotes with backslash escapes and dropping
+     * everything after an unquoted {@code #}.
+     */
+    static List<String> tokenize(String line) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        int i = 0;
+        while (i < line.length()) {
+            char c = line.charAt(i);
+            if (c == '#') {
+                break;
+            }
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            token.setLength(0);
+            if (c == '"') {
+                i++;
+                while (true) {
+                    if (i >= line.length()) {
+                        throw new IllegalArgumentException("unterminated quote");
+                    }
+                    c = line.charAt(i++);
+                    if (c == '"') {
+                        break;
+                    }
+                    if (c == '\\' && i < line.length()) {
+                        c = line.charAt(i++);
+                    }
+                    token.append(c);
+                }
+            } else {
+                while (i < line.length() && !Character.isWhitespace(line.charAt(i)) && line.charAt(i) != '#') {
+                    token.append(line.charAt(i++));
+                }
+            }
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+
+    /**
+     * Cursor over one line's words with typed reads that report the line on failure.
+     */
+    private static final class Tokens {
+        private final List<String> tokens;
+        private final int lineNumber;
+        private int index;
+
+        Tokens(List<String> tokens, int lineNumber) {
+            this.tokens = tokens;
+            this.lineNumber = lineNumber;
+        }
+
+        boolean hasNext() {
+            return index < tokens.size();
+        }
+
+        String peek() {
+            return tokens.get(index);
+        }
+
+        String next() {
+            if (!hasNext()) {
+                throw error("line ends too early");
+            }
+            return tokens.get(index++);
+        }
+
+        void expect(String keyword) {
+            String word = next();
+            if (!word.equals(keyword)) {
+                throw error("expected '" + keyword + "' but found '" + word + "'");
+            }
+        }
+
+        double number() {
+            String word = next();
+            try {
+                return Double.parseDouble(word);
+            } catch (NumberFormatException e) {
+                throw error("invalid number '" + word + "'");
+            }
+        }
+
+        int integer() {
+            String word = next();
+            try {
+                return Integer.parseInt(word);
+            } catch (NumberFormatException e) {
+                throw error("invalid integer '" + word + "'");
+            }
+        }
+
+        boolean bool() {
+            String word = next();
+            return switch (word) {
+                case "true", "on" -> true;
+                case "false", "off" -> false;
+                default -> throw error("expected true or false but found '" + word + "'");
+            };
+        }
+
+        int road(Map<String, Integer> roadIds) {
+            String name = next();
+            Integer id = roadIds.get(name);
+            if (id == null) {
+                throw error("unknown road '" + name + "'");
+            }
+            return id;
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("Line " + lineNumber + ": " + message);
+        }
+    }
+
+    /**
+     * Growable double column for the text parser.
+     */
+    private static final class DoubleColumn {
+        private double[] values = new double[16];
+        private int size;
+
+        void add(double value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        double[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
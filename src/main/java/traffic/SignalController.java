@@ -0,0 +1,130 @@
+package traffic;
+
+/**
+ * Strategy that decides how long each green phase of an {@link SimulationEngine.Intersection}
+ * lasts. Signals alternate main green, yellow, cross green, yellow; yellow intervals are fixed and
+ * the controller is asked every tick of a green phase whether to end it, except over idle stretches
+ * an engine skips, which {@link #minRemainingGreen} bounds.
+ */
+public interface SignalController {
+    /**
+     * @param mainGreen      whether the main approaches hold the green
+     * @param elapsedSeconds time spent in the current green phase
+     * @param demand         live queues and arrivals at this intersection
+     * @return whether the green should end now
+     */
+    boolean endGreen(boolean mainGreen, double elapsedSeconds, SignalDemand demand);
+
+    /**
+     * Seconds for which {@link #endGreen} is sure to keep answering {@code false}, provided no
+     * vehicle moves meanwhile: queues stay as they are and arrival rates only decay. An engine
+     * skipping idle time jumps at most this far before asking again. The default, 0, makes it ask
+     * every tick.
+     */
+    default double minRemainingGreen(boolean mainGreen, double elapsedSeconds, SignalDemand demand) {
+        return 0;
+    }
+
+    /**
+     * Fixed green times regardless of demand. {@code fixedTime(12, 8)} is the default plan.
+     */
+    static SignalController fixedTime(double mainGreenSeconds, double crossGreenSeconds) {
+        return new SignalController() {
+            @Override
+            public boolean endGreen(boolean mainGreen, double elapsed, SignalDemand demand) {
+                return elapsed >= (mainGreen ? mainGreenSeconds : crossGreenSeconds);
+            }
+
+            @Override
+            public double minRemainingGreen(boolean mainGreen, double elapsed, SignalDemand demand) {
+                return Math.max(0, (mainGreen ? mainGreenSeconds : crossGreenSeconds) - elapsed);
+            }
+        };
+    }
+
+    /**
+     * Vehicle-actuated control: after {@code minGreen} the green gaps out once its queue has cleared
+     * and more vehicles wait on the red approaches than are expected on the green ones within the
+     * passage time; it never runs past {@code maxGreen}.
+     */
+    static SignalController actuated(double minGreenSeconds, double maxGreenSeconds) {
+        requireGreenRange(minGreenSeconds, maxGreenSeconds);
+        double passageSeconds = 3.0;
+        return new SignalController() {
+            @Override
+            public boolean endGreen(boolean mainGreen, double elapsed, SignalDemand demand) {
+                if (elapsed < minGreenSeconds) {
+                    return false;
+                }
+                if (elapsed >= maxGreenSeconds) {
+                    return true;
+                }
+                return demand.queueLength(mainGreen) == 0
+                        && demand.queueLength(!mainGreen) > demand.arrivalRate(mainGreen) * passageSeconds;
+            }
+
+            /**
+             * Nobody waiting on red never gaps the green out, however the arrival rate decays.
+             */
+            @Override
+            public double minRemainingGreen(boolean mainGreen, double elapsed, SignalDemand demand) {
+                if (elapsed < minGreenSeconds) {
+                    return minGreenSeconds - elapsed;
+                }
+                return demand.queueLength(!mainGreen) == 0 ? Math.max(0, maxGreenSeconds - elapsed) : 0;
+            }
+        };
+    }
+
+    /**
+     * Max-pressure control: after {@code minGreen} the green switches as soon as the other approach
+     * group has higher pressure, where pressure is the queue plus arrivals expected over the yellow
+     * interval, minus the queue already waiting downstream.
+     */
+    static SignalController maxPressure(double minGreenSeconds, double maxGreenSeconds) {
+        requireGreenRange(minGreenSeconds, maxGreenSeconds);
+        double lookaheadSeconds = 3.0;
+        return new SignalController() {
+            @Override
+            public boolean endGreen(boolean mainGreen, double elapsed, SignalDemand demand) {
+                if (elapsed < minGreenSeconds) {
+                    return false;
+                }
+                if (elapsed >= maxGreenSeconds) {
+                    return true;
+                }
+                double current = demand.queueLength(mainGreen) + demand.arrivalRate(mainGreen) * lookaheadSeconds
+                        - demand.downstreamQueue(mainGreen);
+                double other = demand.queueLength(!mainGreen) + demand.arrivalRate(!mainGreen) * lookaheadSeconds
+                        - demand.downstreamQueue(!mainGreen);
+                return other > current;
+            }
+
+            /**
+             * Arrival rates decay by a common factor while nothing moves, so once the queues alone
+             * do not favour the other group, a green that holds now holds until its maximum.
+             */
+            @Override
+            public double minRemainingGreen(boolean mainGreen, double elapsed, SignalDemand demand) {
+                if (elapsed < minGreenSeconds) {
+                    return minGreenSeconds - elapsed;
+                }
+                if (endGreen(mainGreen, elapsed, demand)
+                        || queuePressure(!mainGreen, demand) > queuePressure(mainGreen, demand)) {
+                    return 0;
+                }
+                return maxGreenSeconds - elapsed;
+            }
+
+            private int queuePressure(boolean main, SignalDemand demand) {
+                return demand.queueLength(main) - demand.downstreamQueue(main);
+            }
+        };
+    }
+
+    private static void requireGreenRange(double minGreenSeconds, double maxGreenSeconds) {
+        if (minGreenSeconds < 0 || maxGreenSeconds < minGreenSeconds) {
+            throw new IllegalArgumentException("Need 0 <= minGreen <= maxGreen");
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package traffic;
+
+/**
+ * Live demand at one intersection, split by the main and cross approach groups. Every query is
+ * answered from counters the engine maintains while moving vehicles, so controllers can consult it
+ * every tick at constant cost.
+ */
+public interface SignalDemand {
+    /** Demand of an intersection nobody is feeding, used when a signal is stepped on its own. */
+    SignalDemand NONE = new SignalDemand() {
+        @Override
+        public int queueLength(boolean main) {
+            return 0;
+        }
+
+        @Override
+        public double arrivalRate(boolean main) {
+            return 0;
+        }
+
+        @Override
+        public int downstreamQueue(boolean main) {
+            return 0;
+        }
+    };
+
+    /**
+     * Stopped vehicles queued at the stop lines of the main or cross approaches.
+     */
+    int queueLength(boolean main);
+
+    /**
+     * Smoothed rate, in vehicles per second, at which vehicles enter the main or cross approaches.
+     */
+    double arrivalRate(boolean main);
+
+    /**
+     * Vehicles queued on the roads the main or cross approaches feed into, at their own next stop
+     * lines. Sending more traffic into a full link gains nothing, which max-pressure accounts for.
+     */
+    int downstreamQueue(boolean main);
+}
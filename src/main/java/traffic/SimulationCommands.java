@@ -8,15 +8,29 @@ public final class SimulationCommands {
     }
 
     public static class SetPhaseCommand implements SimulationCommand {
+        private final int intersection;
         private final SimulationEngine.Intersection.Phase phase;
 
         public SetPhaseCommand(SimulationEngine.Intersection.Phase phase) {
+            this(0, phase);
+        }
+
+        public SetPhaseCommand(int intersection, SimulationEngine.Intersection.Phase phase) {
+            this.intersection = intersection;
             this.phase = phase;
         }
 
         @Override
         public void execute(SimulationEngine engine) {
-            engine.setManualPhase(phase);
+            engine.setManualPhase(intersection, phase);
+        }
+
+        int intersection() {
+            return intersection;
+        }
+
+        SimulationEngine.Intersection.Phase phase() {
+            return phase;
         }
     }
 
@@ -31,6 +45,10 @@ public final class SimulationCommands {
         public void execute(SimulationEngine engine) {
             engine.setSpawnPerMinute(perMinute);
         }
+
+        double perMinute() {
+            return perMinute;
+        }
     }
 
     public static class SetSpeedLimitCommand implements SimulationCommand {
@@ -44,6 +62,10 @@ public final class SimulationCommands {
         public void execute(SimulationEngine engine) {
             engine.setSpeedLimit(speed);
         }
+
+        double speed() {
+            return speed;
+        }
     }
 
     public static class ToggleLaneClosureCommand implements SimulationCommand {
@@ -57,6 +79,10 @@ public final class SimulationCommands {
         public void execute(SimulationEngine engine) {
             engine.setLaneClosure(closed);
         }
+
+        boolean closed() {
+            return closed;
+        }
     }
 
     public static class ResetCommand implements SimulationCommand {
@@ -1,7 +1,9 @@
 package traffic;
 
 /**
- * Singleton holding default knobs for the simulation.
+ * Singleton holding default knobs for the simulation. It is immutable and only seeds new
+ * {@link SimulationEngineBuilder}s; each engine keeps its own copy of the settings it was built
+ * with, so engines running side by side never see each other's changes.
  */
 public final class SimulationConfig {
     private static final SimulationConfig INSTANCE = new SimulationConfig();
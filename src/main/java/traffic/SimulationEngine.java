@@ -2,69 +2,305 @@ package traffic;
 
 import java.awt.Color;
 import java.awt.geom.Point2D;
-import java.util.ArrayDeque;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Deque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Random;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 /**
- * Small traffic simulation that updates on the Swing event thread.
+ * Small traffic simulation. The engine is not thread-safe: drive it from a single thread, such as
+ * the one owned by {@link SimulationLoop}, and hand results to other threads through snapshots.
  */
 public class SimulationEngine {
-    private final Road mainRoad;
-    private final Road crossRoad;
-    private final Point2D.Double intersectionPoint;
-    private final Intersection intersection;
-
+    private final RoadNetwork network;
     private final List<Road> roads;
-    private final List<Vehicle> vehicles = new ArrayList<>();
-    private final Random random;
+    private final List<Intersection> intersections;
+    /** Phase, timer, plan and demand of each intersection, by index; this engine's own. */
+    private final Intersection.Signal[] signals;
+    private final RouteTable routes;
+    private final VehicleStore vehicles;
+    private final LaneIndex laneIndex;
+    /**
+     * Screen position of every vehicle on a microscopic road as of the last tick, indexed by slot.
+     * Vehicles on mesoscopic roads have no exact position and are left out.
+     */
+    private final SpatialGrid grid;
+    private final IntersectionBox[] boxes;
+    private final IntList queryScratch = new IntList();
+    private final double[] placeScratch = new double[2];
+    /** Replaced, not reseeded, by {@link #restore}, since a {@link Random} cannot be set to a given state. */
+    private Random random;
     private final SpawnStrategy spawnStrategy;
     private final VehicleFactory vehicleFactory;
-    private final List<SimulationObserver> observers = new CopyOnWriteArrayList<>();
-
-    private boolean manualControl;
+    private final ObserverDispatcher observers = new ObserverDispatcher();
+    private final Supplier<SimulationSnapshot> snapshotFactory = this::createSnapshot;
+
+    private final boolean[] manualControl;
+    private final boolean[] controlRed;
+    /** Stopped vehicles queued behind each stop line, counted while lanes move. */
+    private final int[] controlQueue;
+    /** Vehicles that entered the stretch of road leading to each stop line this tick. */
+    private final int[] controlArrivals;
+    /** Smoothed arrivals per second at each stop line. */
+    private final double[] controlArrivalRate;
+    /** Roads run as queues rather than by car following, by road id. */
+    private final boolean[] mesoscopic;
+    /** Vehicles one lane of each mesoscopic road holds bumper to bumper, by road id. */
+    private final int[] storage;
+    private final TravelTimeFunction travelTimeFunction;
+    private final CarFollowingModel carFollowing;
+    /** Whether lanes move by {@link CarFollowingModel#safeGap()}'s original vehicle-by-vehicle pass. */
+    private final boolean safeGapFollowing;
+    private final DriverProfile drivers;
+    /**
+     * Stubs of roads another partition simulates, by road id, or {@code null} when this engine
+     * runs a whole network. A vehicle about to enter one is handed off instead.
+     */
+    private final boolean[] boundary;
+    /** Vehicles that left for other partitions since the last {@link #drainHandoffs}. */
+    private final Handoffs outbound = new Handoffs();
+    /** Vehicles from other partitions still waiting for room on their road, in arrival order. */
+    private final Handoffs inbound = new Handoffs();
+    private long handoffsOut;
+    private long handoffsIn;
+    private final ForkJoinPool tickPool;
+    private final MovePartition[] partitions;
+    private final RecursiveAction moveAll;
+    private double tickDelta;
+    /** Knob settings the engine was built with, restored by {@link #reset}. */
+    private final double initialSpawnPerMinute;
+    private final double initialSpeedLimit;
+    private final boolean initialLaneClosure;
     private double spawnPerMinute;
     private double targetSpeedLimit;
     private boolean laneClosure;
+    /** Road views change only with lane closure, so they are built once per closure state. */
+    private List<RoadView> roadViews;
+    private final List<Point2D.Double> signalPositions;
     private double spawnAccumulator;
+    /** With idle skipping, spawns are scheduled one at a time rather than drawn every tick. */
+    private final boolean idleSkipping;
+    private double nextSpawnSeconds = Double.POSITIVE_INFINITY;
+    /**
+     * Whether no vehicle moved in the last tick and nothing was changed since, so ticks would keep
+     * changing only clocks until the next spawn or phase change.
+     */
+    private boolean settled;
     private double simTimeSeconds;
+    private long totalDepartures;
+    private long totalConflicts;
 
-    private final Deque<Double> departures = new ArrayDeque<>();
+    private final DepartureWindow departures = new DepartureWindow();
+    private final EngineMetrics metrics;
     private static final double THROUGHPUT_WINDOW_SECONDS = 10.0;
-    private static final double MIN_GAP_PIXELS = 18.0;
+    static final double MIN_GAP_PIXELS = 18.0;
+    private static final double QUEUE_SPEED_THRESHOLD = 5.0;
+    /** Gap to a standing leader or red stop line below which a vehicle stands still. */
+    private static final double STANDSTILL_GAP_PIXELS = 1.0;
+    /** Time constant of the arrival-rate average signal controllers see. */
+    private static final double ARRIVAL_SMOOTHING_SECONDS = 10.0;
+    /** Below this many vehicles a parallel engine still moves roads inline; forking costs more than it saves. */
+    private static final int PARALLEL_MIN_VEHICLES = 2048;
+    /** Partitions per pool thread, so work stealing can even out roads of different density. */
+    private static final int PARTITIONS_PER_THREAD = 4;
+    /** Spatial grid cell edge; a little over the closest spacing of two vehicles in a lane. */
+    private static final double GRID_CELL_PIXELS = 32.0;
 
     public SimulationEngine() {
         this(SimulationEngineBuilder.defaults());
     }
 
     SimulationEngine(SimulationEngineBuilder builder) {
-        this.mainRoad = builder.getMainRoad();
-        this.crossRoad = builder.getCrossRoad();
-        this.intersectionPoint = builder.getIntersectionPoint();
-        this.intersection = new Intersection(mainRoad, crossRoad, intersectionPoint);
-        this.roads = List.of(mainRoad, crossRoad);
-        this.spawnPerMinute = builder.getSpawnPerMinute();
-        this.targetSpeedLimit = builder.getTargetSpeedLimit();
-        this.laneClosure = builder.isLaneClosure();
+        this.network = builder.getNetwork();
+        this.roads = network.roads();
+        this.intersections = network.intersections();
+        this.routes = new RouteTable(network);
+        this.vehicles = new VehicleStore(builder.getVehicleCapacity());
+        this.laneIndex = new LaneIndex(roads, vehicles, MIN_GAP_PIXELS);
+        this.grid = SpatialGrid.covering(roads, GRID_CELL_PIXELS, GRID_CELL_PIXELS, builder.getVehicleCapacity());
+        this.manualControl = new boolean[intersections.size()];
+        this.controlRed = new boolean[network.controlCount()];
+        this.controlQueue = new int[network.controlCount()];
+        this.controlArrivals = new int[network.controlCount()];
+        this.controlArrivalRate = new double[network.controlCount()];
+        this.metrics = new EngineMetrics(network);
+        SignalController controller = builder.getSignalController();
+        this.signals = new Intersection.Signal[intersections.size()];
+        for (int i = 0; i < signals.length; i++) {
+            Intersection intersection = intersections.get(i);
+            signals[i] = new Intersection.Signal(intersection,
+                    controller != null ? controller : intersection.getController(), new IntersectionDemand(i));
+        }
+        List<Point2D.Double> points = new ArrayList<>(intersections.size());
+        for (Intersection intersection : intersections) {
+            points.add(intersection.getPoint());
+        }
+        this.signalPositions = List.copyOf(points);
+        this.boxes = new IntersectionBox[intersections.size()];
+        for (int i = 0; i < boxes.length; i++) {
+            boxes[i] = new IntersectionBox(intersections.get(i));
+        }
+        Predicate<Road> mesoscopicRoads = builder.getMesoscopicRoads();
+        this.mesoscopic = new boolean[roads.size()];
+        this.storage = new int[roads.size()];
+        for (int roadId = 0; roadId < roads.size(); roadId++) {
+            Road road = roads.get(roadId);
+            mesoscopic[roadId] = mesoscopicRoads.test(road);
+            storage[roadId] = Math.max(1, (int) (road.length() / MIN_GAP_PIXELS));
+        }
+        this.travelTimeFunction = builder.getTravelTimeFunction();
+        this.carFollowing = builder.getCarFollowingModel();
+        this.safeGapFollowing = carFollowing instanceof SafeGapFollowing;
+        this.drivers = builder.getDriverProfile();
+        Predicate<Road> boundaryRoads = builder.getBoundaryRoads();
+        boolean[] stubs = null;
+        for (int roadId = 0; boundaryRoads != null && roadId < roads.size(); roadId++) {
+            if (boundaryRoads.test(roads.get(roadId))) {
+                if (stubs == null) {
+                    stubs = new boolean[roads.size()];
+                }
+                stubs[roadId] = true;
+            }
+        }
+        this.boundary = stubs;
+        this.initialSpawnPerMinute = builder.getSpawnPerMinute();
+        this.initialSpeedLimit = builder.getTargetSpeedLimit();
+        this.initialLaneClosure = builder.isLaneClosure();
+        this.spawnPerMinute = initialSpawnPerMinute;
+        this.targetSpeedLimit = initialSpeedLimit;
+        this.laneClosure = initialLaneClosure;
         this.random = builder.getRandom();
-        this.spawnStrategy = builder.getSpawnStrategy();
+        this.spawnStrategy = builder.getSpawnStrategy().bind(roads);
         this.vehicleFactory = builder.getVehicleFactory();
+        this.idleSkipping = builder.isIdleSkipping();
+        this.tickPool = builder.getTickPool();
+        this.partitions = partitionRoads(tickPool == null ? 1 : tickPool.getParallelism() * PARTITIONS_PER_THREAD);
+        this.moveAll = new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(partitions);
+            }
+        };
+        scheduleSpawn(0);
     }
 
     public void update(double deltaSeconds) {
+        long tickStart = System.nanoTime();
         simTimeSeconds += deltaSeconds;
-        if (!manualControl) {
-            intersection.update(deltaSeconds);
+        for (int i = 0; i < intersections.size(); i++) {
+            if (!manualControl[i]) {
+                signals[i].update(deltaSeconds);
+            }
+        }
+        if (inbound.size() > 0) {
+            admitHandoffs();
         }
         spawnVehicles(deltaSeconds);
         moveVehicles(deltaSeconds);
+        updateIntersectionBoxes();
         pruneDepartures();
-        notifyObservers();
+        metrics.recordQueues(controlQueue);
+        metrics.recordTick(System.nanoTime() - tickStart);
+        metrics.maybeReport(simTimeSeconds);
+        observers.publish(simTimeSeconds, false, snapshotFactory);
+        settled = idleSkipping && inbound.size() == 0 && allStopped();
+    }
+
+    /**
+     * Advances by one tick of {@code deltaSeconds}, or, on an engine built
+     * {@link SimulationEngineBuilder#withIdleSkipping() with idle skipping} in which no vehicle moved
+     * during the last tick, by every tick up to the next spawn, possible phase change or metrics
+     * report, but at most {@code maxTicks}. Skipped ticks cost one step together: signal timers,
+     * arrival rates, delays and queue samples are brought forward in bulk, the tick-time histogram
+     * gets one sample, and observers see one snapshot at the end.
+     *
+     * @return the number of ticks advanced
+     */
+    public int advance(double deltaSeconds, int maxTicks) {
+        if (deltaSeconds <= 0 || maxTicks < 1) {
+            throw new IllegalArgumentException("deltaSeconds and maxTicks must be positive");
+        }
+        int ticks = settled ? Math.min(maxTicks, idleTicks(deltaSeconds)) : 0;
+        if (ticks < 1) {
+            update(deltaSeconds);
+            return 1;
+        }
+        skipIdle(ticks, deltaSeconds);
+        return ticks;
+    }
+
+    /**
+     * Whole ticks that can pass changing only clocks. The tick in which the next vehicle spawns, a
+     * phase may end or a report falls due is left to run normally.
+     */
+    private int idleTicks(double deltaSeconds) {
+        double horizon = Math.min(nextSpawnSeconds, metrics.nextReportSeconds()) - simTimeSeconds;
+        for (int i = 0; i < intersections.size(); i++) {
+            if (!manualControl[i]) {
+                horizon = Math.min(horizon, signals[i].minSecondsToPhaseChange());
+            }
+        }
+        double ticks = Math.floor(horizon / deltaSeconds - 1e-9);
+        return ticks >= Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) Math.max(0, ticks);
+    }
+
+    private void skipIdle(int ticks, double deltaSeconds) {
+        long skipStart = System.nanoTime();
+        double seconds = ticks * deltaSeconds;
+        simTimeSeconds += seconds;
+        for (int i = 0; i < intersections.size(); i++) {
+            if (!manualControl[i]) {
+                signals[i].elapse(seconds);
+            }
+        }
+        for (int roadId = 0; roadId < roads.size(); roadId++) {
+            if (mesoscopic[roadId]) {
+                continue;
+            }
+            for (LaneIndex.Lane lane : laneIndex.lanesOf(roadId)) {
+                for (int i = 0; i < lane.size(); i++) {
+                    vehicles.addDelay(lane.get(i), seconds);
+                }
+            }
+        }
+        updateArrivalRates(seconds);
+        pruneDepartures();
+        metrics.recordQueues(controlQueue, ticks);
+        metrics.recordTick(System.nanoTime() - skipStart);
+        metrics.maybeReport(simTimeSeconds);
+        observers.publish(simTimeSeconds, false, snapshotFactory);
+    }
+
+    /**
+     * Whether every vehicle stood still through the last tick, with no mesoscopic lane waiting out a
+     * headway. Stopped vehicles stay stopped until a signal changes or a new vehicle arrives, since
+     * what holds them, a red stop line, a leader or a full road ahead, does not depend on time.
+     */
+    private boolean allStopped() {
+        for (int roadId = 0; roadId < roads.size(); roadId++) {
+            for (LaneIndex.Lane lane : laneIndex.lanesOf(roadId)) {
+                if (mesoscopic[roadId] && !lane.isEmpty() && lane.releaseTime() > simTimeSeconds) {
+                    return false;
+                }
+                for (int i = 0; i < lane.size(); i++) {
+                    if (vehicles.speed(lane.get(i)) != 0) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
     }
 
     public void execute(SimulationCommand command) {
@@ -72,27 +308,51 @@ public class SimulationEngine {
     }
 
     public void setSpawnPerMinute(double perMinute) {
-        spawnPerMinute = Math.max(0, perMinute);
+        double rate = Math.max(0, perMinute);
+        if (rate != spawnPerMinute) {
+            spawnPerMinute = rate;
+            scheduleSpawn(simTimeSeconds);
+        }
     }
 
     public void setSpeedLimit(double speed) {
         targetSpeedLimit = Math.max(10, speed);
+        settled = false;
     }
 
+    /**
+     * Closes (or reopens) one lane on every road the network marks as lane-closable.
+     */
     public void setLaneClosure(boolean closed) {
-        laneClosure = closed;
+        if (closed != laneClosure) {
+            laneClosure = closed;
+            roadViews = null;
+            settled = false;
+        }
     }
 
+    /**
+     * Holds the first intersection in {@code phase} until automatic signals resume.
+     */
     public void setManualPhase(Intersection.Phase phase) {
+        setManualPhase(0, phase);
+    }
+
+    public void setManualPhase(int intersectionIndex, Intersection.Phase phase) {
         Objects.requireNonNull(phase, "phase");
-        manualControl = true;
-        intersection.setPhase(phase);
+        Objects.checkIndex(intersectionIndex, intersections.size());
+        manualControl[intersectionIndex] = true;
+        signals[intersectionIndex].setPhase(phase);
+        settled = false;
         notifyObservers();
     }
 
     public void resumeAutomaticSignals() {
-        manualControl = false;
-        intersection.reset();
+        for (int i = 0; i < intersections.size(); i++) {
+            manualControl[i] = false;
+            signals[i].reset();
+        }
+        settled = false;
         notifyObservers();
     }
 
@@ -100,66 +360,392 @@ public class SimulationEngine {
         return departures.isEmpty() ? 0.0 : departures.size() / THROUGHPUT_WINDOW_SECONDS;
     }
 
+    /**
+     * Travel time, delay, stop, queue and tick-time histograms of this engine.
+     */
+    public EngineMetrics getMetrics() {
+        return metrics;
+    }
+
     public double getSimTimeSeconds() {
         return simTimeSeconds;
     }
 
+    public RoadNetwork getNetwork() {
+        return network;
+    }
+
+    public List<Road> getRoads() {
+        return roads;
+    }
+
+    /**
+     * Vehicles that have left the network since the last reset.
+     */
+    public long getTotalDepartures() {
+        return totalDepartures;
+    }
+
+    public int getVehicleCount() {
+        return laneIndex.size();
+    }
+
+    /**
+     * Number of stopped vehicles waiting behind the first signal stop line on {@code road}, as
+     * counted during the last tick.
+     */
+    public int getQueueLength(Road road) {
+        int roadId = network.idOf(road);
+        int control = network.controlStart(roadId);
+        return control == network.controlEnd(roadId) ? 0 : controlQueue[control];
+    }
+
+    /**
+     * Vehicles inside the box where the approaches of intersection {@code intersectionIndex} cross,
+     * as of the last tick.
+     */
+    public int getIntersectionOccupancy(int intersectionIndex) {
+        return boxes[Objects.checkIndex(intersectionIndex, boxes.length)].occupancy;
+    }
+
+    /**
+     * Whether main and cross approach vehicles were both past their stop lines inside the box of
+     * intersection {@code intersectionIndex} during the last tick.
+     */
+    public boolean hasConflict(int intersectionIndex) {
+        return boxes[Objects.checkIndex(intersectionIndex, boxes.length)].conflict;
+    }
+
+    /**
+     * Times since the last reset that an intersection box went from clear to conflicting.
+     */
+    public long getTotalConflicts() {
+        return totalConflicts;
+    }
+
+    /**
+     * Vehicles within {@code radius} of a screen point, as of the last tick.
+     */
+    public List<VehicleView> getVehiclesWithin(double x, double y, double radius) {
+        queryScratch.clear();
+        grid.queryRadius(x, y, radius, queryScratch);
+        return vehicleViewsOf(queryScratch);
+    }
+
+    /**
+     * Vehicles inside a screen rectangle, as of the last tick.
+     */
+    public List<VehicleView> getVehiclesIn(double minX, double minY, double maxX, double maxY) {
+        queryScratch.clear();
+        grid.queryRect(minX, minY, maxX, maxY, queryScratch);
+        return vehicleViewsOf(queryScratch);
+    }
+
+    /**
+     * Vehicle closest to a screen point within {@code radius}, or {@code null}.
+     */
+    public VehicleView getVehicleAt(double x, double y, double radius) {
+        int slot = grid.nearest(x, y, radius);
+        return slot == SpatialGrid.NONE ? null : vehicleView(slot);
+    }
+
+    private List<VehicleView> vehicleViewsOf(IntList slots) {
+        List<VehicleView> views = new ArrayList<>(slots.size());
+        for (int i = 0; i < slots.size(); i++) {
+            views.add(vehicleView(slots.get(i)));
+        }
+        return views;
+    }
+
+    private VehicleView vehicleView(int slot) {
+        return new VehicleView(vehicles.id(slot), new Point2D.Double(grid.x(slot), grid.y(slot)), vehicles.color(slot));
+    }
+
+    /**
+     * Clears all traffic and counters and restores the signals and knob settings this engine was
+     * built with.
+     */
     public void reset() {
+        laneIndex.clear();
         vehicles.clear();
+        grid.clear();
         departures.clear();
+        metrics.reset();
+        totalDepartures = 0;
+        totalConflicts = 0;
+        for (IntersectionBox box : boxes) {
+            box.occupancy = 0;
+            box.conflict = false;
+        }
         spawnAccumulator = 0;
         simTimeSeconds = 0;
-        manualControl = false;
-        intersection.reset();
-        SimulationConfig config = SimulationConfig.getInstance();
-        spawnPerMinute = config.defaultSpawnPerMinute();
-        targetSpeedLimit = config.defaultSpeedLimit();
-        laneClosure = config.defaultLaneClosure();
+        inbound.clear();
+        outbound.clear();
+        handoffsOut = 0;
+        handoffsIn = 0;
+        Arrays.fill(controlQueue, 0);
+        Arrays.fill(controlArrivals, 0);
+        Arrays.fill(controlArrivalRate, 0);
+        for (int i = 0; i < intersections.size(); i++) {
+            manualControl[i] = false;
+            signals[i].reset();
+        }
+        spawnPerMinute = initialSpawnPerMinute;
+        targetSpeedLimit = initialSpeedLimit;
+        setLaneClosure(initialLaneClosure);
+        scheduleSpawn(0);
+        settled = false;
         notifyObservers();
     }
 
+    /**
+     * Writes the complete state of this engine to {@code path}: clock, knobs, signal phases and
+     * timers, every vehicle and lane, interned routes, the departure window, metrics histograms and
+     * the random state. An engine built the same way and {@link #restore restored} from the file
+     * continues exactly as this one would, so one warmed-up run can be forked into many branches.
+     * Spawn strategy, controllers, observers and reporters are configuration, not state, and are
+     * not written.
+     *
+     * @throws IllegalStateException if the engine runs one partition of a network, whose state
+     *                               includes vehicles in transit between processes
+     */
+    public void checkpoint(Path path) throws IOException {
+        if (boundary != null) {
+            throw new IllegalStateException("A partition of a network cannot be checkpointed on its own");
+        }
+        try (Checkpoint.Out out = Checkpoint.create(path)) {
+            out.putLong(layoutHash());
+            out.putDouble(simTimeSeconds);
+            out.putDouble(spawnAccumulator);
+            out.putDouble(nextSpawnSeconds);
+            out.putBoolean(settled);
+            out.putDouble(spawnPerMinute);
+            out.putDouble(targetSpeedLimit);
+            out.putBoolean(laneClosure);
+            out.putLong(totalDepartures);
+            out.putLong(totalConflicts);
+            out.putRandom(random);
+            for (int i = 0; i < intersections.size(); i++) {
+                out.putBoolean(manualControl[i]);
+                out.putByte(signals[i].currentPhase().ordinal());
+                out.putDouble(signals[i].timeInPhase());
+                out.putInt(boxes[i].occupancy);
+                out.putBoolean(boxes[i].conflict);
+            }
+            out.putInts(controlQueue, controlQueue.length);
+            out.putInts(controlArrivals, controlArrivals.length);
+            out.putDoubles(controlArrivalRate, controlArrivalRate.length);
+            departures.writeTo(out);
+            routes.writeTo(out);
+            vehicles.writeTo(out);
+            laneIndex.writeTo(out);
+            metrics.writeTo(out);
+            out.finish();
+        }
+    }
+
+    /**
+     * Replaces the state of this engine with a checkpoint written by {@link #checkpoint}. The engine
+     * must have been built the same way as the one that wrote it: same network, mesoscopic roads
+     * and idle skipping, checked when reading, and the same spawn strategy, controllers and travel
+     * time function, which are not. The engine's random source is replaced by the restored one.
+     * If reading fails part way, the engine is left half restored; {@link #reset} or restore it
+     * again before use.
+     *
+     * @throws IllegalArgumentException if the checkpoint belongs to a differently built network
+     */
+    public void restore(Path path) throws IOException {
+        try (Checkpoint.In in = Checkpoint.open(path)) {
+            if (in.getLong() != layoutHash()) {
+                throw new IllegalArgumentException("Checkpoint was written by an engine with a different network");
+            }
+            simTimeSeconds = in.getDouble();
+            spawnAccumulator = in.getDouble();
+            nextSpawnSeconds = in.getDouble();
+            settled = in.getBoolean();
+            spawnPerMinute = in.getDouble();
+            targetSpeedLimit = in.getDouble();
+            laneClosure = in.getBoolean();
+            roadViews = null;
+            totalDepartures = in.getLong();
+            totalConflicts = in.getLong();
+            random = in.getRandom();
+            Intersection.Phase[] phases = Intersection.Phase.values();
+            for (int i = 0; i < intersections.size(); i++) {
+                manualControl[i] = in.getBoolean();
+                int phase = in.getByte();
+                if (phase < 0 || phase >= phases.length) {
+                    throw new IOException("Corrupt checkpoint: unknown phase " + phase);
+                }
+                signals[i].restore(phases[phase], in.getDouble());
+                boxes[i].occupancy = in.getInt();
+                boxes[i].conflict = in.getBoolean();
+            }
+            in.getInts(controlQueue, controlQueue.length);
+            in.getInts(controlArrivals, controlArrivals.length);
+            in.getDoubles(controlArrivalRate, controlArrivalRate.length);
+            departures.readFrom(in);
+            routes.readFrom(in);
+            vehicles.readFrom(in);
+            laneIndex.readFrom(in);
+            metrics.readFrom(in, simTimeSeconds);
+            in.finish();
+        }
+        grid.clear();
+        for (int roadId = 0; roadId < roads.size(); roadId++) {
+            for (LaneIndex.Lane lane : laneIndex.lanesOf(roadId)) {
+                for (int i = 0; i < lane.size(); i++) {
+                    indexPosition(lane.get(i));
+                }
+            }
+        }
+        notifyObservers();
+    }
+
+    /**
+     * Hash of what a checkpoint's layout depends on: roads, lanes, stop lines, signals, which roads
+     * are mesoscopic and whether idle skipping is on.
+     */
+    long layoutHash() {
+        long hash = mix(0, roads.size());
+        for (int roadId = 0; roadId < roads.size(); roadId++) {
+            Road road = roads.get(roadId);
+            hash = mix(hash, Double.doubleToLongBits(road.start.x));
+            hash = mix(hash, Double.doubleToLongBits(road.start.y));
+            hash = mix(hash, Double.doubleToLongBits(road.end.x));
+            hash = mix(hash, Double.doubleToLongBits(road.end.y));
+            hash = mix(hash, road.lanes);
+            hash = mix(hash, mesoscopic[roadId] ? 1 : 0);
+        }
+        hash = mix(hash, intersections.size());
+        hash = mix(hash, controlQueue.length);
+        return mix(hash, idleSkipping ? 1 : 0);
+    }
+
     public List<RoadView> getRoadViews() {
-        List<RoadView> views = new ArrayList<>();
-        for (Road road : roads) {
-            int open = openLanesFor(road);
-            views.add(new RoadView(road.start, road.end, open, road.lanes, road.name));
+        List<RoadView> views = roadViews;
+        if (views == null) {
+            List<RoadView> built = new ArrayList<>(roads.size());
+            for (int roadId = 0; roadId < roads.size(); roadId++) {
+                Road road = roads.get(roadId);
+                built.add(new RoadView(road.start, road.end, openLanesFor(roadId), road.lanes, road.name));
+            }
+            views = List.copyOf(built);
+            roadViews = views;
         }
         return views;
     }
 
+    /**
+     * View of the first intersection, or {@code null} if the network has no signals.
+     */
     public SignalView getSignalView() {
-        Map<Road, Color> colors = intersection.signalColors();
-        return new SignalView(intersectionPoint, colors.get(mainRoad), colors.get(crossRoad), intersection.currentPhase());
+        return intersections.isEmpty() ? null : signalView(signals[0]);
+    }
+
+    public List<SignalView> getSignalViews() {
+        List<SignalView> views = new ArrayList<>(intersections.size());
+        for (Intersection.Signal signal : signals) {
+            views.add(signalView(signal));
+        }
+        return views;
     }
 
     public List<VehicleView> getVehicleViews() {
-        List<VehicleView> views = new ArrayList<>(vehicles.size());
-        for (Vehicle vehicle : vehicles) {
-            Point2D.Double position = vehicle.road.positionAlong(vehicle.position, vehicle.laneIndex, openLanesFor(vehicle.road));
-            views.add(new VehicleView(position, vehicle.color));
+        List<VehicleView> views = new ArrayList<>(laneIndex.size());
+        for (int roadId = 0; roadId < roads.size(); roadId++) {
+            Road road = roads.get(roadId);
+            int openLanes = openLanesFor(roadId);
+            for (LaneIndex.Lane lane : laneIndex.lanesOf(roadId)) {
+                double leader = Double.POSITIVE_INFINITY;
+                for (int i = 0; i < lane.size(); i++) {
+                    int slot = lane.get(i);
+                    double distance = leader = drawnPosition(roadId, slot, leader);
+                    Point2D.Double position = road.positionAlong(distance, vehicles.lane(slot), openLanes);
+                    views.add(new VehicleView(vehicles.id(slot), position, vehicles.color(slot)));
+                }
+            }
         }
         return views;
     }
 
+    /**
+     * Notifies {@code observer} synchronously after every tick.
+     */
     public void addObserver(SimulationObserver observer) {
-        observers.add(observer);
+        addObserver(observer, ObserverOptions.synchronous());
+    }
+
+    /**
+     * Notifies {@code observer} as {@code options} describe. Asynchronous observers run on their own
+     * thread until removed.
+     */
+    public void addObserver(SimulationObserver observer, ObserverOptions options) {
+        observers.add(Objects.requireNonNull(observer), Objects.requireNonNull(options));
     }
 
     public void removeObserver(SimulationObserver observer) {
         observers.remove(observer);
     }
 
+    long getDroppedSnapshots(SimulationObserver observer) {
+        return observers.droppedSnapshots(observer);
+    }
+
     public SimulationSnapshot createSnapshot() {
-        return new SimulationSnapshot(
-                getRoadViews(),
-                getVehicleViews(),
-                getSignalView(),
-                getThroughputPerSecond(),
-                getSimTimeSeconds()
-        );
+        return createSnapshot(null);
+    }
+
+    /**
+     * Captures the current state, reusing the columns of {@code recycled}, a snapshot that no reader
+     * can still see, when one is given.
+     */
+    SimulationSnapshot createSnapshot(SimulationSnapshot recycled) {
+        SimulationSnapshot snapshot = SimulationSnapshot.capture(recycled, getRoadViews(), roads, signalPositions,
+                getThroughputPerSecond(), getSimTimeSeconds(), vehicles.size());
+        for (int roadId = 0; roadId < roads.size(); roadId++) {
+            for (LaneIndex.Lane lane : laneIndex.lanesOf(roadId)) {
+                double leader = Double.POSITIVE_INFINITY;
+                for (int i = 0; i < lane.size(); i++) {
+                    int slot = lane.get(i);
+                    leader = drawnPosition(roadId, slot, leader);
+                    snapshot.addVehicle(vehicles.id(slot), roadId, vehicles.lane(slot), leader, vehicles.color(slot));
+                }
+            }
+        }
+        for (int i = 0; i < intersections.size(); i++) {
+            snapshot.setPhase(i, signals[i].currentPhase());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Distance along its road at which to draw a vehicle whose leader in the lane is drawn at
+     * {@code leader}. A vehicle on a mesoscopic road is drawn as far along as its travel time has
+     * run, but behind its leader, so held vehicles show as a queue at the end of the road.
+     */
+    private double drawnPosition(int roadId, int slot, double leader) {
+        if (!mesoscopic[roadId]) {
+            return vehicles.position(slot);
+        }
+        double entry = vehicles.linkEntryTime(slot);
+        double span = vehicles.linkReadyTime(slot) - entry;
+        double fraction = span <= 0 ? 1 : Math.min(1, (simTimeSeconds - entry) / span);
+        return Math.max(0, Math.min(roads.get(roadId).length() * fraction, leader - MIN_GAP_PIXELS));
+    }
+
+    private static SignalView signalView(Intersection.Signal signal) {
+        return new SignalView(signal.intersection().getPoint(), signal.mainColor(), signal.crossColor(), signal.currentPhase());
     }
 
     private void spawnVehicles(double deltaSeconds) {
+        if (idleSkipping) {
+            while (nextSpawnSeconds <= simTimeSeconds) {
+                trySpawn();
+                scheduleSpawn(nextSpawnSeconds);
+            }
+            return;
+        }
         if (spawnPerMinute <= 0) {
             return;
         }
@@ -175,93 +761,950 @@ public class SimulationEngine {
         }
     }
 
+    /**
+     * With idle skipping, draws the time of the next spawn after {@code from}, exponentially
+     * distributed at the current rate.
+     */
+    private void scheduleSpawn(double from) {
+        if (!idleSkipping) {
+            return;
+        }
+        nextSpawnSeconds = spawnPerMinute <= 0
+                ? Double.POSITIVE_INFINITY
+                : from - Math.log(1 - random.nextDouble()) * 60 / spawnPerMinute;
+    }
+
     private void trySpawn() {
-        Road choice = spawnStrategy.chooseRoad(roads, random);
+        Road choice = spawnStrategy.chooseRoad(roads, random, simTimeSeconds);
         if (choice == null) {
             return;
         }
-        int openLanes = openLanesFor(choice);
+        int roadId = network.idOf(choice);
+        int openLanes = openLanesFor(roadId);
         for (int lane = 0; lane < openLanes; lane++) {
-            if (isLaneClear(choice, lane)) {
-                vehicles.add(vehicleFactory.createVehicle(choice, lane, random));
+            if (isLaneClear(roadId, lane)) {
+                int slot = vehicleFactory.spawn(vehicles, choice, roadId, lane, random);
+                assignDriver(slot);
+                vehicles.setEntryTime(slot, simTimeSeconds);
+                vehicles.setRoute(slot, spawnRoute(choice, roadId), 0);
+                laneIndex.lane(roadId, lane).insert(slot);
+                enterRoad(slot);
+                countArrival(roadId);
                 return;
             }
         }
     }
 
-    private boolean isLaneClear(Road road, int lane) {
-        double openLength = Math.min(road.length(), MIN_GAP_PIXELS * 2);
-        for (Vehicle vehicle : vehicles) {
-            if (vehicle.road == road && vehicle.laneIndex == lane && vehicle.position < openLength) {
-                return false;
+    /**
+     * Route to the strategy's destination for a vehicle spawned on {@code origin}, or to a uniformly
+     * chosen exit if it has none or cannot reach it.
+     */
+    private int spawnRoute(Road origin, int originId) {
+        Road destination = spawnStrategy.chooseDestination(origin, random);
+        int route = destination == null ? RouteTable.NO_ROUTE : routes.routeToExit(originId, network.idOf(destination));
+        return route != RouteTable.NO_ROUTE ? route : routes.randomRoute(originId, random);
+    }
+
+    /**
+     * Draws a driver for a new vehicle. The safe-gap rule ignores drivers, so it draws none and
+     * leaves the random sequence as it was before drivers existed.
+     */
+    private void assignDriver(int slot) {
+        if (safeGapFollowing) {
+            drivers.assignTypical(vehicles, slot);
+        } else {
+            drivers.assign(vehicles, slot, random);
+        }
+    }
+
+    /**
+     * Places a vehicle directly on a lane, bypassing the spawn strategy. Used by benchmarks and tests
+     * to build dense scenarios quickly.
+     */
+    void placeVehicle(Road road, int lane, double position) {
+        int roadId = network.idOf(road);
+        int slot = vehicleFactory.spawn(vehicles, road, roadId, lane, random);
+        assignDriver(slot);
+        vehicles.setPosition(slot, position);
+        vehicles.setEntryTime(slot, simTimeSeconds);
+        vehicles.setRoute(slot, routes.randomRoute(roadId, random), 0);
+        laneIndex.lane(roadId, lane).insert(slot);
+        enterRoad(slot);
+        settled = false;
+    }
+
+    /**
+     * Settles a vehicle just inserted at the back of its lane. On a mesoscopic road it gets the
+     * travel time it will need at the lane's current load, less the share of the road already
+     * behind it, and an average speed to match; on a microscopic road it is filed in the grid.
+     */
+    private void enterRoad(int slot) {
+        int roadId = vehicles.roadId(slot);
+        if (mesoscopic[roadId]) {
+            Road road = roads.get(roadId);
+            double freeFlow = road.length() / Math.min(targetSpeedLimit, road.speedLimit);
+            int occupancy = laneIndex.lane(roadId, vehicles.lane(slot)).size() - 1;
+            double travel = Math.max(1e-6, travelTimeFunction.travelTime(freeFlow, occupancy, storage[roadId]));
+            double done = Math.min(1, Math.max(0, vehicles.position(slot) / road.length()));
+            vehicles.enterLink(slot, simTimeSeconds - travel * done, simTimeSeconds + travel * (1 - done));
+            vehicles.setSpeed(slot, road.length() / travel);
+        }
+        indexPosition(slot);
+    }
+
+    /**
+     * Files a vehicle in the spatial grid under its current screen position, or drops it from the
+     * grid while it is on a mesoscopic road.
+     */
+    private void indexPosition(int slot) {
+        int roadId = vehicles.roadId(slot);
+        if (mesoscopic[roadId]) {
+            grid.remove(slot);
+            return;
+        }
+        roads.get(roadId).positionAlong(vehicles.position(slot), vehicles.lane(slot), openLanesFor(roadId), placeScratch, 0);
+        if (grid.contains(slot)) {
+            grid.update(slot, placeScratch[0], placeScratch[1]);
+        } else {
+            grid.insert(slot, placeScratch[0], placeScratch[1]);
+        }
+    }
+
+    /**
+     * Hash of everything later ticks depend on: clock, knobs, signals and every vehicle in lane
+     * order, including its storage slot. Two engines with equal fingerprints evolve identically from
+     * the same random state, which is what replay verification relies on.
+     */
+    long stateFingerprint() {
+        long hash = mix(0, Double.doubleToLongBits(simTimeSeconds));
+        hash = mix(hash, Double.doubleToLongBits(spawnAccumulator));
+        if (idleSkipping) {
+            hash = mix(hash, Double.doubleToLongBits(nextSpawnSeconds));
+        }
+        hash = mix(hash, Double.doubleToLongBits(spawnPerMinute));
+        hash = mix(hash, Double.doubleToLongBits(targetSpeedLimit));
+        hash = mix(hash, laneClosure ? 1 : 0);
+        hash = mix(hash, totalDepartures);
+        hash = mix(hash, departures.size());
+        for (int i = 0; i < intersections.size(); i++) {
+            hash = mix(hash, signals[i].currentPhase().ordinal());
+            hash = mix(hash, Double.doubleToLongBits(signals[i].timeInPhase()));
+            hash = mix(hash, manualControl[i] ? 1 : 0);
+        }
+        for (int control = 0; control < controlQueue.length; control++) {
+            hash = mix(hash, controlQueue[control]);
+            hash = mix(hash, controlArrivals[control]);
+            hash = mix(hash, Double.doubleToLongBits(controlArrivalRate[control]));
+        }
+        for (int roadId = 0; roadId < roads.size(); roadId++) {
+            for (LaneIndex.Lane lane : laneIndex.lanesOf(roadId)) {
+                hash = mix(hash, lane.size());
+                if (mesoscopic[roadId]) {
+                    hash = mix(hash, Double.doubleToLongBits(lane.releaseTime()));
+                }
+                for (int i = 0; i < lane.size(); i++) {
+                    int slot = lane.get(i);
+                    hash = mix(hash, slot);
+                    hash = mix(hash, Double.doubleToLongBits(vehicles.position(slot)));
+                    hash = mix(hash, Double.doubleToLongBits(vehicles.speed(slot)));
+                    hash = mix(hash, vehicles.route(slot));
+                    hash = mix(hash, vehicles.routeStep(slot));
+                    hash = mix(hash, vehicles.color(slot).getRGB());
+                    if (mesoscopic[roadId]) {
+                        hash = mix(hash, Double.doubleToLongBits(vehicles.linkReadyTime(slot)));
+                    }
+                }
             }
         }
-        return true;
+        return hash;
+    }
+
+    private static long mix(long hash, long value) {
+        hash = (hash ^ value) * 0x9E3779B97F4A7C15L;
+        return hash ^ (hash >>> 29);
+    }
+
+    private boolean isLaneClear(int roadId, int lane) {
+        if (mesoscopic[roadId]) {
+            return laneIndex.lane(roadId, lane).size() < storage[roadId];
+        }
+        double openLength = Math.min(roads.get(roadId).length(), MIN_GAP_PIXELS * 2);
+        int last = laneIndex.lane(roadId, lane).last();
+        return last == LaneIndex.Lane.EMPTY || vehicles.position(last) >= openLength;
     }
 
+    /**
+     * Moves every lane, then hands vehicles that ran off the end of a road to the next road of their
+     * route. Handoffs are applied only after all roads have moved, in road and lane order, so no
+     * vehicle moves twice in a tick and the outcome does not depend on road numbering.
+     *
+     * <p>Lanes only read their own vehicles plus state fixed before the move, so road partitions can
+     * run on {@link #tickPool} concurrently. Each partition buffers its departures and handoffs, and
+     * they are merged in road order afterwards, which keeps a parallel tick bit-identical to a
+     * sequential one, down to which slots the store recycles next.
+     */
     private void moveVehicles(double deltaSeconds) {
-        List<Vehicle> toRemove = new ArrayList<>();
-        for (Vehicle vehicle : vehicles) {
-            Road road = vehicle.road;
-            double speedLimit = Math.min(targetSpeedLimit, road.speedLimit);
+        for (int control = 0; control < controlRed.length; control++) {
+            Intersection.Signal signal = signals[network.controlIntersection(control)];
+            controlRed[control] = !signal.canProceed(roads.get(network.controlRoad(control)));
+            controlQueue[control] = 0;
+        }
+        tickDelta = deltaSeconds;
+        if (tickPool != null && partitions.length > 1 && vehicles.size() >= PARALLEL_MIN_VEHICLES) {
+            for (MovePartition partition : partitions) {
+                partition.reinitialize();
+            }
+            moveAll.reinitialize();
+            tickPool.invoke(moveAll);
+        } else {
+            for (MovePartition partition : partitions) {
+                partition.compute();
+            }
+        }
+        for (MovePartition partition : partitions) {
+            for (int i = 0; i < partition.regridded.size(); i++) {
+                grid.relink(partition.regridded.get(i));
+            }
+        }
+        for (MovePartition partition : partitions) {
+            for (int i = 0; i < partition.departed.size(); i++) {
+                int slot = partition.departed.get(i);
+                grid.remove(slot);
+                metrics.recordDeparture(simTimeSeconds - vehicles.entryTime(slot), vehicles.delay(slot),
+                        vehicles.stops(slot));
+                vehicles.release(slot);
+                departures.record(simTimeSeconds);
+                totalDepartures++;
+            }
+        }
+        for (MovePartition partition : partitions) {
+            applyTransfers(partition.transfers);
+        }
+        updateArrivalRates(deltaSeconds);
+    }
+
+    private void countArrival(int roadId) {
+        int control = network.controlStart(roadId);
+        if (control < network.controlEnd(roadId)) {
+            controlArrivals[control]++;
+        }
+    }
+
+    /**
+     * Folds this tick's arrivals into an exponential moving average with a
+     * {@value #ARRIVAL_SMOOTHING_SECONDS} s time constant.
+     */
+    private void updateArrivalRates(double deltaSeconds) {
+        if (deltaSeconds <= 0) {
+            return;
+        }
+        double weight = 1 - Math.exp(-deltaSeconds / ARRIVAL_SMOOTHING_SECONDS);
+        for (int control = 0; control < controlArrivalRate.length; control++) {
+            double rate = controlArrivals[control] / deltaSeconds;
+            controlArrivalRate[control] += weight * (rate - controlArrivalRate[control]);
+            controlArrivals[control] = 0;
+        }
+    }
+
+    /**
+     * Moves the lanes of roads {@code [fromRoad, toRoad)}, collecting vehicles that leave the
+     * network in {@code departed}, lanes whose front vehicle needs a handoff in {@code transfers}
+     * and vehicles that moved to another grid cell in {@code regridded}.
+     */
+    private void moveRoads(int fromRoad, int toRoad, IntList departed, TransferBuffer transfers, IntList regridded,
+                           CarFollowingModel.Platoon platoon, double[] xy) {
+        double deltaSeconds = tickDelta;
+        for (int roadId = fromRoad; roadId < toRoad; roadId++) {
+            Road road = roads.get(roadId);
+            LaneIndex.Lane[] lanes = laneIndex.lanesOf(roadId);
+            for (int laneNumber = 0; laneNumber < lanes.length; laneNumber++) {
+                LaneIndex.Lane lane = lanes[laneNumber];
+                if (mesoscopic[roadId]) {
+                    releaseLane(roadId, lane, laneNumber, departed, transfers);
+                    continue;
+                }
+                if (safeGapFollowing) {
+                    moveLaneAtSafeGap(roadId, road, lane, deltaSeconds, regridded, xy);
+                } else {
+                    moveLane(roadId, road, lane, deltaSeconds, platoon, regridded, xy);
+                }
+                while (!lane.isEmpty() && vehicles.position(lane.first()) > road.length()) {
+                    int slot = lane.first();
+                    if (hasNextRoad(slot)) {
+                        transfers.add(roadId, laneNumber);
+                        break;
+                    }
+                    departed.add(lane.removeFirst());
+                }
+            }
+        }
+    }
+
+    /**
+     * Lets vehicles leave the front of a mesoscopic lane once their travel time has run, at most one
+     * per saturation headway and only while the last signal on the road shows green; signals
+     * further up the road are folded into the travel time. A vehicle bound for another road stops
+     * the release, since {@link #applyTransfers} may find that road full. Vehicles whose time has
+     * run but that may not leave yet are halted and counted in the queue at the last stop line.
+     */
+    private void releaseLane(int roadId, LaneIndex.Lane lane, int laneNumber, IntList departed,
+                             TransferBuffer transfers) {
+        double now = simTimeSeconds;
+        int controlEnd = network.controlEnd(roadId);
+        int exitControl = controlEnd > network.controlStart(roadId) ? controlEnd - 1 : -1;
+        boolean red = exitControl >= 0 && controlRed[exitControl];
+        boolean handoff = false;
+        while (!red && !lane.isEmpty() && lane.releaseTime() <= now && vehicles.linkReadyTime(lane.first()) <= now) {
+            if (hasNextRoad(lane.first())) {
+                transfers.add(roadId, laneNumber);
+                handoff = true;
+                break;
+            }
+            int slot = lane.removeFirst();
+            leaveMesoscopic(roadId, lane, slot);
+            departed.add(slot);
+        }
+        for (int i = handoff ? 1 : 0; i < lane.size(); i++) {
+            int slot = lane.get(i);
+            if (vehicles.linkReadyTime(slot) > now) {
+                break;
+            }
+            if (vehicles.speed(slot) >= QUEUE_SPEED_THRESHOLD) {
+                vehicles.countStop(slot);
+            }
+            vehicles.setSpeed(slot, 0);
+            if (exitControl >= 0) {
+                controlQueue[exitControl]++;
+            }
+        }
+    }
+
+    /**
+     * Charges a vehicle leaving a mesoscopic road the time it spent there beyond free flow, and
+     * holds the lane for one saturation headway: the time the car-following model takes to close
+     * up to the minimum gap at the speed limit, plus half a second of reaction.
+     */
+    private void leaveMesoscopic(int roadId, LaneIndex.Lane lane, int slot) {
+        Road road = roads.get(roadId);
+        double speedLimit = Math.min(targetSpeedLimit, road.speedLimit);
+        double freeFlow = road.length() / speedLimit;
+        vehicles.addDelay(slot, Math.max(0, simTimeSeconds - vehicles.linkEntryTime(slot) - freeFlow));
+        lane.setReleaseTime(simTimeSeconds + 0.5 + MIN_GAP_PIXELS / speedLimit);
+    }
+
+    /**
+     * Splits the roads into up to {@code count} contiguous ranges of roughly equal lane length.
+     */
+    private MovePartition[] partitionRoads(int count) {
+        count = Math.max(1, Math.min(count, roads.size()));
+        if (count == 1) {
+            return new MovePartition[] {new MovePartition(0, roads.size())};
+        }
+        double total = 0;
+        for (Road road : roads) {
+            total += road.length() * road.lanes;
+        }
+        List<MovePartition> ranges = new ArrayList<>(count);
+        double target = total / count;
+        double accumulated = 0;
+        int from = 0;
+        for (int roadId = 0; roadId < roads.size(); roadId++) {
+            Road road = roads.get(roadId);
+            accumulated += road.length() * road.lanes;
+            if (accumulated >= target * (ranges.size() + 1) && ranges.size() < count - 1) {
+                ranges.add(new MovePartition(from, roadId + 1));
+                from = roadId + 1;
+            }
+        }
+        if (from < roads.size()) {
+            ranges.add(new MovePartition(from, roads.size()));
+        }
+        return ranges.toArray(new MovePartition[0]);
+    }
+
+    /**
+     * A contiguous range of roads moved as one unit, with reusable per-range output buffers.
+     */
+    private final class MovePartition extends RecursiveAction {
+        private final int fromRoad;
+        private final int toRoad;
+        private final IntList departed = new IntList();
+        private final TransferBuffer transfers = new TransferBuffer();
+        private final IntList regridded = new IntList();
+        private final double[] xy = new double[2];
+        private final CarFollowingModel.Platoon platoon = new CarFollowingModel.Platoon(64);
+
+        MovePartition(int fromRoad, int toRoad) {
+            this.fromRoad = fromRoad;
+            this.toRoad = toRoad;
+        }
+
+        @Override
+        protected void compute() {
+            departed.clear();
+            transfers.clear();
+            regridded.clear();
+            moveRoads(fromRoad, toRoad, departed, transfers, regridded, platoon, xy);
+        }
+    }
+
+    /**
+     * Demand at one intersection, read from the engine's per-stop-line counters. The stop lines
+     * each approach group feeds into are resolved once, so every query touches only a few counters.
+     */
+    private final class IntersectionDemand implements SignalDemand {
+        private final int[] mainControls;
+        private final int[] crossControls;
+        /** For each main then cross control, the stop lines just downstream of it. */
+        private final int[][] downstream;
+
+        IntersectionDemand(int intersectionIndex) {
+            Intersection intersection = intersections.get(intersectionIndex);
+            IntList main = new IntList();
+            IntList cross = new IntList();
+            for (int control = 0; control < network.controlCount(); control++) {
+                if (network.controlIntersection(control) == intersectionIndex) {
+                    boolean isMain = intersection.isMain(roads.get(network.controlRoad(control)));
+                    (isMain ? main : cross).add(control);
+                }
+            }
+            this.mainControls = main.toArray();
+            this.crossControls = cross.toArray();
+            this.downstream = new int[mainControls.length + crossControls.length][];
+            for (int i = 0; i < mainControls.length; i++) {
+                downstream[i] = downstreamOf(mainControls[i]);
+            }
+            for (int i = 0; i < crossControls.length; i++) {
+                downstream[mainControls.length + i] = downstreamOf(crossControls[i]);
+            }
+        }
+
+        private int[] downstreamOf(int control) {
+            int roadId = network.controlRoad(control);
+            if (control + 1 < network.controlEnd(roadId)) {
+                return new int[] {control + 1};
+            }
+            IntList next = new IntList();
+            for (int i = 0; i < network.successorCount(roadId); i++) {
+                int successor = network.successor(roadId, i);
+                if (network.controlStart(successor) < network.controlEnd(successor)) {
+                    next.add(network.controlStart(successor));
+                }
+            }
+            return next.toArray();
+        }
+
+        @Override
+        public int queueLength(boolean main) {
+            int total = 0;
+            for (int control : main ? mainControls : crossControls) {
+                total += controlQueue[control];
+            }
+            return total;
+        }
+
+        @Override
+        public double arrivalRate(boolean main) {
+            double total = 0;
+            for (int control : main ? mainControls : crossControls) {
+                total += controlArrivalRate[control];
+            }
+            return total;
+        }
+
+        /**
+         * Sum over the approaches of the mean queue on the stop lines each one feeds, since turning
+         * shares are not known in advance.
+         */
+        @Override
+        public int downstreamQueue(boolean main) {
+            int offset = main ? 0 : mainControls.length;
+            int count = main ? mainControls.length : crossControls.length;
+            double total = 0;
+            for (int i = offset; i < offset + count; i++) {
+                int[] next = downstream[i];
+                if (next.length == 0) {
+                    continue;
+                }
+                int queued = 0;
+                for (int control : next) {
+                    queued += controlQueue[control];
+                }
+                total += (double) queued / next.length;
+            }
+            return (int) Math.round(total);
+        }
+    }
+
+    /**
+     * Counts the vehicles in each intersection box and flags boxes that main and cross approach
+     * vehicles entered at the same time. Only vehicles past the point where a red signal holds
+     * them count for conflicts, so a queue waiting at the stop line does not.
+     */
+    private void updateIntersectionBoxes() {
+        for (IntersectionBox box : boxes) {
+            queryScratch.clear();
+            grid.queryRect(box.minX, box.minY, box.maxX, box.maxY, queryScratch);
+            boolean main = false;
+            boolean cross = false;
+            for (int i = 0; i < queryScratch.size(); i++) {
+                int slot = queryScratch.get(i);
+                int approach = box.approachOf(vehicles.roadId(slot));
+                if (approach >= 0 && vehicles.position(slot) > box.holdPositions[approach]) {
+                    if (box.main[approach]) {
+                        main = true;
+                    } else {
+                        cross = true;
+                    }
+                }
+            }
+            boolean conflict = main && cross;
+            if (conflict && !box.conflict) {
+                totalConflicts++;
+            }
+            box.occupancy = queryScratch.size();
+            box.conflict = conflict;
+        }
+    }
+
+    /**
+     * Square around a signal just large enough to hold every approach's carriageway where they
+     * cross, with the approaches resolved to road ids once.
+     */
+    private final class IntersectionBox {
+        private final double minX;
+        private final double minY;
+        private final double maxX;
+        private final double maxY;
+        private final int[] roadIds;
+        /** Furthest a red signal lets each approach's vehicles go. */
+        private final double[] holdPositions;
+        private final boolean[] main;
+        private int occupancy;
+        private boolean conflict;
+
+        IntersectionBox(Intersection intersection) {
+            List<Road> approaches = intersection.approaches();
+            Point2D.Double point = intersection.getPoint();
+            roadIds = new int[approaches.size()];
+            holdPositions = new double[approaches.size()];
+            main = new boolean[approaches.size()];
+            double half = 0;
+            for (int i = 0; i < approaches.size(); i++) {
+                Road road = approaches.get(i);
+                roadIds[i] = network.idOf(road);
+                holdPositions[i] = intersection.positionAlong(road) - MIN_GAP_PIXELS + 1e-6;
+                main[i] = intersection.isMain(road);
+                double lateral = Math.abs((point.x - road.start.x) * road.normalX + (point.y - road.start.y) * road.normalY);
+                half = Math.max(half, lateral + road.lanes * Road.LANE_WIDTH / 2);
+            }
+            minX = point.x - half;
+            minY = point.y - half;
+            maxX = point.x + half;
+            maxY = point.y + half;
+        }
+
+        int approachOf(int roadId) {
+            for (int i = 0; i < roadIds.length; i++) {
+                if (roadIds[i] == roadId) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private boolean hasNextRoad(int slot) {
+        int route = vehicles.route(slot);
+        return route != RouteTable.NO_ROUTE && vehicles.routeStep(slot) + 1 < routes.length(route);
+    }
+
+    /**
+     * Moves the front vehicle of each recorded lane onto the next road of its route. If every open
+     * lane at the start of that road is occupied, the vehicle waits at the end of its current road.
+     */
+    private void applyTransfers(TransferBuffer transfers) {
+        for (int i = 0; i < transfers.size(); i++) {
+            int fromRoad = transfers.road(i);
+            LaneIndex.Lane lane = laneIndex.lane(fromRoad, transfers.lane(i));
+            int slot = lane.first();
+            int nextRoad = routes.roadAt(vehicles.route(slot), vehicles.routeStep(slot) + 1);
+            double length = roads.get(fromRoad).length();
+            boolean fromMesoscopic = mesoscopic[fromRoad];
+            if (boundary != null && boundary[nextRoad]) {
+                handOff(fromRoad, lane, nextRoad, fromMesoscopic ? 0 : vehicles.position(slot) - length);
+                continue;
+            }
+            int targetLane = entryLane(nextRoad, vehicles.lane(slot));
+            if (targetLane < 0) {
+                if (vehicles.speed(slot) >= QUEUE_SPEED_THRESHOLD) {
+                    vehicles.countStop(slot);
+                }
+                if (!fromMesoscopic) {
+                    vehicles.setPosition(slot, length);
+                }
+                vehicles.setSpeed(slot, 0);
+                indexPosition(slot);
+                continue;
+            }
+            lane.removeFirst();
+            if (fromMesoscopic) {
+                leaveMesoscopic(fromRoad, lane, slot);
+            }
+            vehicles.advance(slot, nextRoad, targetLane, fromMesoscopic ? 0 : vehicles.position(slot) - length);
+            laneIndex.lane(nextRoad, targetLane).insert(slot);
+            enterRoad(slot);
+            countArrival(nextRoad);
+        }
+    }
+
+    /**
+     * Takes the front vehicle of {@code lane} out of this engine and queues it for the partition
+     * that simulates {@code stub}. It leaves without counting as a departure.
+     */
+    private void handOff(int fromRoad, LaneIndex.Lane lane, int stub, double overshoot) {
+        int slot = lane.removeFirst();
+        if (mesoscopic[fromRoad]) {
+            leaveMesoscopic(fromRoad, lane, slot);
+        }
+        outbound.add(stub, vehicles.lane(slot), overshoot, vehicles.speed(slot),
+                simTimeSeconds - vehicles.entryTime(slot), vehicles.delay(slot), vehicles.stops(slot),
+                vehicles.color(slot).getRGB(), vehicles.speedFactor(slot), vehicles.headway(slot),
+                vehicles.maxAcceleration(slot), vehicles.comfortableDeceleration(slot));
+        grid.remove(slot);
+        vehicles.release(slot);
+        handoffsOut++;
+    }
+
+    /**
+     * Puts vehicles handed over by other partitions on their roads, each as far along as it
+     * overshot the road it came from and routed on from there like a vehicle placed by hand. A
+     * vehicle whose road has no clear lane waits for a later tick, and so does every vehicle behind
+     * it for the same road, since admitting others only fills the road further.
+     */
+    private void admitHandoffs() {
+        int waiting = 0;
+        for (int i = 0; i < inbound.size(); i++) {
+            int roadId = inbound.road(i);
+            int lane = entryLane(roadId, inbound.lane(i));
+            if (lane < 0) {
+                inbound.move(i, waiting++);
+                continue;
+            }
+            int slot = vehicles.allocate(roadId, lane, vehicles.colorIndex(new Color(inbound.rgb(i))));
+            vehicles.setPosition(slot, Math.min(Math.max(0, inbound.position(i)), roads.get(roadId).length()));
+            vehicles.setSpeed(slot, inbound.speed(i));
+            vehicles.setEntryTime(slot, simTimeSeconds - inbound.age(i));
+            vehicles.addDelay(slot, inbound.delay(i));
+            vehicles.setStops(slot, inbound.stops(i));
+            vehicles.setDriver(slot, inbound.speedFactor(i), inbound.headway(i), inbound.acceleration(i),
+                    inbound.deceleration(i));
+            vehicles.setRoute(slot, routes.randomRoute(roadId, random), 0);
+            laneIndex.lane(roadId, lane).insert(slot);
+            enterRoad(slot);
+            countArrival(roadId);
+            handoffsIn++;
+        }
+        inbound.truncate(waiting);
+    }
+
+    /**
+     * Queues vehicles handed off by other partitions, with road ids of this engine, for the next
+     * tick.
+     */
+    void acceptHandoffs(Handoffs arrivals) {
+        inbound.addAll(arrivals);
+        if (inbound.size() > 0) {
+            settled = false;
+        }
+    }
+
+    /**
+     * Moves the vehicles that left for other partitions since the last call into {@code into}, with
+     * road ids of this engine.
+     */
+    void drainHandoffs(Handoffs into) {
+        into.addAll(outbound);
+        outbound.clear();
+    }
+
+    /**
+     * Handed-off vehicles still waiting for room on their road.
+     */
+    int pendingHandoffs() {
+        return inbound.size();
+    }
+
+    long handoffsOut() {
+        return handoffsOut;
+    }
+
+    long handoffsIn() {
+        return handoffsIn;
+    }
+
+    /**
+     * Vehicles ever created in this engine, by spawning or by admitting a handoff.
+     */
+    long vehiclesCreated() {
+        return vehicles.createdCount();
+    }
+
+    /**
+     * Lane to enter {@code roadId} on, preferring the current lane index; -1 if none is clear.
+     */
+    private int entryLane(int roadId, int preferredLane) {
+        int openLanes = openLanesFor(roadId);
+        int preferred = Math.min(preferredLane, openLanes - 1);
+        if (isLaneClear(roadId, preferred)) {
+            return preferred;
+        }
+        for (int lane = 0; lane < openLanes; lane++) {
+            if (lane != preferred && isLaneClear(roadId, lane)) {
+                return lane;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Moves one lane in three passes. The first gathers the lane front to back into
+     * {@code platoon}, with each vehicle's gap to its leader as of the last tick, or to the next red
+     * stop line if that is closer; the car-following model then computes every acceleration in one
+     * call; the last pass moves the vehicles front to back, so each can be held at the minimum
+     * spacing behind where its leader ended up and short of a red stop line. A vehicle within
+     * {@value #STANDSTILL_GAP_PIXELS} px of a standing obstacle stops outright, so queues come to
+     * rest instead of creeping. On the way the last pass counts, for each stop line, the stopped
+     * vehicles queued behind it, including the stopped rear of a queue whose front is already
+     * pulling away, and the vehicles that crossed the stop line before it; those
+     * counters belong to this road alone, so partitions never share them. Each vehicle is also
+     * charged its stops and the time it lost to driving below the limit, and its new screen
+     * position is stored in the grid; vehicles that changed cell are added to {@code regridded} for
+     * relinking once all partitions are done.
+     */
+    private void moveLane(int roadId, Road road, LaneIndex.Lane lane, double deltaSeconds,
+                          CarFollowingModel.Platoon platoon, IntList regridded, double[] xy) {
+        int count = lane.size();
+        if (count == 0) {
+            return;
+        }
+        double speedLimit = Math.min(targetSpeedLimit, road.speedLimit);
+        int openLanes = openLanesFor(roadId);
+        int controlFirst = network.controlStart(roadId);
+        int controlEnd = network.controlEnd(roadId);
+        platoon.ensureCapacity(count);
+        double[] speed = platoon.speed();
+        double[] desiredSpeed = platoon.desiredSpeed();
+        double[] gap = platoon.gap();
+        double[] leaderSpeed = platoon.leaderSpeed();
+        double[] headway = platoon.headway();
+        double[] maxAcceleration = platoon.maxAcceleration();
+        double[] comfortableDeceleration = platoon.comfortableDeceleration();
+        double[] acceleration = platoon.acceleration();
+
+        int nextControl = controlEnd;
+        double leaderPosition = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            int slot = lane.get(i);
+            double position = vehicles.position(slot);
+            while (nextControl > controlFirst && network.controlStopLine(nextControl - 1) > position) {
+                nextControl--;
+            }
+            double stopLine = nextControl < controlEnd && controlRed[nextControl]
+                    ? network.controlStopLine(nextControl)
+                    : -1;
+            double ahead = leaderPosition - position - MIN_GAP_PIXELS;
+            double aheadSpeed = i == 0 ? 0 : speed[i - 1];
+            if (stopLine > position && stopLine - position - MIN_GAP_PIXELS < ahead) {
+                ahead = stopLine - position - MIN_GAP_PIXELS;
+                aheadSpeed = 0;
+            }
+            speed[i] = vehicles.speed(slot);
+            desiredSpeed[i] = speedLimit * vehicles.speedFactor(slot);
+            gap[i] = Math.max(0, ahead);
+            leaderSpeed[i] = aheadSpeed;
+            headway[i] = vehicles.headway(slot);
+            maxAcceleration[i] = vehicles.maxAcceleration(slot);
+            comfortableDeceleration[i] = vehicles.comfortableDeceleration(slot);
+            leaderPosition = position;
+        }
+
+        platoon.setDeltaSeconds(deltaSeconds);
+        carFollowing.accelerate(platoon, count);
+
+        double step = Math.max(1e-6, deltaSeconds);
+        nextControl = controlEnd;
+        leaderPosition = Double.POSITIVE_INFINITY;
+        int queueControl = -1;
+        boolean queueOpen = false;
+        boolean queueStarted = false;
+        for (int i = 0; i < count; i++) {
+            int slot = lane.get(i);
+            double position = vehicles.position(slot);
+            double previousSpeed = speed[i];
+            while (nextControl > controlFirst && network.controlStopLine(nextControl - 1) > position) {
+                nextControl--;
+            }
+            double stopLine = nextControl < controlEnd && controlRed[nextControl]
+                    ? network.controlStopLine(nextControl)
+                    : -1;
+
+            double rate = acceleration[i];
+            double newSpeed = previousSpeed + rate * deltaSeconds;
+            double distance;
+            if (gap[i] < STANDSTILL_GAP_PIXELS && leaderSpeed[i] == 0) {
+                newSpeed = 0;
+                distance = 0;
+            } else if (newSpeed < 0) {
+                // Stops within the tick: the distance to standstill, not a step backwards.
+                distance = rate < 0 ? previousSpeed * previousSpeed / (-2 * rate) : 0;
+                newSpeed = 0;
+            } else {
+                distance = (previousSpeed + newSpeed) * 0.5 * deltaSeconds;
+            }
+            double room = Math.max(0, leaderPosition - MIN_GAP_PIXELS - position);
+            if (stopLine > position) {
+                room = Math.min(room, Math.max(0, stopLine - position - MIN_GAP_PIXELS));
+            }
+            if (distance > room) {
+                distance = room;
+                newSpeed = Math.min(newSpeed, room / step);
+            }
+            vehicles.setPosition(slot, position + distance);
+            vehicles.setSpeed(slot, newSpeed);
+            leaderPosition = position + distance;
+            if (newSpeed < QUEUE_SPEED_THRESHOLD && previousSpeed >= QUEUE_SPEED_THRESHOLD) {
+                vehicles.countStop(slot);
+            }
+            if (newSpeed < speedLimit) {
+                vehicles.addDelay(slot, deltaSeconds * (1 - newSpeed / speedLimit));
+            }
+            road.positionAlong(position + distance, vehicles.lane(slot), openLanes, xy, 0);
+            if (grid.place(slot, xy[0], xy[1])) {
+                regridded.add(slot);
+            }
+
+            if (nextControl == controlEnd) {
+                continue;
+            }
+            if (position + distance >= network.controlStopLine(nextControl)) {
+                if (nextControl + 1 < controlEnd) {
+                    controlArrivals[nextControl + 1]++;
+                }
+            } else {
+                if (nextControl != queueControl) {
+                    queueControl = nextControl;
+                    queueOpen = true;
+                    queueStarted = false;
+                }
+                if (queueOpen && newSpeed < QUEUE_SPEED_THRESHOLD) {
+                    controlQueue[nextControl]++;
+                    queueStarted = true;
+                } else if (queueStarted) {
+                    queueOpen = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves one lane front to back by {@link CarFollowingModel#safeGap()}, exactly as the engine did
+     * before car-following models: each vehicle sees its leader's position for this tick and takes
+     * its new speed at once. Queue counting ends at the first vehicle that is not stopped, as it did
+     * then. Counters, stops, delay and the grid are updated as in {@link #moveLane}.
+     */
+    private void moveLaneAtSafeGap(int roadId, Road road, LaneIndex.Lane lane, double deltaSeconds,
+                                   IntList regridded, double[] xy) {
+        double speedLimit = Math.min(targetSpeedLimit, road.speedLimit);
+        int openLanes = openLanesFor(roadId);
+        int controlFirst = network.controlStart(roadId);
+        int controlEnd = network.controlEnd(roadId);
+        int nextControl = controlEnd;
+        int queueControl = -1;
+        boolean queueOpen = false;
+        for (int i = 0; i < lane.size(); i++) {
+            int slot = lane.get(i);
+            double position = vehicles.position(slot);
+            double previousSpeed = vehicles.speed(slot);
             double desiredSpeed = speedLimit;
 
-            double gap = findGapAhead(vehicle);
-            double safeGap = vehicle.speed * 0.5 + MIN_GAP_PIXELS;
+            double gap = gapAhead(lane, i);
+            double safeGap = previousSpeed * 0.5 + MIN_GAP_PIXELS;
             if (gap >= 0 && gap < safeGap) {
-                double factor = Math.max(0.2, gap / safeGap);
+                double factor = Math.max(SafeGapFollowing.MIN_FACTOR, gap / safeGap);
                 desiredSpeed *= factor;
             }
 
+            while (nextControl > controlFirst && network.controlStopLine(nextControl - 1) > position) {
+                nextControl--;
+            }
+            double stopLine = nextControl < controlEnd && controlRed[nextControl]
+                    ? network.controlStopLine(nextControl)
+                    : -1;
+
             double distance = desiredSpeed * deltaSeconds;
-            distance = applyIntersectionConstraint(vehicle, distance, desiredSpeed, deltaSeconds);
+            distance = applyStopLine(stopLine, position, distance, desiredSpeed, deltaSeconds);
             if (gap >= 0) {
                 double maxFollowDistance = Math.max(0, gap - MIN_GAP_PIXELS);
                 distance = Math.min(distance, maxFollowDistance);
             }
-            vehicle.position += distance;
-            vehicle.speed = distance <= 0 ? 0 : distance / Math.max(1e-6, deltaSeconds);
-
-            if (vehicle.position > road.length()) {
-                toRemove.add(vehicle);
-                departures.addLast(simTimeSeconds);
+            double speed = distance <= 0 ? 0 : distance / Math.max(1e-6, deltaSeconds);
+            vehicles.setPosition(slot, position + distance);
+            vehicles.setSpeed(slot, speed);
+            if (speed < QUEUE_SPEED_THRESHOLD && previousSpeed >= QUEUE_SPEED_THRESHOLD) {
+                vehicles.countStop(slot);
+            }
+            if (speed < speedLimit) {
+                vehicles.addDelay(slot, deltaSeconds * (1 - speed / speedLimit));
+            }
+            road.positionAlong(position + distance, vehicles.lane(slot), openLanes, xy, 0);
+            if (grid.place(slot, xy[0], xy[1])) {
+                regridded.add(slot);
             }
-        }
-        vehicles.removeAll(toRemove);
-    }
 
-    private double findGapAhead(Vehicle subject) {
-        double closest = Double.MAX_VALUE;
-        for (Vehicle other : vehicles) {
-            if (other == subject || other.road != subject.road || other.laneIndex != subject.laneIndex) {
+            if (nextControl == controlEnd) {
                 continue;
             }
-            if (other.position > subject.position && other.position < closest) {
-                closest = other.position;
+            if (position + distance >= network.controlStopLine(nextControl)) {
+                if (nextControl + 1 < controlEnd) {
+                    controlArrivals[nextControl + 1]++;
+                }
+            } else {
+                if (nextControl != queueControl) {
+                    queueControl = nextControl;
+                    queueOpen = true;
+                }
+                if (queueOpen && speed < QUEUE_SPEED_THRESHOLD) {
+                    controlQueue[nextControl]++;
+                } else {
+                    queueOpen = false;
+                }
             }
         }
-        return closest == Double.MAX_VALUE ? -1 : closest - subject.position;
     }
 
-    private int openLanesFor(Road road) {
-        if (!laneClosure || road.lanes <= 1 || road != mainRoad) {
-            return road.lanes;
+    /**
+     * Distance to the nearest vehicle ahead in the lane, or -1 if there is none.
+     */
+    private double gapAhead(LaneIndex.Lane lane, int index) {
+        double position = vehicles.position(lane.get(index));
+        for (int i = index - 1; i >= 0; i--) {
+            double leader = vehicles.position(lane.get(i));
+            if (leader > position) {
+                return leader - position;
+            }
         }
-        return Math.max(1, road.lanes - 1);
+        return -1;
     }
 
-    private double applyIntersectionConstraint(Vehicle vehicle, double desiredDistance, double desiredSpeed, double deltaSeconds) {
-        if (!intersection.involves(vehicle.road)) {
-            return desiredDistance;
-        }
-        double stopLine = intersection.positionAlong(vehicle.road);
-        if (stopLine < 0 || vehicle.position >= stopLine) {
+    /**
+     * Holds a vehicle short of a red stop line; {@code stopLine} is negative when the road has green.
+     */
+    private static double applyStopLine(double stopLine, double position, double desiredDistance, double desiredSpeed, double deltaSeconds) {
+        if (stopLine < 0 || position >= stopLine) {
             return desiredDistance;
         }
-        if (intersection.canProceed(vehicle.road)) {
-            return desiredDistance;
-        }
-        double distanceToStop = stopLine - vehicle.position - MIN_GAP_PIXELS;
+        double distanceToStop = stopLine - position - MIN_GAP_PIXELS;
         double clamped = Math.max(0, Math.min(desiredDistance, distanceToStop));
         if (distanceToStop <= 0) {
             return 0;
@@ -270,51 +1713,47 @@ public class SimulationEngine {
         return Math.min(clamped, maxMove);
     }
 
-    private void pruneDepartures() {
-        double cutoff = simTimeSeconds - THROUGHPUT_WINDOW_SECONDS;
-        while (!departures.isEmpty() && departures.peekFirst() < cutoff) {
-            departures.removeFirst();
+    private int openLanesFor(int roadId) {
+        int lanes = roads.get(roadId).lanes;
+        if (!laneClosure || lanes <= 1 || !network.isClosable(roadId)) {
+            return lanes;
         }
+        return Math.max(1, lanes - 1);
+    }
+
+    private void pruneDepartures() {
+        departures.pruneBefore(simTimeSeconds - THROUGHPUT_WINDOW_SECONDS);
     }
 
+    /**
+     * Shows a command's effect to every observer at once, regardless of its rate.
+     */
     private void notifyObservers() {
-        SimulationSnapshot snapshot = createSnapshot();
-        for (SimulationObserver observer : observers) {
-            observer.onUpdate(snapshot);
-        }
+        observers.publish(simTimeSeconds, true, snapshotFactory);
     }
 
     public record RoadView(Point2D.Double start, Point2D.Double end, int openLanes, int totalLanes, String name) {
     }
 
-    public record VehicleView(Point2D.Double position, Color color) {
+    /**
+     * A vehicle as drawn. {@code id} stays the same for as long as the vehicle is in the network.
+     */
+    public record VehicleView(long id, Point2D.Double position, Color color) {
     }
 
     public record SignalView(Point2D.Double position, Color mainColor, Color crossColor, Intersection.Phase phase) {
     }
 
-    static class Vehicle {
-        private final Road road;
-        private final int laneIndex;
-        private final Color color;
-        private double position;
-        private double speed = 40;
-
-        Vehicle(Road road, int laneIndex, Color color) {
-            this.road = Objects.requireNonNull(road);
-            this.laneIndex = laneIndex;
-            this.color = Objects.requireNonNull(color);
-        }
-    }
-
     public static class Road {
+        static final double LANE_WIDTH = 12;
+
         private final Point2D.Double start;
         private final Point2D.Double end;
         private final int lanes;
         private final double speedLimit;
         private final String name;
         private final double length;
-        private final double laneWidth = 12;
+        private final double laneWidth = LANE_WIDTH;
         private final double unitX;
         private final double unitY;
         private final double normalX;
@@ -344,13 +1783,38 @@ public class SimulationEngine {
             return name;
         }
 
+        int lanes() {
+            return lanes;
+        }
+
+        double speedLimit() {
+            return speedLimit;
+        }
+
+        Point2D.Double start() {
+            return start;
+        }
+
+        Point2D.Double end() {
+            return end;
+        }
+
         public Point2D.Double positionAlong(double distance, int laneIndex, int openLanes) {
+            double[] xy = new double[2];
+            positionAlong(distance, laneIndex, openLanes, xy, 0);
+            return new Point2D.Double(xy[0], xy[1]);
+        }
+
+        /**
+         * Writes the screen position into {@code out[offset]} and {@code out[offset + 1]}, for bulk
+         * conversion without a point per vehicle.
+         */
+        void positionAlong(double distance, int laneIndex, int openLanes, double[] out, int offset) {
             double clamped = Math.max(0, Math.min(distance, length));
             int laneOffsetIndex = Math.min(laneIndex, openLanes - 1);
             double offsetFromCenter = (laneOffsetIndex - (openLanes - 1) / 2.0) * laneWidth;
-            double x = start.x + unitX * clamped + normalX * offsetFromCenter;
-            double y = start.y + unitY * clamped + normalY * offsetFromCenter;
-            return new Point2D.Double(x, y);
+            out[offset] = start.x + unitX * clamped + normalX * offsetFromCenter;
+            out[offset + 1] = start.y + unitY * clamped + normalY * offsetFromCenter;
         }
     }
 
@@ -362,62 +1826,114 @@ public class SimulationEngine {
             CROSS_YELLOW
         }
 
-        private final Road main;
-        private final Road cross;
+        private static final Color RED = new Color(0xE74C3C);
+        private static final Color YELLOW = new Color(0xF1C40F);
+        private static final Color GREEN = new Color(0x27AE60);
+        private static final SignalController FIXED_TIME = SignalController.fixedTime(12.0, 8.0);
+
+        private final List<Road> mainApproaches;
+        private final List<Road> crossApproaches;
+        private final List<Road> approaches;
         private final Point2D.Double point;
-        private double timeInPhase = 0;
-        private TrafficLightState state = new MainGreenState();
+        private final Map<Phase, Map<Road, Color>> colorsByPhase = new EnumMap<>(Phase.class);
+        private final SignalController plan;
 
         public Intersection(Road main, Road cross, Point2D.Double point) {
-            this.main = Objects.requireNonNull(main);
-            this.cross = Objects.requireNonNull(cross);
-            this.point = point;
+            this(List.of(main), List.of(cross), point);
         }
 
-        public void update(double deltaSeconds) {
-            state.update(this, deltaSeconds);
+        public Intersection(List<Road> mainApproaches, List<Road> crossApproaches, Point2D.Double point) {
+            this(mainApproaches, crossApproaches, point, FIXED_TIME);
+        }
+
+        /**
+         * Two-phase signal where every road in {@code mainApproaches} shares the main green and every
+         * road in {@code crossApproaches} the cross green, with green lengths from {@code plan}.
+         */
+        public Intersection(List<Road> mainApproaches, List<Road> crossApproaches, Point2D.Double point,
+                            SignalController plan) {
+            this.mainApproaches = List.copyOf(mainApproaches);
+            this.crossApproaches = List.copyOf(crossApproaches);
+            if (this.mainApproaches.isEmpty() && this.crossApproaches.isEmpty()) {
+                throw new IllegalArgumentException("An intersection needs at least one approach");
+            }
+            List<Road> all = new ArrayList<>(this.mainApproaches);
+            all.addAll(this.crossApproaches);
+            this.approaches = List.copyOf(all);
+            this.point = Objects.requireNonNull(point);
+            this.plan = Objects.requireNonNull(plan);
+            for (Phase phase : Phase.values()) {
+                Map<Road, Color> colors = new LinkedHashMap<>();
+                for (Road road : approaches) {
+                    colors.put(road, colorFor(phase, isMain(road)));
+                }
+                colorsByPhase.put(phase, Collections.unmodifiableMap(colors));
+            }
+        }
+
+        /**
+         * Plan deciding green lengths, unless the engine builder sets one for every intersection;
+         * the default is a fixed 12 s main / 8 s cross plan.
+         */
+        public SignalController getController() {
+            return plan;
         }
 
         public boolean involves(Road road) {
-            return road == main || road == cross;
+            return isMain(road) || isCross(road);
         }
 
         public double positionAlong(Road road) {
-            if (road == main) {
-                return distanceAlong(road, point);
-            }
-            if (road == cross) {
+            if (involves(road)) {
                 return distanceAlong(road, point);
             }
             return -1;
         }
 
-        public boolean canProceed(Road road) {
-            return switch (state.phase()) {
-                case MAIN_GREEN, MAIN_YELLOW -> road == main;
-                case CROSS_GREEN, CROSS_YELLOW -> road == cross;
-            };
+        public Point2D.Double getPoint() {
+            return point;
         }
 
-        public Phase currentPhase() {
-            return state.phase();
+        List<Road> approaches() {
+            return approaches;
         }
 
-        public Map<Road, Color> signalColors() {
-            Color red = new Color(0xE74C3C);
-            Color yellow = new Color(0xF1C40F);
-            Color green = new Color(0x27AE60);
-            return switch (state.phase()) {
-                case MAIN_GREEN -> Map.of(main, green, cross, red);
-                case MAIN_YELLOW -> Map.of(main, yellow, cross, red);
-                case CROSS_GREEN -> Map.of(main, red, cross, green);
-                case CROSS_YELLOW -> Map.of(main, red, cross, yellow);
+        List<Road> mainApproaches() {
+            return mainApproaches;
+        }
+
+        List<Road> crossApproaches() {
+            return crossApproaches;
+        }
+
+        static Color colorFor(Phase phase, boolean main) {
+            return switch (phase) {
+                case MAIN_GREEN -> main ? GREEN : RED;
+                case MAIN_YELLOW -> main ? YELLOW : RED;
+                case CROSS_GREEN -> main ? RED : GREEN;
+                case CROSS_YELLOW -> main ? RED : YELLOW;
             };
         }
 
-        public void reset() {
-            state = new MainGreenState();
-            timeInPhase = 0;
+        boolean isMain(Road road) {
+            return contains(mainApproaches, road);
+        }
+
+        private boolean isCross(Road road) {
+            return contains(crossApproaches, road);
+        }
+
+        /**
+         * Indexed rather than iterator scan: this runs per stop line every tick, and the iterator
+         * only stays off the heap while the JIT sees few list classes here.
+         */
+        private static boolean contains(List<Road> approaches, Road road) {
+            for (int i = 0; i < approaches.size(); i++) {
+                if (approaches.get(i) == road) {
+                    return true;
+                }
+            }
+            return false;
         }
 
         private double distanceAlong(Road road, Point2D.Double p) {
@@ -426,108 +1942,242 @@ public class SimulationEngine {
             return dx * road.unitX + dy * road.unitY;
         }
 
-        private void setPhase(Phase phase) {
-            switch (phase) {
-                case MAIN_GREEN -> changeState(new MainGreenState());
-                case MAIN_YELLOW -> changeState(new MainYellowState());
-                case CROSS_GREEN -> changeState(new CrossGreenState());
-                case CROSS_YELLOW -> changeState(new CrossYellowState());
-                default -> throw new IllegalArgumentException("Unknown phase: " + phase);
+        /**
+         * Running state of one intersection in one engine: phase, time served in it, the plan in
+         * force and the demand counters it reads. The intersection itself only describes the
+         * approaches, so engines built from the same network never share signal state.
+         */
+        static final class Signal {
+            private static final TrafficLightState MAIN_GREEN_STATE = new MainGreenState();
+            private static final TrafficLightState MAIN_YELLOW_STATE = new MainYellowState();
+            private static final TrafficLightState CROSS_GREEN_STATE = new CrossGreenState();
+            private static final TrafficLightState CROSS_YELLOW_STATE = new CrossYellowState();
+            /**
+             * Slack added to time in phase, so a phase that lasts a multiple of the tick ends on time
+             * whether it was reached tick by tick or partly in one idle jump.
+             */
+            private static final double TIMER_EPSILON = 1e-9;
+
+            private final Intersection intersection;
+            private final SignalController controller;
+            private final SignalDemand demand;
+            private double timeInPhase = 0;
+            private TrafficLightState state = MAIN_GREEN_STATE;
+
+            Signal(Intersection intersection) {
+                this(intersection, intersection.plan, SignalDemand.NONE);
             }
-        }
 
-        private void changeState(TrafficLightState next) {
-            state = next;
-            timeInPhase = 0;
-        }
+            Signal(Intersection intersection, SignalController controller, SignalDemand demand) {
+                this.intersection = intersection;
+                this.controller = Objects.requireNonNull(controller);
+                this.demand = Objects.requireNonNull(demand);
+            }
 
-        private interface TrafficLightState {
-            Phase phase();
+            Intersection intersection() {
+                return intersection;
+            }
 
-            double duration();
+            void update(double deltaSeconds) {
+                state.update(this, deltaSeconds);
+            }
 
-            TrafficLightState next();
+            /**
+             * Seconds the current phase is sure to last, provided no vehicle moves meanwhile.
+             */
+            double minSecondsToPhaseChange() {
+                return state.minRemaining(this);
+            }
 
-            default void update(Intersection context, double deltaSeconds) {
-                context.timeInPhase += deltaSeconds;
-                if (context.timeInPhase >= duration()) {
-                    context.changeState(next());
-                }
+            /**
+             * Lets {@code seconds} pass in the current phase without checking whether it should end;
+             * only for stretches shorter than {@link #minSecondsToPhaseChange}.
+             */
+            void elapse(double seconds) {
+                timeInPhase += seconds;
             }
-        }
 
-        private abstract static class TimedPhaseState implements TrafficLightState {
-            @Override
-            public void update(Intersection context, double deltaSeconds) {
-                TrafficLightState.super.update(context, deltaSeconds);
+            double timeInPhase() {
+                return timeInPhase;
             }
-        }
 
-        private static class MainGreenState extends TimedPhaseState {
-            @Override
-            public Phase phase() {
-                return Phase.MAIN_GREEN;
+            boolean canProceed(Road road) {
+                return switch (state.phase()) {
+                    case MAIN_GREEN, MAIN_YELLOW -> intersection.isMain(road);
+                    case CROSS_GREEN, CROSS_YELLOW -> intersection.isCross(road);
+                };
             }
 
-            @Override
-            public double duration() {
-                return 12.0;
+            /**
+             * Whether the main approaches currently have right of way; the cross approaches have it
+             * otherwise.
+             */
+            boolean mainHasRightOfWay() {
+                Phase phase = state.phase();
+                return phase == Phase.MAIN_GREEN || phase == Phase.MAIN_YELLOW;
             }
 
-            @Override
-            public TrafficLightState next() {
-                return new MainYellowState();
+            Phase currentPhase() {
+                return state.phase();
             }
-        }
 
-        private static class MainYellowState extends TimedPhaseState {
-            @Override
-            public Phase phase() {
-                return Phase.MAIN_YELLOW;
+            Color mainColor() {
+                return colorFor(state.phase(), true);
             }
 
-            @Override
-            public double duration() {
-                return 3.0;
+            Color crossColor() {
+                return colorFor(state.phase(), false);
             }
 
-            @Override
-            public TrafficLightState next() {
-                return new CrossGreenState();
+            Map<Road, Color> signalColors() {
+                return intersection.colorsByPhase.get(state.phase());
             }
-        }
 
-        private static class CrossGreenState extends TimedPhaseState {
-            @Override
-            public Phase phase() {
-                return Phase.CROSS_GREEN;
+            void reset() {
+                state = MAIN_GREEN_STATE;
+                timeInPhase = 0;
             }
 
-            @Override
-            public double duration() {
-                return 8.0;
+            void setPhase(Phase phase) {
+                switch (phase) {
+                    case MAIN_GREEN -> changeState(MAIN_GREEN_STATE);
+                    case MAIN_YELLOW -> changeState(MAIN_YELLOW_STATE);
+                    case CROSS_GREEN -> changeState(CROSS_GREEN_STATE);
+                    case CROSS_YELLOW -> changeState(CROSS_YELLOW_STATE);
+                    default -> throw new IllegalArgumentException("Unknown phase: " + phase);
+                }
             }
 
-            @Override
-            public TrafficLightState next() {
-                return new CrossYellowState();
+            /**
+             * Puts the signal back in {@code phase} with {@code timeInPhase} already served.
+             */
+            void restore(Phase phase, double timeInPhase) {
+                setPhase(phase);
+                this.timeInPhase = timeInPhase;
             }
-        }
 
-        private static class CrossYellowState extends TimedPhaseState {
-            @Override
-            public Phase phase() {
-                return Phase.CROSS_YELLOW;
+            private void changeState(TrafficLightState next) {
+                state = next;
+                timeInPhase = 0;
             }
 
-            @Override
-            public double duration() {
-                return 3.0;
+            /**
+             * Stateless phase; instances are shared so phase changes do not allocate.
+             */
+            private interface TrafficLightState {
+                Phase phase();
+
+                TrafficLightState next();
+
+                boolean expired(Signal context);
+
+                double minRemaining(Signal context);
+
+                default void update(Signal context, double deltaSeconds) {
+                    context.timeInPhase += deltaSeconds;
+                    if (expired(context)) {
+                        context.changeState(next());
+                    }
+                }
             }
 
-            @Override
-            public TrafficLightState next() {
-                return new MainGreenState();
+            private abstract static class TimedPhaseState implements TrafficLightState {
+                abstract double duration();
+
+                @Override
+                public boolean expired(Signal context) {
+                    return context.timeInPhase + TIMER_EPSILON >= duration();
+                }
+
+                @Override
+                public double minRemaining(Signal context) {
+                    return Math.max(0, duration() - context.timeInPhase - TIMER_EPSILON);
+                }
+            }
+
+            /**
+             * Green phase whose length the intersection's {@link SignalController} decides.
+             */
+            private abstract static class ControlledGreenState implements TrafficLightState {
+                abstract boolean main();
+
+                @Override
+                public boolean expired(Signal context) {
+                    return context.controller.endGreen(main(), context.timeInPhase + TIMER_EPSILON, context.demand);
+                }
+
+                @Override
+                public double minRemaining(Signal context) {
+                    return context.controller.minRemainingGreen(main(), context.timeInPhase + TIMER_EPSILON, context.demand);
+                }
+            }
+
+            private static class MainGreenState extends ControlledGreenState {
+                @Override
+                public Phase phase() {
+                    return Phase.MAIN_GREEN;
+                }
+
+                @Override
+                boolean main() {
+                    return true;
+                }
+
+                @Override
+                public TrafficLightState next() {
+                    return MAIN_YELLOW_STATE;
+                }
+            }
+
+            private static class MainYellowState extends TimedPhaseState {
+                @Override
+                public Phase phase() {
+                    return Phase.MAIN_YELLOW;
+                }
+
+                @Override
+                double duration() {
+                    return 3.0;
+                }
+
+                @Override
+                public TrafficLightState next() {
+                    return CROSS_GREEN_STATE;
+                }
+            }
+
+            private static class CrossGreenState extends ControlledGreenState {
+                @Override
+                public Phase phase() {
+                    return Phase.CROSS_GREEN;
+                }
+
+                @Override
+                boolean main() {
+                    return false;
+                }
+
+                @Override
+                public TrafficLightState next() {
+                    return CROSS_YELLOW_STATE;
+                }
+            }
+
+            private static class CrossYellowState extends TimedPhaseState {
+                @Override
+                public Phase phase() {
+                    return Phase.CROSS_YELLOW;
+                }
+
+                @Override
+                double duration() {
+                    return 3.0;
+                }
+
+                @Override
+                public TrafficLightState next() {
+                    return MAIN_GREEN_STATE;
+                }
             }
         }
     }
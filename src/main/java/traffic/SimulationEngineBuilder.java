@@ -1,13 +1,19 @@
 package traffic;
 
 import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Objects;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
 
 /**
  * Builder for {@link SimulationEngine} to keep construction flexible and testable.
  */
 public class SimulationEngineBuilder {
+    private RoadNetwork network;
     private SimulationEngine.Road mainRoad;
     private SimulationEngine.Road crossRoad;
     private Point2D.Double intersectionPoint;
@@ -18,6 +24,15 @@ public class SimulationEngineBuilder {
     private double spawnPerMinute = SimulationConfig.getInstance().defaultSpawnPerMinute();
     private double targetSpeedLimit = SimulationConfig.getInstance().defaultSpeedLimit();
     private boolean laneClosure = SimulationConfig.getInstance().defaultLaneClosure();
+    private int vehicleCapacity = 256;
+    private ForkJoinPool tickPool;
+    private SignalController signalController;
+    private Predicate<SimulationEngine.Road> mesoscopicRoads = road -> false;
+    private TravelTimeFunction travelTimeFunction = TravelTimeFunction.bpr(0.15, 4);
+    private CarFollowingModel carFollowingModel = CarFollowingModel.intelligentDriver();
+    private DriverProfile driverProfile = DriverProfile.defaults();
+    private boolean idleSkipping;
+    private Predicate<SimulationEngine.Road> boundaryRoads;
 
     public static SimulationEngineBuilder defaults() {
         SimulationEngineBuilder builder = new SimulationEngineBuilder();
@@ -37,6 +52,37 @@ public class SimulationEngineBuilder {
         return builder;
     }
 
+    /**
+     * Builder for the network, signal plans, spawn weights and knob settings in a scenario file,
+     * text or binary. See {@link Scenario} for the formats.
+     */
+    public static SimulationEngineBuilder fromScenario(Path path) throws IOException {
+        return Scenario.load(path).toBuilder();
+    }
+
+    /**
+     * Uses an arbitrary road network instead of the main/cross pair.
+     */
+    public SimulationEngineBuilder withNetwork(RoadNetwork network) {
+        this.network = Objects.requireNonNull(network);
+        return this;
+    }
+
+    public SimulationEngineBuilder withMainRoad(SimulationEngine.Road road) {
+        this.mainRoad = Objects.requireNonNull(road);
+        return this;
+    }
+
+    public SimulationEngineBuilder withCrossRoad(SimulationEngine.Road road) {
+        this.crossRoad = Objects.requireNonNull(road);
+        return this;
+    }
+
+    public SimulationEngineBuilder withIntersectionPoint(Point2D.Double point) {
+        this.intersectionPoint = Objects.requireNonNull(point);
+        return this;
+    }
+
     public SimulationEngineBuilder withSpawnStrategy(SpawnStrategy strategy) {
         this.spawnStrategy = Objects.requireNonNull(strategy);
         return this;
@@ -57,6 +103,13 @@ public class SimulationEngineBuilder {
         return this;
     }
 
+    /**
+     * Seeds the engine's random source, so the same seed and inputs reproduce a run exactly.
+     */
+    public SimulationEngineBuilder withSeed(long seed) {
+        return withRandom(new Random(seed));
+    }
+
     public SimulationEngineBuilder withSpawnRate(double perMinute) {
         this.spawnPerMinute = perMinute;
         return this;
@@ -72,24 +125,141 @@ public class SimulationEngineBuilder {
         return this;
     }
 
-    public SimulationEngine build() {
-        VehicleFactory resolvedFactory = vehicleFactory != null ? vehicleFactory : new VehicleFactory(colorStrategy);
-        Objects.requireNonNull(mainRoad, "main road");
-        Objects.requireNonNull(crossRoad, "cross road");
-        Objects.requireNonNull(intersectionPoint, "intersection point");
-        return new SimulationEngine(this);
+    /**
+     * Presizes vehicle storage so large scenarios never grow the columns mid-run.
+     */
+    public SimulationEngineBuilder withVehicleCapacity(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.vehicleCapacity = capacity;
+        return this;
+    }
+
+    /**
+     * Moves roads in parallel on the common fork/join pool. Results are identical to a sequential
+     * engine with the same seed; only wall-clock time changes.
+     */
+    public SimulationEngineBuilder withParallelTicks() {
+        return withParallelTicks(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Moves roads in parallel on {@code pool}, which the caller owns and shuts down.
+     */
+    public SimulationEngineBuilder withParallelTicks(ForkJoinPool pool) {
+        this.tickPool = Objects.requireNonNull(pool);
+        return this;
+    }
+
+    /**
+     * Moves roads on the calling thread. This is the default.
+     */
+    public SimulationEngineBuilder withSequentialTicks() {
+        this.tickPool = null;
+        return this;
+    }
+
+    /**
+     * Runs every signal of this engine with {@code controller}; the network's own plans are left
+     * as they are for other engines. Without this, each intersection runs the plan it was built
+     * with, which is the fixed-time plan unless the network gave it another.
+     */
+    public SimulationEngineBuilder withSignalController(SignalController controller) {
+        this.signalController = Objects.requireNonNull(controller);
+        return this;
+    }
+
+    /**
+     * Runs the roads {@code selector} accepts as mesoscopic queues instead of car following: each
+     * lane holds as many vehicles as fit bumper to bumper, a vehicle may leave a travel time after
+     * it entered, and the front vehicle leaves at most once per saturation headway, only while the
+     * last signal on the road shows green and the road ahead has room. Vehicles on such roads are
+     * only touched when they enter and leave, and have no exact position, so spatial queries and
+     * intersection boxes do not see them. Keep the roads around intersections of interest
+     * microscopic for a hybrid run, for example {@code road -> !focus.involves(road)}.
+     */
+    public SimulationEngineBuilder withMesoscopicRoads(Predicate<SimulationEngine.Road> selector) {
+        this.mesoscopicRoads = Objects.requireNonNull(selector);
+        return this;
+    }
+
+    /**
+     * Runs every road as a mesoscopic queue.
+     */
+    public SimulationEngineBuilder withMesoscopicRoads() {
+        return withMesoscopicRoads(road -> true);
     }
 
-    SimulationEngine.Road getMainRoad() {
-        return mainRoad;
+    /**
+     * Travel time on mesoscopic roads; the default is {@code TravelTimeFunction.bpr(0.15, 4)}.
+     */
+    public SimulationEngineBuilder withTravelTimeFunction(TravelTimeFunction function) {
+        this.travelTimeFunction = Objects.requireNonNull(function);
+        return this;
     }
 
-    SimulationEngine.Road getCrossRoad() {
-        return crossRoad;
+    /**
+     * Car following on microscopic roads; the default is
+     * {@link CarFollowingModel#intelligentDriver() the Intelligent Driver Model}. Use
+     * {@link CarFollowingModel#safeGap()} to reproduce runs from before car-following models.
+     */
+    public SimulationEngineBuilder withCarFollowingModel(CarFollowingModel model) {
+        this.carFollowingModel = Objects.requireNonNull(model);
+        return this;
     }
 
-    Point2D.Double getIntersectionPoint() {
-        return intersectionPoint;
+    /**
+     * Driver parameters drawn for each spawned vehicle; the default is {@link DriverProfile#defaults()}.
+     */
+    public SimulationEngineBuilder withDriverProfile(DriverProfile profile) {
+        this.driverProfile = Objects.requireNonNull(profile);
+        return this;
+    }
+
+    /**
+     * Schedules spawns as a Poisson process at exactly the spawn rate, each at a drawn time, instead
+     * of drawing every tick, so that {@link SimulationEngine#advance} can jump over stretches in
+     * which no vehicle moves straight to the next spawn or signal change.
+     */
+    public SimulationEngineBuilder withIdleSkipping() {
+        this.idleSkipping = true;
+        return this;
+    }
+
+    /**
+     * Marks the roads {@code selector} accepts as stubs of roads another partition simulates: a
+     * vehicle about to enter one leaves this engine and waits in {@link SimulationEngine#drainHandoffs}
+     * for the caller to pass it on. Set by {@link NetworkPartition.Region#toBuilder}.
+     */
+    SimulationEngineBuilder withBoundaryRoads(Predicate<SimulationEngine.Road> selector) {
+        this.boundaryRoads = Objects.requireNonNull(selector);
+        return this;
+    }
+
+    public SimulationEngine build() {
+        if (network == null) {
+            Objects.requireNonNull(mainRoad, "main road");
+            Objects.requireNonNull(crossRoad, "cross road");
+            Objects.requireNonNull(intersectionPoint, "intersection point");
+        }
+        return new SimulationEngine(this);
+    }
+
+    /**
+     * The configured network, or a two-road network with a single signal built from the main road,
+     * cross road and intersection point. Only the main road takes part in lane closures.
+     */
+    RoadNetwork getNetwork() {
+        if (network != null) {
+            return network;
+        }
+        RoadNetwork.Builder pair = RoadNetwork.builder();
+        pair.addRoad(mainRoad);
+        pair.addRoad(crossRoad);
+        pair.markLaneClosable(mainRoad);
+        pair.addSignal(intersectionPoint, List.of(mainRoad), List.of(crossRoad));
+        return pair.build();
     }
 
     SpawnStrategy getSpawnStrategy() {
@@ -115,4 +285,40 @@ public class SimulationEngineBuilder {
     boolean isLaneClosure() {
         return laneClosure;
     }
+
+    int getVehicleCapacity() {
+        return vehicleCapacity;
+    }
+
+    ForkJoinPool getTickPool() {
+        return tickPool;
+    }
+
+    SignalController getSignalController() {
+        return signalController;
+    }
+
+    Predicate<SimulationEngine.Road> getMesoscopicRoads() {
+        return mesoscopicRoads;
+    }
+
+    TravelTimeFunction getTravelTimeFunction() {
+        return travelTimeFunction;
+    }
+
+    CarFollowingModel getCarFollowingModel() {
+        return carFollowingModel;
+    }
+
+    DriverProfile getDriverProfile() {
+        return driverProfile;
+    }
+
+    boolean isIdleSkipping() {
+        return idleSkipping;
+    }
+
+    Predicate<SimulationEngine.Road> getBoundaryRoads() {
+        return boundaryRoads;
+    }
 }
@@ -0,0 +1,167 @@
+package traffic;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a {@link SimulationEngine} on a dedicated thread at a fixed tick rate. Commands submitted
+ * from other threads are queued and applied at the next tick boundary, and each tick publishes a
+ * {@link SimulationSnapshot} through a {@link TripleBuffer} that a renderer can read at its own
+ * rate. Snapshots are recycled once the reader moves on, so each one is only valid until the next
+ * {@link #latestSnapshot} call. If a tick throws, the loop thread stops and keeps the exception for
+ * {@link #failure}.
+ */
+public class SimulationLoop {
+    /** Ticks the loop may run back to back to catch up before it drops the backlog. */
+    private static final int MAX_CATCH_UP_TICKS = 5;
+
+    private final SimulationEngine engine;
+    private final double tickSeconds;
+    private final long tickNanos;
+    private final Queue<SimulationCommand> pendingCommands = new ConcurrentLinkedQueue<>();
+    private final TripleBuffer<SimulationSnapshot> snapshots = new TripleBuffer<>();
+    private volatile boolean running;
+    private volatile RuntimeException failure;
+    private Thread thread;
+    private EventLog.Recorder recorder;
+
+    public SimulationLoop(SimulationEngine engine, double ticksPerSecond) {
+        if (ticksPerSecond <= 0) {
+            throw new IllegalArgumentException("ticksPerSecond must be positive");
+        }
+        this.engine = Objects.requireNonNull(engine);
+        this.tickSeconds = 1.0 / ticksPerSecond;
+        this.tickNanos = Math.round(TimeUnit.SECONDS.toNanos(1) / ticksPerSecond);
+        snapshots.publish(engine.createSnapshot());
+    }
+
+    /**
+     * Queues a command to be applied on the simulation thread before the next tick. Safe to call
+     * from any thread.
+     */
+    public void submit(SimulationCommand command) {
+        pendingCommands.add(Objects.requireNonNull(command));
+    }
+
+    /**
+     * Latest published snapshot. Intended for a single reader thread, typically the Swing EDT; the
+     * returned snapshot stays valid until the caller asks again.
+     */
+    public SimulationSnapshot latestSnapshot() {
+        return snapshots.acquire();
+    }
+
+    /**
+     * Records every command and tick this loop applies from now on. Must be called before
+     * {@link #start}; the caller closes the recorder after {@link #stop}.
+     */
+    public synchronized void recordTo(EventLog.Recorder recorder) {
+        if (running) {
+            throw new IllegalStateException("Cannot start recording a running loop");
+        }
+        this.recorder = Objects.requireNonNull(recorder);
+    }
+
+    public double getTickSeconds() {
+        return tickSeconds;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        if (thread != null) {
+            joinUninterruptibly(thread);
+        }
+        failure = null;
+        running = true;
+        thread = new Thread(this::run, "simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() throws InterruptedException {
+        if (thread == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        thread.join();
+        thread = null;
+    }
+
+    /**
+     * False once {@link #stop} was called or a tick failed.
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * The exception that stopped the loop thread, thrown by a command, the engine, an observer or
+     * the recorder, or {@code null}. Cleared by {@link #start}.
+     */
+    public RuntimeException failure() {
+        return failure;
+    }
+
+    /**
+     * Applies pending commands, advances the engine by one fixed tick and publishes a snapshot.
+     * Called by the loop thread; exposed to the package so tests can step deterministically.
+     */
+    void tick() {
+        SimulationCommand command;
+        while ((command = pendingCommands.poll()) != null) {
+            if (recorder != null) {
+                recorder.command(command);
+            }
+            engine.execute(command);
+        }
+        engine.update(tickSeconds);
+        if (recorder != null) {
+            recorder.tick(tickSeconds);
+        }
+        snapshots.publish(engine.createSnapshot(snapshots.backValue()));
+    }
+
+    private void run() {
+        long nextTick = System.nanoTime();
+        try {
+            while (running) {
+                long now = System.nanoTime();
+                if (now < nextTick) {
+                    LockSupport.parkNanos(nextTick - now);
+                    continue;
+                }
+                tick();
+                nextTick += tickNanos;
+                if (System.nanoTime() - nextTick > MAX_CATCH_UP_TICKS * tickNanos) {
+                    nextTick = System.nanoTime();
+                }
+            }
+        } catch (RuntimeException e) {
+            failure = e;
+            running = false;
+        }
+    }
+
+    /**
+     * Waits out a loop thread that already stopped on its own after a failure.
+     */
+    private static void joinUninterruptibly(Thread thread) {
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,15 +1,287 @@
 package traffic;
 
+import java.awt.Color;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 
 /**
- * Immutable view of the simulation for observers and UI.
+ * Read-only view of the simulation for observers and UI. {@code signalView} is the first entry of
+ * {@code signalViews}, kept for single-intersection consumers.
+ *
+ * <p>Snapshots taken from an engine capture vehicle and signal state as primitive columns and build
+ * the geometry and view objects only when asked, so an observer that reads just the clock and
+ * throughput pays for neither. Lazily built parts are computed at most a few times under races and
+ * always to the same values.
+ *
+ * <p>A snapshot from {@link SimulationEngine#createSnapshot}, an observer or a stream is never
+ * changed afterwards and can be shared between threads freely. One from
+ * {@link SimulationLoop#latestSnapshot} is not: the loop reuses its columns for a later tick once
+ * the reader has asked for a newer one, so it is only valid until then, on the reading thread.
+ * Copy out what must outlive it, for example through {@link #vehicleViews()}.
  */
-public record SimulationSnapshot(
-        List<SimulationEngine.RoadView> roadViews,
-        List<SimulationEngine.VehicleView> vehicleViews,
-        SimulationEngine.SignalView signalView,
-        double throughputPerSecond,
-        double simTimeSeconds
-) {
+public final class SimulationSnapshot {
+    private final List<SimulationEngine.RoadView> roadViews;
+    private final double throughputPerSecond;
+    private final double simTimeSeconds;
+
+    private final List<SimulationEngine.Road> roads;
+    private final List<Point2D.Double> signalPositions;
+    private int vehicleCount;
+    private long[] ids;
+    private int[] roadIds;
+    private int[] lanes;
+    private double[] distances;
+    private Color[] colors;
+    private SimulationEngine.Intersection.Phase[] phases;
+    private double[] spareCoordinates;
+
+    private volatile double[] coordinates;
+    private volatile List<SimulationEngine.VehicleView> vehicleViews;
+    private volatile List<SimulationEngine.SignalView> signalViews;
+    private volatile SpatialGrid pickGrid;
+
+    /** Cell edge of the grid built for picking, about two vehicle lengths. */
+    private static final double PICK_CELL_PIXELS = 32.0;
+
+    /**
+     * Snapshot with all parts given up front, as decoded from a stream.
+     *
+     * @throws IllegalArgumentException if {@code signalView} is not the first of {@code signalViews},
+     *                                  or not {@code null} when there are none
+     */
+    public SimulationSnapshot(
+            List<SimulationEngine.RoadView> roadViews,
+            List<SimulationEngine.VehicleView> vehicleViews,
+            SimulationEngine.SignalView signalView,
+            List<SimulationEngine.SignalView> signalViews,
+            double throughputPerSecond,
+            double simTimeSeconds) {
+        if (!Objects.equals(signalView, signalViews.isEmpty() ? null : signalViews.getFirst())) {
+            throw new IllegalArgumentException("signalView must be the first of signalViews");
+        }
+        this.roadViews = roadViews;
+        this.vehicleViews = vehicleViews;
+        this.signalViews = signalViews;
+        this.throughputPerSecond = throughputPerSecond;
+        this.simTimeSeconds = simTimeSeconds;
+        this.roads = null;
+        this.signalPositions = null;
+        this.vehicleCount = vehicleViews.size();
+    }
+
+    private SimulationSnapshot(List<SimulationEngine.RoadView> roadViews, List<SimulationEngine.Road> roads,
+                               List<Point2D.Double> signalPositions, double throughputPerSecond,
+                               double simTimeSeconds) {
+        this.roadViews = roadViews;
+        this.roads = roads;
+        this.signalPositions = signalPositions;
+        this.throughputPerSecond = throughputPerSecond;
+        this.simTimeSeconds = simTimeSeconds;
+    }
+
+    /**
+     * Empty captured snapshot sized for {@code vehicles}, reusing the columns of {@code recycled}
+     * when given. Only a snapshot no reader can still see may be recycled.
+     */
+    static SimulationSnapshot capture(SimulationSnapshot recycled, List<SimulationEngine.RoadView> roadViews,
+                                      List<SimulationEngine.Road> roads, List<Point2D.Double> signalPositions,
+                                      double throughputPerSecond, double simTimeSeconds, int vehicles) {
+        SimulationSnapshot snapshot = new SimulationSnapshot(roadViews, roads, signalPositions,
+                throughputPerSecond, simTimeSeconds);
+        if (recycled != null && recycled.ids != null && recycled.ids.length >= vehicles
+                && recycled.phases.length == signalPositions.size()) {
+            snapshot.ids = recycled.ids;
+            snapshot.roadIds = recycled.roadIds;
+            snapshot.lanes = recycled.lanes;
+            snapshot.distances = recycled.distances;
+            snapshot.colors = recycled.colors;
+            snapshot.phases = recycled.phases;
+            snapshot.spareCoordinates = recycled.coordinates != null ? recycled.coordinates : recycled.spareCoordinates;
+        } else {
+            int capacity = recycled != null && recycled.ids != null ? Math.max(vehicles, recycled.ids.length * 2) : vehicles;
+            snapshot.ids = new long[capacity];
+            snapshot.roadIds = new int[capacity];
+            snapshot.lanes = new int[capacity];
+            snapshot.distances = new double[capacity];
+            snapshot.colors = new Color[capacity];
+            snapshot.phases = new SimulationEngine.Intersection.Phase[signalPositions.size()];
+        }
+        return snapshot;
+    }
+
+    void addVehicle(long id, int roadId, int lane, double distance, Color color) {
+        int i = vehicleCount++;
+        ids[i] = id;
+        roadIds[i] = roadId;
+        lanes[i] = lane;
+        distances[i] = distance;
+        colors[i] = color;
+    }
+
+    void setPhase(int signal, SimulationEngine.Intersection.Phase phase) {
+        phases[signal] = phase;
+    }
+
+    public List<SimulationEngine.RoadView> roadViews() {
+        return roadViews;
+    }
+
+    public double throughputPerSecond() {
+        return throughputPerSecond;
+    }
+
+    public double simTimeSeconds() {
+        return simTimeSeconds;
+    }
+
+    public int vehicleCount() {
+        return vehicleCount;
+    }
+
+    /**
+     * Vehicle screen positions as {@code x0, y0, x1, y1, ...} in {@link #vehicleViews()} order,
+     * computed in one pass on first use. The array is shared; do not modify it.
+     */
+    public double[] vehiclePositions() {
+        double[] result = coordinates;
+        if (result == null) {
+            result = computeCoordinates();
+            coordinates = result;
+        }
+        return result;
+    }
+
+    public List<SimulationEngine.VehicleView> vehicleViews() {
+        List<SimulationEngine.VehicleView> result = vehicleViews;
+        if (result == null) {
+            double[] xy = vehiclePositions();
+            List<SimulationEngine.VehicleView> views = new ArrayList<>(vehicleCount);
+            for (int i = 0; i < vehicleCount; i++) {
+                views.add(new SimulationEngine.VehicleView(ids[i], new Point2D.Double(xy[2 * i], xy[2 * i + 1]), colors[i]));
+            }
+            result = Collections.unmodifiableList(views);
+            vehicleViews = result;
+        }
+        return result;
+    }
+
+    /**
+     * Vehicle drawn closest to a screen point within {@code radius}, or {@code null}. The first call
+     * indexes all vehicles in a spatial grid, so repeated picks, such as hover tracking, only look
+     * at the vehicles around the point.
+     */
+    public SimulationEngine.VehicleView vehicleAt(double x, double y, double radius) {
+        SpatialGrid grid = pickGrid;
+        if (grid == null) {
+            grid = buildPickGrid();
+            pickGrid = grid;
+        }
+        int index = grid.nearest(x, y, radius);
+        return index == SpatialGrid.NONE ? null : vehicleViews().get(index);
+    }
+
+    public SimulationEngine.SignalView signalView() {
+        List<SimulationEngine.SignalView> signals = signalViews();
+        return signals.isEmpty() ? null : signals.getFirst();
+    }
+
+    public List<SimulationEngine.SignalView> signalViews() {
+        List<SimulationEngine.SignalView> result = signalViews;
+        if (result == null) {
+            List<SimulationEngine.SignalView> views = new ArrayList<>(phases.length);
+            for (int i = 0; i < phases.length; i++) {
+                SimulationEngine.Intersection.Phase phase = phases[i];
+                views.add(new SimulationEngine.SignalView(signalPositions.get(i),
+                        SimulationEngine.Intersection.colorFor(phase, true),
+                        SimulationEngine.Intersection.colorFor(phase, false),
+                        phase));
+            }
+            result = Collections.unmodifiableList(views);
+            signalViews = result;
+        }
+        return result;
+    }
+
+    long vehicleId(int index) {
+        return ids != null ? ids[index] : vehicleViews.get(index).id();
+    }
+
+    Color vehicleColor(int index) {
+        return colors != null ? colors[index] : vehicleViews.get(index).color();
+    }
+
+    /**
+     * Whether road, lane and distance of each vehicle are known, as they are for snapshots taken
+     * from an engine but not for decoded ones.
+     */
+    boolean hasLanePositions() {
+        return roads != null;
+    }
+
+    int vehicleRoad(int index) {
+        return roadIds[index];
+    }
+
+    int vehicleLane(int index) {
+        return lanes[index];
+    }
+
+    double vehicleDistance(int index) {
+        return distances[index];
+    }
+
+    private SpatialGrid buildPickGrid() {
+        double minX = 0;
+        double minY = 0;
+        double maxX = 0;
+        double maxY = 0;
+        for (int i = 0; i < roadViews.size(); i++) {
+            SimulationEngine.RoadView road = roadViews.get(i);
+            double fromX = Math.min(road.start().x, road.end().x);
+            double fromY = Math.min(road.start().y, road.end().y);
+            double toX = Math.max(road.start().x, road.end().x);
+            double toY = Math.max(road.start().y, road.end().y);
+            minX = i == 0 ? fromX : Math.min(minX, fromX);
+            minY = i == 0 ? fromY : Math.min(minY, fromY);
+            maxX = i == 0 ? toX : Math.max(maxX, toX);
+            maxY = i == 0 ? toY : Math.max(maxY, toY);
+        }
+        SpatialGrid grid = new SpatialGrid(minX - PICK_CELL_PIXELS, minY - PICK_CELL_PIXELS,
+                maxX + PICK_CELL_PIXELS, maxY + PICK_CELL_PIXELS, PICK_CELL_PIXELS, vehicleCount);
+        double[] xy = vehiclePositions();
+        for (int i = 0; i < vehicleCount; i++) {
+            grid.insert(i, xy[2 * i], xy[2 * i + 1]);
+        }
+        return grid;
+    }
+
+    private double[] computeCoordinates() {
+        int length = vehicleCount * 2;
+        double[] xy = spareCoordinates != null && spareCoordinates.length >= length
+                ? spareCoordinates
+                : new double[Math.max(length, 2)];
+        if (roads == null) {
+            for (int i = 0; i < vehicleCount; i++) {
+                Point2D.Double position = vehicleViews.get(i).position();
+                xy[2 * i] = position.x;
+                xy[2 * i + 1] = position.y;
+            }
+            return xy;
+        }
+        for (int i = 0; i < vehicleCount; i++) {
+            int roadId = roadIds[i];
+            roads.get(roadId).positionAlong(distances[i], lanes[i], roadViews.get(roadId).openLanes(), xy, 2 * i);
+        }
+        return xy;
+    }
+
+    @Override
+    public String toString() {
+        return "SimulationSnapshot[t=" + simTimeSeconds + ", vehicles=" + vehicleCount
+                + ", throughput=" + throughputPerSecond + ", signals=" + Arrays.toString(phases) + "]";
+    }
 }
@@ -0,0 +1,663 @@
+package traffic;
+
+import java.awt.Color;
+import java.awt.geom.Point2D;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Compact binary stream of {@link SimulationSnapshot}s for viewers outside the process.
+ *
+ * <p>The stream is a header followed by length-prefixed frames. A layout frame carries the roads
+ * and signal positions and is sent only when they change. A key frame carries every vehicle as a
+ * stable id, a position quantized to {@value #STEPS_PER_PIXEL} steps per pixel and a palette color.
+ * Delta frames in between carry only the vehicles that left, arrived or moved since the previous
+ * frame, with moves as small varint offsets. Every key frame is preceded by a fresh layout and
+ * restarts the color palette, so a reader can start at any key frame.
+ */
+public final class SnapshotStream {
+    static final int STEPS_PER_PIXEL = 4;
+    private static final int MAGIC = 0x54525353; // "TRSS"
+    private static final short VERSION = 1;
+    private static final byte LAYOUT = 1;
+    private static final byte KEY = 2;
+    private static final byte DELTA = 3;
+    private static final int FRAME_HEADER_BYTES = 5;
+    private static final int KEY_FRAME_INTERVAL = 120;
+    /** Low bits of the id/index sort keys that hold the index. */
+    private static final int INDEX_BITS = 24;
+
+    private static final SimulationEngine.Intersection.Phase[] PHASES = SimulationEngine.Intersection.Phase.values();
+
+    private SnapshotStream() {
+    }
+
+    public static Writer toFile(Path path) throws IOException {
+        return new Writer(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    /**
+     * Connects to a viewer listening on a Unix domain socket.
+     */
+    public static Writer toSocket(Path socketPath) throws IOException {
+        SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        channel.connect(UnixDomainSocketAddress.of(socketPath));
+        return new Writer(channel);
+    }
+
+    /**
+     * Observer that encodes each snapshot it is handed onto a channel. Encoding reads the snapshot's
+     * primitive columns and reuses its own buffers, so a steady stream does not allocate per
+     * vehicle. If the channel fails, for example because the viewer went away, the writer stops
+     * writing and keeps the error for {@link #failure()}; it never throws into the simulation thread.
+     */
+    public static final class Writer implements SimulationObserver, Closeable {
+        private final WritableByteChannel channel;
+        private final FrameBuffer frame = new FrameBuffer();
+        private int[] sentOpenLanes = new int[0];
+        private int framesSinceKey = KEY_FRAME_INTERVAL;
+        private boolean headerSent;
+        private int[] palette = new int[16];
+        private int paletteSize;
+
+        private long[] order = new long[64];
+        private long[] previousIds = new long[64];
+        private int[] previousX = new int[64];
+        private int[] previousY = new int[64];
+        private long[] currentIds = new long[64];
+        private int[] currentX = new int[64];
+        private int[] currentY = new int[64];
+        private int[] currentColor = new int[64];
+        private int previousCount;
+        private IOException failure;
+
+        public Writer(WritableByteChannel channel) {
+            this.channel = Objects.requireNonNull(channel);
+        }
+
+        @Override
+        public void onUpdate(SimulationSnapshot snapshot) {
+            if (failure != null) {
+                return;
+            }
+            try {
+                write(snapshot);
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+
+        public void write(SimulationSnapshot snapshot) throws IOException {
+            if (!headerSent) {
+                ByteBuffer header = ByteBuffer.allocate(6).putInt(MAGIC).putShort(VERSION).flip();
+                writeFully(header);
+                headerSent = true;
+            }
+            boolean key = framesSinceKey >= KEY_FRAME_INTERVAL;
+            if (key) {
+                paletteSize = 0;
+                framesSinceKey = 0;
+            }
+            framesSinceKey++;
+            if (key || layoutChanged(snapshot.roadViews())) {
+                writeLayout(snapshot);
+            }
+            sortById(snapshot);
+            frame.begin(key ? KEY : DELTA);
+            frame.putDouble(snapshot.simTimeSeconds());
+            frame.putFloat((float) snapshot.throughputPerSecond());
+            frame.putVarLong(snapshot.signalViews().size());
+            for (SimulationEngine.SignalView signal : snapshot.signalViews()) {
+                frame.putByte(signal.phase().ordinal());
+                putColor(signal.mainColor().getRGB());
+                putColor(signal.crossColor().getRGB());
+            }
+            int count = snapshot.vehicleCount();
+            if (key) {
+                frame.putVarLong(count);
+                long lastId = -1;
+                for (int i = 0; i < count; i++) {
+                    frame.putVarLong(currentIds[i] - lastId);
+                    lastId = currentIds[i];
+                    frame.putZigZag(currentX[i]);
+                    frame.putZigZag(currentY[i]);
+                    putColor(currentColor[i]);
+                }
+            } else {
+                writeDelta(count);
+            }
+            writeFully(frame.finish());
+            swapFrames(count);
+        }
+
+        public IOException failure() {
+            return failure;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        /**
+         * Removed, added and moved vehicles, each list count-prefixed and ascending by id with ids
+         * delta-coded. Both frames are sorted by id, so a merge pass counts all three lists and one
+         * more pass per list writes it, without buffering the lists separately.
+         */
+        private void writeDelta(int count) {
+            int removed = 0;
+            int added = 0;
+            int moved = 0;
+            for (int pass = 0; pass < 4; pass++) {
+                if (pass == 1) {
+                    frame.putVarLong(removed);
+                } else if (pass == 2) {
+                    frame.putVarLong(added);
+                } else if (pass == 3) {
+                    frame.putVarLong(moved);
+                }
+                long lastId = -1;
+                int p = 0;
+                int c = 0;
+                while (p < previousCount || c < count) {
+                    long previousId = p < previousCount ? previousIds[p] : Long.MAX_VALUE;
+                    long currentId = c < count ? currentIds[c] : Long.MAX_VALUE;
+                    if (previousId < currentId) {
+                        if (pass == 0) {
+                            removed++;
+                        } else if (pass == 1) {
+                            frame.putVarLong(previousId - lastId);
+                            lastId = previousId;
+                        }
+                        p++;
+                    } else if (currentId < previousId) {
+                        if (pass == 0) {
+                            added++;
+                        } else if (pass == 2) {
+                            frame.putVarLong(currentId - lastId);
+                            lastId = currentId;
+                            frame.putZigZag(currentX[c]);
+                            frame.putZigZag(currentY[c]);
+                            putColor(currentColor[c]);
+                        }
+                        c++;
+                    } else {
+                        int dx = currentX[c] - previousX[p];
+                        int dy = currentY[c] - previousY[p];
+                        if (dx != 0 || dy != 0) {
+                            if (pass == 0) {
+                                moved++;
+                            } else if (pass == 3) {
+                                frame.putVarLong(currentId - lastId);
+                                lastId = currentId;
+                                frame.putZigZag(dx);
+                                frame.putZigZag(dy);
+                            }
+                        }
+                        p++;
+                        c++;
+                    }
+                }
+            }
+        }
+
+        private void writeLayout(SimulationSnapshot snapshot) throws IOException {
+            List<SimulationEngine.RoadView> roads = snapshot.roadViews();
+            frame.begin(LAYOUT);
+            frame.putVarLong(roads.size());
+            for (SimulationEngine.RoadView road : roads) {
+                frame.putFloat((float) road.start().x);
+                frame.putFloat((float) road.start().y);
+                frame.putFloat((float) road.end().x);
+                frame.putFloat((float) road.end().y);
+                frame.putVarLong(road.openLanes());
+                frame.putVarLong(road.totalLanes());
+                frame.putString(road.name());
+            }
+            frame.putVarLong(snapshot.signalViews().size());
+            for (SimulationEngine.SignalView signal : snapshot.signalViews()) {
+                frame.putFloat((float) signal.position().x);
+                frame.putFloat((float) signal.position().y);
+            }
+            writeFully(frame.finish());
+            if (sentOpenLanes.length != roads.size()) {
+                sentOpenLanes = new int[roads.size()];
+            }
+            for (int i = 0; i < roads.size(); i++) {
+                sentOpenLanes[i] = roads.get(i).openLanes();
+            }
+        }
+
+        private boolean layoutChanged(List<SimulationEngine.RoadView> roads) {
+            if (roads.size() != sentOpenLanes.length) {
+                return true;
+            }
+            for (int i = 0; i < roads.size(); i++) {
+                if (roads.get(i).openLanes() != sentOpenLanes[i]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Fills the current-frame columns in id order. Sort keys pack the id above the view index,
+         * which bounds a frame to 2^24 vehicles and ids to 2^39.
+         */
+        private void sortById(SimulationSnapshot snapshot) {
+            int count = snapshot.vehicleCount();
+            if (count >= 1 << INDEX_BITS) {
+                throw new IllegalArgumentException("Too many vehicles for one frame: " + count);
+            }
+            ensureCapacity(count);
+            for (int i = 0; i < count; i++) {
+                order[i] = snapshot.vehicleId(i) << INDEX_BITS | i;
+            }
+            Arrays.sort(order, 0, count);
+            double[] xy = snapshot.vehiclePositions();
+            int indexMask = (1 << INDEX_BITS) - 1;
+            for (int i = 0; i < count; i++) {
+                int index = (int) (order[i] & indexMask);
+                currentIds[i] = order[i] >>> INDEX_BITS;
+                currentX[i] = quantize(xy[2 * index]);
+                currentY[i] = quantize(xy[2 * index + 1]);
+                currentColor[i] = snapshot.vehicleColor(index).getRGB();
+            }
+        }
+
+        private void swapFrames(int count) {
+            long[] ids = previousIds;
+            previousIds = currentIds;
+            currentIds = ids;
+            int[] xs = previousX;
+            previousX = currentX;
+            currentX = xs;
+            int[] ys = previousY;
+            previousY = currentY;
+            currentY = ys;
+            previousCount = count;
+        }
+
+        private void ensureCapacity(int count) {
+            if (count <= order.length) {
+                return;
+            }
+            int capacity = Math.max(count, order.length * 2);
+            order = new long[capacity];
+            currentIds = new long[capacity];
+            currentX = new int[capacity];
+            currentY = new int[capacity];
+            currentColor = new int[capacity];
+            previousIds = Arrays.copyOf(previousIds, capacity);
+            previousX = Arrays.copyOf(previousX, capacity);
+            previousY = Arrays.copyOf(previousY, capacity);
+        }
+
+        /**
+         * Writes a palette index; a color's first use in a palette epoch also carries its RGB value.
+         */
+        private void putColor(int rgb) {
+            for (int i = 0; i < paletteSize; i++) {
+                if (palette[i] == rgb) {
+                    frame.putVarLong(i);
+                    return;
+                }
+            }
+            if (paletteSize == palette.length) {
+                palette = Arrays.copyOf(palette, paletteSize * 2);
+            }
+            palette[paletteSize] = rgb;
+            frame.putVarLong(paletteSize++);
+            frame.putInt(rgb);
+        }
+
+        private void writeFully(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Decodes a stream back into snapshots. Vehicle views come back in id order with positions
+     * rounded to the stream's quantization.
+     */
+    public static final class Reader implements Closeable {
+        private final ReadableByteChannel channel;
+        private final ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_BYTES);
+        private ByteBuffer payload = ByteBuffer.allocate(1 << 16);
+        private boolean headerRead;
+        private List<SimulationEngine.RoadView> roads = List.of();
+        private List<Point2D.Double> signalPositions = List.of();
+        private final List<Color> palette = new ArrayList<>();
+        private long[] ids = new long[0];
+        private int[] xs = new int[0];
+        private int[] ys = new int[0];
+        private Color[] colors = new Color[0];
+        private int count;
+
+        public Reader(ReadableByteChannel channel) {
+            this.channel = Objects.requireNonNull(channel);
+        }
+
+        public static Reader fromFile(Path path) throws IOException {
+            return new Reader(FileChannel.open(path, StandardOpenOption.READ));
+        }
+
+        /**
+         * Next snapshot, or {@code null} at the end of the stream.
+         */
+        public SimulationSnapshot next() throws IOException {
+            if (!headerRead) {
+                ByteBuffer streamHeader = ByteBuffer.allocate(6);
+                if (!readFully(streamHeader)) {
+                    return null;
+                }
+                if (streamHeader.getInt() != MAGIC) {
+                    throw new IOException("Not a snapshot stream");
+                }
+                short version = streamHeader.getShort();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported snapshot stream version " + version);
+                }
+                headerRead = true;
+            }
+            while (true) {
+                header.clear();
+                if (!readFully(header)) {
+                    return null;
+                }
+                byte type = header.get();
+                int length = header.getInt();
+                if (payload.capacity() < length) {
+                    payload = ByteBuffer.allocate(Math.max(length, payload.capacity() * 2));
+                }
+                payload.clear().limit(length);
+                if (!readFully(payload)) {
+                    throw new EOFException("Truncated frame");
+                }
+                switch (type) {
+                    case LAYOUT -> readLayout();
+                    case KEY, DELTA -> {
+                        return readVehicles(type == KEY);
+                    }
+                    default -> throw new IOException("Unknown frame type " + type);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        private void readLayout() {
+            int roadCount = (int) getVarLong(payload);
+            List<SimulationEngine.RoadView> views = new ArrayList<>(roadCount);
+            for (int i = 0; i < roadCount; i++) {
+                Point2D.Double start = new Point2D.Double(payload.getFloat(), payload.getFloat());
+                Point2D.Double end = new Point2D.Double(payload.getFloat(), payload.getFloat());
+                int openLanes = (int) getVarLong(payload);
+                int totalLanes = (int) getVarLong(payload);
+                byte[] name = new byte[(int) getVarLong(payload)];
+                payload.get(name);
+                views.add(new SimulationEngine.RoadView(start, end, openLanes, totalLanes,
+                        new String(name, StandardCharsets.UTF_8)));
+            }
+            int signalCount = (int) getVarLong(payload);
+            List<Point2D.Double> positions = new ArrayList<>(signalCount);
+            for (int i = 0; i < signalCount; i++) {
+                positions.add(new Point2D.Double(payload.getFloat(), payload.getFloat()));
+            }
+            roads = List.copyOf(views);
+            signalPositions = List.copyOf(positions);
+        }
+
+        private SimulationSnapshot readVehicles(boolean key) {
+            if (key) {
+                palette.clear();
+            }
+            double simTime = payload.getDouble();
+            double throughput = payload.getFloat();
+            int signalCount = (int) getVarLong(payload);
+            List<SimulationEngine.SignalView> signals = new ArrayList<>(signalCount);
+            for (int i = 0; i < signalCount; i++) {
+                SimulationEngine.Intersection.Phase phase = PHASES[payload.get()];
+                Color main = getColor();
+                Color cross = getColor();
+                signals.add(new SimulationEngine.SignalView(signalPositions.get(i), main, cross, phase));
+            }
+            if (key) {
+                count = (int) getVarLong(payload);
+                ensureCapacity(count);
+                long id = -1;
+                for (int i = 0; i < count; i++) {
+                    id += getVarLong(payload);
+                    ids[i] = id;
+                    xs[i] = getZigZag(payload);
+                    ys[i] = getZigZag(payload);
+                    colors[i] = getColor();
+                }
+            } else {
+                applyDelta();
+            }
+            List<SimulationEngine.VehicleView> vehicles = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Point2D.Double position = new Point2D.Double((double) xs[i] / STEPS_PER_PIXEL, (double) ys[i] / STEPS_PER_PIXEL);
+                vehicles.add(new SimulationEngine.VehicleView(ids[i], position, colors[i]));
+            }
+            List<SimulationEngine.SignalView> signalViews = List.copyOf(signals);
+            return new SimulationSnapshot(roads, vehicles, signalViews.isEmpty() ? null : signalViews.getFirst(),
+                    signalViews, throughput, simTime);
+        }
+
+        private void applyDelta() {
+            int removed = (int) getVarLong(payload);
+            int kept = 0;
+            long removedId = -1;
+            int remaining = removed;
+            long nextRemoved = remaining > 0 ? removedId + getVarLong(payload) : Long.MAX_VALUE;
+            for (int i = 0; i < count; i++) {
+                if (ids[i] == nextRemoved) {
+                    removedId = nextRemoved;
+                    remaining--;
+                    nextRemoved = remaining > 0 ? removedId + getVarLong(payload) : Long.MAX_VALUE;
+                    continue;
+                }
+                ids[kept] = ids[i];
+                xs[kept] = xs[i];
+                ys[kept] = ys[i];
+                colors[kept] = colors[i];
+                kept++;
+            }
+
+            int added = (int) getVarLong(payload);
+            long[] addedIds = new long[added];
+            int[] addedX = new int[added];
+            int[] addedY = new int[added];
+            Color[] addedColors = new Color[added];
+            long id = -1;
+            for (int i = 0; i < added; i++) {
+                id += getVarLong(payload);
+                addedIds[i] = id;
+                addedX[i] = getZigZag(payload);
+                addedY[i] = getZigZag(payload);
+                addedColors[i] = getColor();
+            }
+
+            int moved = (int) getVarLong(payload);
+            id = -1;
+            int cursor = 0;
+            for (int i = 0; i < moved; i++) {
+                id += getVarLong(payload);
+                while (ids[cursor] != id) {
+                    cursor++;
+                }
+                xs[cursor] += getZigZag(payload);
+                ys[cursor] += getZigZag(payload);
+            }
+
+            ensureCapacity(kept + added);
+            int write = kept + added - 1;
+            int a = added - 1;
+            int k = kept - 1;
+            while (a >= 0) {
+                if (k >= 0 && ids[k] > addedIds[a]) {
+                    ids[write] = ids[k];
+                    xs[write] = xs[k];
+                    ys[write] = ys[k];
+                    colors[write] = colors[k];
+                    k--;
+                } else {
+                    ids[write] = addedIds[a];
+                    xs[write] = addedX[a];
+                    ys[write] = addedY[a];
+                    colors[write] = addedColors[a];
+                    a--;
+                }
+                write--;
+            }
+            count = kept + added;
+        }
+
+        private Color getColor() {
+            int index = (int) getVarLong(payload);
+            if (index == palette.size()) {
+                palette.add(new Color(payload.getInt(), true));
+            }
+            return palette.get(index);
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (ids.length < capacity) {
+                int size = Math.max(capacity, ids.length * 2);
+                ids = Arrays.copyOf(ids, size);
+                xs = Arrays.copyOf(xs, size);
+                ys = Arrays.copyOf(ys, size);
+                colors = Arrays.copyOf(colors, size);
+            }
+        }
+
+        /**
+         * Fills {@code buffer}; returns false on a clean end of stream before the first byte.
+         */
+        private boolean readFully(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    if (buffer.position() == 0) {
+                        return false;
+                    }
+                    throw new EOFException("Truncated snapshot stream");
+                }
+            }
+            buffer.flip();
+            return true;
+        }
+    }
+
+    static int quantize(double coordinate) {
+        return (int) Math.round(coordinate * STEPS_PER_PIXEL);
+    }
+
+    private static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+
+    private static int getZigZag(ByteBuffer buffer) {
+        long encoded = getVarLong(buffer);
+        return (int) ((encoded >>> 1) ^ -(encoded & 1));
+    }
+
+    /**
+     * Growable heap buffer for one frame; {@link #begin} reserves the frame header and
+     * {@link #finish} fills in the payload length.
+     */
+    private static final class FrameBuffer {
+        private ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+
+        void begin(byte type) {
+            buffer.clear();
+            buffer.put(type);
+            buffer.putInt(0);
+        }
+
+        ByteBuffer finish() {
+            buffer.putInt(1, buffer.position() - FRAME_HEADER_BYTES);
+            return buffer.flip();
+        }
+
+        void putByte(int value) {
+            ensure(1);
+            buffer.put((byte) value);
+        }
+
+        void putInt(int value) {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putFloat(float value) {
+            ensure(4);
+            buffer.putFloat(value);
+        }
+
+        void putDouble(double value) {
+            ensure(8);
+            buffer.putDouble(value);
+        }
+
+        void putVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        void putZigZag(int value) {
+            putVarLong(((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL);
+        }
+
+        void putString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putVarLong(bytes.length);
+            ensure(bytes.length);
+            buffer.put(bytes);
+        }
+
+        private void ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+    }
+}
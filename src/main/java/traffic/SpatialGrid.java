@@ -0,0 +1,264 @@
+package traffic;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Uniform grid over world coordinates indexing items by integer id, such as vehicle slots. Each
+ * cell heads an intrusive doubly linked list threaded through per-item arrays, so moving an item
+ * between cells is a few array writes and the grid never allocates once sized to the item count.
+ * Points outside the bounds are kept in the nearest edge cell, so queries stay correct, only
+ * slower, for items that stray off the map.
+ *
+ * <p>Coordinates can be written from several threads at once with {@link #place}, as long as each
+ * item is written by one thread; the cell lists are only changed by {@link #insert},
+ * {@link #relink} and {@link #remove}, which must run on one thread.
+ */
+final class SpatialGrid {
+    static final int NONE = -1;
+
+    private final double minX;
+    private final double minY;
+    private final double inverseCellSize;
+    private final int columns;
+    private final int rows;
+    private final int[] cellHead;
+    private int[] next;
+    private int[] previous;
+    private int[] cellOf;
+    private double[] x;
+    private double[] y;
+
+    SpatialGrid(double minX, double minY, double maxX, double maxY, double cellSize, int capacity) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("cellSize must be positive");
+        }
+        this.minX = minX;
+        this.minY = minY;
+        this.inverseCellSize = 1 / cellSize;
+        this.columns = Math.max(1, (int) Math.ceil((maxX - minX) / cellSize));
+        this.rows = Math.max(1, (int) Math.ceil((maxY - minY) / cellSize));
+        this.cellHead = new int[Math.multiplyExact(columns, rows)];
+        Arrays.fill(cellHead, NONE);
+        int size = Math.max(16, capacity);
+        this.next = new int[size];
+        this.previous = new int[size];
+        this.cellOf = new int[size];
+        Arrays.fill(cellOf, NONE);
+        this.x = new double[size];
+        this.y = new double[size];
+    }
+
+    /**
+     * Grid covering every road, padded by {@code margin} on each side.
+     */
+    static SpatialGrid covering(List<SimulationEngine.Road> roads, double cellSize, double margin, int capacity) {
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (SimulationEngine.Road road : roads) {
+            minX = Math.min(minX, Math.min(road.start().x, road.end().x));
+            minY = Math.min(minY, Math.min(road.start().y, road.end().y));
+            maxX = Math.max(maxX, Math.max(road.start().x, road.end().x));
+            maxY = Math.max(maxY, Math.max(road.start().y, road.end().y));
+        }
+        if (roads.isEmpty()) {
+            minX = minY = maxX = maxY = 0;
+        }
+        return new SpatialGrid(minX - margin, minY - margin, maxX + margin, maxY + margin, cellSize, capacity);
+    }
+
+    void insert(int item, double px, double py) {
+        ensureCapacity(item + 1);
+        x[item] = px;
+        y[item] = py;
+        link(item, cellIndex(px, py));
+    }
+
+    /**
+     * Moves an indexed item to a new point, changing cells if needed.
+     */
+    void update(int item, double px, double py) {
+        if (place(item, px, py)) {
+            relink(item);
+        }
+    }
+
+    /**
+     * Stores the item's new point without touching the cell lists.
+     *
+     * @return whether the item now needs {@link #relink} because it left its cell
+     */
+    boolean place(int item, double px, double py) {
+        x[item] = px;
+        y[item] = py;
+        return cellIndex(px, py) != cellOf[item];
+    }
+
+    /**
+     * Files the item under the cell of its stored point.
+     */
+    void relink(int item) {
+        int cell = cellIndex(x[item], y[item]);
+        if (cell != cellOf[item]) {
+            unlink(item);
+            link(item, cell);
+        }
+    }
+
+    /**
+     * Drops an item from the grid; does nothing if it is not indexed.
+     */
+    void remove(int item) {
+        if (contains(item)) {
+            unlink(item);
+        }
+    }
+
+    void clear() {
+        Arrays.fill(cellHead, NONE);
+        Arrays.fill(cellOf, NONE);
+    }
+
+    boolean contains(int item) {
+        return item < cellOf.length && cellOf[item] != NONE;
+    }
+
+    double x(int item) {
+        return x[item];
+    }
+
+    double y(int item) {
+        return y[item];
+    }
+
+    /**
+     * Appends to {@code out} every item whose point lies in the closed rectangle.
+     */
+    void queryRect(double fromX, double fromY, double toX, double toY, IntList out) {
+        int firstColumn = column(fromX);
+        int lastColumn = column(toX);
+        int firstRow = row(fromY);
+        int lastRow = row(toY);
+        for (int r = firstRow; r <= lastRow; r++) {
+            for (int c = firstColumn; c <= lastColumn; c++) {
+                for (int item = cellHead[r * columns + c]; item != NONE; item = next[item]) {
+                    if (x[item] >= fromX && x[item] <= toX && y[item] >= fromY && y[item] <= toY) {
+                        out.add(item);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends to {@code out} every item within {@code radius} of the point.
+     */
+    void queryRadius(double centerX, double centerY, double radius, IntList out) {
+        double radiusSquared = radius * radius;
+        int firstColumn = column(centerX - radius);
+        int lastColumn = column(centerX + radius);
+        int firstRow = row(centerY - radius);
+        int lastRow = row(centerY + radius);
+        for (int r = firstRow; r <= lastRow; r++) {
+            for (int c = firstColumn; c <= lastColumn; c++) {
+                for (int item = cellHead[r * columns + c]; item != NONE; item = next[item]) {
+                    double dx = x[item] - centerX;
+                    double dy = y[item] - centerY;
+                    if (dx * dx + dy * dy <= radiusSquared) {
+                        out.add(item);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Closest item within {@code radius} of the point, or {@link #NONE}.
+     */
+    int nearest(double centerX, double centerY, double radius) {
+        double best = radius * radius;
+        int found = NONE;
+        int firstColumn = column(centerX - radius);
+        int lastColumn = column(centerX + radius);
+        int firstRow = row(centerY - radius);
+        int lastRow = row(centerY + radius);
+        for (int r = firstRow; r <= lastRow; r++) {
+            for (int c = firstColumn; c <= lastColumn; c++) {
+                for (int item = cellHead[r * columns + c]; item != NONE; item = next[item]) {
+                    double dx = x[item] - centerX;
+                    double dy = y[item] - centerY;
+                    double distanceSquared = dx * dx + dy * dy;
+                    if (distanceSquared <= best) {
+                        best = distanceSquared;
+                        found = item;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Grows the per-item arrays to hold ids below {@code items}.
+     */
+    void ensureCapacity(int items) {
+        if (items <= cellOf.length) {
+            return;
+        }
+        int capacity = Math.max(items, cellOf.length * 2);
+        int old = cellOf.length;
+        next = Arrays.copyOf(next, capacity);
+        previous = Arrays.copyOf(previous, capacity);
+        cellOf = Arrays.copyOf(cellOf, capacity);
+        Arrays.fill(cellOf, old, capacity, NONE);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+    }
+
+    private void link(int item, int cell) {
+        int head = cellHead[cell];
+        next[item] = head;
+        previous[item] = NONE;
+        if (head != NONE) {
+            previous[head] = item;
+        }
+        cellHead[cell] = item;
+        cellOf[item] = cell;
+    }
+
+    private void unlink(int item) {
+        int cell = cellOf[item];
+        if (cell == NONE) {
+            return;
+        }
+        int before = previous[item];
+        int after = next[item];
+        if (before == NONE) {
+            cellHead[cell] = after;
+        } else {
+            next[before] = after;
+        }
+        if (after != NONE) {
+            previous[after] = before;
+        }
+        cellOf[item] = NONE;
+    }
+
+    private int cellIndex(double px, double py) {
+        return row(py) * columns + column(px);
+    }
+
+    private int column(double px) {
+        return clamp((int) Math.floor((px - minX) * inverseCellSize), columns);
+    }
+
+    private int row(double py) {
+        return clamp((int) Math.floor((py - minY) * inverseCellSize), rows);
+    }
+
+    private static int clamp(int index, int count) {
+        return index < 0 ? 0 : Math.min(index, count - 1);
+    }
+}
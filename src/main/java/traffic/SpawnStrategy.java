@@ -8,4 +8,32 @@ import java.util.Random;
  */
 public interface SpawnStrategy {
     SimulationEngine.Road chooseRoad(List<SimulationEngine.Road> roads, Random random);
+
+    /**
+     * Strategy an engine spawning on {@code roads}, its roads by id, should use; each engine calls
+     * this once when it is built and passes the same list to every {@link #chooseRoad} call
+     * afterwards. Strategies that precompute per road list return a copy bound to it, so one
+     * instance can serve many engines. The default returns this strategy.
+     */
+    default SpawnStrategy bind(List<SimulationEngine.Road> roads) {
+        return this;
+    }
+
+    /**
+     * Chooses the road at simulated time {@code simSeconds}; the engine calls this one. Strategies
+     * whose weights do not change over time need not override it.
+     */
+    default SimulationEngine.Road chooseRoad(List<SimulationEngine.Road> roads, Random random, double simSeconds) {
+        return chooseRoad(roads, random);
+    }
+
+    /**
+     * Exit road the vehicle just placed on {@code origin} should head for, or {@code null} to pick
+     * one of the exits reachable from it uniformly. The engine calls this right after
+     * {@link #chooseRoad} returned {@code origin}, once the vehicle has found room; exits that are
+     * not reachable from {@code origin} also fall back to a uniform pick.
+     */
+    default SimulationEngine.Road chooseDestination(SimulationEngine.Road origin, Random random) {
+        return null;
+    }
 }
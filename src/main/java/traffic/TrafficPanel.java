@@ -10,30 +10,88 @@ import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
-import java.awt.geom.Point2D;
-import java.util.List;
+import java.awt.Transparency;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
 
+/**
+ * Draws snapshots on the EDT. Roads are static between lane closures, so they are rendered once
+ * into an image and blitted; vehicles are drawn without antialiasing in one batch per color. When
+ * vehicles would be too many or too small to tell apart, the panel switches to a per-lane density
+ * heatmap. The mouse wheel zooms around the cursor, and an overlay shows recent frame times.
+ */
 public class TrafficPanel extends JPanel {
-    private final SimulationEngine engine;
+    private static final long NO_SELECTION = -1;
+    private static final double PICK_RADIUS = 10;
+    private static final int VEHICLE_SIZE = 12;
+    private static final int VEHICLE_BORDER = 2;
+    private static final double LANE_WIDTH = 12;
+    /** Above this many vehicles, lanes are drawn as a density heatmap. */
+    private static final int HEATMAP_VEHICLE_THRESHOLD = 5_000;
+    /** Below this zoom, vehicles are smaller than a few pixels and lanes are drawn as a heatmap. */
+    private static final double HEATMAP_ZOOM_THRESHOLD = 0.5;
+    private static final double MIN_ZOOM = 0.1;
+    private static final double MAX_ZOOM = 8;
+    private static final int FRAME_SAMPLES = 60;
+
+    private final SimulationLoop loop;
     private SimulationSnapshot snapshot;
+    private long selectedVehicleId = NO_SELECTION;
     private final Color asphalt = new Color(0x2b2b2b);
     private final Color laneMarking = new Color(0xf1c40f);
     private final Color closureColor = new Color(0xc0392b);
+    private final Color selectionColor = new Color(0x3498db);
+    private final Color labelColor = new Color(0xcccccc);
+    private final Color overlayBackground = new Color(0, 0, 0, 160);
+    private final Color[] heatColors = heatScale(16);
+    private final BasicStroke markingStroke = new BasicStroke(2f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND, 0, new float[]{8f, 8f}, 0);
+    private final BasicStroke selectionStroke = new BasicStroke(2f);
+    private final BasicStroke heatStroke = new BasicStroke((float) LANE_WIDTH - 2, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER);
+
+    private double zoom = 1;
+    private double offsetX;
+    private double offsetY;
+
+    private BufferedImage roadLayer;
+    private List<SimulationEngine.RoadView> roadLayerViews;
+    private AffineTransform roadLayerTransform;
+    private Font baseFont;
+    private Font labelFont;
+
+    private LaneHeatmap heatmap;
+    private Color[] batchColors = new Color[8];
+    private IntList[] batches = new IntList[8];
+    private int batchCount;
 
-    public TrafficPanel(SimulationEngine engine) {
-        this.engine = engine;
-        this.snapshot = engine.createSnapshot();
+    private final long[] frameNanos = new long[FRAME_SAMPLES];
+    private int frameCount;
+    private int frameNext;
+
+    public TrafficPanel(SimulationLoop loop) {
+        this.loop = loop;
+        this.snapshot = loop.latestSnapshot();
         setPreferredSize(new Dimension(820, 500));
         setBackground(new Color(0x121212));
         setDoubleBuffered(true);
-        addMouseListener(new MouseAdapter() {
+        MouseAdapter mouse = new MouseAdapter() {
             @Override
             public void mouseClicked(MouseEvent e) {
                 handleClick(e.getPoint());
             }
-        });
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                zoomAround(e.getPoint(), Math.pow(1.1, -e.getPreciseWheelRotation()));
+            }
+        };
+        addMouseListener(mouse);
+        addMouseWheelListener(mouse);
     }
 
     public void setSnapshot(SimulationSnapshot snapshot) {
@@ -42,97 +100,291 @@ public class TrafficPanel extends JPanel {
 
     @Override
     protected void paintComponent(Graphics g) {
+        long started = System.nanoTime();
         super.paintComponent(g);
         if (snapshot == null) {
             return;
         }
         Graphics2D g2 = (Graphics2D) g.create();
+        drawRoadLayer(g2);
+        g2.transform(viewTransform());
         g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        drawRoads(g2);
         drawSignals(g2);
-        drawVehicles(g2);
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        boolean heat = useHeatmap();
+        if (heat) {
+            drawHeatmap(g2);
+        } else {
+            drawVehicles(g2);
+        }
         g2.dispose();
+        recordFrame(System.nanoTime() - started);
+        drawOverlay(g, heat);
     }
 
-    private void drawRoads(Graphics2D g2) {
-        List<SimulationEngine.RoadView> roads = snapshot.roadViews();
+    private AffineTransform viewTransform() {
+        AffineTransform transform = AffineTransform.getTranslateInstance(offsetX, offsetY);
+        transform.scale(zoom, zoom);
+        return transform;
+    }
+
+    /**
+     * Blits the cached road image, redrawing it first if the roads, the panel size or the view
+     * changed since it was drawn.
+     */
+    private void drawRoadLayer(Graphics2D g2) {
+        int width = Math.max(1, getWidth());
+        int height = Math.max(1, getHeight());
+        List<SimulationEngine.RoadView> views = snapshot.roadViews();
+        AffineTransform transform = viewTransform();
+        boolean stale = roadLayer == null
+                || roadLayer.getWidth() != width
+                || roadLayer.getHeight() != height
+                || !transform.equals(roadLayerTransform)
+                || (views != roadLayerViews && !views.equals(roadLayerViews));
+        if (stale) {
+            roadLayer = getGraphicsConfiguration() != null
+                    ? getGraphicsConfiguration().createCompatibleImage(width, height, Transparency.TRANSLUCENT)
+                    : new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D layer = roadLayer.createGraphics();
+            layer.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            layer.transform(transform);
+            drawRoads(layer, views);
+            layer.dispose();
+            roadLayerViews = views;
+            roadLayerTransform = transform;
+        }
+        g2.drawImage(roadLayer, 0, 0, null);
+    }
+
+    private void drawRoads(Graphics2D g2, List<SimulationEngine.RoadView> roads) {
+        g2.setFont(labelFont());
         for (SimulationEngine.RoadView road : roads) {
-            float laneWidth = 12f;
-            float totalWidth = (float) (road.totalLanes() * laneWidth + 6);
-            BasicStroke baseStroke = new BasicStroke(totalWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
-            g2.setStroke(baseStroke);
+            float totalWidth = (float) (road.totalLanes() * LANE_WIDTH + 6);
+            g2.setStroke(new BasicStroke(totalWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
             g2.setColor(asphalt);
             g2.drawLine((int) road.start().x, (int) road.start().y, (int) road.end().x, (int) road.end().y);
 
             if (road.openLanes() < road.totalLanes()) {
-                float closedWidth = (road.totalLanes() - road.openLanes()) * laneWidth;
-                if (closedWidth > 0) {
-                    BasicStroke closedStroke = new BasicStroke(closedWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
-                    g2.setStroke(closedStroke);
-                    g2.setColor(closureColor);
-                    g2.drawLine((int) road.start().x, (int) road.start().y, (int) road.end().x, (int) road.end().y);
-                }
+                float closedWidth = (float) ((road.totalLanes() - road.openLanes()) * LANE_WIDTH);
+                g2.setStroke(new BasicStroke(closedWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+                g2.setColor(closureColor);
+                g2.drawLine((int) road.start().x, (int) road.start().y, (int) road.end().x, (int) road.end().y);
             }
 
             if (road.totalLanes() > 1) {
-                float markingWidth = 2f;
-                BasicStroke markingStroke = new BasicStroke(markingWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND, 0, new float[]{8f, 8f}, 0);
                 g2.setStroke(markingStroke);
                 g2.setColor(laneMarking);
                 g2.drawLine((int) road.start().x, (int) road.start().y, (int) road.end().x, (int) road.end().y);
             }
 
-            g2.setFont(getFont().deriveFont(Font.BOLD, 11f));
-            g2.setColor(new Color(0xcccccc));
+            g2.setColor(labelColor);
             Point2D.Double labelPos = midpoint(road.start(), road.end());
             g2.drawString(road.name(), (int) labelPos.x + 8, (int) labelPos.y - 8);
         }
     }
 
     private void drawSignals(Graphics2D g2) {
-        SimulationEngine.SignalView signal = snapshot.signalView();
-        LightPositions positions = computeLightPositions(signal);
+        for (SimulationEngine.SignalView signal : snapshot.signalViews()) {
+            LightPositions positions = computeLightPositions(signal);
 
-        g2.setColor(Color.DARK_GRAY);
-        g2.fillRoundRect(positions.mainBounds.x - 2, positions.mainBounds.y - 2, positions.size + 4, positions.size + 4, 6, 6);
-        g2.fillRoundRect(positions.crossBounds.x - 2, positions.crossBounds.y - 2, positions.size + 4, positions.size + 4, 6, 6);
+            g2.setColor(Color.DARK_GRAY);
+            g2.fillRoundRect(positions.mainBounds.x - 2, positions.mainBounds.y - 2, positions.size + 4, positions.size + 4, 6, 6);
+            g2.fillRoundRect(positions.crossBounds.x - 2, positions.crossBounds.y - 2, positions.size + 4, positions.size + 4, 6, 6);
 
-        g2.setColor(signal.mainColor());
-        g2.fillOval(positions.mainBounds.x, positions.mainBounds.y, positions.size, positions.size);
-        g2.setColor(signal.crossColor());
-        g2.fillOval(positions.crossBounds.x, positions.crossBounds.y, positions.size, positions.size);
+            g2.setColor(signal.mainColor());
+            g2.fillOval(positions.mainBounds.x, positions.mainBounds.y, positions.size, positions.size);
+            g2.setColor(signal.crossColor());
+            g2.fillOval(positions.crossBounds.x, positions.crossBounds.y, positions.size, positions.size);
+        }
     }
 
+    /**
+     * Draws every vehicle's border in one pass, then the vehicles one color at a time, so the
+     * graphics state changes once per color rather than twice per vehicle.
+     */
     private void drawVehicles(Graphics2D g2) {
-        for (SimulationEngine.VehicleView vehicle : snapshot.vehicleViews()) {
-            int size = 12;
-            int arc = size/2;
-            int x = (int) vehicle.position().x - size / 2;
-            int y = (int) vehicle.position().y - size / 2;
+        double[] xy = snapshot.vehiclePositions();
+        int count = snapshot.vehicleCount();
+        int outer = VEHICLE_SIZE + VEHICLE_BORDER * 2;
+        g2.setColor(Color.BLACK);
+        for (int i = 0; i < count; i++) {
+            g2.fillRect((int) xy[2 * i] - outer / 2, (int) xy[2 * i + 1] - outer / 2, outer, outer);
+        }
+        groupByColor(count);
+        for (int b = 0; b < batchCount; b++) {
+            IntList batch = batches[b];
+            g2.setColor(batchColors[b]);
+            for (int k = 0; k < batch.size(); k++) {
+                int i = batch.get(k);
+                g2.fillRect((int) xy[2 * i] - VEHICLE_SIZE / 2, (int) xy[2 * i + 1] - VEHICLE_SIZE / 2, VEHICLE_SIZE, VEHICLE_SIZE);
+            }
+        }
+        if (selectedVehicleId == NO_SELECTION) {
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            if (snapshot.vehicleId(i) == selectedVehicleId) {
+                drawSelection(g2, xy[2 * i], xy[2 * i + 1]);
+                return;
+            }
+        }
+    }
+
+    private void drawSelection(Graphics2D g2, double x, double y) {
+        int ring = VEHICLE_SIZE + 10;
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2.setStroke(selectionStroke);
+        g2.setColor(selectionColor);
+        g2.drawOval((int) x - ring / 2, (int) y - ring / 2, ring, ring);
+        g2.setFont(labelFont());
+        g2.drawString("#" + selectedVehicleId, (int) x + VEHICLE_SIZE, (int) y - VEHICLE_SIZE / 2 - 4);
+    }
 
-            int border = 2;
-            g2.setColor(Color.BLACK);
-            g2.fillRoundRect(x - border, y - border, size + border * 2, size + border * 2, arc + border, arc + border);
-            g2.setColor(vehicle.color());
-            g2.fillRoundRect(x, y, size, size, arc, arc);
+    /**
+     * Sorts vehicle indexes into one reusable batch per color. Palettes are a handful of shared
+     * constants, so colors are matched by identity first.
+     */
+    private void groupByColor(int count) {
+        for (int b = 0; b < batchCount; b++) {
+            batches[b].clear();
+        }
+        batchCount = 0;
+        for (int i = 0; i < count; i++) {
+            Color color = snapshot.vehicleColor(i);
+            int b = 0;
+            while (b < batchCount && batchColors[b] != color && !batchColors[b].equals(color)) {
+                b++;
+            }
+            if (b == batchCount) {
+                if (b == batchColors.length) {
+                    batchColors = Arrays.copyOf(batchColors, b * 2);
+                    batches = Arrays.copyOf(batches, b * 2);
+                }
+                if (batches[b] == null) {
+                    batches[b] = new IntList();
+                }
+                batchColors[b] = color;
+                batchCount++;
+            }
+            batches[b].add(i);
         }
     }
 
+    private boolean useHeatmap() {
+        return snapshot.hasLanePositions()
+                && (zoom < HEATMAP_ZOOM_THRESHOLD || snapshot.vehicleCount() > HEATMAP_VEHICLE_THRESHOLD);
+    }
+
+    /**
+     * Paints each occupied lane segment in a color from green to red by how close it is to packed.
+     */
+    private void drawHeatmap(Graphics2D g2) {
+        List<SimulationEngine.RoadView> roads = snapshot.roadViews();
+        if (heatmap == null || !heatmap.matches(roads)) {
+            heatmap = new LaneHeatmap(roads);
+        }
+        heatmap.fill(snapshot);
+        g2.setStroke(heatStroke);
+        for (int road = 0; road < roads.size(); road++) {
+            SimulationEngine.RoadView view = roads.get(road);
+            double length = view.start().distance(view.end());
+            if (length == 0) {
+                continue;
+            }
+            double unitX = (view.end().x - view.start().x) / length;
+            double unitY = (view.end().y - view.start().y) / length;
+            for (int lane = 0; lane < view.openLanes(); lane++) {
+                double offset = (lane - (view.openLanes() - 1) / 2.0) * LANE_WIDTH;
+                double laneX = view.start().x - unitY * offset;
+                double laneY = view.start().y + unitX * offset;
+                for (int segment = 0; segment < heatmap.segments(road); segment++) {
+                    int count = heatmap.count(road, lane, segment);
+                    if (count == 0) {
+                        continue;
+                    }
+                    double from = segment * LaneHeatmap.SEGMENT_PIXELS;
+                    double to = Math.min(length, from + LaneHeatmap.SEGMENT_PIXELS);
+                    double load = Math.min(1, count / LaneHeatmap.SEGMENT_CAPACITY);
+                    g2.setColor(heatColors[(int) Math.round(load * (heatColors.length - 1))]);
+                    g2.drawLine((int) (laneX + unitX * from), (int) (laneY + unitY * from),
+                            (int) (laneX + unitX * to), (int) (laneY + unitY * to));
+                }
+            }
+        }
+    }
+
+    private void recordFrame(long nanos) {
+        frameNanos[frameNext] = nanos;
+        frameNext = (frameNext + 1) % FRAME_SAMPLES;
+        frameCount = Math.min(frameCount + 1, FRAME_SAMPLES);
+    }
+
+    /**
+     * Mean and worst paint time over the last {@value #FRAME_SAMPLES} frames, in screen
+     * coordinates at the top left.
+     */
+    private void drawOverlay(Graphics g, boolean heat) {
+        long total = 0;
+        long worst = 0;
+        for (int i = 0; i < frameCount; i++) {
+            total += frameNanos[i];
+            worst = Math.max(worst, frameNanos[i]);
+        }
+        String text = String.format("frame %.1f ms avg, %.1f ms max | %d vehicles | %s | zoom %.0f%%",
+                frameCount == 0 ? 0 : total / 1e6 / frameCount, worst / 1e6, snapshot.vehicleCount(),
+                heat ? "heatmap" : "vehicles", zoom * 100);
+        g.setFont(labelFont());
+        int width = g.getFontMetrics().stringWidth(text);
+        g.setColor(overlayBackground);
+        g.fillRect(4, 4, width + 8, 18);
+        g.setColor(labelColor);
+        g.drawString(text, 8, 17);
+    }
+
+    private Font labelFont() {
+        Font font = getFont();
+        if (font != baseFont) {
+            baseFont = font;
+            labelFont = font.deriveFont(Font.BOLD, 11f);
+        }
+        return labelFont;
+    }
+
+    private void zoomAround(Point point, double factor) {
+        double next = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom * factor));
+        double worldX = (point.x - offsetX) / zoom;
+        double worldY = (point.y - offsetY) / zoom;
+        zoom = next;
+        offsetX = point.x - worldX * zoom;
+        offsetY = point.y - worldY * zoom;
+        repaint();
+    }
+
     private Point2D.Double midpoint(Point2D.Double a, Point2D.Double b) {
         return new Point2D.Double((a.x + b.x) / 2.0, (a.y + b.y) / 2.0);
     }
 
-    private void handleClick(Point point) {
+    private void handleClick(Point screenPoint) {
         if (snapshot == null) {
             return;
         }
-        SimulationEngine.SignalView signal = snapshot.signalView();
-        LightPositions positions = computeLightPositions(signal);
-        if (positions.mainBounds.contains(point)) {
-            engine.execute(new SimulationCommands.SetPhaseCommand(SimulationEngine.Intersection.Phase.MAIN_GREEN));
-        } else if (positions.crossBounds.contains(point)) {
-            engine.execute(new SimulationCommands.SetPhaseCommand(SimulationEngine.Intersection.Phase.CROSS_GREEN));
+        Point point = new Point((int) Math.floor((screenPoint.x - offsetX) / zoom),
+                (int) Math.floor((screenPoint.y - offsetY) / zoom));
+        List<SimulationEngine.SignalView> signals = snapshot.signalViews();
+        for (int i = 0; i < signals.size(); i++) {
+            LightPositions positions = computeLightPositions(signals.get(i));
+            if (positions.mainBounds.contains(point)) {
+                loop.submit(new SimulationCommands.SetPhaseCommand(i, SimulationEngine.Intersection.Phase.MAIN_GREEN));
+                return;
+            } else if (positions.crossBounds.contains(point)) {
+                loop.submit(new SimulationCommands.SetPhaseCommand(i, SimulationEngine.Intersection.Phase.CROSS_GREEN));
+                return;
+            }
         }
+        SimulationEngine.VehicleView picked = snapshot.vehicleAt(point.x, point.y, PICK_RADIUS / zoom);
+        selectedVehicleId = picked == null ? NO_SELECTION : picked.id();
+        repaint();
     }
 
     private LightPositions computeLightPositions(SimulationEngine.SignalView signal) {
@@ -147,6 +399,18 @@ public class TrafficPanel extends JPanel {
         return new LightPositions(mainBounds, crossBounds, size);
     }
 
+    /**
+     * Green through yellow to red, shared by every frame so the heatmap never allocates colors.
+     */
+    private static Color[] heatScale(int steps) {
+        Color[] colors = new Color[steps];
+        for (int i = 0; i < steps; i++) {
+            float load = i / (float) (steps - 1);
+            colors[i] = Color.getHSBColor((1 - load) / 3f, 0.85f, 0.95f);
+        }
+        return colors;
+    }
+
     private record LightPositions(Rectangle mainBounds, Rectangle crossBounds, int size) {
     }
 }
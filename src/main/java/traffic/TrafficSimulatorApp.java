@@ -16,35 +16,80 @@ import javax.swing.Timer;
 import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 
 public class TrafficSimulatorApp extends JFrame {
-    private final SimulationEngine engine = SimulationEngineBuilder.defaults().build();
-    private final TrafficPanel canvas = new TrafficPanel(engine);
+    private static final double TICKS_PER_SECOND = 50;
+    private static final int DISPLAY_PERIOD_MILLIS = 16;
+
+    private final SimulationLoop loop;
+    private final TrafficPanel canvas;
+    private final EventLog.Recorder recorder;
     private final JLabel throughputLabel = new JLabel("Flow: 0.00 vehicles/s");
     private final JLabel timeLabel = new JLabel("t = 0.0s");
     private JSlider spawnSlider;
     private JSlider speedSlider;
     private JCheckBox laneClosureBox;
-
-    private long lastTickNanos = System.nanoTime();
+    private SimulationSnapshot shownSnapshot;
 
     public TrafficSimulatorApp() {
+        this(System.nanoTime(), null);
+    }
+
+    /**
+     * @param seed       random seed for the engine
+     * @param recordPath event log to record the session to, or {@code null} not to record
+     */
+    public TrafficSimulatorApp(long seed, Path recordPath) {
         super("Traffic Simulator");
+        SimulationEngine engine = SimulationEngineBuilder.defaults().withSeed(seed).build();
+        loop = new SimulationLoop(engine, TICKS_PER_SECOND);
+        canvas = new TrafficPanel(loop);
+        recorder = recordPath == null ? null : openRecorder(recordPath, seed, engine);
+        if (recorder != null) {
+            loop.recordTo(recorder);
+        }
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                shutdown();
+            }
+        });
         setLayout(new BorderLayout());
         add(canvas, BorderLayout.CENTER);
         add(buildControls(), BorderLayout.SOUTH);
         pack();
         setLocationRelativeTo(null);
-        engine.addObserver(snapshot -> {
-            throughputLabel.setText(String.format("Flow: %.2f vehicles/s", snapshot.throughputPerSecond()));
-            timeLabel.setText(String.format("t = %.1fs", snapshot.simTimeSeconds()));
-            canvas.setSnapshot(snapshot);
-            canvas.repaint();
-        });
-        engine.reset();
+        loop.submit(new SimulationCommands.ResetCommand());
+    }
+
+    private static EventLog.Recorder openRecorder(Path path, long seed, SimulationEngine engine) {
+        try {
+            return EventLog.record(path, seed, engine);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot record to " + path, e);
+        }
+    }
+
+    /**
+     * Stops the simulation thread so a recording ends on a tick boundary, then seals the log.
+     */
+    private void shutdown() {
+        try {
+            loop.stop();
+            if (recorder != null) {
+                recorder.close();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("Could not finish event log: " + e.getMessage());
+        }
     }
 
     private JPanel buildControls() {
@@ -62,7 +107,7 @@ public class TrafficSimulatorApp extends JFrame {
         JLabel spawnLabel = new JLabel("Vehicles/min: 40");
         spawnSlider.addChangeListener(e -> {
             spawnLabel.setText("Vehicles/min: " + spawnSlider.getValue());
-            engine.execute(new SimulationCommands.SetSpawnRateCommand(spawnSlider.getValue()));
+            loop.submit(new SimulationCommands.SetSpawnRateCommand(spawnSlider.getValue()));
         });
 
         speedSlider = new JSlider(10, 120, 70);
@@ -73,11 +118,11 @@ public class TrafficSimulatorApp extends JFrame {
         JLabel speedLabel = new JLabel("Speed limit: 70 mph");
         speedSlider.addChangeListener(e -> {
             speedLabel.setText("Speed limit: " + speedSlider.getValue() + " mph");
-            engine.execute(new SimulationCommands.SetSpeedLimitCommand(speedSlider.getValue()));
+            loop.submit(new SimulationCommands.SetSpeedLimitCommand(speedSlider.getValue()));
         });
 
         laneClosureBox = new JCheckBox("Close 1 lane on main road");
-        laneClosureBox.addActionListener(e -> engine.execute(new SimulationCommands.ToggleLaneClosureCommand(laneClosureBox.isSelected())));
+        laneClosureBox.addActionListener(e -> loop.submit(new SimulationCommands.ToggleLaneClosureCommand(laneClosureBox.isSelected())));
 
         JButton resetButton = new JButton("Reset traffic");
         resetButton.addActionListener(e -> resetSimulation());
@@ -107,32 +152,67 @@ public class TrafficSimulatorApp extends JFrame {
     }
 
     private void resetSimulation() {
-        engine.execute(new SimulationCommands.ResetCommand());
-        engine.setLaneClosure(false);
+        loop.submit(new SimulationCommands.ResetCommand());
+        loop.submit(new SimulationCommands.ToggleLaneClosureCommand(false));
         laneClosureBox.setSelected(false);
         spawnSlider.setValue(40);
         speedSlider.setValue(70);
-        lastTickNanos = System.nanoTime();
     }
 
+    /**
+     * Starts the simulation thread and a display-rate timer on the EDT that picks up the latest
+     * published snapshot; painting never holds up a tick.
+     */
     private void startLoop() {
-        Timer timer = new Timer(30, new ActionListener() {
-            @Override
-            public void actionPerformed(ActionEvent e) {
-                long now = System.nanoTime();
-                double delta = (now - lastTickNanos) / 1_000_000_000.0;
-                lastTickNanos = now;
-                engine.update(delta);
-            }
-        });
-        timer.start();
+        loop.start();
+        Timer display = new Timer(DISPLAY_PERIOD_MILLIS, e -> showLatestSnapshot());
+        display.start();
     }
 
+    private void showLatestSnapshot() {
+        RuntimeException failure = loop.failure();
+        if (failure != null) {
+            timeLabel.setText("Simulation stopped: " + failure);
+            return;
+        }
+        SimulationSnapshot snapshot = loop.latestSnapshot();
+        if (snapshot == null || snapshot == shownSnapshot) {
+            return;
+        }
+        shownSnapshot = snapshot;
+        throughputLabel.setText(String.format("Flow: %.2f vehicles/s", snapshot.throughputPerSecond()));
+        timeLabel.setText(String.format("t = %.1fs", snapshot.simTimeSeconds()));
+        canvas.setSnapshot(snapshot);
+        canvas.repaint();
+    }
+
+    /**
+     * Accepts {@code --seed <n>} to fix the random seed and {@code --record <file>} to write an event
+     * log that {@code traffic-headless --replay <file>} can reproduce.
+     */
     public static void main(String[] args) {
+        long seed = System.nanoTime();
+        Path recordPath = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--seed" -> seed = Long.parseLong(requireValue(args, ++i));
+                case "--record" -> recordPath = Path.of(requireValue(args, ++i));
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        long appSeed = seed;
+        Path appRecordPath = recordPath;
         SwingUtilities.invokeLater(() -> {
-            TrafficSimulatorApp app = new TrafficSimulatorApp();
+            TrafficSimulatorApp app = new TrafficSimulatorApp(appSeed, appRecordPath);
             app.setVisible(true);
             app.startLoop();
         });
     }
+
+    private static String requireValue(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + args[index - 1]);
+        }
+        return args[index];
+    }
 }
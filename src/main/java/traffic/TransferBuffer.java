@@ -0,0 +1,39 @@
+package traffic;
+
+import java.util.Arrays;
+
+/**
+ * Reusable list of (road, lane) pairs whose front vehicle has reached the end of its road and is
+ * waiting to move onto the next road of its route.
+ */
+final class TransferBuffer {
+    private int[] roads = new int[32];
+    private int[] lanes = new int[32];
+    private int size;
+
+    void add(int road, int lane) {
+        if (size == roads.length) {
+            roads = Arrays.copyOf(roads, size * 2);
+            lanes = Arrays.copyOf(lanes, size * 2);
+        }
+        roads[size] = road;
+        lanes[size] = lane;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int road(int index) {
+        return roads[index];
+    }
+
+    int lane(int index) {
+        return lanes[index];
+    }
+
+    void clear() {
+        size = 0;
+    }
+}
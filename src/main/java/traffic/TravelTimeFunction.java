@@ -0,0 +1,34 @@
+package traffic;
+
+/**
+ * Travel time over one lane of a mesoscopic road as the lane fills up. The engine asks once per
+ * vehicle, when it enters the road; the vehicle may leave after that time, if the queue in front
+ * of it, the signal and the road ahead let it.
+ */
+public interface TravelTimeFunction {
+    /**
+     * @param freeFlowSeconds time to drive the road alone at the speed limit
+     * @param occupancy       vehicles already in the lane
+     * @param storage         vehicles the lane holds when packed
+     * @return seconds until the entering vehicle reaches the end of the road
+     */
+    double travelTime(double freeFlowSeconds, int occupancy, int storage);
+
+    /**
+     * Bureau of Public Roads curve {@code t0 * (1 + alpha * (n / storage)^beta)}.
+     * {@code bpr(0.15, 4)} is the default.
+     */
+    static TravelTimeFunction bpr(double alpha, double beta) {
+        if (alpha < 0 || beta < 0) {
+            throw new IllegalArgumentException("alpha and beta must not be negative");
+        }
+        return (freeFlow, occupancy, storage) -> freeFlow * (1 + alpha * Math.pow((double) occupancy / storage, beta));
+    }
+
+    /**
+     * Free-flow time regardless of load, so congestion only shows as queues at the exit.
+     */
+    static TravelTimeFunction freeFlow() {
+        return (freeFlow, occupancy, storage) -> freeFlow;
+    }
+}
@@ -0,0 +1,52 @@
+package traffic;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free single-producer, single-consumer triple buffer. The producer always has a back slot
+ * to write into and the consumer always has a stable front slot to read from; publishing swaps the
+ * back slot with the shared middle slot, and acquiring swaps the middle slot to the front when it
+ * holds something newer. Neither side ever blocks the other, and the consumer only sees the most
+ * recent publication.
+ *
+ * @param <T> buffered value type
+ */
+final class TripleBuffer<T> {
+    private static final int INDEX_MASK = 0b11;
+    private static final int DIRTY = 0b100;
+
+    private final Object[] slots = new Object[3];
+    /** Middle slot index in the low bits plus a dirty flag set by the producer. */
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back;
+    private int front = 2;
+
+    /**
+     * Value currently in the producer's back slot, which the producer may recycle before the next
+     * {@link #publish}. Returns {@code null} until the slot has held a value.
+     */
+    @SuppressWarnings("unchecked")
+    T backValue() {
+        return (T) slots[back];
+    }
+
+    /**
+     * Makes {@code value} the latest publication. Producer thread only.
+     */
+    void publish(T value) {
+        slots[back] = value;
+        back = middle.getAndSet(back | DIRTY) & INDEX_MASK;
+    }
+
+    /**
+     * Returns the latest published value, or the previously acquired one if nothing new has been
+     * published since. Consumer thread only.
+     */
+    @SuppressWarnings("unchecked")
+    T acquire() {
+        if ((middle.get() & DIRTY) != 0) {
+            front = middle.getAndSet(front) & INDEX_MASK;
+        }
+        return (T) slots[front];
+    }
+}
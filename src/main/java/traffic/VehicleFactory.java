@@ -1,10 +1,13 @@
 package traffic;
 
+import java.awt.Color;
 import java.util.Objects;
 import java.util.Random;
 
 /**
- * Factory responsible for creating vehicles with the right defaults.
+ * Factory responsible for creating vehicles with the right defaults. Vehicles live in the engine's
+ * columnar store rather than as objects, so subclasses customise them per vehicle by overriding
+ * {@link #pickColor}, which the engine calls for every vehicle it spawns or places.
  */
 public class VehicleFactory {
     private final ColorStrategy colorStrategy;
@@ -13,7 +16,22 @@ public class VehicleFactory {
         this.colorStrategy = Objects.requireNonNull(colorStrategy);
     }
 
-    public SimulationEngine.Vehicle createVehicle(SimulationEngine.Road road, int laneIndex, Random random) {
-        return new SimulationEngine.Vehicle(road, laneIndex, colorStrategy.pickColor(random));
+    /**
+     * Color of a new vehicle entering {@code road} in lane {@code laneIndex}; the default asks the
+     * color strategy. Runs on the tick thread, so keep it cheap, draw randomness only from
+     * {@code random} to keep runs reproducible, and return one of a few colors: each distinct
+     * color takes a palette entry.
+     */
+    protected Color pickColor(SimulationEngine.Road road, int laneIndex, Random random) {
+        return colorStrategy.pickColor(random);
+    }
+
+    /**
+     * Allocates a vehicle directly in {@code store} without creating a heap object.
+     *
+     * @return the slot of the new vehicle
+     */
+    final int spawn(VehicleStore store, SimulationEngine.Road road, int roadId, int laneIndex, Random random) {
+        return store.allocate(roadId, laneIndex, store.colorIndex(pickColor(road, laneIndex, random)));
     }
 }
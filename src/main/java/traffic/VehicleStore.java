@@ -0,0 +1,375 @@
+package traffic;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Structure-of-arrays vehicle storage. Each vehicle is a slot index into parallel primitive
+ * columns; roads are referenced by id, routes by {@link RouteTable} id and colors by palette
+ * index. Released slots are recycled through an intrusive free list, so once the columns have
+ * grown to the working set, spawning and departing vehicles does not allocate.
+ */
+final class VehicleStore {
+    static final double INITIAL_SPEED = 40;
+    private static final int NO_SLOT = -1;
+
+    private int[] roadId;
+    private int[] lane;
+    private double[] position;
+    private double[] speed;
+    private int[] colorIndex;
+    private int[] route;
+    private int[] routeStep;
+    private int[] nextFree;
+    private long[] vehicleId;
+    private double[] entryTime;
+    private double[] delay;
+    private int[] stops;
+    private double[] linkEntryTime;
+    private double[] linkReadyTime;
+    private double[] speedFactor;
+    private double[] headway;
+    private double[] maxAcceleration;
+    private double[] comfortableDeceleration;
+    private long nextVehicleId;
+    private Color[] palette = new Color[8];
+    private int paletteSize;
+
+    private int highWater;
+    private int freeHead = NO_SLOT;
+    private int size;
+
+    VehicleStore(int initialCapacity) {
+        int capacity = Math.max(16, initialCapacity);
+        roadId = new int[capacity];
+        lane = new int[capacity];
+        position = new double[capacity];
+        speed = new double[capacity];
+        colorIndex = new int[capacity];
+        route = new int[capacity];
+        routeStep = new int[capacity];
+        nextFree = new int[capacity];
+        vehicleId = new long[capacity];
+        entryTime = new double[capacity];
+        delay = new double[capacity];
+        stops = new int[capacity];
+        linkEntryTime = new double[capacity];
+        linkReadyTime = new double[capacity];
+        speedFactor = new double[capacity];
+        headway = new double[capacity];
+        maxAcceleration = new double[capacity];
+        comfortableDeceleration = new double[capacity];
+    }
+
+    int allocate(int road, int laneIndex, int color) {
+        int slot;
+        if (freeHead != NO_SLOT) {
+            slot = freeHead;
+            freeHead = nextFree[slot];
+        } else {
+            if (highWater == roadId.length) {
+                grow();
+            }
+            slot = highWater++;
+        }
+        roadId[slot] = road;
+        lane[slot] = laneIndex;
+        position[slot] = 0;
+        speed[slot] = INITIAL_SPEED;
+        colorIndex[slot] = color;
+        route[slot] = RouteTable.NO_ROUTE;
+        routeStep[slot] = 0;
+        nextFree[slot] = NO_SLOT;
+        vehicleId[slot] = nextVehicleId++;
+        entryTime[slot] = 0;
+        delay[slot] = 0;
+        stops[slot] = 0;
+        linkEntryTime[slot] = 0;
+        linkReadyTime[slot] = 0;
+        size++;
+        return slot;
+    }
+
+    void release(int slot) {
+        nextFree[slot] = freeHead;
+        freeHead = slot;
+        size--;
+    }
+
+    void clear() {
+        highWater = 0;
+        freeHead = NO_SLOT;
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Vehicles allocated so far, which is also the id the next one gets.
+     */
+    long createdCount() {
+        return nextVehicleId;
+    }
+
+    int capacity() {
+        return roadId.length;
+    }
+
+    /**
+     * Returns the palette index for {@code color}, registering it on first use. Palettes are a
+     * handful of shared constants, so a linear identity-then-equals scan is cheaper than hashing.
+     */
+    int colorIndex(Color color) {
+        Objects.requireNonNull(color);
+        for (int i = 0; i < paletteSize; i++) {
+            if (palette[i] == color) {
+                return i;
+            }
+        }
+        for (int i = 0; i < paletteSize; i++) {
+            if (palette[i].equals(color)) {
+                return i;
+            }
+        }
+        if (paletteSize == palette.length) {
+            palette = Arrays.copyOf(palette, paletteSize * 2);
+        }
+        palette[paletteSize] = color;
+        return paletteSize++;
+    }
+
+    Color color(int slot) {
+        return palette[colorIndex[slot]];
+    }
+
+    /**
+     * Identifier that is unique for the lifetime of the store, unlike the slot, which is recycled.
+     * Ids keep increasing across {@link #clear}, so viewers never confuse vehicles from before a reset.
+     */
+    long id(int slot) {
+        return vehicleId[slot];
+    }
+
+    int roadId(int slot) {
+        return roadId[slot];
+    }
+
+    int lane(int slot) {
+        return lane[slot];
+    }
+
+    double position(int slot) {
+        return position[slot];
+    }
+
+    void setPosition(int slot, double value) {
+        position[slot] = value;
+    }
+
+    double speed(int slot) {
+        return speed[slot];
+    }
+
+    void setSpeed(int slot, double value) {
+        speed[slot] = value;
+    }
+
+    int route(int slot) {
+        return route[slot];
+    }
+
+    int routeStep(int slot) {
+        return routeStep[slot];
+    }
+
+    void setRoute(int slot, int routeId, int step) {
+        route[slot] = routeId;
+        routeStep[slot] = step;
+    }
+
+    /**
+     * Simulated time the vehicle entered the network.
+     */
+    double entryTime(int slot) {
+        return entryTime[slot];
+    }
+
+    void setEntryTime(int slot, double time) {
+        entryTime[slot] = time;
+    }
+
+    /**
+     * Seconds lost so far to driving below the speed limit.
+     */
+    double delay(int slot) {
+        return delay[slot];
+    }
+
+    void addDelay(int slot, double seconds) {
+        delay[slot] += seconds;
+    }
+
+    int stops(int slot) {
+        return stops[slot];
+    }
+
+    void countStop(int slot) {
+        stops[slot]++;
+    }
+
+    void setStops(int slot, int count) {
+        stops[slot] = count;
+    }
+
+    /**
+     * Time the vehicle entered its current mesoscopic road.
+     */
+    double linkEntryTime(int slot) {
+        return linkEntryTime[slot];
+    }
+
+    /**
+     * Earliest time the vehicle may leave its current mesoscopic road: entry plus travel time.
+     */
+    double linkReadyTime(int slot) {
+        return linkReadyTime[slot];
+    }
+
+    void enterLink(int slot, double entryTime, double readyTime) {
+        linkEntryTime[slot] = entryTime;
+        linkReadyTime[slot] = readyTime;
+    }
+
+    /**
+     * Sets the parameters the car-following model drives the vehicle with; see {@link DriverProfile}.
+     */
+    void setDriver(int slot, double desiredSpeedFactor, double headwaySeconds, double acceleration,
+                   double deceleration) {
+        speedFactor[slot] = desiredSpeedFactor;
+        headway[slot] = headwaySeconds;
+        maxAcceleration[slot] = acceleration;
+        comfortableDeceleration[slot] = deceleration;
+    }
+
+    /**
+     * Free-road speed as a multiple of the speed limit.
+     */
+    double speedFactor(int slot) {
+        return speedFactor[slot];
+    }
+
+    double headway(int slot) {
+        return headway[slot];
+    }
+
+    double maxAcceleration(int slot) {
+        return maxAcceleration[slot];
+    }
+
+    double comfortableDeceleration(int slot) {
+        return comfortableDeceleration[slot];
+    }
+
+    /**
+     * Moves a vehicle onto the next road of its route.
+     */
+    void advance(int slot, int nextRoad, int nextLane, double nextPosition) {
+        roadId[slot] = nextRoad;
+        lane[slot] = nextLane;
+        position[slot] = nextPosition;
+        routeStep[slot]++;
+    }
+
+    /**
+     * Writes every column up to the high-water mark, the free list and the palette, so a restored
+     * store recycles the same slots in the same order.
+     */
+    void writeTo(Checkpoint.Out out) throws IOException {
+        out.putInt(highWater);
+        out.putInt(freeHead);
+        out.putInt(size);
+        out.putLong(nextVehicleId);
+        out.putInt(paletteSize);
+        for (int i = 0; i < paletteSize; i++) {
+            out.putInt(palette[i].getRGB());
+        }
+        out.putInts(roadId, highWater);
+        out.putInts(lane, highWater);
+        out.putDoubles(position, highWater);
+        out.putDoubles(speed, highWater);
+        out.putInts(colorIndex, highWater);
+        out.putInts(route, highWater);
+        out.putInts(routeStep, highWater);
+        out.putInts(nextFree, highWater);
+        out.putLongs(vehicleId, highWater);
+        out.putDoubles(entryTime, highWater);
+        out.putDoubles(delay, highWater);
+        out.putInts(stops, highWater);
+        out.putDoubles(linkEntryTime, highWater);
+        out.putDoubles(linkReadyTime, highWater);
+        out.putDoubles(speedFactor, highWater);
+        out.putDoubles(headway, highWater);
+        out.putDoubles(maxAcceleration, highWater);
+        out.putDoubles(comfortableDeceleration, highWater);
+    }
+
+    void readFrom(Checkpoint.In in) throws IOException {
+        int slots = in.getCount();
+        while (roadId.length < slots) {
+            grow();
+        }
+        highWater = slots;
+        freeHead = in.getInt();
+        size = in.getCount();
+        nextVehicleId = in.getLong();
+        paletteSize = in.getCount();
+        palette = new Color[Math.max(8, paletteSize)];
+        for (int i = 0; i < paletteSize; i++) {
+            palette[i] = new Color(in.getInt(), true);
+        }
+        in.getInts(roadId, slots);
+        in.getInts(lane, slots);
+        in.getDoubles(position, slots);
+        in.getDoubles(speed, slots);
+        in.getInts(colorIndex, slots);
+        in.getInts(route, slots);
+        in.getInts(routeStep, slots);
+        in.getInts(nextFree, slots);
+        in.getLongs(vehicleId, slots);
+        in.getDoubles(entryTime, slots);
+        in.getDoubles(delay, slots);
+        in.getInts(stops, slots);
+        in.getDoubles(linkEntryTime, slots);
+        in.getDoubles(linkReadyTime, slots);
+        in.getDoubles(speedFactor, slots);
+        in.getDoubles(headway, slots);
+        in.getDoubles(maxAcceleration, slots);
+        in.getDoubles(comfortableDeceleration, slots);
+    }
+
+    private void grow() {
+        int capacity = roadId.length * 2;
+        roadId = Arrays.copyOf(roadId, capacity);
+        lane = Arrays.copyOf(lane, capacity);
+        position = Arrays.copyOf(position, capacity);
+        speed = Arrays.copyOf(speed, capacity);
+        colorIndex = Arrays.copyOf(colorIndex, capacity);
+        route = Arrays.copyOf(route, capacity);
+        routeStep = Arrays.copyOf(routeStep, capacity);
+        nextFree = Arrays.copyOf(nextFree, capacity);
+        vehicleId = Arrays.copyOf(vehicleId, capacity);
+        entryTime = Arrays.copyOf(entryTime, capacity);
+        delay = Arrays.copyOf(delay, capacity);
+        stops = Arrays.copyOf(stops, capacity);
+        linkEntryTime = Arrays.copyOf(linkEntryTime, capacity);
+        linkReadyTime = Arrays.copyOf(linkReadyTime, capacity);
+        speedFactor = Arrays.copyOf(speedFactor, capacity);
+        headway = Arrays.copyOf(headway, capacity);
+        maxAcceleration = Arrays.copyOf(maxAcceleration, capacity);
+        comfortableDeceleration = Arrays.copyOf(comfortableDeceleration, capacity);
+    }
+}
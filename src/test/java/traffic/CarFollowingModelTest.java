@@ -0,0 +1,92 @@
+package traffic;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CarFollowingModelTest {
+    private static final List<CarFollowingModel> MODELS =
+            List.of(CarFollowingModel.intelligentDriver(), CarFollowingModel.gipps());
+
+    @Test
+    void freeRoadAcceleratesTowardsTheDesiredSpeedAndNoFurther() {
+        for (CarFollowingModel model : MODELS) {
+            CarFollowingModel.Platoon platoon = platoon(new double[] {0, 35, 70, 90}, Double.POSITIVE_INFINITY, 0);
+            model.accelerate(platoon, 4);
+            double[] acceleration = platoon.acceleration();
+            assertTrue(acceleration[0] > 0 && acceleration[0] <= 20 + 1e-9, "From standstill: " + acceleration[0]);
+            assertTrue(acceleration[1] > 0, "Below the desired speed: " + acceleration[1]);
+            assertEquals(0, acceleration[2], 1e-9, "At the desired speed");
+            assertTrue(acceleration[3] < 0, "Above the desired speed: " + acceleration[3]);
+        }
+    }
+
+    @Test
+    void closingOnAStandingObstacleBrakesHarderTheCloserItIs() {
+        for (CarFollowingModel model : MODELS) {
+            CarFollowingModel.Platoon far = platoon(new double[] {50}, 400, 0);
+            CarFollowingModel.Platoon near = platoon(new double[] {50}, 30, 0);
+            model.accelerate(far, 1);
+            model.accelerate(near, 1);
+            assertTrue(near.acceleration()[0] < -30, "Should brake beyond comfort when late: " + near.acceleration()[0]);
+            assertTrue(far.acceleration()[0] > near.acceleration()[0]);
+        }
+    }
+
+    @Test
+    void intelligentDriverHoldsItsEquilibriumGap() {
+        double speed = 40;
+        double jam = 4;
+        // IDM equilibrium: s = (s0 + v T) / sqrt(1 - (v/v0)^4) with the gap measured from s0.
+        double ratio = speed / 70;
+        double gap = (jam + speed * 0.8) / Math.sqrt(1 - Math.pow(ratio, 4)) - jam;
+        CarFollowingModel.Platoon platoon = platoon(new double[] {speed}, gap, speed);
+        CarFollowingModel.intelligentDriver(jam).accelerate(platoon, 1);
+        assertEquals(0, platoon.acceleration()[0], 1e-9);
+    }
+
+    @Test
+    void safeGapReachesItsSpeedWithinOneTick() {
+        CarFollowingModel.Platoon free = platoon(new double[] {0, 70}, Double.POSITIVE_INFINITY, 0);
+        CarFollowingModel.Platoon close = platoon(new double[] {40}, 10, 0);
+        free.setDeltaSeconds(0.05);
+        close.setDeltaSeconds(0.05);
+        CarFollowingModel.safeGap().accelerate(free, 2);
+        CarFollowingModel.safeGap().accelerate(close, 1);
+        assertEquals(70 / 0.05, free.acceleration()[0], 1e-9, "Takes the limit at once");
+        assertEquals(0, free.acceleration()[1], 1e-9);
+        // Gap to the leader is 10 + 18 of a safe gap of 40 / 2 + 18.
+        assertEquals((70 * 28.0 / 38 - 40) / 0.05, close.acceleration()[0], 1e-9);
+    }
+
+    @Test
+    void platoonGrowsWithoutKeepingOldColumns() {
+        CarFollowingModel.Platoon platoon = new CarFollowingModel.Platoon(4);
+        double[] before = platoon.speed();
+        platoon.ensureCapacity(16);
+        assertTrue(platoon.speed() == before, "Capacity that already fits should not reallocate");
+        platoon.ensureCapacity(100);
+        assertTrue(platoon.speed().length >= 100 && platoon.acceleration().length >= 100);
+    }
+
+    /**
+     * Drivers with a 70 px/s desired speed, 0.8 s headway, 20 px/s^2 acceleration and 30 px/s^2
+     * braking, all with the same gap and leader speed.
+     */
+    private static CarFollowingModel.Platoon platoon(double[] speeds, double gap, double leaderSpeed) {
+        CarFollowingModel.Platoon platoon = new CarFollowingModel.Platoon(speeds.length);
+        for (int i = 0; i < speeds.length; i++) {
+            platoon.speed()[i] = speeds[i];
+            platoon.desiredSpeed()[i] = 70;
+            platoon.gap()[i] = gap;
+            platoon.leaderSpeed()[i] = leaderSpeed;
+            platoon.headway()[i] = 0.8;
+            platoon.maxAcceleration()[i] = 20;
+            platoon.comfortableDeceleration()[i] = 30;
+        }
+        return platoon;
+    }
+}
@@ -0,0 +1,99 @@
+package traffic;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CheckpointTest {
+
+    @Test
+    void restoredEngineContinuesExactlyLikeTheOriginal(@TempDir Path dir) throws IOException {
+        Supplier<SimulationEngineBuilder> scenario = () -> new SimulationEngineBuilder()
+                .withNetwork(RoadNetwork.grid(5, 5, 150, 2, 60))
+                .withSpawnRate(240)
+                .withMesoscopicRoads(road -> road.getName().startsWith("Entry"))
+                .withSignalController(SignalController.actuated(5, 30));
+        SimulationEngine original = scenario.get().withSeed(1).build();
+        run(original, 4000);
+        original.setManualPhase(3, SimulationEngine.Intersection.Phase.CROSS_GREEN);
+        run(original, 200);
+        Path file = dir.resolve("warm.tcp");
+        original.checkpoint(file);
+
+        SimulationEngine restored = scenario.get().withSeed(99).build();
+        run(restored, 100);
+        restored.restore(file);
+        assertEquals(original.stateFingerprint(), restored.stateFingerprint());
+        assertEquals(original.getVehicleViews(), restored.getVehicleViews());
+
+        run(original, 3000);
+        run(restored, 3000);
+        assertTrue(original.getTotalDepartures() > 100, "Departures " + original.getTotalDepartures());
+        assertEquals(original.stateFingerprint(), restored.stateFingerprint());
+        assertEquals(original.getVehicleViews(), restored.getVehicleViews());
+        assertEquals(original.getTotalConflicts(), restored.getTotalConflicts());
+        EngineMetrics.Report expected = original.getMetrics().report(original.getSimTimeSeconds());
+        EngineMetrics.Report actual = restored.getMetrics().report(restored.getSimTimeSeconds());
+        assertEquals(expected.travelTimeMillis(), actual.travelTimeMillis());
+        assertEquals(expected.approaches(), actual.approaches());
+        assertEquals(expected.tickNanos().count(), actual.tickNanos().count());
+    }
+
+    @Test
+    void branchesForkFromOneWarmedUpCheckpoint(@TempDir Path dir) throws IOException {
+        SimulationEngine warm = SimulationEngineBuilder.defaults().withSeed(7).withIdleSkipping().build();
+        for (int i = 0; i < 6000; ) {
+            i += warm.advance(0.05, 6000 - i);
+        }
+        Path file = dir.resolve("warm.tcp");
+        warm.checkpoint(file);
+
+        long[] branches = new long[3];
+        for (int branch = 0; branch < branches.length; branch++) {
+            SimulationEngine engine = SimulationEngineBuilder.defaults().withIdleSkipping().build();
+            engine.restore(file);
+            engine.setLaneClosure(branch == 2);
+            for (int i = 0; i < 4000; ) {
+                i += engine.advance(0.05, 4000 - i);
+            }
+            branches[branch] = engine.stateFingerprint();
+        }
+        assertEquals(branches[0], branches[1], "Branches with the same settings should agree: " + Arrays.toString(branches));
+        assertNotEquals(branches[0], branches[2], "Closing a lane should change the branch");
+    }
+
+    @Test
+    void restoreRejectsOtherNetworksAndDamagedFiles(@TempDir Path dir) throws IOException {
+        SimulationEngine engine = SimulationEngineBuilder.defaults().withSeed(3).build();
+        run(engine, 500);
+        Path file = dir.resolve("pair.tcp");
+        engine.checkpoint(file);
+
+        SimulationEngine grid = new SimulationEngineBuilder().withNetwork(RoadNetwork.grid(2, 2, 100, 1, 60)).build();
+        assertThrows(IllegalArgumentException.class, () -> grid.restore(file));
+
+        byte[] bytes = Files.readAllBytes(file);
+        Path truncated = dir.resolve("truncated.tcp");
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 9));
+        assertThrows(IOException.class, () -> SimulationEngineBuilder.defaults().build().restore(truncated));
+        Path foreign = dir.resolve("foreign.tcp");
+        Files.write(foreign, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        assertThrows(IOException.class, () -> SimulationEngineBuilder.defaults().build().restore(foreign));
+    }
+
+    private static void run(SimulationEngine engine, int ticks) {
+        for (int i = 0; i < ticks; i++) {
+            engine.update(0.05);
+        }
+    }
+}
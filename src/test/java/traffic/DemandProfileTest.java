@@ -0,0 +1,148 @@
+package traffic;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.geom.Point2D;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DemandProfileTest {
+
+    @Test
+    void aliasTableDrawsInProportionToWeights() {
+        double[] weights = {5, 0, 1, 2, 0.5, 1.5};
+        AliasTable table = new AliasTable(weights);
+        Random random = new Random(1);
+        int[] counts = new int[weights.length];
+        int draws = 200_000;
+        for (int i = 0; i < draws; i++) {
+            counts[table.sample(random)]++;
+        }
+        assertEquals(0, counts[1], "A weightless index is never drawn");
+        for (int i = 0; i < weights.length; i++) {
+            assertEquals(weights[i] / 10, (double) counts[i] / draws, 0.005, "index " + i);
+        }
+
+        table.rebuild(new double[]{0, 0, 3}, 3);
+        assertEquals(2, table.sample(random));
+        table.rebuild(new double[]{0, 0}, 2);
+        assertEquals(AliasTable.NONE, table.sample(random));
+        assertThrows(IllegalArgumentException.class, () -> table.rebuild(new double[]{1, -1}, 2));
+    }
+
+    @Test
+    void biasedStrategyKeepsItsWeightsOnLargeNetworks() {
+        RoadNetwork grid = RoadNetwork.grid(12, 12, 100, 1, 60);
+        List<SimulationEngine.Road> roads = grid.roads();
+        BiasedSpawnStrategy strategy = new BiasedSpawnStrategy(Map.of("E 4,4", 600.0)).bind(roads);
+        Random random = new Random(2);
+        int hits = 0;
+        for (int i = 0; i < 20_000; i++) {
+            if (strategy.chooseRoad(roads, random).getName().equals("E 4,4")) {
+                hits++;
+            }
+        }
+        double expected = 600.0 / (600 + roads.size() - 1);
+        assertEquals(expected, hits / 20_000.0, 0.02);
+    }
+
+    @Test
+    void profileFollowsItsSlotsAndRebuildsOnlyChangedTables() {
+        RoadNetwork network = RoadNetwork.grid(4, 4, 100, 1, 60);
+        List<SimulationEngine.Road> roads = network.roads();
+        DemandProfile profile = DemandProfile.builder(600)
+                .flow("E 1,1", "E 1,2", 1, 9, 1)
+                .flow("E 1,1", "S 2,1", 1, 1, 1)
+                .origin("S 0,2", 4, 0, 4)
+                .flow("N 2,2", "N 1,2", 2)
+                .flow("N 2,2", "W 0,1", 2)
+                .build();
+        assertEquals(3, profile.slotCount());
+        assertEquals(1, profile.slotAt(700));
+        assertEquals(0, profile.slotAt(1800), "Profiles repeat after the last slot");
+
+        Random random = new Random(3);
+        assertEquals(0.4, originShare(profile, roads, random, 0, "S 0,2"), 0.02);
+        long afterFirstSlot = profile.tableRebuilds();
+        assertEquals(0, originShare(profile, roads, random, 600, "S 0,2"), "A weightless origin is never drawn");
+        assertEquals(afterFirstSlot + 2, profile.tableRebuilds(),
+                "Only the peaking origin's destinations and the origin table change in the second slot");
+
+        int towardsPeak = 0;
+        int fromPeakOrigin = 0;
+        for (int i = 0; i < 20_000; i++) {
+            SimulationEngine.Road origin = profile.chooseRoad(roads, random, 650);
+            SimulationEngine.Road destination = profile.chooseDestination(origin, random);
+            if (origin.getName().equals("E 1,1")) {
+                fromPeakOrigin++;
+                if (destination.getName().equals("E 1,2")) {
+                    towardsPeak++;
+                }
+            } else {
+                assertEquals("N 2,2", origin.getName());
+            }
+        }
+        assertEquals(0.9, (double) towardsPeak / fromPeakOrigin, 0.02);
+        assertEquals(10.0 / 14, fromPeakOrigin / 20_000.0, 0.02);
+        SimulationEngine.Road anyExit = profile.chooseRoad(roads, random, 1300);
+        while (!anyExit.getName().equals("S 0,2")) {
+            anyExit = profile.chooseRoad(roads, random, 1300);
+        }
+        assertNull(profile.chooseDestination(anyExit, random), "Origin-only flows leave the exit to the engine");
+    }
+
+    @Test
+    void vehiclesDriveToTheirFlowsDestination() {
+        RoadNetwork.Builder builder = RoadNetwork.builder();
+        int west = builder.addNode(0, 100);
+        int center = builder.addNode(300, 100);
+        int east = builder.addNode(600, 100);
+        int south = builder.addNode(300, 400);
+        SimulationEngine.Road approach = builder.addRoad("approach", west, center, 1, 80);
+        builder.addRoad("east exit", center, east, 1, 80);
+        builder.addRoad("south exit", center, south, 1, 80);
+        builder.addSignal(new Point2D.Double(300, 100), List.of(approach), List.of());
+        SimulationEngine engine = new SimulationEngineBuilder()
+                .withNetwork(builder.build())
+                .withSpawnRate(30)
+                .withSeed(4)
+                .withSpawnStrategy(DemandProfile.builder(60)
+                        .flow("approach", "south exit", 1)
+                        .build())
+                .build();
+
+        for (int i = 0; i < 3000; i++) {
+            engine.update(0.05);
+            for (SimulationEngine.VehicleView vehicle : engine.getVehicleViews()) {
+                assertTrue(vehicle.position().x < 310, "Vehicle headed east at " + vehicle.position());
+            }
+        }
+        assertTrue(engine.getTotalDepartures() > 20, "Departures " + engine.getTotalDepartures());
+    }
+
+    @Test
+    void profilesRejectUnknownRoadsAndMismatchedSlots() {
+        assertThrows(IllegalArgumentException.class, () -> DemandProfile.builder(60).flow("a", "b", 1, 2).flow("a", "c", 1, 2, 3).build());
+        assertThrows(IllegalArgumentException.class, () -> DemandProfile.builder(60).flow("a", "b", 1).flow("a", "b", 2));
+        DemandProfile profile = DemandProfile.builder(60).origin("nowhere", 1).build();
+        assertThrows(IllegalArgumentException.class,
+                () -> profile.chooseRoad(RoadNetwork.grid(2, 2, 100, 1, 60).roads(), new Random(5), 0));
+    }
+
+    private static double originShare(DemandProfile profile, List<SimulationEngine.Road> roads, Random random,
+                                      double simSeconds, String name) {
+        int hits = 0;
+        for (int i = 0; i < 20_000; i++) {
+            if (profile.chooseRoad(roads, random, simSeconds).getName().equals(name)) {
+                hits++;
+            }
+        }
+        return hits / 20_000.0;
+    }
+}
@@ -0,0 +1,161 @@
+package traffic;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.LongSummaryStatistics;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EngineHostTest {
+
+    @Test
+    void steppedSessionsMatchStandaloneEngines() throws Exception {
+        int sessions = 60;
+        int ticks = 400;
+        try (EngineHost host = EngineHost.builder().withWorkers(4).withSliceTicks(7).build()) {
+            List<CompletableFuture<Void>> steps = new ArrayList<>();
+            for (int i = 0; i < sessions; i++) {
+                EngineHost.Session session = host.create("corridor-" + i, SimulationEngineBuilder.defaults().withSeed(i), 0.05);
+                steps.add(session.step(ticks / 2));
+                steps.add(session.step(ticks / 2));
+            }
+            CompletableFuture.allOf(steps.toArray(new CompletableFuture<?>[0])).get(1, TimeUnit.MINUTES);
+
+            assertEquals(sessions, host.size());
+            for (int i = 0; i < sessions; i++) {
+                SimulationEngine alone = SimulationEngineBuilder.defaults().withSeed(i).build();
+                for (int tick = 0; tick < ticks; tick++) {
+                    alone.update(0.05);
+                }
+                EngineHost.Session session = host.get("corridor-" + i);
+                assertEquals(alone.stateFingerprint(), session.engine().stateFingerprint(), "Session " + i);
+                EngineHost.Stats stats = session.stats();
+                assertEquals(ticks, stats.ticks());
+                assertEquals(alone.getSimTimeSeconds(), stats.simSeconds(), 1e-9);
+                assertEquals(alone.getVehicleCount(), stats.vehicles());
+                assertTrue(stats.slices() >= ticks / 7, "Steps run in slices: " + stats);
+            }
+        }
+    }
+
+    @Test
+    void unpacedSessionsShareOneWorkerFairly() throws Exception {
+        try (EngineHost host = EngineHost.builder().withWorkers(1).withSliceTicks(10).build()) {
+            EngineHost.Session gate = host.create("gate", SimulationEngineBuilder.defaults(), 0.05);
+            List<EngineHost.Session> sessions = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                sessions.add(host.create("s" + i, SimulationEngineBuilder.defaults().withSeed(i), 0.05));
+            }
+            // Hold the only worker while every session starts, and again while every session stops,
+            // so all of them are in line for the whole run.
+            CountDownLatch started = holdWorker(gate);
+            sessions.forEach(session -> session.resume(Double.POSITIVE_INFINITY));
+            started.countDown();
+            Thread.sleep(300);
+            CountDownLatch stopped = holdWorker(gate);
+            sessions.forEach(EngineHost.Session::pause);
+            stopped.countDown();
+            awaitQuiet(host);
+
+            LongSummaryStatistics ticks = sessions.stream().mapToLong(session -> session.stats().ticks()).summaryStatistics();
+            assertTrue(ticks.getMin() > 0, "Every session should have run: " + ticks);
+            assertTrue(ticks.getMax() - ticks.getMin() <= 10, "Round robin keeps sessions within a slice: " + ticks);
+        }
+    }
+
+    @Test
+    void pacedSessionFollowsTheWallClock() throws Exception {
+        try (EngineHost host = EngineHost.builder().withWorkers(2).build()) {
+            EngineHost.Session session = host.create("paced", SimulationEngineBuilder.defaults().withSeed(3), 0.05);
+            long started = System.nanoTime();
+            session.resume(20);
+            Thread.sleep(500);
+            session.pause();
+            double wallSeconds = (System.nanoTime() - started) / 1e9;
+            awaitQuiet(host);
+
+            double simSeconds = session.stats().simSeconds();
+            assertTrue(simSeconds > 2, "Twenty times real time for half a second: " + simSeconds);
+            assertTrue(simSeconds <= wallSeconds * 20 + host.sliceTicks() * 0.05, "Never ahead of the clock: " + simSeconds);
+        }
+    }
+
+    @Test
+    void lifecycleAndFailuresStayPerSession(@TempDir Path dir) throws Exception {
+        try (EngineHost host = EngineHost.builder().withWorkers(2).build()) {
+            EngineHost.Session healthy = host.create("healthy", SimulationEngineBuilder.defaults().withSeed(1), 0.05);
+            EngineHost.Session broken = host.create("broken", SimulationEngineBuilder.defaults().withSeed(2), 0.05);
+            assertThrows(IllegalArgumentException.class,
+                    () -> host.create("healthy", SimulationEngineBuilder.defaults(), 0.05));
+
+            broken.submit(engine -> {
+                throw new IllegalStateException("boom");
+            });
+            ExecutionException failed = assertThrows(ExecutionException.class, () -> broken.step(10).get(1, TimeUnit.MINUTES));
+            assertEquals("boom", failed.getCause().getMessage());
+            assertEquals(EngineHost.State.FAILED, broken.state());
+            assertThrows(IllegalStateException.class, () -> broken.step(1));
+
+            healthy.step(600).get(1, TimeUnit.MINUTES);
+            SimulationSnapshot snapshot = healthy.snapshot();
+            assertEquals(healthy.stats().vehicles(), snapshot.vehicleCount());
+            assertEquals(30, healthy.metrics().simSeconds(), 1e-9);
+            Path checkpoint = dir.resolve("healthy.ckpt");
+            healthy.checkpoint(checkpoint);
+
+            healthy.resume(Double.POSITIVE_INFINITY);
+            assertThrows(IllegalStateException.class, () -> healthy.step(1));
+            healthy.pause();
+            awaitQuiet(host);
+            healthy.restore(checkpoint);
+            assertEquals(30, healthy.stats().simSeconds(), 1e-9);
+
+            broken.destroy();
+            healthy.destroy();
+            assertEquals(0, host.size());
+            assertNull(host.get("healthy"));
+            assertEquals(EngineHost.State.DESTROYED, healthy.state());
+            assertThrows(IllegalStateException.class, healthy::snapshot);
+        }
+    }
+
+    private static void awaitQuiet(EngineHost host) throws InterruptedException {
+        long before;
+        long after = -1;
+        do {
+            before = after;
+            Thread.sleep(50);
+            after = host.stats().stream().mapToLong(EngineHost.Stats::ticks).sum();
+        } while (before != after);
+    }
+
+    /**
+     * Steps {@code gate} once with a command that blocks its worker until the returned latch opens.
+     */
+    private static CountDownLatch holdWorker(EngineHost.Session gate) throws InterruptedException {
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        gate.submit(engine -> {
+            holding.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        gate.step(1);
+        holding.await();
+        return release;
+    }
+}
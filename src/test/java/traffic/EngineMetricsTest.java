@@ -0,0 +1,116 @@
+package traffic;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import javax.management.ObjectName;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EngineMetricsTest {
+
+    @Test
+    void histogramPercentilesStayWithinBucketPrecision() {
+        Histogram histogram = new Histogram(10_000_000);
+        for (long value = 1; value <= 1_000_000; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(1_000_000, histogram.count());
+        assertEquals(500_000.5, histogram.mean(), 1e-6);
+        assertEquals(1, histogram.min());
+        assertEquals(1_000_000, histogram.max());
+        assertEquals(500_000, histogram.valueAtPercentile(50), 500_000 / 64.0);
+        assertEquals(990_000, histogram.valueAtPercentile(99), 990_000 / 64.0);
+        assertEquals(999_000, histogram.valueAtPercentile(99.9), 999_000 / 64.0);
+        assertEquals(1_000_000, histogram.valueAtPercentile(100));
+
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(0, histogram.min(), "Negative values count as 0");
+        assertEquals(10_000_000, histogram.max(), "Values above the bound count at the bound");
+        histogram.reset();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.valueAtPercentile(99));
+    }
+
+    @Test
+    void smallValuesAreExact() {
+        Histogram histogram = new Histogram(100);
+        for (int value = 0; value < 100; value++) {
+            histogram.record(value);
+        }
+        assertEquals(49, histogram.valueAtPercentile(50));
+        assertEquals(98, histogram.valueAtPercentile(99));
+        for (long value = 0; value < 1 << 16; value++) {
+            assertTrue(Histogram.highestEquivalentValue(Histogram.indexOf(value)) >= value);
+            assertTrue(Histogram.highestEquivalentValue(Histogram.indexOf(value)) - value <= value / 64);
+        }
+    }
+
+    @Test
+    void engineRecordsTripsQueuesAndTicks() {
+        SimulationEngine engine = SimulationEngineBuilder.defaults().withSeed(3).withSpawnRate(90).build();
+        for (int i = 0; i < 12_000; i++) {
+            engine.update(0.05);
+        }
+        EngineMetrics metrics = engine.getMetrics();
+
+        assertEquals(engine.getTotalDepartures(), metrics.travelTimeMillis().count());
+        assertEquals(12_000, metrics.tickNanos().count());
+        assertEquals(12_000, metrics.networkQueueLength().count());
+        assertTrue(metrics.travelTimeMillis().valueAtPercentile(50) > 0);
+        assertTrue(metrics.delayMillis().valueAtPercentile(99) > 0, "Red lights should delay some vehicles");
+        assertTrue(metrics.stopsPerVehicle().max() > 0, "Red lights should stop some vehicles");
+        assertTrue(metrics.delayMillis().max() < metrics.travelTimeMillis().max());
+        SimulationEngine.Road main = engine.getRoads().getFirst();
+        assertEquals(12_000, metrics.queueLength(main).count());
+        assertTrue(metrics.queueLength(main).max() > 0);
+
+        engine.reset();
+        assertEquals(0, metrics.travelTimeMillis().count());
+        assertEquals(0, metrics.queueLength(main).count());
+    }
+
+    @Test
+    void reporterReceivesPeriodicReportsAndCsvRows() {
+        SimulationEngine engine = SimulationEngineBuilder.defaults().withSeed(5).build();
+        List<EngineMetrics.Report> reports = new ArrayList<>();
+        StringWriter csv = new StringWriter();
+        engine.getMetrics().setReporter(60, MetricsExport.csv(csv).andThen(reports::add));
+
+        for (int i = 0; i < 3_600; i++) {
+            engine.update(0.05);
+        }
+
+        assertEquals(3, reports.size(), "One report per simulated minute");
+        assertEquals(60, reports.getFirst().simSeconds(), 1e-6);
+        assertEquals(2, reports.getLast().approaches().size(), "One approach per stop line");
+        assertEquals(engine.getTotalDepartures(), reports.getLast().departures());
+        List<String> lines = csv.toString().lines().toList();
+        assertEquals(4, lines.size(), "Header plus one row per report");
+        assertEquals(lines.getFirst().split(",").length, lines.getLast().split(",").length);
+    }
+
+    @Test
+    void mbeanShowsTheLatestReport() throws Exception {
+        String name = "traffic.test:type=EngineMetrics,name=mbeanShowsTheLatestReport";
+        SimulationEngine engine = SimulationEngineBuilder.defaults().withSeed(6).build();
+        try (MetricsExport.Bean bean = MetricsExport.registerMBean(name)) {
+            engine.getMetrics().setReporter(30, bean);
+            for (int i = 0; i < 1_200; i++) {
+                engine.update(0.05);
+            }
+            Object simSeconds = ManagementFactory.getPlatformMBeanServer()
+                    .getAttribute(new ObjectName(name), "SimSeconds");
+            assertEquals(60.0, (Double) simSeconds, 1e-6);
+            assertTrue(bean.getTickMicrosP99() > 0);
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(name)));
+    }
+}
@@ -0,0 +1,152 @@
+package traffic;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HeadlessRunnerTest {
+
+    @Test
+    void parsesOptions() {
+        HeadlessRunner.Options options = HeadlessRunner.Options.parse(
+                new String[]{"--seconds", "120", "--dt", "0.1", "--spawn", "90", "--lane-closure", "--seed", "9",
+                        "--scenario", "grid.scenario", "--car-following", "safe-gap",
+                        "--metrics", "metrics.csv", "--skip-idle", "--restore", "warm.ckpt", "--checkpoint", "end.ckpt"});
+        assertEquals(120, options.simSeconds());
+        assertEquals(0.1, options.tickSeconds());
+        assertEquals(90, options.spawnPerMinute());
+        assertTrue(options.laneClosure());
+        assertEquals(9, options.seed());
+        assertEquals(Path.of("grid.scenario"), options.scenarioFile());
+        assertSame(CarFollowingModel.safeGap(), options.carFollowing());
+        assertEquals(Path.of("metrics.csv"), options.metricsFile());
+        assertTrue(options.skipIdle());
+        assertEquals(Path.of("warm.ckpt"), options.restoreFile());
+        assertEquals(Path.of("end.ckpt"), options.checkpointFile());
+        assertThrows(IllegalArgumentException.class, () -> HeadlessRunner.Options.parse(new String[]{"--dt", "0"}));
+        assertThrows(IllegalArgumentException.class, () -> HeadlessRunner.Options.parse(new String[]{"--bogus"}));
+    }
+
+    @Test
+    void runsFasterThanRealTimeAndReportsStats() {
+        HeadlessRunner.Options options = HeadlessRunner.Options.builder()
+                .withSimSeconds(600)
+                .withReportEverySeconds(300)
+                .build();
+        ByteArrayOutputStream progress = new ByteArrayOutputStream();
+
+        HeadlessRunner.Report report = new HeadlessRunner(options).run(new PrintStream(progress));
+
+        assertEquals(600, report.simSeconds(), 1e-6);
+        assertEquals(12_000, report.ticks());
+        assertTrue(report.departures() > 0, "Vehicles should leave the network over ten minutes");
+        assertEquals(2, report.queues().size());
+        assertTrue(report.speedup() > 1, "Headless stepping should beat real time");
+        assertEquals(2, progress.toString().lines().count(), "One progress line per report interval");
+    }
+
+    @Test
+    void idleSkippingStillCountsEveryTick() {
+        HeadlessRunner.Options options = HeadlessRunner.Options.builder()
+                .withSimSeconds(600)
+                .withSpawnPerMinute(1)
+                .withReportEverySeconds(300)
+                .withSkipIdle(true)
+                .build();
+        ByteArrayOutputStream progress = new ByteArrayOutputStream();
+
+        HeadlessRunner.Report report = new HeadlessRunner(options).run(new PrintStream(progress));
+
+        assertEquals(600, report.simSeconds(), 1e-6);
+        assertEquals(12_000, report.ticks());
+        assertEquals(2, progress.toString().lines().count(), "Jumps stop at report boundaries");
+    }
+
+    @Test
+    void sameSeedProducesSameReport() {
+        HeadlessRunner.Options options = HeadlessRunner.Options.builder().withSimSeconds(300).withSeed(5).build();
+        HeadlessRunner.Report first = new HeadlessRunner(options).run(new PrintStream(new ByteArrayOutputStream()));
+        HeadlessRunner.Report second = new HeadlessRunner(options).run(new PrintStream(new ByteArrayOutputStream()));
+        assertEquals(first.departures(), second.departures());
+        assertEquals(first.queues(), second.queues());
+    }
+
+    @Test
+    void restoredRunPicksUpWhereTheCheckpointLeftOff(@TempDir Path dir) {
+        Path warm = dir.resolve("warm.ckpt");
+        PrintStream quiet = new PrintStream(new ByteArrayOutputStream());
+        HeadlessRunner.Options options = HeadlessRunner.Options.builder().withSeed(11).build();
+
+        HeadlessRunner.Report straight = new HeadlessRunner(options.toBuilder().withSimSeconds(600).build()).run(quiet);
+        new HeadlessRunner(options.toBuilder().withSimSeconds(300).withCheckpointFile(warm).build()).run(quiet);
+        HeadlessRunner.Report resumed = new HeadlessRunner(options.toBuilder().withSimSeconds(300).withRestoreFile(warm).build()).run(quiet);
+
+        assertEquals(600, resumed.simSeconds(), 1e-6);
+        assertEquals(6_000, resumed.ticks());
+        assertEquals(straight.departures(), resumed.departures());
+        assertEquals(straight.vehiclesRemaining(), resumed.vehiclesRemaining());
+    }
+
+    @Test
+    void restoredRunKeepsTheCheckpointsKnobsUnlessGivenAgain(@TempDir Path dir) {
+        Path warm = dir.resolve("warm.ckpt");
+        PrintStream quiet = new PrintStream(new ByteArrayOutputStream());
+        HeadlessRunner.Options busy = HeadlessRunner.Options.builder().withSeed(11)
+                .withSpawnPerMinute(90).withLaneClosure(true).build();
+        HeadlessRunner.Options plain = HeadlessRunner.Options.builder().withSeed(11).withSimSeconds(300).build();
+
+        HeadlessRunner.Report straight = new HeadlessRunner(busy.toBuilder().withSimSeconds(600).build()).run(quiet);
+        new HeadlessRunner(busy.toBuilder().withSimSeconds(300).withCheckpointFile(warm).build()).run(quiet);
+        HeadlessRunner.Report resumed = new HeadlessRunner(plain.toBuilder().withRestoreFile(warm).build()).run(quiet);
+        HeadlessRunner.Report quieter = new HeadlessRunner(plain.toBuilder().withRestoreFile(warm)
+                .withSpawnPerMinute(10).build()).run(quiet);
+
+        assertEquals(straight.departures(), resumed.departures());
+        assertEquals(straight.vehiclesRemaining(), resumed.vehiclesRemaining());
+        assertNotEquals(straight.departures(), quieter.departures());
+    }
+
+    @Test
+    void runsAndReplaysOnAScenarioFile(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("grid.scenario");
+        StringWriter text = new StringWriter();
+        Scenario.of(RoadNetwork.grid(3, 3, 150, 1, 60)).writeText(text);
+        Files.writeString(file, text.toString());
+        Scenario scenario = Scenario.load(file);
+
+        HeadlessRunner.Report report = new HeadlessRunner(HeadlessRunner.Options.parse(
+                new String[]{"--scenario", file.toString(), "--seconds", "120"})).run(new PrintStream(new ByteArrayOutputStream()));
+        assertEquals(scenario.roadCount(), report.queues().size());
+        assertTrue(report.departures() > 0);
+
+        Path log = dir.resolve("session.tlog");
+        SimulationEngine engine = SimulationEngineBuilder.fromScenario(file).withSeed(3).build();
+        SimulationLoop loop = new SimulationLoop(engine, 20);
+        EventLog.Recorder recorder = EventLog.record(log, 3, file, engine);
+        loop.recordTo(recorder);
+        for (int i = 0; i < 600; i++) {
+            loop.tick();
+        }
+        recorder.close();
+
+        ByteArrayOutputStream summary = new ByteArrayOutputStream();
+        EventLog.Replay replay = HeadlessRunner.replay(log, new PrintStream(summary));
+        assertTrue(replay.verified(), "Replay rebuilds the network the log was recorded on");
+        assertEquals(engine.getVehicleViews(), replay.engine().getVehicleViews());
+        assertTrue(summary.toString().contains("End state matches the recording"));
+        assertThrows(IllegalArgumentException.class, () -> EventLog.replay(log, SimulationEngineBuilder.defaults()),
+                "The built-in network is not the one the log was recorded on");
+    }
+}
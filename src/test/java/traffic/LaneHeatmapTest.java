@@ -0,0 +1,32 @@
+package traffic;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LaneHeatmapTest {
+
+    @Test
+    void countsVehiclesPerLaneSegment() {
+        SimulationEngine engine = SimulationEngineBuilder.defaults().withSpawnRate(0).build();
+        SimulationEngine.Road main = engine.getRoads().get(0);
+        engine.placeVehicle(main, 0, 5);
+        engine.placeVehicle(main, 0, 20);
+        engine.placeVehicle(main, 1, 30);
+        engine.placeVehicle(main, 1, main.length() + 50);
+        SimulationSnapshot snapshot = engine.createSnapshot();
+
+        LaneHeatmap heatmap = new LaneHeatmap(snapshot.roadViews());
+        heatmap.fill(snapshot);
+
+        assertEquals(2, heatmap.count(0, 0, 0));
+        assertEquals(1, heatmap.count(0, 1, 1));
+        assertEquals(1, heatmap.count(0, 1, heatmap.segments(0) - 1), "Overshooting vehicles count in the last segment");
+        assertEquals((int) Math.ceil(main.length() / LaneHeatmap.SEGMENT_PIXELS), heatmap.segments(0));
+        assertTrue(heatmap.matches(engine.createSnapshot().roadViews()));
+        engine.setLaneClosure(true);
+        assertFalse(heatmap.matches(engine.createSnapshot().roadViews()), "Closing a lane changes the layout");
+    }
+}
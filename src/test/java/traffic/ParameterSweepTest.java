@@ -0,0 +1,108 @@
+package traffic;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParameterSweepTest {
+
+    @Test
+    void sweepRunsEveryGridPointAndStreamsCsvRows() throws InterruptedException {
+        ParameterSweep sweep = ParameterSweep.builder(SimulationEngineBuilder::defaults)
+                .withSpawnRates(20, 80)
+                .withSpeedLimits(40, 70)
+                .withLaneClosures(false, true)
+                .withDuration(120, 0.05)
+                .build();
+        StringWriter csv = new StringWriter();
+
+        List<ParameterSweep.Result> results = sweep.run(ParameterSweep.csv(csv));
+
+        assertEquals(8, sweep.size());
+        assertEquals(8, results.size());
+        List<String> lines = csv.toString().lines().toList();
+        assertEquals(9, lines.size(), "Header plus one row per run");
+        assertTrue(lines.getFirst().startsWith("spawn_per_minute,speed_limit,lane_closure,seed"));
+        assertEquals(8, results.stream().map(r -> List.of(r.spawnPerMinute(), r.speedLimit(), r.laneClosure())).distinct().count());
+        for (ParameterSweep.Result result : results) {
+            assertEquals(120, result.simSeconds(), 1e-6);
+            assertTrue(result.departures() > 0, "Every run should move traffic: " + result);
+        }
+    }
+
+    @Test
+    void concurrentRunsMatchTheSameRunsOnOneThread() throws InterruptedException {
+        ParameterSweep.Builder grid = ParameterSweep.builder(() -> new SimulationEngineBuilder()
+                        .withNetwork(RoadNetwork.grid(4, 4, 150, 2, 60)))
+                .withSpawnRates(120, 240)
+                .withSeeds(1, 2, 3)
+                .withDuration(60, 0.05);
+
+        List<ParameterSweep.Result> virtual = sorted(grid.withVirtualThreads().build().run(result -> {
+        }));
+        List<ParameterSweep.Result> single = sorted(grid.withPlatformThreads(1).build().run(result -> {
+        }));
+
+        assertEquals(6, virtual.size());
+        for (int i = 0; i < virtual.size(); i++) {
+            assertEquals(single.get(i).departures(), virtual.get(i).departures());
+            assertEquals(single.get(i).meanQueue(), virtual.get(i).meanQueue());
+            assertEquals(single.get(i).vehiclesRemaining(), virtual.get(i).vehiclesRemaining());
+        }
+    }
+
+    @Test
+    void concurrentRunsCanShareOneNetwork() throws InterruptedException {
+        RoadNetwork shared = RoadNetwork.grid(4, 4, 150, 2, 60);
+        List<ParameterSweep.Result> together = sorted(ParameterSweep.builder(() -> new SimulationEngineBuilder()
+                        .withNetwork(shared))
+                .withSpawnRates(120, 240)
+                .withSeeds(1, 2, 3)
+                .withDuration(60, 0.05)
+                .withVirtualThreads()
+                .build()
+                .run(result -> {
+                }));
+        List<ParameterSweep.Result> apart = sorted(ParameterSweep.builder(() -> new SimulationEngineBuilder()
+                        .withNetwork(RoadNetwork.grid(4, 4, 150, 2, 60)))
+                .withSpawnRates(120, 240)
+                .withSeeds(1, 2, 3)
+                .withDuration(60, 0.05)
+                .withPlatformThreads(1)
+                .build()
+                .run(result -> {
+                }));
+
+        for (int i = 0; i < apart.size(); i++) {
+            assertEquals(apart.get(i).departures(), together.get(i).departures());
+            assertEquals(apart.get(i).meanQueue(), together.get(i).meanQueue());
+        }
+    }
+
+    @Test
+    void failingRunIsReported() {
+        ParameterSweep sweep = ParameterSweep.builder(() -> {
+                    throw new IllegalArgumentException("bad scenario");
+                })
+                .withDuration(1, 0.05)
+                .build();
+        IllegalStateException failure = assertThrows(IllegalStateException.class, () -> sweep.run(result -> {
+        }));
+        assertEquals("bad scenario", failure.getCause().getMessage());
+        assertThrows(IllegalArgumentException.class, () -> ParameterSweep.builder(SimulationEngineBuilder::defaults)
+                .withSpawnRates());
+    }
+
+    private static List<ParameterSweep.Result> sorted(List<ParameterSweep.Result> results) {
+        return results.stream()
+                .sorted(Comparator.comparingDouble(ParameterSweep.Result::spawnPerMinute)
+                        .thenComparingLong(ParameterSweep.Result::seed))
+                .toList();
+    }
+}
@@ -0,0 +1,124 @@
+package traffic;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PartitionedSimulationTest {
+
+    @Test
+    void partitionGivesEveryRoadOneRegionAndStubsItsNeighbours() {
+        Scenario scenario = Scenario.of(RoadNetwork.grid(8, 8, 100, 1, 60));
+        NetworkPartition partition = NetworkPartition.of(scenario, 4);
+
+        int owned = 0;
+        int stubs = 0;
+        int signals = 0;
+        for (int index = 0; index < partition.regionCount(); index++) {
+            NetworkPartition.Region region = partition.region(index);
+            int regionOwned = 0;
+            for (int local = 0; local < region.roadCount(); local++) {
+                int road = region.globalRoad(local);
+                assertEquals(region.isBoundary(local), partition.regionOf(road) != index, "Road " + road);
+                if (region.isBoundary(local)) {
+                    stubs++;
+                } else {
+                    regionOwned++;
+                }
+            }
+            assertTrue(Math.abs(regionOwned - scenario.roadCount() / 4.0) < scenario.roadCount() * 0.1,
+                    "Regions should be balanced: " + regionOwned + " of " + scenario.roadCount());
+            owned += regionOwned;
+            RoadNetwork network = region.scenario().toNetwork();
+            signals += network.intersections().size();
+            for (int local = 0; local < region.roadCount(); local++) {
+                if (region.isBoundary(local)) {
+                    assertEquals(0, network.successorCount(local), "Stubs lead nowhere");
+                }
+            }
+        }
+        assertEquals(scenario.roadCount(), owned);
+        assertEquals(partition.boundaryRoads(), stubs);
+        assertEquals(scenario.signalCount(), signals, "Every signal stays whole in one region");
+    }
+
+    @Test
+    void oneRegionRunsExactlyLikeOneEngine(@TempDir Path dir) throws IOException {
+        Path file = writeScenario(dir, 4);
+        SimulationEngine alone = Scenario.load(file).toBuilder().withSeed(9).build();
+        for (int tick = 0; tick < 400; tick++) {
+            alone.update(0.05);
+        }
+
+        try (PartitionedSimulation run = PartitionedSimulation.builder(file).withRegions(1).withSeed(9).start()) {
+            run.step(0.05, 400);
+
+            assertEquals(alone.getSimTimeSeconds(), run.simTimeSeconds(), 1e-9);
+            assertEquals(alone.getVehicleCount(), run.totalVehicles());
+            assertEquals(alone.getTotalDepartures(), run.totalDepartures());
+            assertEquals(0, run.vehiclesInTransit());
+        }
+    }
+
+    @Test
+    void regionProcessesHandVehiclesAcrossBoundaries(@TempDir Path dir) throws IOException {
+        Path file = writeScenario(dir, 6);
+        List<PartitionedSimulation.RegionStats> first;
+        try (PartitionedSimulation run = PartitionedSimulation.builder(file).withRegions(3).withSeed(4)
+                .withWorkingDirectory(dir).start()) {
+            run.step(0.05, 1200);
+            first = run.stats();
+
+            assertEquals(1200, run.ticks());
+            assertEquals(60, run.simTimeSeconds(), 1e-9);
+            assertTrue(run.totalDepartures() > 0, "Vehicles should reach exits");
+            long created = 0;
+            long vehicles = 0;
+            long departures = 0;
+            long handedOff = 0;
+            long admitted = 0;
+            for (PartitionedSimulation.RegionStats region : first) {
+                assertTrue(region.handoffsOut() > 0 && region.handoffsIn() > 0, "Every region trades vehicles: " + region);
+                created += region.vehiclesCreated();
+                vehicles += region.vehicles();
+                departures += region.departures();
+                handedOff += region.handoffsOut();
+                admitted += region.handoffsIn();
+            }
+            assertEquals(created, vehicles + departures + handedOff, "No vehicle is lost or duplicated");
+            assertEquals(handedOff - admitted, run.vehiclesInTransit());
+        }
+
+        try (PartitionedSimulation again = PartitionedSimulation.builder(file).withRegions(3).withSeed(4)
+                .withWorkingDirectory(dir).start()) {
+            again.step(0.05, 1200);
+            assertEquals(first, again.stats(), "Same scenario, regions and seed give the same run");
+        }
+        try (PartitionedSimulation other = PartitionedSimulation.builder(file).withRegions(3).withSeed(5)
+                .withWorkingDirectory(dir).start()) {
+            other.step(0.05, 1200);
+            assertNotEquals(first, other.stats());
+        }
+        try (Stream<Path> left = Files.list(dir)) {
+            assertEquals(List.of(file), left.toList(), "Closing removes the socket directory");
+        }
+    }
+
+    private static Path writeScenario(Path dir, int size) throws IOException {
+        StringWriter text = new StringWriter();
+        Scenario.of(RoadNetwork.grid(size, size, 150, 1, 60)).writeText(text);
+        Path file = dir.resolve("grid.scenario");
+        Files.writeString(file, text.toString().replace("spawn-rate 40", "spawn-rate 240"));
+        return file;
+    }
+}
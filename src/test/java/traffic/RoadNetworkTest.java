@@ -0,0 +1,240 @@
+package traffic;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.geom.Point2D;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoadNetworkTest {
+
+    @Test
+    void gridBuildsAdjacencyAndSignals() {
+        RoadNetwork grid = RoadNetwork.grid(10, 10, 100, 1, 60);
+
+        assertEquals(2 * 2 * 10 * 9 + 2 * 36, grid.roadCount());
+        assertEquals(100, grid.intersections().size(), "Every grid node has at least three approaches");
+        int eastbound = grid.idOf(grid.roads().stream().filter(r -> r.getName().equals("E 4,4")).findFirst().orElseThrow());
+        assertEquals(3, grid.successorCount(eastbound), "Interior links continue straight, left or right but not back");
+        for (int i = 0; i < grid.successorCount(eastbound); i++) {
+            assertEquals(grid.toNode(eastbound), grid.fromNode(grid.successor(eastbound, i)));
+        }
+    }
+
+    @Test
+    void routesFollowFastestPathToAnExit() {
+        RoadNetwork.Builder builder = RoadNetwork.builder();
+        int a = builder.addNode(0, 0);
+        int b = builder.addNode(100, 0);
+        int c = builder.addNode(200, 0);
+        int d = builder.addNode(100, 300);
+        SimulationEngine.Road ab = builder.addRoad("ab", a, b, 1, 60);
+        SimulationEngine.Road bc = builder.addRoad("bc", b, c, 1, 60);
+        SimulationEngine.Road ad = builder.addRoad("ad", a, d, 1, 60);
+        SimulationEngine.Road dc = builder.addRoad("dc", d, c, 1, 60);
+        SimulationEngine.Road start = builder.addRoad("start", builder.addNode(-100, 0), a, 1, 60);
+        RoadNetwork network = builder.build();
+        RouteTable routes = new RouteTable(network);
+
+        int route = routes.routeTo(network.idOf(start), network.idOf(bc));
+        assertEquals(3, routes.length(route));
+        assertEquals(network.idOf(ab), routes.roadAt(route, 1));
+        assertEquals(network.idOf(bc), routes.roadAt(route, 2));
+        int viaD = routes.randomRoute(network.idOf(ad), new Random(1));
+        assertEquals(network.idOf(dc), routes.roadAt(viaD, routes.length(viaD) - 1));
+        assertEquals(RouteTable.NO_ROUTE, routes.routeTo(network.idOf(bc), network.idOf(ab)));
+    }
+
+    @Test
+    void vehiclesHandOverBetweenSegmentsAndStopAtNodeSignals() {
+        RoadNetwork.Builder builder = RoadNetwork.builder();
+        int west = builder.addNode(0, 100);
+        int center = builder.addNode(300, 100);
+        int east = builder.addNode(600, 100);
+        int north = builder.addNode(300, 0);
+        SimulationEngine.Road approach = builder.addRoad("approach", west, center, 1, 80);
+        SimulationEngine.Road exit = builder.addRoad("exit", center, east, 1, 80);
+        SimulationEngine.Road side = builder.addRoad("side", north, center, 1, 80);
+        builder.addSignal(new Point2D.Double(300, 100), List.of(approach), List.of(side));
+        RoadNetwork network = builder.build();
+        SimulationEngine engine = new SimulationEngineBuilder()
+                .withNetwork(network)
+                .withSpawnRate(0)
+                .withRandom(new Random(8))
+                .build();
+
+        engine.setManualPhase(SimulationEngine.Intersection.Phase.CROSS_GREEN);
+        engine.placeVehicle(approach, 0, 0);
+        for (int i = 0; i < 100; i++) {
+            engine.update(0.1);
+        }
+        double held = engine.getVehicleViews().getFirst().position().x;
+        assertTrue(held < 300, "Vehicle should wait at the red stop line at the node");
+        assertEquals(1, engine.getQueueLength(approach));
+
+        engine.setManualPhase(SimulationEngine.Intersection.Phase.MAIN_GREEN);
+        for (int i = 0; i < 20; i++) {
+            engine.update(0.1);
+        }
+        assertTrue(engine.getVehicleViews().getFirst().position().x > 300, "Vehicle should continue onto the exit road");
+        assertEquals(0, engine.getTotalDepartures());
+        for (int i = 0; i < 100; i++) {
+            engine.update(0.1);
+        }
+        assertEquals(1, engine.getTotalDepartures(), "Vehicle should leave at the end of its route");
+        assertEquals(0, engine.getQueueLength(exit));
+    }
+
+    @Test
+    void gridTrafficFlowsAcrossManyLinks() {
+        RoadNetwork grid = RoadNetwork.grid(6, 6, 150, 2, 60);
+        SimulationEngine engine = new SimulationEngineBuilder()
+                .withNetwork(grid)
+                .withSpawnRate(600)
+                .withRandom(new Random(12))
+                .build();
+
+        for (int i = 0; i < 12_000; i++) {
+            engine.update(0.05);
+        }
+
+        assertTrue(engine.getTotalDepartures() > 500, "Vehicles should cross the grid and leave");
+        assertEquals(grid.intersections().size(), engine.getSignalViews().size());
+        assertNotEquals(0, engine.getVehicleCount());
+    }
+
+    @Test
+    void enginesOnOneNetworkKeepTheirOwnSignals() {
+        RoadNetwork grid = RoadNetwork.grid(2, 2, 150, 1, 60);
+        SignalController plan = grid.intersections().getFirst().getController();
+        SimulationEngine ticked = new SimulationEngineBuilder().withNetwork(grid).build();
+        SimulationEngine idle = new SimulationEngineBuilder().withNetwork(grid)
+                .withSignalController(SignalController.actuated(4, 30)).build();
+
+        for (int i = 0; i < 300; i++) {
+            ticked.update(0.05);
+        }
+
+        assertEquals(SimulationEngine.Intersection.Phase.CROSS_GREEN, ticked.getSignalViews().getFirst().phase());
+        for (SimulationEngine.SignalView view : idle.getSignalViews()) {
+            assertEquals(SimulationEngine.Intersection.Phase.MAIN_GREEN, view.phase());
+        }
+        assertSame(plan, grid.intersections().getFirst().getController(), "Building an engine should not change the network's plans");
+    }
+
+    @Test
+    void mesoscopicGridMovesTrafficWithinLaneStorage() {
+        RoadNetwork grid = RoadNetwork.grid(6, 6, 150, 2, 60);
+        SimulationEngine engine = new SimulationEngineBuilder()
+                .withNetwork(grid)
+                .withSpawnRate(3000)
+                .withRandom(new Random(12))
+                .withMesoscopicRoads()
+                .build();
+
+        int[][] perLane = new int[grid.roadCount()][2];
+        for (int i = 1; i <= 12_000; i++) {
+            engine.update(0.05);
+            if (i % 1000 == 0) {
+                SimulationSnapshot snapshot = engine.createSnapshot();
+                for (int[] lanes : perLane) {
+                    java.util.Arrays.fill(lanes, 0);
+                }
+                for (int v = 0; v < snapshot.vehicleCount(); v++) {
+                    perLane[snapshot.vehicleRoad(v)][snapshot.vehicleLane(v)]++;
+                }
+                for (int road = 0; road < perLane.length; road++) {
+                    int storage = (int) (grid.roads().get(road).length() / 18);
+                    assertTrue(perLane[road][0] <= storage && perLane[road][1] <= storage, "Lane over storage at tick " + i);
+                }
+            }
+        }
+
+        assertTrue(engine.getTotalDepartures() > 500, "Vehicles should cross the grid and leave");
+        assertTrue(engine.getVehicleCount() > 0);
+        assertEquals(engine.getVehicleCount(), engine.getVehicleViews().size());
+        assertTrue(engine.getVehiclesIn(-1e6, -1e6, 1e6, 1e6).isEmpty(), "Queued vehicles have no exact position");
+        assertTrue(engine.getMetrics().delayMillis().max() > 0, "Signals and queues should delay some vehicles");
+    }
+
+    @Test
+    void hybridTicksMatchSequentialTicksExactly() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            SimulationEngine sequential = new SimulationEngineBuilder()
+                    .withNetwork(RoadNetwork.grid(12, 12, 150, 2, 60))
+                    .withSpawnRate(6000)
+                    .withRandom(new Random(22))
+                    .withMesoscopicRoads(road -> road.start().x > 800)
+                    .build();
+            SimulationEngine parallel = new SimulationEngineBuilder()
+                    .withNetwork(RoadNetwork.grid(12, 12, 150, 2, 60))
+                    .withSpawnRate(6000)
+                    .withRandom(new Random(22))
+                    .withMesoscopicRoads(road -> road.start().x > 800)
+                    .withParallelTicks(pool)
+                    .build();
+
+            for (int i = 1; i <= 4000; i++) {
+                sequential.update(0.05);
+                parallel.update(0.05);
+                if (i % 500 == 0) {
+                    assertEquals(sequential.stateFingerprint(), parallel.stateFingerprint(), "tick " + i);
+                    assertEquals(sequential.getVehicleViews(), parallel.getVehicleViews(), "tick " + i);
+                }
+            }
+            assertTrue(parallel.getVehicleCount() > 2048, "Scenario should be dense enough to fork");
+            assertTrue(parallel.getTotalDepartures() > 0);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void parallelTicksMatchSequentialTicksExactly() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            SimulationEngine sequential = new SimulationEngineBuilder()
+                    .withNetwork(RoadNetwork.grid(12, 12, 150, 2, 60))
+                    .withSpawnRate(6000)
+                    .withRandom(new Random(21))
+                    .build();
+            SimulationEngine parallel = new SimulationEngineBuilder()
+                    .withNetwork(RoadNetwork.grid(12, 12, 150, 2, 60))
+                    .withSpawnRate(6000)
+                    .withRandom(new Random(21))
+                    .withParallelTicks(pool)
+                    .build();
+
+            for (int i = 1; i <= 4000; i++) {
+                sequential.update(0.05);
+                parallel.update(0.05);
+                if (i % 500 == 0) {
+                    assertEquals(sequential.getVehicleViews(), parallel.getVehicleViews(), "tick " + i);
+                    assertEquals(sequential.getTotalDepartures(), parallel.getTotalDepartures(), "tick " + i);
+                }
+            }
+            assertTrue(parallel.getVehicleCount() > 2048, "Scenario should be dense enough to fork");
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void signalApproachesMustBelongToTheNetwork() {
+        RoadNetwork.Builder builder = RoadNetwork.builder();
+        SimulationEngine.Road known = builder.addRoad(new SimulationEngine.Road(
+                new Point2D.Double(0, 0), new Point2D.Double(100, 0), 1, 60, "known"));
+        SimulationEngine.Road stranger = new SimulationEngine.Road(
+                new Point2D.Double(50, -50), new Point2D.Double(50, 50), 1, 60, "stranger");
+        builder.addSignal(new Point2D.Double(50, 0), List.of(known), List.of(stranger));
+        assertThrows(IllegalStateException.class, builder::build);
+    }
+}
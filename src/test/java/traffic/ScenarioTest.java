@@ -0,0 +1,147 @@
+package traffic;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ScenarioTest {
+
+    @Test
+    void defaultScenarioFileRunsLikeTheBuiltInDefaults() throws IOException {
+        SimulationEngine expected = SimulationEngineBuilder.defaults().withSeed(9).build();
+        SimulationEngine loaded = SimulationEngineBuilder.fromScenario(Path.of("scenarios/default.scenario"))
+                .withSeed(9)
+                .build();
+
+        for (int i = 0; i < 2000; i++) {
+            expected.update(0.05);
+            loaded.update(0.05);
+        }
+        assertEquals(expected.stateFingerprint(), loaded.stateFingerprint());
+        assertEquals(expected.getVehicleViews(), loaded.getVehicleViews());
+    }
+
+    @Test
+    void textAndBinaryFormsRoundTripToTheSameRun(@TempDir Path dir) throws IOException {
+        String text = """
+                traffic-scenario 1
+                spawn-rate 90
+                speed-limit 60
+                node 0 0
+                node 200 0
+                node 200 200
+                node 400 0
+                road "west in" 0 1 2 60 offset 9 weight 2.5
+                road "out \\"east\\"" 1 3 2 60 offset 9 closable
+                road south 2 1 1 50   # feeds the signal
+                signal 200 0 main "west in" cross south plan actuated 5 30
+                """;
+        Scenario scenario = Scenario.parse(text);
+        Path textFile = dir.resolve("small.scenario");
+        Path binaryFile = dir.resolve("small.bin");
+        scenario.writeText(textFile);
+        scenario.writeBinary(binaryFile);
+
+        Scenario fromText = Scenario.load(textFile);
+        Scenario fromBinary = Scenario.load(binaryFile);
+        assertEquals(3, fromBinary.roadCount());
+        assertEquals(1, fromBinary.signalCount());
+        assertEquals(90, fromBinary.spawnPerMinute());
+
+        long[] fingerprints = Arrays.stream(new Scenario[]{scenario, fromText, fromBinary})
+                .mapToLong(s -> run(s.toBuilder().withSeed(3).build()))
+                .toArray();
+        assertEquals(fingerprints[0], fingerprints[1]);
+        assertEquals(fingerprints[0], fingerprints[2]);
+    }
+
+    @Test
+    void signalPlansSurviveAnEngineThatOverridesThem() {
+        Scenario scenario = Scenario.parse("""
+                traffic-scenario 1
+                spawn-rate 90
+                node 0 0
+                node 200 0
+                node 200 200
+                node 400 0
+                road west 0 1 2 60
+                road east 1 3 2 60
+                road south 2 1 1 50
+                signal 200 0 main west cross south plan actuated 5 30
+                """);
+        SimulationEngineBuilder planned = scenario.toBuilder();
+        SimulationEngine.Intersection signal = planned.getNetwork().intersections().getFirst();
+        SignalController plan = signal.getController();
+
+        SimulationEngine overridden = new SimulationEngineBuilder()
+                .withNetwork(planned.getNetwork())
+                .withSignalController(SignalController.fixedTime(12, 8))
+                .build();
+        long first = run(planned.withSeed(3).build());
+        run(overridden);
+        long second = run(planned.withSeed(3).build());
+
+        assertSame(plan, signal.getController());
+        assertEquals(run(scenario.toBuilder().withSeed(3).build()), first);
+        assertEquals(first, second, "Another engine on the network should not rebind the plan or its demand");
+    }
+
+    @Test
+    void capturedGridLoadsBackFromBinary(@TempDir Path dir) throws IOException {
+        RoadNetwork grid = RoadNetwork.grid(6, 6, 120, 1, 60);
+        Path file = dir.resolve("grid.bin");
+        Scenario.of(grid).writeBinary(file);
+
+        RoadNetwork loaded = Scenario.load(file).toNetwork();
+        assertEquals(grid.roadCount(), loaded.roadCount());
+        assertEquals(grid.intersections().size(), loaded.intersections().size());
+        for (int id = 0; id < grid.roadCount(); id++) {
+            assertEquals(grid.road(id).getName(), loaded.road(id).getName());
+            assertEquals(grid.road(id).start(), loaded.road(id).start());
+            assertEquals(grid.road(id).end(), loaded.road(id).end());
+        }
+        long expected = run(new SimulationEngineBuilder().withNetwork(grid).withSeed(5).build());
+        long actual = run(new SimulationEngineBuilder().withNetwork(loaded).withSeed(5).build());
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    void malformedScenariosNameTheLine(@TempDir Path dir) throws IOException {
+        IllegalArgumentException unknownRoad = assertThrows(IllegalArgumentException.class, () -> Scenario.parse("""
+                traffic-scenario 1
+                node 0 0
+                node 100 0
+                road a 0 1 1 60
+                signal 100 0 main b cross
+                """));
+        assertTrue(unknownRoad.getMessage().startsWith("Line 5:"), unknownRoad.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> Scenario.parse("road a 0 1 1 60\n"));
+        assertThrows(IllegalArgumentException.class, () -> Scenario.parse("""
+                traffic-scenario 1
+                node 0 0
+                road a 0 7 1 60
+                """));
+
+        Path file = dir.resolve("truncated.bin");
+        Scenario.of(RoadNetwork.grid(2, 2, 100, 1, 60)).writeBinary(file);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length / 2));
+        assertThrows(IllegalArgumentException.class, () -> Scenario.load(file));
+    }
+
+    private static long run(SimulationEngine engine) {
+        for (int i = 0; i < 1500; i++) {
+            engine.update(0.05);
+        }
+        return engine.stateFingerprint();
+    }
+}
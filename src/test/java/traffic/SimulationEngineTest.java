@@ -2,14 +2,26 @@ package traffic;
 
 import org.junit.jupiter.api.Test;
 
+import java.awt.Color;
 import java.awt.geom.Point2D;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 class SimulationEngineTest {
 
@@ -31,16 +43,46 @@ class SimulationEngineTest {
     }
 
     @Test
-    void vehicleFactoryCreatesVehicleWithColor() {
-        VehicleFactory factory = new VehicleFactory(new PaletteColorStrategy());
-        SimulationEngine.Road road = new SimulationEngine.Road(
-                new Point2D.Double(0, 0),
-                new Point2D.Double(100, 0),
-                1,
-                60,
-                "Test");
-        SimulationEngine.Vehicle vehicle = factory.createVehicle(road, 0, new Random(1));
-        assertNotNull(vehicle);
+    void vehicleFactoryOverridesColorEveryVehicle() {
+        VehicleFactory byRoad = new VehicleFactory(new PaletteColorStrategy()) {
+            @Override
+            protected Color pickColor(SimulationEngine.Road road, int laneIndex, Random random) {
+                return road.getName().startsWith("Main") ? Color.RED : Color.BLUE;
+            }
+        };
+        SimulationEngine engine = SimulationEngineBuilder.defaults()
+                .withVehicleFactory(byRoad)
+                .withSpawnRate(240)
+                .withSeed(1)
+                .build();
+        SimulationEngine.Road cross = engine.getRoads().get(1);
+        engine.placeVehicle(cross, 0, 0);
+        for (int i = 0; i < 100; i++) {
+            engine.update(0.05);
+        }
+
+        Set<Color> colors = engine.getVehicleViews().stream().map(SimulationEngine.VehicleView::color).collect(Collectors.toSet());
+        assertEquals(Set.of(Color.RED, Color.BLUE), colors, "Spawned and placed vehicles both take the factory's color");
+    }
+
+    @Test
+    void vehicleStoreReusesReleasedSlotsWithoutGrowing() {
+        VehicleStore store = new VehicleStore(16);
+        int color = store.colorIndex(Color.RED);
+        int first = store.allocate(0, 0, color);
+        int second = store.allocate(1, 1, color);
+        store.setPosition(second, 42);
+
+        store.release(first);
+        int reused = store.allocate(1, 0, store.colorIndex(new Color(0xFF0000)));
+
+        assertEquals(first, reused, "Released slots should be recycled before new ones are used");
+        assertEquals(2, store.size());
+        assertEquals(16, store.capacity());
+        assertEquals(0, store.position(reused));
+        assertEquals(42, store.position(second));
+        assertEquals(color, store.colorIndex(Color.RED), "Equal colors share a palette entry");
+        assertEquals(Color.RED, store.color(reused));
     }
 
     @Test
@@ -108,6 +150,184 @@ class SimulationEngineTest {
         assertTrue(engine.getThroughputPerSecond() > 0, "Departure should be counted toward throughput");
     }
 
+    @Test
+    void queuedVehiclesKeepGapAndAreCountedAtRed() {
+        SimulationEngine engine = SimulationEngineBuilder.defaults()
+                .withSpawnRate(0)
+                .withRandom(new Random(3))
+                .build();
+        engine.setManualPhase(SimulationEngine.Intersection.Phase.CROSS_GREEN);
+        SimulationEngine.Road main = engine.getRoads().get(0);
+        for (int i = 0; i < 5; i++) {
+            engine.placeVehicle(main, 0, 200 - i * 30);
+        }
+
+        for (int i = 0; i < 200; i++) {
+            engine.update(0.05);
+        }
+
+        assertEquals(5, engine.getVehicleCount());
+        assertEquals(5, engine.getQueueLength(main), "All vehicles should be queued at the red light");
+        List<SimulationEngine.VehicleView> views = engine.getVehicleViews();
+        for (int i = 1; i < views.size(); i++) {
+            double gap = views.get(i - 1).position().x - views.get(i).position().x;
+            assertTrue(gap >= 18.0 - 1e-9, "Followers must keep the minimum gap to their leader");
+        }
+    }
+
+    @Test
+    void queueDischargesOneVehicleAfterAnotherUnderEitherCarFollowingModel() {
+        for (CarFollowingModel model : List.of(CarFollowingModel.intelligentDriver(), CarFollowingModel.gipps())) {
+            SimulationEngine engine = SimulationEngineBuilder.defaults()
+                    .withSpawnRate(0)
+                    .withRandom(new Random(3))
+                    .withCarFollowingModel(model)
+                    .build();
+            engine.setManualPhase(SimulationEngine.Intersection.Phase.CROSS_GREEN);
+            SimulationEngine.Road main = engine.getRoads().get(0);
+            for (int i = 0; i < 5; i++) {
+                engine.placeVehicle(main, 0, 200 - i * 30);
+            }
+            for (int i = 0; i < 400; i++) {
+                engine.update(0.05);
+            }
+            assertEquals(5, engine.getQueueLength(main));
+            List<Point2D.Double> queued = engine.getVehicleViews().stream().map(SimulationEngine.VehicleView::position).toList();
+            engine.update(0.05);
+            assertEquals(queued, engine.getVehicleViews().stream().map(SimulationEngine.VehicleView::position).toList(),
+                    "Stopped vehicles should stay put, not creep");
+
+            engine.setManualPhase(SimulationEngine.Intersection.Phase.MAIN_GREEN);
+            engine.update(0.05);
+            engine.update(0.05);
+            List<SimulationEngine.VehicleView> moving = engine.getVehicleViews();
+            double frontMoved = moving.getFirst().position().x - queued.getFirst().x;
+            assertTrue(frontMoved > 0 && frontMoved < 1,
+                    "The front vehicle should pull away gradually: " + frontMoved);
+            assertEquals(queued.getLast(), moving.getLast().position(), "The tail should not start with the front");
+
+            for (int i = 0; i < 400; i++) {
+                engine.update(0.05);
+                List<SimulationEngine.VehicleView> views = engine.getVehicleViews();
+                for (int v = 1; v < views.size(); v++) {
+                    assertTrue(views.get(v - 1).position().x - views.get(v).position().x >= 18.0 - 1e-9,
+                            "Followers must keep the minimum gap to their leader");
+                }
+            }
+            assertEquals(0, engine.getVehicleCount(), "The whole queue should have left");
+        }
+    }
+
+    @Test
+    void fixedTimeSignalsCycleTwelveThreeEightThree() {
+        SimulationEngine.Intersection.Signal signal = new SimulationEngine.Intersection.Signal(
+                SimulationEngineBuilder.defaults().build().getNetwork().intersections().getFirst());
+        double[] boundaries = {12, 15, 23, 26};
+        SimulationEngine.Intersection.Phase[] after = {
+                SimulationEngine.Intersection.Phase.MAIN_YELLOW,
+                SimulationEngine.Intersection.Phase.CROSS_GREEN,
+                SimulationEngine.Intersection.Phase.CROSS_YELLOW,
+                SimulationEngine.Intersection.Phase.MAIN_GREEN};
+        double time = 0;
+        for (int i = 0; i < boundaries.length; i++) {
+            while (time + 0.5 < boundaries[i]) {
+                signal.update(0.5);
+                time += 0.5;
+            }
+            assertNotEquals(after[i], signal.currentPhase(), "Phase should not change before " + boundaries[i] + "s");
+            signal.update(0.5);
+            time += 0.5;
+            assertEquals(after[i], signal.currentPhase());
+        }
+    }
+
+    @Test
+    void adaptiveSignalsMoveMoreTrafficThanFixedTimeUnderUnbalancedDemand() {
+        long fixed = departuresWith(SignalController.fixedTime(12, 8));
+        long actuated = departuresWith(SignalController.actuated(4, 30));
+        long maxPressure = departuresWith(SignalController.maxPressure(4, 30));
+        assertTrue(actuated > fixed, "Actuated " + actuated + " vs fixed " + fixed);
+        assertTrue(maxPressure > fixed, "Max-pressure " + maxPressure + " vs fixed " + fixed);
+    }
+
+    private static long departuresWith(SignalController controller) {
+        SimulationEngine engine = SimulationEngineBuilder.defaults()
+                .withSeed(5)
+                .withSpawnRate(80)
+                .withSpawnStrategy(new BiasedSpawnStrategy(Map.of("Main Eastbound", 0.9, "Crossing", 0.1)))
+                .withSignalController(controller)
+                .build();
+        for (int i = 0; i < 12_000; i++) {
+            engine.update(0.05);
+        }
+        return engine.getTotalDepartures();
+    }
+
+    @Test
+    void actuatedSignalHoldsGreenWhileItsQueueIsDischarging() {
+        SignalController actuated = SignalController.actuated(5, 40);
+        SignalDemand busyMain = demand(6, 0, 0.5, 0.5);
+        SignalDemand idleMain = demand(0, 2, 0.2, 0.5);
+        assertFalse(actuated.endGreen(true, 4, idleMain), "Minimum green is always served");
+        assertFalse(actuated.endGreen(true, 20, busyMain), "A queued green should be extended");
+        assertTrue(actuated.endGreen(true, 20, idleMain), "An empty green should gap out when the cross road waits");
+        assertTrue(actuated.endGreen(true, 40, busyMain), "Maximum green always ends the phase");
+    }
+
+    @Test
+    void controllersBoundTheGreenLeftWhileNothingMoves() {
+        SignalDemand empty = demand(0, 0, 0.4, 0.1);
+        assertEquals(7, SignalController.fixedTime(12, 8).minRemainingGreen(true, 5, empty), 1e-9);
+        assertEquals(3, SignalController.actuated(5, 30).minRemainingGreen(true, 2, demand(0, 4, 0.1, 0.1)), 1e-9);
+        assertEquals(20, SignalController.actuated(5, 30).minRemainingGreen(true, 10, empty), 1e-9,
+                "Nobody waits on red, so the green runs to its maximum");
+        assertEquals(0, SignalController.actuated(5, 30).minRemainingGreen(true, 10, demand(0, 4, 0.1, 0.1)));
+        assertEquals(20, SignalController.maxPressure(5, 30).minRemainingGreen(true, 10, empty), 1e-9);
+        assertEquals(0, SignalController.maxPressure(5, 30).minRemainingGreen(true, 10, demand(0, 4, 0.1, 0.1)));
+    }
+
+    private static SignalDemand demand(int mainQueue, int crossQueue, double mainRate, double crossRate) {
+        return new SignalDemand() {
+            @Override
+            public int queueLength(boolean main) {
+                return main ? mainQueue : crossQueue;
+            }
+
+            @Override
+            public double arrivalRate(boolean main) {
+                return main ? mainRate : crossRate;
+            }
+
+            @Override
+            public int downstreamQueue(boolean main) {
+                return 0;
+            }
+        };
+    }
+
+    @Test
+    void resetRestoresTheSettingsTheEngineWasBuiltWith() {
+        SimulationEngine engine = SimulationEngineBuilder.defaults()
+                .withSpawnRate(90)
+                .withSpeedLimit(35)
+                .withLaneClosure(true)
+                .withSeed(4)
+                .build();
+        engine.setSpawnPerMinute(10);
+        engine.setSpeedLimit(80);
+        engine.setLaneClosure(false);
+
+        engine.reset();
+        SimulationEngine expected = SimulationEngineBuilder.defaults()
+                .withSpawnRate(90)
+                .withSpeedLimit(35)
+                .withLaneClosure(true)
+                .withSeed(4)
+                .build();
+        assertEquals(expected.stateFingerprint(), engine.stateFingerprint());
+        assertEquals(1, engine.getRoadViews().getFirst().openLanes(), "Lane closure should come back after reset");
+    }
+
     @Test
     void observerReceivesSnapshotsOnUpdate() {
         SimulationEngine engine = SimulationEngineBuilder.defaults().build();
@@ -124,6 +344,254 @@ class SimulationEngineTest {
         assertEquals(1, notifications.get(), "Observer should be notified once per update call");
     }
 
+    @Test
+    void snapshotsCaptureStateButBuildViewsOnDemand() {
+        SimulationEngine engine = SimulationEngineBuilder.defaults().withSeed(6).withSpawnRate(120).build();
+        for (int i = 0; i < 200; i++) {
+            engine.update(0.05);
+        }
+        List<SimulationEngine.VehicleView> expected = engine.getVehicleViews();
+        SimulationSnapshot snapshot = engine.createSnapshot();
+        List<SimulationEngine.RoadView> roads = snapshot.roadViews();
+
+        for (int i = 0; i < 20; i++) {
+            engine.update(0.05);
+        }
+
+        assertEquals(expected, snapshot.vehicleViews(), "Views built later must show the captured state");
+        assertEquals(expected.size(), snapshot.vehicleCount());
+        assertEquals(expected.getFirst().position().x, snapshot.vehiclePositions()[0]);
+        assertSame(roads, engine.createSnapshot().roadViews(), "Road views are reused while lanes are unchanged");
+        engine.setLaneClosure(true);
+        assertEquals(1, engine.createSnapshot().roadViews().getFirst().openLanes());
+    }
+
+    @Test
+    void loopSnapshotsStayCorrectWhenColumnsAreRecycled() {
+        SimulationEngine engine = SimulationEngineBuilder.defaults().withSeed(8).withSpawnRate(120).build();
+        SimulationLoop loop = new SimulationLoop(engine, 20);
+        for (int i = 0; i < 400; i++) {
+            loop.tick();
+            if (i % 50 == 0) {
+                assertEquals(engine.getVehicleViews(), loop.latestSnapshot().vehicleViews());
+            }
+        }
+    }
+
+    @Test
+    void rateLimitedObserversOnlySeeDueTicks() {
+        SimulationEngine engine = SimulationEngineBuilder.defaults().withSeed(2).build();
+        AtomicInteger metrics = new AtomicInteger();
+        AtomicInteger every = new AtomicInteger();
+        engine.addObserver(snapshot -> metrics.incrementAndGet(), ObserverOptions.synchronous().atSimulatedRate(1));
+        engine.addObserver(snapshot -> every.incrementAndGet());
+
+        for (int i = 0; i < 200; i++) {
+            engine.update(0.05);
+        }
+
+        assertEquals(200, every.get());
+        assertEquals(10, metrics.get(), "A 1 Hz observer should see one snapshot per simulated second");
+    }
+
+    @Test
+    void wallClockRateHoldsWhenTheEngineRunsFasterThanRealTime() {
+        SimulationEngine engine = SimulationEngineBuilder.defaults().withSeed(2).build();
+        AtomicInteger viewer = new AtomicInteger();
+        AtomicInteger sampled = new AtomicInteger();
+        engine.addObserver(snapshot -> viewer.incrementAndGet(), ObserverOptions.synchronous().atRate(60));
+        engine.addObserver(snapshot -> sampled.incrementAndGet(), ObserverOptions.synchronous().atSimulatedRate(60));
+
+        long started = System.nanoTime();
+        for (int i = 0; i < 4000; i++) {
+            engine.update(0.05);
+        }
+        double wallSeconds = (System.nanoTime() - started) / 1e9;
+
+        assertEquals(4000, sampled.get(), "At 20 ticks per simulated second a 60 Hz simulated rate sees every tick");
+        assertTrue(viewer.get() <= 1 + Math.ceil(wallSeconds * 60),
+                viewer.get() + " deliveries in " + wallSeconds + "s wall exceed 60 Hz");
+        assertTrue(viewer.get() < sampled.get() / 4, "Fast stepping must not speed up a wall-clock observer");
+    }
+
+    @Test
+    void slowAsyncObserversDoNotHoldUpTicks() throws InterruptedException {
+        SimulationEngine engine = SimulationEngineBuilder.defaults().withSeed(3).build();
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<SimulationSnapshot> latest = new AtomicReference<>();
+        CountDownLatch sawLast = new CountDownLatch(1);
+        SimulationObserver slowConflating = snapshot -> {
+            awaitQuietly(release);
+            latest.set(snapshot);
+            if (snapshot.simTimeSeconds() > 4.99) {
+                sawLast.countDown();
+            }
+        };
+        AtomicInteger queued = new AtomicInteger();
+        SimulationObserver slowQueued = snapshot -> {
+            awaitQuietly(release);
+            queued.incrementAndGet();
+        };
+        engine.addObserver(slowConflating, ObserverOptions.conflating());
+        engine.addObserver(slowQueued, ObserverOptions.boundedQueue(4));
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            engine.update(0.05);
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        release.countDown();
+
+        assertTrue(elapsedMillis < 2_000, "Blocked observers must not block the tick: " + elapsedMillis + "ms");
+        assertTrue(sawLast.await(5, TimeUnit.SECONDS), "Conflating observer should end on the newest snapshot");
+        assertEquals(5.0, latest.get().simTimeSeconds(), 1e-9);
+        assertTrue(engine.getDroppedSnapshots(slowConflating) > 90);
+        assertTrue(engine.getDroppedSnapshots(slowQueued) >= 100 - 4 - 1, "A full queue should drop, not wait");
+        engine.removeObserver(slowConflating);
+        engine.removeObserver(slowQueued);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    void steadyStateTickDoesNotAllocate() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean, "Allocation counters unavailable");
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported(), "Allocation counters unsupported");
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        SimulationEngine engine = SimulationEngineBuilder.defaults()
+                .withRandom(new Random(11))
+                .withSpawnRate(90)
+                .build();
+        for (int i = 0; i < 20_000; i++) {
+            engine.update(0.05);
+        }
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 10_000; i++) {
+            engine.update(0.05);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        assertTrue(engine.getTotalDepartures() > 0, "Traffic should be flowing during the measurement");
+        assertEquals(0, allocated, "Steady-state ticks should not allocate");
+    }
+
+    @Test
+    void idleSkippingMatchesTickingAtLowDemand() {
+        SimulationEngine ticked = SimulationEngineBuilder.defaults().withSeed(4).withSpawnRate(2).withIdleSkipping().build();
+        SimulationEngine skipped = SimulationEngineBuilder.defaults().withSeed(4).withSpawnRate(2).withIdleSkipping().build();
+
+        int steps = 0;
+        for (int tick = 0; tick < 36_000; steps++) {
+            tick += skipped.advance(0.05, 36_000 - tick);
+        }
+        for (int i = 0; i < 36_000; i++) {
+            ticked.update(0.05);
+        }
+
+        assertEquals(1800, skipped.getSimTimeSeconds(), 1e-6);
+        assertTrue(ticked.getTotalDepartures() > 30, "Spawns should follow the configured rate");
+        assertEquals(ticked.getTotalDepartures(), skipped.getTotalDepartures());
+        assertEquals(ticked.getVehicleViews(), skipped.getVehicleViews());
+        assertEquals(ticked.getSignalView().phase(), skipped.getSignalView().phase());
+        assertEquals(ticked.getMetrics().delayMillis().count(), skipped.getMetrics().delayMillis().count());
+        assertEquals(36_000, skipped.getMetrics().networkQueueLength().count(), "Skipped ticks still count as samples");
+        assertTrue(steps < 36_000 / 3, "Idle stretches should be skipped, took " + steps + " steps");
+    }
+
+    @Test
+    void emptyNetworkAdvancesPhaseByPhase() {
+        SimulationEngine engine = SimulationEngineBuilder.defaults().withSpawnRate(0).withIdleSkipping().build();
+        int steps = 0;
+        for (int tick = 0; tick < 72_000; steps++) {
+            tick += engine.advance(0.05, 72_000 - tick);
+        }
+        assertEquals(3600, engine.getSimTimeSeconds(), 1e-6);
+        assertTrue(steps < 1_200, "An empty network needs a couple of steps per phase, took " + steps);
+        assertEquals(SimulationEngine.Intersection.Phase.MAIN_YELLOW, engine.getSignalView().phase(),
+                "3600 s is 138 cycles of 26 s and 12 s into the next");
+
+        SimulationEngine plain = SimulationEngineBuilder.defaults().withSpawnRate(0).build();
+        assertEquals(1, plain.advance(0.05, 100), "Without idle skipping every call is one tick");
+    }
+
+    @Test
+    void spatialQueriesMatchVehicleViews() {
+        SimulationEngine engine = new SimulationEngineBuilder()
+                .withNetwork(RoadNetwork.grid(3, 3, 150, 2, 60))
+                .withSpawnRate(300)
+                .withSeed(8)
+                .build();
+        for (int i = 0; i < 2_000; i++) {
+            engine.update(0.05);
+        }
+        List<SimulationEngine.VehicleView> all = engine.getVehicleViews();
+        assertTrue(all.size() > 20, "Scenario should have traffic");
+        for (SimulationEngine.VehicleView probe : all.subList(0, 20)) {
+            double x = probe.position().x;
+            double y = probe.position().y;
+            Set<Long> expected = all.stream()
+                    .filter(v -> v.position().distance(x, y) <= 40)
+                    .map(SimulationEngine.VehicleView::id)
+                    .collect(Collectors.toSet());
+            Set<Long> found = engine.getVehiclesWithin(x, y, 40).stream()
+                    .map(SimulationEngine.VehicleView::id)
+                    .collect(Collectors.toSet());
+            assertEquals(expected, found);
+            assertEquals(probe.id(), engine.getVehicleAt(x, y, 1).id());
+        }
+        assertEquals(all.size(), engine.getVehiclesIn(-1e6, -1e6, 1e6, 1e6).size());
+    }
+
+    @Test
+    void intersectionBoxTracksOccupancyAndConflicts() {
+        SimulationEngine engine = SimulationEngineBuilder.defaults().withSeed(12).withSpawnRate(120).build();
+        int occupiedTicks = 0;
+        for (int i = 0; i < 6_000; i++) {
+            engine.update(0.05);
+            if (engine.getIntersectionOccupancy(0) > 0) {
+                occupiedTicks++;
+            }
+        }
+        assertTrue(occupiedTicks > 0, "Traffic should pass through the intersection");
+
+        engine.reset();
+        engine.placeVehicle(engine.getRoads().get(0), 0, 318);
+        engine.placeVehicle(engine.getRoads().get(1), 0, 178);
+        engine.setManualPhase(SimulationEngine.Intersection.Phase.MAIN_GREEN);
+        engine.setSpawnPerMinute(0);
+        engine.update(0.05);
+        engine.setManualPhase(SimulationEngine.Intersection.Phase.CROSS_GREEN);
+        engine.update(0.05);
+        assertEquals(2, engine.getIntersectionOccupancy(0));
+        assertTrue(engine.hasConflict(0), "Both roads' vehicles are in the box");
+        assertEquals(1, engine.getTotalConflicts());
+    }
+
+    @Test
+    void snapshotPicksTheVehicleUnderAPoint() {
+        SimulationEngine engine = SimulationEngineBuilder.defaults().withSeed(2).withSpawnRate(90).build();
+        for (int i = 0; i < 400; i++) {
+            engine.update(0.05);
+        }
+        SimulationSnapshot snapshot = engine.createSnapshot();
+        SimulationEngine.VehicleView target = snapshot.vehicleViews().getLast();
+
+        SimulationEngine.VehicleView picked = snapshot.vehicleAt(target.position().x + 2, target.position().y - 2, 10);
+
+        assertEquals(target.id(), picked.id());
+        assertEquals(null, snapshot.vehicleAt(-500, -500, 10));
+    }
+
     private static class FixedSpawnStrategy implements SpawnStrategy {
         @Override
         public SimulationEngine.Road chooseRoad(java.util.List<SimulationEngine.Road> roads, Random random) {
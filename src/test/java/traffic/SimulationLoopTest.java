@@ -0,0 +1,197 @@
+package traffic;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.geom.Point2D;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SimulationLoopTest {
+
+    @Test
+    void tripleBufferHandsOverOnlyTheLatestValue() {
+        TripleBuffer<String> buffer = new TripleBuffer<>();
+        assertNull(buffer.acquire());
+
+        buffer.publish("first");
+        buffer.publish("second");
+        assertEquals("second", buffer.acquire());
+        assertEquals("second", buffer.acquire(), "Without a new publication the reader keeps its value");
+
+        buffer.publish("third");
+        assertEquals("third", buffer.acquire());
+    }
+
+    @Test
+    void commandsApplyAtTickBoundary() {
+        SimulationEngine engine = SimulationEngineBuilder.defaults().withRandom(new Random(4)).build();
+        SimulationLoop loop = new SimulationLoop(engine, 20);
+
+        loop.submit(new SimulationCommands.SetPhaseCommand(SimulationEngine.Intersection.Phase.CROSS_GREEN));
+        assertEquals(SimulationEngine.Intersection.Phase.MAIN_GREEN, engine.getSignalView().phase(),
+                "Queued commands must not run before the next tick");
+
+        loop.tick();
+
+        SimulationSnapshot snapshot = loop.latestSnapshot();
+        assertEquals(SimulationEngine.Intersection.Phase.CROSS_GREEN, snapshot.signalView().phase());
+        assertEquals(0.05, snapshot.simTimeSeconds(), 1e-12);
+    }
+
+    @Test
+    void loopThreadPublishesSnapshotsIndependentlyOfReader() throws InterruptedException {
+        SimulationEngine engine = SimulationEngineBuilder.defaults().withRandom(new Random(5)).build();
+        SimulationLoop loop = new SimulationLoop(engine, 200);
+
+        loop.start();
+        try {
+            long deadline = System.nanoTime() + 5_000_000_000L;
+            while (loop.latestSnapshot().simTimeSeconds() < 0.1 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+        } finally {
+            loop.stop();
+        }
+
+        assertTrue(loop.latestSnapshot().simTimeSeconds() >= 0.1, "The loop should advance on its own thread");
+    }
+
+    @Test
+    void failingTickStopsTheLoopAndKeepsTheException() throws InterruptedException {
+        SimulationEngine engine = SimulationEngineBuilder.defaults().withRandom(new Random(6)).build();
+        SimulationLoop loop = new SimulationLoop(engine, 200);
+        IllegalStateException thrown = new IllegalStateException("disk full");
+
+        loop.start();
+        loop.submit(target -> {
+            throw thrown;
+        });
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (loop.isRunning() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+
+        assertFalse(loop.isRunning(), "A failed tick must not leave the loop looking live");
+        assertSame(thrown, loop.failure());
+        double frozen = loop.latestSnapshot().simTimeSeconds();
+        Thread.sleep(50);
+        assertEquals(frozen, loop.latestSnapshot().simTimeSeconds(), "No tick runs after the failure");
+        loop.stop();
+        assertSame(thrown, loop.failure());
+    }
+
+    @Test
+    void recordedSessionReplaysToTheSameEndState(@TempDir Path dir) throws IOException {
+        Path log = dir.resolve("session.tlog");
+        SimulationEngine engine = SimulationEngineBuilder.defaults().withSeed(77).build();
+        SimulationLoop loop = new SimulationLoop(engine, 50);
+        EventLog.Recorder recorder = EventLog.record(log, 77, engine);
+        loop.recordTo(recorder);
+
+        loop.submit(new SimulationCommands.ResetCommand());
+        for (int i = 0; i < 3000; i++) {
+            if (i == 500) {
+                loop.submit(new SimulationCommands.SetSpawnRateCommand(110));
+            } else if (i == 1200) {
+                loop.submit(new SimulationCommands.SetPhaseCommand(SimulationEngine.Intersection.Phase.CROSS_GREEN));
+                loop.submit(new SimulationCommands.ToggleLaneClosureCommand(true));
+            } else if (i == 1800) {
+                loop.submit(new SimulationCommands.SetSpeedLimitCommand(35));
+            }
+            loop.tick();
+        }
+        recorder.close();
+
+        EventLog.Replay replay = EventLog.replay(log, SimulationEngineBuilder.defaults());
+
+        assertTrue(replay.verified());
+        assertEquals(3000, replay.ticks());
+        assertEquals(5, replay.commands());
+        assertEquals(engine.stateFingerprint(), replay.engine().stateFingerprint());
+        assertEquals(engine.getVehicleViews(), replay.engine().getVehicleViews());
+        assertTrue(Files.size(log) < 200, "Fixed-rate ticks should collapse into a few records");
+
+        assertThrows(IllegalStateException.class,
+                () -> EventLog.replay(log, SimulationEngineBuilder.defaults().withIntersectionPoint(new Point2D.Double(500, 220))),
+                "A replay against a different scenario must be detected");
+    }
+
+    @Test
+    void truncatedLogReplaysUpToItsLastCompleteRecord(@TempDir Path dir) throws IOException {
+        Path log = dir.resolve("session.tlog");
+        SimulationEngine engine = SimulationEngineBuilder.defaults().withSeed(31).build();
+        SimulationLoop loop = new SimulationLoop(engine, 50);
+        EventLog.Recorder recorder = EventLog.record(log, 31, engine);
+        loop.recordTo(recorder);
+        for (int i = 0; i < 200; i++) {
+            if (i == 100) {
+                loop.submit(new SimulationCommands.SetPhaseCommand(SimulationEngine.Intersection.Phase.CROSS_GREEN));
+            }
+            loop.tick();
+        }
+        recorder.close();
+        byte[] full = Files.readAllBytes(log);
+
+        // The header, then 100 ticks (13 bytes), the phase command (6), 100 ticks (13) and the end (9).
+        int header = full.length - 41;
+        int[] cuts = {header, header + 6, header + 13, header + 16, header + 19, header + 26, header + 32, header + 37};
+        long[] ticksReplayed = {0, 0, 100, 100, 100, 100, 200, 200};
+        long[] commandsReplayed = {0, 0, 0, 0, 1, 1, 1, 1};
+        for (int i = 0; i < cuts.length; i++) {
+            Path cut = dir.resolve("cut-" + cuts[i] + ".tlog");
+            Files.write(cut, Arrays.copyOf(full, cuts[i]));
+
+            EventLog.Replay replay = EventLog.replay(cut, SimulationEngineBuilder.defaults());
+
+            assertFalse(replay.verified(), "Cut at " + cuts[i]);
+            assertEquals(ticksReplayed[i], replay.ticks(), "Cut at " + cuts[i]);
+            assertEquals(commandsReplayed[i], replay.commands(), "Cut at " + cuts[i]);
+        }
+        assertTrue(EventLog.replay(log, SimulationEngineBuilder.defaults()).verified());
+
+        byte[] badPhase = full.clone();
+        badPhase[header + 13 + 5] = 9;
+        Path corrupt = dir.resolve("corrupt.tlog");
+        Files.write(corrupt, badPhase);
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+                () -> EventLog.replay(corrupt, SimulationEngineBuilder.defaults()));
+        assertTrue(error.getMessage().startsWith("Corrupt event log"), error.getMessage());
+    }
+
+    @Test
+    void versionOneLogsReplayWithTheSafeGapRule(@TempDir Path dir) throws IOException {
+        SimulationEngine engine = SimulationEngineBuilder.defaults().withSeed(12)
+                .withCarFollowingModel(CarFollowingModel.safeGap()).build();
+        for (int i = 0; i < 1000; i++) {
+            engine.update(0.05);
+        }
+        Path log = dir.resolve("v1.tlog");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(log))) {
+            out.writeInt(0x54524C47);
+            out.writeShort(1);
+            out.writeLong(12);
+            out.writeByte(1);
+            out.writeInt(1000);
+            out.writeDouble(0.05);
+            out.writeByte(7);
+            out.writeLong(engine.stateFingerprint());
+        }
+
+        EventLog.Replay replay = EventLog.replay(log);
+
+        assertTrue(replay.verified(), "Logs from before car-following models replay on the rule they were recorded with");
+        assertEquals(1000, replay.ticks());
+    }
+}
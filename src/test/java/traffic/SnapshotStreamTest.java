@@ -0,0 +1,106 @@
+package traffic;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnapshotStreamTest {
+
+    @Test
+    void fileStreamDecodesToQuantizedSnapshots(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("engine.trss");
+        SimulationEngine engine = SimulationEngineBuilder.defaults().withSeed(3).withSpawnRate(120).build();
+        List<SimulationSnapshot> sent = new ArrayList<>();
+        try (SnapshotStream.Writer writer = SnapshotStream.toFile(file)) {
+            engine.addObserver(writer);
+            engine.addObserver(sent::add);
+            for (int i = 0; i < 600; i++) {
+                if (i == 300) {
+                    engine.setLaneClosure(true);
+                }
+                engine.update(0.05);
+            }
+            assertNull(writer.failure());
+        }
+
+        try (SnapshotStream.Reader reader = SnapshotStream.Reader.fromFile(file)) {
+            for (SimulationSnapshot expected : sent) {
+                assertMatches(expected, reader.next());
+            }
+            assertNull(reader.next(), "Stream should end after the last frame");
+        }
+
+        long fullFrameBytes = 13L * sent.stream().mapToLong(s -> s.vehicleViews().size()).sum();
+        assertTrue(Files.size(file) < fullFrameBytes / 2, "Delta frames should be far smaller than full frames");
+    }
+
+    @Test
+    void streamsToViewerOnUnixSocket(@TempDir Path dir) throws Exception {
+        Path socket = dir.resolve("viewer.sock");
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            CompletableFuture<List<SimulationSnapshot>> received = CompletableFuture.supplyAsync(() -> {
+                try (SocketChannel viewer = server.accept(); SnapshotStream.Reader reader = new SnapshotStream.Reader(viewer)) {
+                    List<SimulationSnapshot> snapshots = new ArrayList<>();
+                    for (SimulationSnapshot s = reader.next(); s != null; s = reader.next()) {
+                        snapshots.add(s);
+                    }
+                    return snapshots;
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+
+            SimulationEngine engine = SimulationEngineBuilder.defaults().withSeed(4).build();
+            SimulationSnapshot last;
+            try (SnapshotStream.Writer writer = SnapshotStream.toSocket(socket)) {
+                engine.addObserver(writer);
+                for (int i = 0; i < 200; i++) {
+                    engine.update(0.05);
+                }
+                last = engine.createSnapshot();
+            }
+
+            List<SimulationSnapshot> snapshots = received.get();
+            assertEquals(200, snapshots.size());
+            assertMatches(last, snapshots.getLast());
+        }
+    }
+
+    private static void assertMatches(SimulationSnapshot expected, SimulationSnapshot actual) {
+        assertEquals(expected.simTimeSeconds(), actual.simTimeSeconds());
+        assertEquals(expected.roadViews().size(), actual.roadViews().size());
+        for (int i = 0; i < expected.roadViews().size(); i++) {
+            assertEquals(expected.roadViews().get(i).openLanes(), actual.roadViews().get(i).openLanes());
+            assertEquals(expected.roadViews().get(i).name(), actual.roadViews().get(i).name());
+        }
+        assertEquals(expected.signalView().phase(), actual.signalView().phase());
+        assertEquals(expected.signalView().mainColor(), actual.signalView().mainColor());
+        List<SimulationEngine.VehicleView> vehicles = new ArrayList<>(expected.vehicleViews());
+        vehicles.sort((a, b) -> Long.compare(a.id(), b.id()));
+        assertEquals(vehicles.size(), actual.vehicleViews().size());
+        double tolerance = 0.5 / SnapshotStream.STEPS_PER_PIXEL;
+        for (int i = 0; i < vehicles.size(); i++) {
+            SimulationEngine.VehicleView want = vehicles.get(i);
+            SimulationEngine.VehicleView got = actual.vehicleViews().get(i);
+            assertEquals(want.id(), got.id());
+            assertEquals(want.color(), got.color());
+            assertEquals(want.position().x, got.position().x, tolerance);
+            assertEquals(want.position().y, got.position().y, tolerance);
+        }
+    }
+}
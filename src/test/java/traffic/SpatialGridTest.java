@@ -0,0 +1,91 @@
+package traffic;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class SpatialGridTest {
+
+    @Test
+    void queriesMatchABruteForceScanAsItemsMove() {
+        Random random = new Random(7);
+        int items = 500;
+        SpatialGrid grid = new SpatialGrid(0, 0, 800, 500, 32, 16);
+        double[] x = new double[items];
+        double[] y = new double[items];
+        for (int i = 0; i < items; i++) {
+            x[i] = random.nextDouble() * 800;
+            y[i] = random.nextDouble() * 500;
+            grid.insert(i, x[i], y[i]);
+        }
+        IntList found = new IntList();
+        for (int round = 0; round < 50; round++) {
+            for (int i = 0; i < items; i++) {
+                x[i] += random.nextGaussian() * 20;
+                y[i] += random.nextGaussian() * 20;
+                grid.update(i, x[i], y[i]);
+            }
+            double cx = random.nextDouble() * 800;
+            double cy = random.nextDouble() * 500;
+            double radius = random.nextDouble() * 120;
+
+            found.clear();
+            grid.queryRadius(cx, cy, radius, found);
+            assertArrayEquals(bruteForceRadius(x, y, cx, cy, radius), sorted(found));
+
+            found.clear();
+            grid.queryRect(cx - radius, cy - radius / 2, cx + radius, cy + radius / 2, found);
+            assertArrayEquals(bruteForceRect(x, y, cx - radius, cy - radius / 2, cx + radius, cy + radius / 2), sorted(found));
+        }
+    }
+
+    @Test
+    void nearestPicksTheClosestItemWithinRadius() {
+        SpatialGrid grid = new SpatialGrid(0, 0, 100, 100, 10, 4);
+        grid.insert(0, 10, 10);
+        grid.insert(1, 14, 10);
+        grid.insert(2, 90, 90);
+        assertEquals(1, grid.nearest(13, 10, 5));
+        assertEquals(SpatialGrid.NONE, grid.nearest(50, 50, 5));
+        grid.remove(1);
+        assertEquals(0, grid.nearest(13, 10, 5));
+        assertFalse(grid.contains(1));
+        grid.insert(200, -40, 300);
+        assertEquals(200, grid.nearest(-40, 300, 1), "Points off the map stay queryable");
+        grid.clear();
+        assertEquals(SpatialGrid.NONE, grid.nearest(10, 10, 50));
+    }
+
+    private static int[] sorted(IntList list) {
+        int[] values = list.toArray();
+        Arrays.sort(values);
+        return values;
+    }
+
+    private static int[] bruteForceRadius(double[] x, double[] y, double cx, double cy, double radius) {
+        IntList matches = new IntList();
+        for (int i = 0; i < x.length; i++) {
+            double dx = x[i] - cx;
+            double dy = y[i] - cy;
+            if (dx * dx + dy * dy <= radius * radius) {
+                matches.add(i);
+            }
+        }
+        return matches.toArray();
+    }
+
+    private static int[] bruteForceRect(double[] x, double[] y, double minX, double minY, double maxX, double maxY) {
+        IntList matches = new IntList();
+        for (int i = 0; i < x.length; i++) {
+            if (x[i] >= minX && x[i] <= maxX && y[i] >= minY && y[i] <= maxY) {
+                matches.add(i);
+            }
+        }
+        return matches.toArray();
+    }
+}